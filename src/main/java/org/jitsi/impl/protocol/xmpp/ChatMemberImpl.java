@@ -21,7 +21,9 @@ import net.java.sip.communicator.impl.protocol.jabber.*;
 import net.java.sip.communicator.service.protocol.*;
 
 import net.java.sip.communicator.service.protocol.globalstatus.*;
+import org.jitsi.impl.protocol.xmpp.extensions.*;
 import org.jitsi.protocol.xmpp.*;
+import org.jivesoftware.smack.packet.*;
 import org.jivesoftware.smackx.muc.*;
 
 /**
@@ -55,6 +57,11 @@ public class ChatMemberImpl
 
     private ChatRoomMemberRole role;
 
+    /**
+     * The region advertised in member's presence.
+     */
+    private volatile String region;
+
     public ChatMemberImpl(String participant, ChatRoomImpl chatRoom,
         int joinOrderNumber)
     {
@@ -148,4 +155,28 @@ public class ChatMemberImpl
     {
         return joinOrderNumber;
     }
+
+    @Override
+    public String getRegion()
+    {
+        return region;
+    }
+
+    /**
+     * Updates the region of this member from given MUC presence.
+     *
+     * @param presence the last presence received from the member.
+     */
+    void processPresence(Presence presence)
+    {
+        PacketExtension ext
+            = presence.getExtension(
+                    RegionPacketExtension.ELEMENT_NAME,
+                    RegionPacketExtension.NAMESPACE);
+
+        if (ext instanceof RegionPacketExtension)
+        {
+            this.region = ((RegionPacketExtension) ext).getRegionId();
+        }
+    }
 }
@@ -860,6 +860,13 @@ public class ChatRoomImpl
 
         members.put(participant, newMember);
 
+        // Presence might have been processed before the member was added
+        Presence presence = muc.getOccupantPresence(participant);
+        if (presence != null)
+        {
+            newMember.processPresence(presence);
+        }
+
         return newMember;
     }
 
@@ -1169,8 +1176,18 @@ public class ChatRoomImpl
          */
         private void processOtherPresence(Presence presence)
         {
-            // Not used anymore- but can implement some presence processing
-            // here if needed
+            ChatMemberImpl member;
+            synchronized (members)
+            {
+                member = members.get(presence.getFrom());
+            }
+
+            // Presence extensions are read once the member is added if it
+            // has not joined yet
+            if (member != null)
+            {
+                member.processPresence(presence);
+            }
         }
     }
 }
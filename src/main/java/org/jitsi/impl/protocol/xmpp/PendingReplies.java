@@ -0,0 +1,208 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.protocol.xmpp;
+
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.protocol.xmpp.util.*;
+
+import org.jivesoftware.smack.*;
+import org.jivesoftware.smack.filter.*;
+import org.jivesoftware.smack.packet.*;
+
+import java.util.concurrent.*;
+
+/**
+ * The table of the IQs which wait for the response, keyed by the stanza ID.
+ * It is registered with the connection as single packet listener, instead of
+ * one listener for every request, so that the cost of matching incoming
+ * packet does not grow with the number of the requests in flight. The entry
+ * is removed either by the response or by its timeout, whichever comes
+ * first.
+ */
+public class PendingReplies
+    implements PacketFilter, PacketListener
+{
+    /**
+     * The logger.
+     */
+    private final static Logger logger
+        = Logger.getLogger(PendingReplies.class);
+
+    /**
+     * The requests waiting for the response, keyed by the stanza ID.
+     */
+    private final ConcurrentMap<String, PendingReply> pending
+        = new ConcurrentHashMap<String, PendingReply>();
+
+    /**
+     * The executor which runs the timeouts and completes the futures, so
+     * that the thread which reads the packets is not blocked by
+     * the listeners.
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Creates new instance of <tt>PendingReplies</tt>.
+     *
+     * @param executor the executor which will run the timeouts and notify
+     *                 the listeners of the responses.
+     */
+    public PendingReplies(ScheduledExecutorService executor)
+    {
+        this.executor = executor;
+    }
+
+    /**
+     * Adds the request to the table. Must be called before the request is
+     * sent, or else the response could be missed.
+     *
+     * @param request the request which will be sent.
+     * @param timeout how long to wait for the response in milliseconds.
+     *
+     * @return the future completed with the response or with <tt>null</tt>
+     *         if it has not arrived in time.
+     */
+    public SettableFuture<Packet> add(Packet request, long timeout)
+    {
+        final String id = request.getPacketID();
+        final PendingReply reply = new PendingReply();
+
+        PendingReply previous = pending.put(id, reply);
+        if (previous != null)
+        {
+            // The same request sent again, the previous attempt gives up
+            previous.cancelTimeout();
+            previous.future.complete(null);
+        }
+
+        try
+        {
+            reply.timeoutTask = executor.schedule(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if (pending.remove(id, reply))
+                            reply.future.complete(null);
+                    }
+                },
+                timeout, TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Shutting down
+            pending.remove(id, reply);
+            reply.future.complete(null);
+        }
+
+        return reply.future;
+    }
+
+    /**
+     * Removes the request from the table and completes its future with
+     * <tt>null</tt>, as if it has timed out.
+     *
+     * @param request the request which has been added before.
+     */
+    public void cancel(Packet request)
+    {
+        PendingReply reply = pending.remove(request.getPacketID());
+        if (reply != null)
+        {
+            reply.cancelTimeout();
+            reply.future.complete(null);
+        }
+    }
+
+    /**
+     * Returns the number of the requests waiting for the response.
+     */
+    public int getPendingCount()
+    {
+        return pending.size();
+    }
+
+    /**
+     * Accepts the results and the errors of the pending requests.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean accept(Packet packet)
+    {
+        if (!(packet instanceof IQ))
+            return false;
+
+        IQ.Type type = ((IQ) packet).getType();
+
+        return (IQ.Type.RESULT.equals(type) || IQ.Type.ERROR.equals(type))
+            && packet.getPacketID() != null
+            && pending.containsKey(packet.getPacketID());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void processPacket(final Packet response)
+    {
+        final PendingReply reply = pending.remove(response.getPacketID());
+        if (reply == null)
+            return; // Timed out in the meantime
+
+        reply.cancelTimeout();
+
+        try
+        {
+            executor.execute(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        reply.future.complete(response);
+                    }
+                });
+        }
+        catch (RejectedExecutionException e)
+        {
+            logger.warn(
+                "Dropped the response " + response.getPacketID()
+                    + " - shutting down");
+        }
+    }
+
+    /**
+     * Single request waiting for the response.
+     */
+    private static class PendingReply
+    {
+        final SettableFuture<Packet> future = new SettableFuture<Packet>();
+
+        volatile ScheduledFuture<?> timeoutTask;
+
+        void cancelTimeout()
+        {
+            ScheduledFuture<?> timeoutTask = this.timeoutTask;
+            if (timeoutTask != null)
+                timeoutTask.cancel(false);
+        }
+    }
+}
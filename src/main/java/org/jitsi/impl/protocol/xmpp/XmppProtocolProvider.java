@@ -23,8 +23,11 @@ import net.java.sip.communicator.service.protocol.event.*;
 import net.java.sip.communicator.service.protocol.jabber.*;
 
 import org.jitsi.impl.protocol.xmpp.colibri.*;
+import org.jitsi.jicofo.*;
 import org.jitsi.protocol.xmpp.*;
 import org.jitsi.protocol.xmpp.colibri.*;
+import org.jitsi.protocol.xmpp.util.*;
+import org.jitsi.service.configuration.*;
 import org.jitsi.util.*;
 
 import org.jivesoftware.smack.*;
@@ -33,6 +36,7 @@ import org.jivesoftware.smack.packet.*;
 import org.jivesoftware.smackx.packet.*;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * XMPP protocol provider service used by Jitsi Meet focus to create anonymous
@@ -49,6 +53,18 @@ public class XmppProtocolProvider
     private final static Logger logger
         = Logger.getLogger(XmppProtocolProvider.class);
 
+    /**
+     * Configuration property which specifies how long in milliseconds to wait
+     * for the reply to the request which does not specify its own timeout.
+     */
+    public static final String REPLY_TIMEOUT_PNAME
+        = "org.jitsi.focus.XMPP_REPLY_TIMEOUT";
+
+    /**
+     * Twenty seconds.
+     */
+    public static final long DEFAULT_REPLY_TIMEOUT = 20000L;
+
     /**
      * Active account.
      */
@@ -529,9 +545,30 @@ public class XmppProtocolProvider
     {
         private final XMPPConnection connection;
 
+        /**
+         * How long to wait for the reply when no timeout is given.
+         */
+        private final long replyTimeout;
+
+        /**
+         * The asynchronous requests waiting for the response.
+         */
+        private final PendingReplies pendingReplies
+            = new PendingReplies(FocusBundleActivator.getSharedThreadPool());
+
         XmppConnectionAdapter(XMPPConnection connection)
         {
             this.connection = connection;
+
+            connection.addPacketListener(pendingReplies, pendingReplies);
+
+            ConfigurationService config
+                = FocusBundleActivator.getConfigService();
+            this.replyTimeout
+                = config != null
+                    ? config.getLong(
+                            REPLY_TIMEOUT_PNAME, DEFAULT_REPLY_TIMEOUT)
+                    : DEFAULT_REPLY_TIMEOUT;
         }
 
         @Override
@@ -546,6 +583,12 @@ public class XmppProtocolProvider
 
         @Override
         public Packet sendPacketAndGetReply(Packet packet)
+        {
+            return sendPacketAndGetReply(packet, replyTimeout);
+        }
+
+        @Override
+        public Packet sendPacketAndGetReply(Packet packet, long timeout)
         {
             PacketCollector packetCollector
                 = connection.createPacketCollector(
@@ -553,13 +596,40 @@ public class XmppProtocolProvider
 
             connection.sendPacket(packet);
 
-            //FIXME: retry allocation on timeout
-            Packet response = packetCollector.nextResult(20000);
+            Packet response = packetCollector.nextResult(timeout);
 
             packetCollector.cancel();
 
             return response;
         }
+
+        @Override
+        public SettableFuture<Packet> sendPacketAsync(Packet packet)
+        {
+            return sendPacketAsync(packet, replyTimeout);
+        }
+
+        @Override
+        public SettableFuture<Packet> sendPacketAsync(Packet packet,
+                                                      long timeout)
+        {
+            SettableFuture<Packet> reply
+                = pendingReplies.add(packet, timeout);
+
+            if (connection.isConnected())
+            {
+                connection.sendPacket(packet);
+            }
+            else
+            {
+                logger.warn(
+                    "No connection - unable to send packet: "
+                        + packet.getPacketID());
+                pendingReplies.cancel(packet);
+            }
+
+            return reply;
+        }
     }
 
     class DebugLogger
@@ -23,16 +23,19 @@ import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.util.Logger;
 
 import org.jitsi.jicofo.*;
+import org.jitsi.jicofo.log.*;
 import org.jitsi.protocol.*;
 import org.jitsi.protocol.xmpp.*;
 import org.jitsi.protocol.xmpp.colibri.*;
 import org.jitsi.protocol.xmpp.util.*;
 import org.jitsi.service.neomedia.*;
 import org.jitsi.util.*;
+import org.jitsi.videobridge.eventadmin.*;
 
 import org.jivesoftware.smack.packet.*;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Default implementation of {@link ColibriConference} that uses Smack for
@@ -48,6 +51,33 @@ public class ColibriConferenceImpl
     private final static net.java.sip.communicator.util.Logger logger
             = Logger.getLogger(ColibriConferenceImpl.class);
 
+    /**
+     * Configuration property which specifies how long in milliseconds
+     * the allocate channels requests are collected, before they are sent to
+     * the bridge as one request. Zero or negative value disables batching.
+     */
+    public static final String BATCH_WINDOW_PNAME
+        = "org.jitsi.focus.COLIBRI_BATCH_WINDOW";
+
+    /**
+     * The default batching window in milliseconds.
+     */
+    public static final long DEFAULT_BATCH_WINDOW = 10L;
+
+    /**
+     * Configuration property which specifies how long in milliseconds
+     * the changes of the channels like sources, transport and RTP description
+     * are accumulated, before they are sent to the bridge in one request.
+     * Zero or negative value sends every change immediately.
+     */
+    public static final String UPDATE_INTERVAL_PNAME
+        = "org.jitsi.focus.COLIBRI_UPDATE_INTERVAL";
+
+    /**
+     * The default update interval in milliseconds.
+     */
+    public static final long DEFAULT_UPDATE_INTERVAL = 20L;
+
     /**
      * The instance of XMPP connection.
      */
@@ -73,15 +103,141 @@ public class ColibriConferenceImpl
      * last {@link #createColibriChannels(boolean, String, boolean, List)} call.
      */
     private boolean justAllocated = false;
-    
+
     /**
-     * Creates new instance of <tt>ColibriConferenceImpl</tt>.
+     * Set while the request which creates the conference on the bridge is in
+     * progress. Other allocations have to wait for the conference ID, or
+     * else each of them would create separate conference.
+     */
+    private boolean creatingConference = false;
+
+    /**
+     * Allocations waiting for the conference to be created on the bridge.
+     */
+    private final List<PendingAllocation> waitingAllocations
+        = new LinkedList<PendingAllocation>();
+
+    /**
+     * Allocations collected during current batching window.
+     */
+    private final List<PendingAllocation> batchedAllocations
+        = new LinkedList<PendingAllocation>();
+
+    /**
+     * The executor used to send the batch when the window ends or
+     * <tt>null</tt> if batching is disabled.
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * How long the allocations are collected before they are sent.
+     */
+    private final long batchWindow;
+
+    /**
+     * How long the channel updates are accumulated before they are sent.
+     */
+    private final long updateInterval;
+
+    /**
+     * The timeouts and retries of the requests sent to the bridge.
+     */
+    private volatile ColibriRequestPolicy requestPolicy
+        = ColibriRequestPolicy.DEFAULT;
+
+    /**
+     * The statistics of the requests sent to the bridge.
+     */
+    private volatile ColibriMetrics metrics = new ColibriMetrics();
+
+    /**
+     * The updates which have not been sent yet, keyed by the channels info of
+     * the participant, in the order of the first change. The channels info
+     * instance identifies the participant, because
+     * <tt>ColibriConferenceIQ</tt> does not override <tt>equals</tt>.
+     */
+    private final Map<ColibriConferenceIQ, ColibriUpdate> pendingUpdates
+        = new LinkedHashMap<ColibriConferenceIQ, ColibriUpdate>();
+
+    /**
+     * Set while the update request is waiting for the response. The next one
+     * is sent after that, so that the bridge applies the changes in order.
+     */
+    private boolean updateInProgress;
+
+    /**
+     * The sources of the channels acknowledged by the bridge, keyed by
+     * channel ID. The sources which have not changed are not sent again.
+     */
+    private final Map<String, String> acknowledgedSources
+        = new HashMap<String, String>();
+
+    /**
+     * The serialized sources and payload types of the participants, keyed by
+     * their channels info, reused by the updates as long as they have not
+     * changed.
+     */
+    private final Map<ColibriConferenceIQ, ColibriFragments> fragments
+        = new HashMap<ColibriConferenceIQ, ColibriFragments>();
+
+    /**
+     * The sources sent with the update which is in progress, keyed by
+     * channel ID.
+     */
+    private Map<String, String> sourcesInProgress
+        = new HashMap<String, String>();
+
+    /**
+     * Set when the flush of the pending updates has been scheduled.
+     */
+    private boolean updateScheduled;
+
+    /**
+     * The channels to be expired which have not been sent yet. The channels
+     * of the participants who leave at the same time are expired in one
+     * request.
+     */
+    private final List<ColibriConferenceIQ> pendingExpires
+        = new ArrayList<ColibriConferenceIQ>();
+
+    /**
+     * Set when the flush of the pending expires has been scheduled.
+     */
+    private boolean expireScheduled;
+
+    /**
+     * Creates new instance of <tt>ColibriConferenceImpl</tt> which sends every
+     * allocate channels request immediately.
      * @param connection XMPP connection object that wil be used by new
      *                   instance.
      */
     public ColibriConferenceImpl(XmppConnection connection)
+    {
+        this(connection, null, 0, 0);
+    }
+
+    /**
+     * Creates new instance of <tt>ColibriConferenceImpl</tt>.
+     * @param connection XMPP connection object that wil be used by new
+     *                   instance.
+     * @param executor the executor which sends batched allocations.
+     * @param batchWindow how long in milliseconds the allocations are
+     *                    collected before they are sent as one request.
+     *                    Zero or negative value disables batching.
+     * @param updateInterval how long in milliseconds the channel updates and
+     *                       expires are accumulated before they are sent as
+     *                       one request. Zero or negative value sends them
+     *                       immediately.
+     */
+    public ColibriConferenceImpl(XmppConnection connection,
+                                 ScheduledExecutorService executor,
+                                 long batchWindow,
+                                 long updateInterval)
     {
         this.connection = connection;
+        this.executor = executor;
+        this.batchWindow = executor != null ? batchWindow : 0;
+        this.updateInterval = executor != null ? updateInterval : 0;
     }
 
     /**
@@ -98,6 +254,41 @@ public class ColibriConferenceImpl
         this.jitsiVideobridge = videobridgeJid;
     }
 
+    /**
+     * Sets the timeouts and retries of the requests sent to the bridge.
+     *
+     * @param requestPolicy the policy to use.
+     */
+    public void setRequestPolicy(ColibriRequestPolicy requestPolicy)
+    {
+        if (requestPolicy == null)
+            throw new NullPointerException("requestPolicy");
+
+        this.requestPolicy = requestPolicy;
+    }
+
+    /**
+     * Sets the statistics to which the requests of this conference will be
+     * recorded. Each instance has its own by default.
+     *
+     * @param metrics the statistics shared by the conferences.
+     */
+    public void setMetrics(ColibriMetrics metrics)
+    {
+        if (metrics == null)
+            throw new NullPointerException("metrics");
+
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the statistics of the requests sent by this conference.
+     */
+    public ColibriMetrics getMetrics()
+    {
+        return metrics;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -117,39 +308,579 @@ public class ColibriConferenceImpl
     }
 
     /**
-     * {@inheritDoc}
+     * {@inheritDoc}
+     */
+    @Override
+    public void setConfig(JitsiMeetConfig config)
+    {
+        colibriBuilder.setChannelLastN(config.getChannelLastN());
+        colibriBuilder.setAdaptiveLastN(config.isAdaptiveLastNEnabled());
+        colibriBuilder.setAdaptiveSimulcast(
+                config.isAdaptiveSimulcastEnabled());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ColibriConferenceIQ createColibriChannels(
+            boolean useBundle,
+            String endpointName,
+            boolean peerIsInitiator,
+            List<ContentPacketExtension> contents)
+        throws OperationFailedException
+    {
+        SettableFuture<ColibriConferenceIQ> allocation
+            = createColibriChannelsAsync(
+                    useBundle, endpointName, peerIsInitiator, contents);
+        try
+        {
+            return allocation.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new OperationFailedException(
+                "Interrupted while allocating colibri channels",
+                OperationFailedException.GENERAL_ERROR);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof OperationFailedException)
+                throw (OperationFailedException) cause;
+
+            throw new OperationFailedException(
+                "Failed to allocate colibri channels: " + cause,
+                OperationFailedException.GENERAL_ERROR);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SettableFuture<ColibriConferenceIQ> createColibriChannelsAsync(
+            boolean useBundle,
+            String endpointName,
+            boolean peerIsInitiator,
+            List<ContentPacketExtension> contents)
+    {
+        PendingAllocation allocation
+            = new PendingAllocation(
+                    useBundle, endpointName, peerIsInitiator, contents);
+
+        if (batchWindow <= 0)
+        {
+            sendAllocations(Collections.singletonList(allocation));
+
+            return allocation.result;
+        }
+
+        synchronized (this)
+        {
+            batchedAllocations.add(allocation);
+            if (batchedAllocations.size() > 1)
+                return allocation.result;
+        }
+
+        try
+        {
+            executor.schedule(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        flushBatch();
+                    }
+                },
+                batchWindow, TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e)
+        {
+            logger.warn("Failed to schedule the batch, sending it now");
+            flushBatch();
+        }
+
+        return allocation.result;
+    }
+
+    /**
+     * Sends the allocations collected during the batching window.
+     */
+    private void flushBatch()
+    {
+        List<PendingAllocation> batch;
+        synchronized (this)
+        {
+            batch = new ArrayList<PendingAllocation>(batchedAllocations);
+            batchedAllocations.clear();
+        }
+        for (List<PendingAllocation> request : splitByEndpoint(batch))
+        {
+            sendAllocations(request);
+        }
+    }
+
+    /**
+     * Splits the allocations into groups which can be sent as one request.
+     * The channels in the response are matched to the allocations by
+     * the endpoint, so single request can not allocate channels twice for
+     * the same endpoint.
+     *
+     * @param allocations the allocations to split.
+     *
+     * @return the list of groups with unique endpoints in each group.
+     */
+    private static List<List<PendingAllocation>> splitByEndpoint(
+            List<PendingAllocation> allocations)
+    {
+        List<List<PendingAllocation>> groups
+            = new ArrayList<List<PendingAllocation>>();
+        List<Set<String>> groupEndpoints = new ArrayList<Set<String>>();
+
+        for (PendingAllocation allocation : allocations)
+        {
+            int idx = 0;
+            while (idx < groups.size()
+                && groupEndpoints.get(idx).contains(allocation.endpointName))
+            {
+                idx++;
+            }
+            if (idx == groups.size())
+            {
+                groups.add(new ArrayList<PendingAllocation>());
+                groupEndpoints.add(new HashSet<String>());
+            }
+            groups.get(idx).add(allocation);
+            groupEndpoints.get(idx).add(allocation.endpointName);
+        }
+        return groups;
+    }
+
+    /**
+     * Sends allocate channels request for given allocations or queues them if
+     * the conference is being created by another request.
+     *
+     * @param allocations the allocations to send in one request, each for
+     *                    different endpoint.
+     */
+    private void sendAllocations(final List<PendingAllocation> allocations)
+    {
+        ColibriConferenceIQ allocateRequest;
+        final boolean creating;
+        RuntimeException buildError = null;
+        synchronized (this)
+        {
+            creating = getConferenceId() == null;
+            if (creating)
+            {
+                if (creatingConference)
+                {
+                    waitingAllocations.addAll(allocations);
+                    return;
+                }
+                creatingConference = true;
+            }
+
+            colibriBuilder.reset();
+
+            try
+            {
+                for (PendingAllocation allocation : allocations)
+                {
+                    colibriBuilder.addAllocateChannelsReq(
+                        allocation.useBundle,
+                        allocation.endpointName,
+                        allocation.peerIsInitiator,
+                        allocation.contents);
+                }
+
+                allocateRequest = colibriBuilder.getRequest(jitsiVideobridge);
+            }
+            catch (RuntimeException e)
+            {
+                // Batched allocations are sent from the executor, so
+                // the error has to be passed through the futures
+                allocateRequest = null;
+                buildError = e;
+            }
+        }
+
+        if (buildError != null)
+        {
+            logger.error("Failed to build allocate request", buildError);
+
+            for (PendingAllocation allocation : allocations)
+            {
+                allocation.result.fail(buildError);
+            }
+            if (creating)
+                sendWaitingAllocations();
+            return;
+        }
+
+        if (allocations.size() > 1)
+        {
+            logger.info(
+                "Allocating channels for " + allocations.size()
+                    + " endpoints in one request");
+        }
+
+        sendRequest(allocateRequest,
+                    requestPolicy.getAllocateTimeout(),
+                    ColibriMetrics.Operation.ALLOCATE)
+            .addListener(new SettableFuture.Listener<Packet>()
+            {
+                @Override
+                public void onSuccess(Packet response)
+                {
+                    onAllocateResponse(allocations, creating, response);
+                }
+
+                @Override
+                public void onFailure(Throwable error)
+                {
+                    onAllocateResponse(allocations, creating, null);
+                }
+            });
+    }
+
+    /**
+     * Sends the request to the bridge and retries it if the response does not
+     * arrive in time, as many times as the request policy allows.
+     *
+     * @param request the request to send.
+     * @param timeout how long to wait for the response to single attempt.
+     * @param operation the kind of the request recorded in the statistics.
+     *
+     * @return the future completed with the response or with <tt>null</tt> if
+     *         none of the attempts has been answered in time.
+     */
+    private SettableFuture<Packet> sendRequest(
+            IQ request,
+            long timeout,
+            final ColibriMetrics.Operation operation)
+    {
+        final String bridge = request.getTo();
+        final long started = System.currentTimeMillis();
+
+        metrics.recordRequest(bridge, operation);
+
+        SettableFuture<Packet> response = new SettableFuture<Packet>();
+        response.addListener(new SettableFuture.Listener<Packet>()
+        {
+            @Override
+            public void onSuccess(Packet reply)
+            {
+                recordResponse(bridge, operation, started, reply);
+            }
+
+            @Override
+            public void onFailure(Throwable error)
+            {
+                // Not sent at all, so there is nothing to measure
+            }
+        });
+
+        sendAttempt(request, timeout, 0, requestPolicy, operation, response);
+
+        return response;
+    }
+
+    /**
+     * Records the outcome of the request in the statistics and publishes it
+     * as an event.
+     *
+     * @param bridge the JID of the bridge to which the request was sent.
+     * @param operation the kind of the request.
+     * @param started the time when the first attempt was sent.
+     * @param response the response or <tt>null</tt> if timed out.
+     */
+    private void recordResponse(String bridge,
+                                ColibriMetrics.Operation operation,
+                                long started,
+                                Packet response)
+    {
+        long latency = System.currentTimeMillis() - started;
+        String result;
+
+        if (response == null)
+        {
+            metrics.recordTimeout(bridge, operation);
+            result = "timeout";
+        }
+        else
+        {
+            XMPPError error = response.getError();
+            String condition = null;
+            if (error != null)
+            {
+                condition = error.getCondition() != null
+                    ? error.getCondition() : String.valueOf(error.getCode());
+            }
+            metrics.recordResponse(bridge, operation, latency, condition);
+            result = condition != null ? condition : "ok";
+        }
+
+        EventAdmin eventAdmin = FocusBundleActivator.getEventAdmin();
+        if (eventAdmin != null)
+        {
+            eventAdmin.sendEvent(
+                EventFactory.colibriRequestCompleted(
+                        bridge, operation.getName(), latency, result));
+        }
+    }
+
+    /**
+     * Sends single attempt of the request. The stanza ID stays the same, so
+     * the late response to the previous attempt is accepted too.
+     */
+    private void sendAttempt(final IQ request,
+                             final long timeout,
+                             final int attempt,
+                             final ColibriRequestPolicy policy,
+                             final ColibriMetrics.Operation operation,
+                             final SettableFuture<Packet> response)
+    {
+        connection.sendPacketAsync(request, timeout).addListener(
+            new SettableFuture.Listener<Packet>()
+            {
+                @Override
+                public void onSuccess(Packet reply)
+                {
+                    if (reply != null || attempt >= policy.getMaxRetries())
+                    {
+                        response.complete(reply);
+                        return;
+                    }
+
+                    long delay = policy.getRetryDelay(attempt);
+
+                    logger.warn(
+                        "Colibri request " + request.getPacketID()
+                            + " to " + request.getTo() + " timed out, retry "
+                            + (attempt + 1) + " in " + delay + " ms");
+
+                    metrics.recordRetry(request.getTo(), operation);
+
+                    retry(request, timeout, attempt + 1, policy, operation,
+                          response, delay);
+                }
+
+                @Override
+                public void onFailure(Throwable error)
+                {
+                    response.fail(error);
+                }
+            });
+    }
+
+    /**
+     * Schedules the next attempt of the request.
+     */
+    private void retry(final IQ request,
+                       final long timeout,
+                       final int attempt,
+                       final ColibriRequestPolicy policy,
+                       final ColibriMetrics.Operation operation,
+                       final SettableFuture<Packet> response,
+                       long delay)
+    {
+        Runnable sendTask = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                sendAttempt(
+                    request, timeout, attempt, policy, operation, response);
+            }
+        };
+
+        if (executor == null || delay <= 0)
+        {
+            sendTask.run();
+            return;
+        }
+
+        try
+        {
+            executor.schedule(sendTask, delay, TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Shutting down
+            response.complete(null);
+        }
+    }
+
+    /**
+     * Completes the allocations with the response received from the bridge.
+     *
+     * @param allocations the allocations for which the response has arrived.
+     * @param creating <tt>true</tt> if the request was about to create
+     *                 the conference.
+     * @param response the response or <tt>null</tt> if timed out.
+     */
+    private void onAllocateResponse(List<PendingAllocation> allocations,
+                                    boolean creating,
+                                    Packet response)
+    {
+        ColibriConferenceIQ allocateResponse;
+        try
+        {
+            allocateResponse = processAllocateResponse(response);
+        }
+        catch (OperationFailedException e)
+        {
+            // Fail first, so that the bridge can be switched before
+            // the waiting allocations are sent
+            for (PendingAllocation allocation : allocations)
+            {
+                allocation.result.fail(e);
+            }
+
+            if (creating)
+                sendWaitingAllocations();
+            return;
+        }
+
+        // The conference exists, so the others can go concurrently
+        if (creating)
+            sendWaitingAllocations();
+
+        for (PendingAllocation allocation : allocations)
+        {
+            ColibriConferenceIQ endpointResponse
+                = allocations.size() > 1
+                    ? getEndpointChannels(
+                            allocateResponse, allocation.endpointName)
+                    : allocateResponse;
+
+            /*
+             * Formulate the result to be returned to the caller which is
+             * a subset of the whole conference information kept by this
+             * instance and includes the remote channels explicitly requested
+             * by the method caller and their respective local channels.
+             */
+            allocation.result.complete(
+                ColibriAnalyser.getResponseContents(
+                    endpointResponse, allocation.contents));
+        }
+    }
+
+    /**
+     * Extracts the channels of single endpoint from the response to
+     * the request which has allocated channels for many endpoints.
+     *
+     * @param response the response to multi-endpoint allocate request.
+     * @param endpointName the name of the endpoint.
+     *
+     * @return new <tt>ColibriConferenceIQ</tt> which contains only
+     *         the channels, SCTP connections and channel bundles of given
+     *         endpoint.
+     */
+    private static ColibriConferenceIQ getEndpointChannels(
+            ColibriConferenceIQ response, String endpointName)
+    {
+        ColibriConferenceIQ endpointResponse = new ColibriConferenceIQ();
+
+        endpointResponse.setType(response.getType());
+        endpointResponse.setFrom(response.getFrom());
+        endpointResponse.setPacketID(response.getPacketID());
+        endpointResponse.setID(response.getID());
+        endpointResponse.setName(response.getName());
+
+        Set<String> bundleIds = new HashSet<String>();
+
+        for (ColibriConferenceIQ.Content content : response.getContents())
+        {
+            ColibriConferenceIQ.Content endpointContent
+                = new ColibriConferenceIQ.Content(content.getName());
+
+            for (ColibriConferenceIQ.Channel channel : content.getChannels())
+            {
+                if (isEndpointChannel(channel, endpointName))
+                {
+                    endpointContent.addChannel(channel);
+                    if (channel.getChannelBundleId() != null)
+                        bundleIds.add(channel.getChannelBundleId());
+                }
+            }
+            for (ColibriConferenceIQ.SctpConnection sctp
+                : content.getSctpConnections())
+            {
+                if (isEndpointChannel(sctp, endpointName))
+                {
+                    endpointContent.addSctpConnection(sctp);
+                    if (sctp.getChannelBundleId() != null)
+                        bundleIds.add(sctp.getChannelBundleId());
+                }
+            }
+            endpointResponse.addContent(endpointContent);
+        }
+
+        for (ColibriConferenceIQ.ChannelBundle bundle
+            : response.getChannelBundles())
+        {
+            if (bundleIds.contains(bundle.getId()))
+                endpointResponse.addChannelBundle(bundle);
+        }
+
+        return endpointResponse;
+    }
+
+    /**
+     * Checks if given channel belongs to the endpoint. The bridge echoes
+     * the endpoint of the request, the bundle ID is checked in case it does
+     * not, because the bundles are named after the endpoints.
+     */
+    private static boolean isEndpointChannel(
+            ColibriConferenceIQ.ChannelCommon channel, String endpointName)
+    {
+        String endpoint = channel.getEndpoint();
+        if (endpoint != null)
+            return endpoint.equals(endpointName);
+
+        return endpointName != null
+            && endpointName.equals(channel.getChannelBundleId());
+    }
+
+    /**
+     * Sends the allocations which have been waiting for the conference to be
+     * created. If it has not been created, the first request will try to.
      */
-    @Override
-    public void setConfig(JitsiMeetConfig config)
+    private void sendWaitingAllocations()
     {
-        colibriBuilder.setChannelLastN(config.getChannelLastN());
-        colibriBuilder.setAdaptiveLastN(config.isAdaptiveLastNEnabled());
-        colibriBuilder.setAdaptiveSimulcast(
-                config.isAdaptiveSimulcastEnabled());
+        List<PendingAllocation> toSend;
+        synchronized (this)
+        {
+            creatingConference = false;
+
+            toSend = new ArrayList<PendingAllocation>(waitingAllocations);
+            waitingAllocations.clear();
+        }
+        // Everyone who has been waiting goes in one request if possible
+        for (List<PendingAllocation> request : splitByEndpoint(toSend))
+        {
+            sendAllocations(request);
+        }
     }
 
     /**
-     * {@inheritDoc}
+     * Updates the conference state with allocate channels response.
+     *
+     * @param response the response or <tt>null</tt> if timed out.
+     *
+     * @return the response which describes allocated channels.
+     *
+     * @throws OperationFailedException if the allocation has failed.
      */
-    @Override
-    public synchronized ColibriConferenceIQ createColibriChannels(
-            boolean useBundle,
-            String endpointName,
-            boolean peerIsInitiator,
-            List<ContentPacketExtension> contents)
+    private synchronized ColibriConferenceIQ processAllocateResponse(
+            Packet response)
         throws OperationFailedException
     {
-        colibriBuilder.reset();
-
-        colibriBuilder.addAllocateChannelsReq(
-            useBundle, endpointName, peerIsInitiator, contents);
-
-        ColibriConferenceIQ allocateRequest
-            = colibriBuilder.getRequest(jitsiVideobridge);
-
-        //FIXME: retry allocation on timeout
-        Packet response = connection.sendPacketAndGetReply(allocateRequest);
-
         if (response == null)
         {
             throw new OperationFailedException(
@@ -183,22 +914,12 @@ public class ColibriConferenceImpl
 
         analyser.processChannelAllocResp((ColibriConferenceIQ) response);
 
-        synchronized (this)
+        if (!conferenceExisted && getConferenceId() != null)
         {
-            if (!conferenceExisted && getConferenceId() != null)
-            {
-                justAllocated = true;
-            }
+            justAllocated = true;
         }
 
-        /*
-         * Formulate the result to be returned to the caller which is a subset
-         * of the whole conference information kept by this CallJabberImpl and
-         * includes the remote channels explicitly requested by the method
-         * caller and their respective local channels.
-         */
-        return ColibriAnalyser.getResponseContents(
-                    (ColibriConferenceIQ) response, contents);
+        return (ColibriConferenceIQ) response;
     }
 
     /**
@@ -216,21 +937,114 @@ public class ColibriConferenceImpl
 
     /**
      * {@inheritDoc}
+     *
+     * The expire is sent from the executor together with the expires of
+     * the other channels requested in the meantime.
      */
     @Override
     public void expireChannels(ColibriConferenceIQ channelInfo)
     {
-        colibriBuilder.reset();
+        synchronized (this)
+        {
+            // Updating the channels after they have expired makes no sense
+            pendingUpdates.remove(channelInfo);
+            fragments.remove(channelInfo);
+
+            for (ColibriConferenceIQ.Content content
+                : channelInfo.getContents())
+            {
+                for (ColibriConferenceIQ.Channel channel
+                    : content.getChannels())
+                {
+                    acknowledgedSources.remove(channel.getID());
+                }
+            }
+
+            pendingExpires.add(channelInfo);
+
+            if (expireScheduled)
+                return;
+
+            expireScheduled = true;
+        }
+
+        runLater(
+            new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    sendPendingExpires();
+                }
+            },
+            updateInterval);
+    }
+
+    /**
+     * Expires all the channels queued by {@link #expireChannels} in one
+     * request.
+     */
+    private void sendPendingExpires()
+    {
+        ColibriConferenceIQ iq;
+        int participantCount;
+        synchronized (this)
+        {
+            expireScheduled = false;
+
+            participantCount = pendingExpires.size();
+            if (participantCount == 0)
+                return;
+
+            colibriBuilder.reset();
+
+            for (ColibriConferenceIQ channelInfo : pendingExpires)
+            {
+                colibriBuilder.addExpireChannelsReq(channelInfo);
+            }
+            pendingExpires.clear();
 
-        colibriBuilder.addExpireChannelsReq(channelInfo);
+            iq = colibriBuilder.getRequest(jitsiVideobridge);
+        }
 
-        ColibriConferenceIQ iq = colibriBuilder.getRequest(jitsiVideobridge);
         if (iq != null)
         {
+            if (participantCount > 1)
+            {
+                logger.info(
+                    "Expiring channels of " + participantCount
+                        + " participants in one request");
+            }
+            metrics.recordRequest(
+                iq.getTo(), ColibriMetrics.Operation.EXPIRE);
             connection.sendPacket(iq);
         }
     }
 
+    /**
+     * Runs the task on the executor after given delay, so that the calling
+     * thread is not held up by the network I/O. The task is run on
+     * the calling thread if there is no executor.
+     */
+    private void runLater(Runnable task, long delay)
+    {
+        if (executor == null)
+        {
+            task.run();
+            return;
+        }
+
+        try
+        {
+            executor.schedule(task, Math.max(0, delay), TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Shutting down
+            task.run();
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -239,18 +1053,11 @@ public class ColibriConferenceImpl
             Map<String, RtpDescriptionPacketExtension> map,
             ColibriConferenceIQ localChannelsInfo)
     {
-        colibriBuilder.reset();
-
-        colibriBuilder.addRtpDescription(
-            map, localChannelsInfo);
-
-        ColibriConferenceIQ conferenceRequest
-                = colibriBuilder.getRequest(jitsiVideobridge);
-
-        if (conferenceRequest != null)
+        synchronized (this)
         {
-            connection.sendPacket(conferenceRequest);
+            getPendingUpdate(localChannelsInfo).addRtpDescriptions(map);
         }
+        scheduleUpdate();
     }
 
     /**
@@ -262,18 +1069,11 @@ public class ColibriConferenceImpl
             Map<String, IceUdpTransportPacketExtension> map,
             ColibriConferenceIQ localChannelsInfo)
     {
-        colibriBuilder.reset();
-
-        colibriBuilder.addTransportUpdateReq(
-            initiator, map, localChannelsInfo);
-
-        ColibriConferenceIQ conferenceRequest
-            = colibriBuilder.getRequest(jitsiVideobridge);
-
-        if (conferenceRequest != null)
+        synchronized (this)
         {
-            connection.sendPacket(conferenceRequest);
+            getPendingUpdate(localChannelsInfo).addTransports(initiator, map);
         }
+        scheduleUpdate();
     }
 
     /**
@@ -284,112 +1084,234 @@ public class ColibriConferenceImpl
                                   MediaSSRCGroupMap ssrcGroups,
                                   ColibriConferenceIQ localChannelsInfo)
     {
-        // FIXME: move to ColibriBuilder
-        ColibriConferenceIQ updateIq = new ColibriConferenceIQ();
-
-        updateIq.setID(conferenceState.getID());
-        updateIq.setType(IQ.Type.SET);
-        updateIq.setTo(jitsiVideobridge);
-
-        // NOTE(gp) now that we send sources as well, I think we can scrap this
-        // flag, if its initial purpose was to determine whether or not the
-        // simulcast group has been added or removed.
-        boolean updateNeeded = false;
+        synchronized (this)
+        {
+            getPendingUpdate(localChannelsInfo).setSources(ssrcs, ssrcGroups);
+        }
+        scheduleUpdate();
+    }
 
-        for (ColibriConferenceIQ.Content content
-            : localChannelsInfo.getContents())
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateBundleTransportInfo(
+            boolean                        initiator,
+            IceUdpTransportPacketExtension transport,
+            ColibriConferenceIQ            localChannelsInfo)
+    {
+        synchronized (this)
         {
-            ColibriConferenceIQ.Content reqContent
-                = new ColibriConferenceIQ.Content(content.getName());
+            getPendingUpdate(localChannelsInfo)
+                .addBundleTransport(initiator, transport);
+        }
+        scheduleUpdate();
+    }
 
-            boolean hasChannels = false;
-            for (ColibriConferenceIQ.Channel channel : content.getChannels())
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateChannelsEndpoint(String endpoint,
+                                       ColibriConferenceIQ localChannelsInfo)
+    {
+        synchronized (this)
+        {
+            for (ColibriConferenceIQ.Content content
+                : localChannelsInfo.getContents())
             {
-                ColibriConferenceIQ.Channel reqChannel
-                    = new ColibriConferenceIQ.Channel();
-
-                reqChannel.setID(channel.getID());
-
-                List<SourcePacketExtension> sources
-                    = ssrcs.getSSRCsForMedia(content.getName());
-                for (SourcePacketExtension source : sources)
+                for (ColibriConferenceIQ.Channel channel
+                    : content.getChannels())
                 {
-                    reqChannel.addSource(source.copy());
-                    hasChannels = true;
-                    updateNeeded = true;
+                    channel.setEndpoint(endpoint);
                 }
-
-                if (reqChannel.getSources() == null
-                    || reqChannel.getSources().isEmpty())
+                for (ColibriConferenceIQ.SctpConnection sctp
+                    : content.getSctpConnections())
                 {
-                    // Put an empty source to remove all sources
-                    SourcePacketExtension emptySource
-                        = new SourcePacketExtension();
-                    emptySource.setSSRC(-1l);
-                    reqChannel.addSource(emptySource);
-
-                    hasChannels = true;
-                    updateNeeded = true;
+                    sctp.setEndpoint(endpoint);
                 }
+            }
+            getPendingUpdate(localChannelsInfo).setEndpoint(endpoint);
+        }
+        scheduleUpdate();
+    }
+
+    /**
+     * Returns the update of given channels which has not been sent yet,
+     * creating new one if needed. Must be called with this instance locked.
+     *
+     * @param localChannelsInfo the channels of the participant.
+     */
+    private ColibriUpdate getPendingUpdate(
+            ColibriConferenceIQ localChannelsInfo)
+    {
+        ColibriUpdate update = pendingUpdates.get(localChannelsInfo);
+        if (update == null)
+        {
+            update = new ColibriUpdate(localChannelsInfo);
+            pendingUpdates.put(localChannelsInfo, update);
+        }
+        return update;
+    }
+
+    /**
+     * Returns the serialized sources and payload types of the participant,
+     * creating new instance if needed. Must be called with this instance
+     * locked.
+     *
+     * @param localChannelsInfo the channels of the participant.
+     */
+    private ColibriFragments getFragments(
+            ColibriConferenceIQ localChannelsInfo)
+    {
+        ColibriFragments participantFragments
+            = fragments.get(localChannelsInfo);
+        if (participantFragments == null)
+        {
+            participantFragments = new ColibriFragments();
+            fragments.put(localChannelsInfo, participantFragments);
+        }
+        return participantFragments;
+    }
+
+    /**
+     * Schedules sending of the pending updates, unless it has been scheduled
+     * already or the previous update is still in progress.
+     */
+    private void scheduleUpdate()
+    {
+        synchronized (this)
+        {
+            if (updateScheduled || updateInProgress || pendingUpdates.isEmpty())
+                return;
 
-                List<SSRCGroup> groups
-                    = ssrcGroups.getSSRCGroupsForMedia(content.getName());
-                for (SSRCGroup group : groups)
+            updateScheduled = true;
+        }
+
+        if (updateInterval <= 0)
+        {
+            sendPendingUpdates();
+            return;
+        }
+
+        try
+        {
+            executor.schedule(
+                new Runnable()
                 {
-                    try
-                    {
-                        reqChannel.addSourceGroup(group.getExtensionCopy());
-                        hasChannels = true;
-                        updateNeeded = true;
-                    }
-                    catch (Exception e)
+                    @Override
+                    public void run()
                     {
-                        logger.error("Error copying extension", e);
+                        sendPendingUpdates();
                     }
-                }
-                if (groups.isEmpty())
-                {
-                    // Put empty source group to turn off simulcast layers
-                    reqChannel.addSourceGroup(
-                        SourceGroupPacketExtension.createSimulcastGroup());
-                    hasChannels = true;
-                    updateNeeded = true;
-                }
-                reqContent.addChannel(reqChannel);
+                },
+                updateInterval, TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e)
+        {
+            logger.warn("Failed to schedule channels update, sending it now");
+            sendPendingUpdates();
+        }
+    }
+
+    /**
+     * Sends all the pending updates to the bridge in one request.
+     */
+    private void sendPendingUpdates()
+    {
+        ColibriConferenceIQ updateIq = new ColibriConferenceIQ();
+        int participantCount;
+        synchronized (this)
+        {
+            updateScheduled = false;
+
+            updateIq.setID(conferenceState.getID());
+            updateIq.setType(IQ.Type.SET);
+            updateIq.setTo(jitsiVideobridge);
+
+            participantCount = pendingUpdates.size();
+            sourcesInProgress = new HashMap<String, String>();
+            for (ColibriUpdate update : pendingUpdates.values())
+            {
+                update.addTo(
+                    updateIq,
+                    getFragments(update.getChannelsInfo()),
+                    acknowledgedSources,
+                    sourcesInProgress);
             }
-            if (hasChannels)
+            pendingUpdates.clear();
+
+            if (updateIq.getContents().isEmpty()
+                && updateIq.getChannelBundles().isEmpty())
             {
-                updateIq.addContent(reqContent);
+                return;
             }
+
+            updateInProgress = true;
         }
 
-        if (updateNeeded)
+        if (logger.isDebugEnabled())
         {
-            connection.sendPacketAndGetReply(updateIq);
+            logger.debug(
+                "Updating channels of " + participantCount
+                    + " participants in one request");
         }
+
+        sendRequest(updateIq,
+                    requestPolicy.getUpdateTimeout(),
+                    ColibriMetrics.Operation.UPDATE)
+            .addListener(new SettableFuture.Listener<Packet>()
+            {
+                @Override
+                public void onSuccess(Packet response)
+                {
+                    if (response == null)
+                    {
+                        logger.error("Channels update timed out");
+                    }
+                    else if (response.getError() != null)
+                    {
+                        logger.error(
+                            "Channels update failed: " + response.getError());
+                    }
+                    onUpdateResponse(
+                        response != null && response.getError() == null);
+                }
+
+                @Override
+                public void onFailure(Throwable error)
+                {
+                    logger.error("Channels update failed", error);
+                    onUpdateResponse(false);
+                }
+            });
     }
 
     /**
-     * {@inheritDoc}
+     * Sends the updates accumulated while the previous one was in progress.
+     *
+     * @param success <tt>true</tt> if the bridge has acknowledged the update.
      */
-    @Override
-    public void updateBundleTransportInfo(
-            boolean                        initiator,
-            IceUdpTransportPacketExtension transport,
-            ColibriConferenceIQ            localChannelsInfo)
+    private void onUpdateResponse(boolean success)
     {
-        colibriBuilder.reset();
-
-        colibriBuilder.addBundleTransportUpdateReq(
-            initiator, transport, localChannelsInfo);
-
-        ColibriConferenceIQ conferenceRequest
-            = colibriBuilder.getRequest(jitsiVideobridge);
-
-        if (conferenceRequest != null)
+        synchronized (this)
         {
-            connection.sendPacket(conferenceRequest);
+            updateInProgress = false;
+
+            if (success)
+            {
+                acknowledgedSources.putAll(sourcesInProgress);
+            }
+            else
+            {
+                // We do not know what the bridge has, so next time
+                // the sources are sent even if they have not changed
+                acknowledgedSources.keySet().removeAll(
+                    sourcesInProgress.keySet());
+            }
+            sourcesInProgress = new HashMap<String, String>();
         }
+        scheduleUpdate();
     }
 
     /**
@@ -398,87 +1320,169 @@ public class ColibriConferenceImpl
     @Override
     public void expireConference()
     {
-        colibriBuilder.reset();
-
-        if (StringUtils.isNullOrEmpty(conferenceState.getID()))
+        final ColibriConferenceIQ colibriRequest;
+        synchronized (this)
         {
-            logger.info("Nothing to expire - no conference allocated yet");
-            return;
-        }
+            // Covered by the expire of the whole conference
+            pendingExpires.clear();
+            pendingUpdates.clear();
+            fragments.clear();
+            acknowledgedSources.clear();
+
+            colibriBuilder.reset();
+
+            if (StringUtils.isNullOrEmpty(conferenceState.getID()))
+            {
+                logger.info("Nothing to expire - no conference allocated yet");
+                return;
+            }
+
+            // Expire all channels
+            colibriBuilder.addExpireChannelsReq(conferenceState);
 
-        // Expire all channels
-        colibriBuilder.addExpireChannelsReq(conferenceState);
+            colibriRequest = colibriBuilder.getRequest(jitsiVideobridge);
 
-        ColibriConferenceIQ colibriRequest
-            = colibriBuilder.getRequest(jitsiVideobridge);
+            // Reset conference state
+            conferenceState = new ColibriConferenceIQ();
+        }
 
         if (colibriRequest != null)
         {
-            connection.sendPacket(colibriRequest);
+            runLater(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        metrics.recordRequest(
+                            colibriRequest.getTo(),
+                            ColibriMetrics.Operation.EXPIRE);
+                        connection.sendPacket(colibriRequest);
+                    }
+                },
+                0);
         }
+    }
 
-        // Reset conference state
-        conferenceState = new ColibriConferenceIQ();
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SettableFuture<Boolean> muteParticipant(
+            ColibriConferenceIQ channelsInfo, boolean mute)
+    {
+        return muteParticipants(
+                Collections.singletonList(channelsInfo), mute);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public boolean muteParticipant(ColibriConferenceIQ channelsInfo,
-                                   boolean mute)
+    public SettableFuture<Boolean> muteParticipants(
+            List<ColibriConferenceIQ> channelsInfos, boolean mute)
     {
         ColibriConferenceIQ request = new ColibriConferenceIQ();
-        request.setID(conferenceState.getID());
-        request.setName(conferenceState.getName());
+        ColibriConferenceIQ.Content contentRequest = null;
 
-        ColibriConferenceIQ.Content audioContent
-            = channelsInfo.getContent("audio");
-        if (audioContent == null)
+        // Reads the state of the conference and the bridge the same way
+        // the channel updates do
+        synchronized (this)
         {
-            logger.error("Failed to mute - no audio content." +
-                             " Conf ID: " + request.getID());
-            return false;
-        }
-        ColibriConferenceIQ.Content contentRequest
-            = new ColibriConferenceIQ.Content(audioContent.getName());
+            request.setID(conferenceState.getID());
+            request.setName(conferenceState.getName());
 
-        for (ColibriConferenceIQ.Channel channel : audioContent.getChannels())
-        {
-            ColibriConferenceIQ.Channel channelRequest
-                = new ColibriConferenceIQ.Channel();
+            for (ColibriConferenceIQ channelsInfo : channelsInfos)
+            {
+                ColibriConferenceIQ.Content audioContent
+                    = channelsInfo.getContent("audio");
+                if (audioContent == null)
+                {
+                    logger.warn("Not muting channels without audio content." +
+                                    " Conf ID: " + request.getID());
+                    continue;
+                }
+                if (contentRequest == null)
+                {
+                    contentRequest
+                        = new ColibriConferenceIQ.Content(
+                                audioContent.getName());
+                }
 
-            channelRequest.setID(channel.getID());
+                for (ColibriConferenceIQ.Channel channel
+                    : audioContent.getChannels())
+                {
+                    ColibriConferenceIQ.Channel channelRequest
+                        = new ColibriConferenceIQ.Channel();
 
-            if (mute)
-            {
-                channelRequest.setDirection(MediaDirection.SENDONLY);
+                    channelRequest.setID(channel.getID());
+
+                    if (mute)
+                    {
+                        channelRequest.setDirection(MediaDirection.SENDONLY);
+                    }
+                    else
+                    {
+                        channelRequest.setDirection(MediaDirection.SENDRECV);
+                    }
+
+                    contentRequest.addChannel(channelRequest);
+                }
             }
-            else
+
+            if (contentRequest == null || contentRequest.getChannelCount() == 0)
             {
-                channelRequest.setDirection(MediaDirection.SENDRECV);
+                logger.error("Failed to mute - no channels to modify." +
+                                 " ConfID:" + request.getID());
+                return SettableFuture.completed(false);
             }
 
-            contentRequest.addChannel(channelRequest);
-        }
+            request.setType(IQ.Type.SET);
+            request.setTo(jitsiVideobridge);
 
-        if (contentRequest.getChannelCount() == 0)
-        {
-            logger.error("Failed to mute - no channels to modify." +
-                             " ConfID:" + request.getID());
-            return false;
+            request.addContent(contentRequest);
         }
 
-        request.setType(IQ.Type.SET);
-        request.setTo(jitsiVideobridge);
-
-        request.addContent(contentRequest);
+        final int channelCount = contentRequest.getChannelCount();
+        final SettableFuture<Boolean> result = new SettableFuture<Boolean>();
 
-        connection.sendPacket(request);
+        sendRequest(request,
+                    requestPolicy.getUpdateTimeout(),
+                    ColibriMetrics.Operation.MUTE)
+            .addListener(new SettableFuture.Listener<Packet>()
+            {
+                @Override
+                public void onSuccess(Packet response)
+                {
+                    if (response == null)
+                    {
+                        logger.error(
+                            "Mute of " + channelCount + " channels timed out");
+                        result.complete(false);
+                    }
+                    else if (response.getError() != null)
+                    {
+                        logger.error(
+                            "Mute of " + channelCount + " channels failed: "
+                                + response.getError());
+                        result.complete(false);
+                    }
+                    else
+                    {
+                        result.complete(true);
+                    }
+                }
 
-        // FIXME wait for response and set local status
+                @Override
+                public void onFailure(Throwable error)
+                {
+                    logger.error(
+                        "Mute of " + channelCount + " channels failed", error);
+                    result.complete(false);
+                }
+            });
 
-        return true;
+        return result;
     }
 
     /**
@@ -498,4 +1502,35 @@ public class ColibriConferenceImpl
     {
         return conferenceState.getName();
     }
+
+    /**
+     * Allocate channels request which has not been answered yet.
+     */
+    private static class PendingAllocation
+    {
+        final boolean useBundle;
+
+        final String endpointName;
+
+        final boolean peerIsInitiator;
+
+        final List<ContentPacketExtension> contents;
+
+        /**
+         * The future completed with the allocated channels.
+         */
+        final SettableFuture<ColibriConferenceIQ> result
+            = new SettableFuture<ColibriConferenceIQ>();
+
+        PendingAllocation(boolean useBundle,
+                          String endpointName,
+                          boolean peerIsInitiator,
+                          List<ContentPacketExtension> contents)
+        {
+            this.useBundle = useBundle;
+            this.endpointName = endpointName;
+            this.peerIsInitiator = peerIsInitiator;
+            this.contents = contents;
+        }
+    }
 }
@@ -0,0 +1,208 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.protocol.xmpp.colibri;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+
+import org.jitsi.jicofo.*;
+
+import java.util.*;
+
+/**
+ * Keeps the sources and the payload types of single participant serialized
+ * between the channel updates, so that they are neither copied nor
+ * serialized again as long as they do not change. The sources are passed to
+ * the updates as shallow copies of the map of the participant, so the same
+ * source extension instances mean the same sources. The fragment of
+ * the content is rebuilt when any of its sources or groups changes.
+ *
+ * The instance is not thread safe, it is used with the conference locked.
+ */
+class ColibriFragments
+{
+    /**
+     * The source which tells the bridge to remove all the sources.
+     */
+    private static final String EMPTY_SOURCE_XML;
+
+    /**
+     * The source group which turns off simulcast layers.
+     */
+    private static final String EMPTY_GROUP_XML
+        = SourceGroupPacketExtension.createSimulcastGroup().toXML();
+
+    static
+    {
+        SourcePacketExtension emptySource = new SourcePacketExtension();
+        emptySource.setSSRC(-1l);
+        EMPTY_SOURCE_XML = emptySource.toXML();
+    }
+
+    /**
+     * Maps content name to the serialized sources of the content.
+     */
+    private final Map<String, SourcesFragment> sources
+        = new HashMap<String, SourcesFragment>();
+
+    /**
+     * Maps content name to the serialized payload types of the content.
+     */
+    private final Map<String, PayloadTypesFragment> payloadTypes
+        = new HashMap<String, PayloadTypesFragment>();
+
+    /**
+     * Returns the XML of the sources and the source groups of the content.
+     * Empty source and group are included when there are none, so that
+     * the bridge removes the ones it has. The returned string describes
+     * the whole state of the sources, so it is also compared with the one
+     * acknowledged by the bridge.
+     *
+     * @param contentName the name of the content.
+     * @param ssrcs the sources of the content.
+     * @param groups the source groups of the content.
+     */
+    String getSources(String contentName,
+                      List<SourcePacketExtension> ssrcs,
+                      List<SSRCGroup> groups)
+    {
+        SourcesFragment fragment = sources.get(contentName);
+        if (fragment == null || !fragment.matches(ssrcs, groups))
+        {
+            fragment = new SourcesFragment(ssrcs, groups);
+            sources.put(contentName, fragment);
+        }
+        return fragment.xml;
+    }
+
+    /**
+     * Returns the XML of the payload types of the content.
+     *
+     * @param contentName the name of the content.
+     * @param rtpDescription the RTP description which contains the payload
+     *                       types.
+     */
+    String getPayloadTypes(String contentName,
+                           RtpDescriptionPacketExtension rtpDescription)
+    {
+        PayloadTypesFragment fragment = payloadTypes.get(contentName);
+        if (fragment == null || fragment.rtpDescription != rtpDescription)
+        {
+            fragment = new PayloadTypesFragment(rtpDescription);
+            payloadTypes.put(contentName, fragment);
+        }
+        return fragment.xml;
+    }
+
+    /**
+     * The serialized sources of single content.
+     */
+    private static class SourcesFragment
+    {
+        /**
+         * The source extensions from which the XML has been built.
+         */
+        private final List<SourcePacketExtension> ssrcs;
+
+        /**
+         * The groups from which the XML has been built.
+         */
+        private final List<SSRCGroup> groups;
+
+        final String xml;
+
+        SourcesFragment(List<SourcePacketExtension> ssrcs,
+                        List<SSRCGroup> groups)
+        {
+            this.ssrcs = new ArrayList<SourcePacketExtension>(ssrcs);
+            this.groups = new ArrayList<SSRCGroup>(groups);
+
+            StringBuilder xml = new StringBuilder();
+            for (SourcePacketExtension source : ssrcs)
+            {
+                xml.append(source.toXML());
+            }
+            if (ssrcs.isEmpty())
+            {
+                xml.append(EMPTY_SOURCE_XML);
+            }
+            for (SSRCGroup group : groups)
+            {
+                xml.append(group.toXML());
+            }
+            if (groups.isEmpty())
+            {
+                xml.append(EMPTY_GROUP_XML);
+            }
+            this.xml = xml.toString();
+        }
+
+        /**
+         * Returns <tt>true</tt> if the XML describes given sources. The
+         * groups are copied by the participant, so they are compared by
+         * value.
+         */
+        boolean matches(List<SourcePacketExtension> ssrcs,
+                        List<SSRCGroup> groups)
+        {
+            if (ssrcs.size() != this.ssrcs.size()
+                || groups.size() != this.groups.size())
+            {
+                return false;
+            }
+            for (int i = 0; i < ssrcs.size(); i++)
+            {
+                if (ssrcs.get(i) != this.ssrcs.get(i))
+                    return false;
+            }
+            for (int i = 0; i < groups.size(); i++)
+            {
+                if (!groups.get(i).equals(this.groups.get(i)))
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The serialized payload types of single content.
+     */
+    private static class PayloadTypesFragment
+    {
+        /**
+         * The RTP description from which the XML has been built. It is
+         * replaced, not modified, when the participant renegotiates.
+         */
+        final RtpDescriptionPacketExtension rtpDescription;
+
+        final String xml;
+
+        PayloadTypesFragment(RtpDescriptionPacketExtension rtpDescription)
+        {
+            this.rtpDescription = rtpDescription;
+
+            StringBuilder xml = new StringBuilder();
+            for (PayloadTypePacketExtension payloadType
+                : rtpDescription.getPayloadTypes())
+            {
+                xml.append(payloadType.toXML());
+            }
+            this.xml = xml.toString();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.protocol.xmpp.colibri;
+
+import org.jitsi.service.configuration.*;
+
+/**
+ * Immutable timeouts and retry budget of the requests sent to the bridge.
+ * Only the requests which have not been answered in time are retried, error
+ * responses are not transient. The retries are sent with the same stanza ID,
+ * so the late response to any of the attempts completes the request.
+ */
+public class ColibriRequestPolicy
+{
+    /**
+     * Configuration property which specifies how long in milliseconds to wait
+     * for the response to single attempt of allocate channels request.
+     */
+    public static final String ALLOCATE_TIMEOUT_PNAME
+        = "org.jitsi.focus.COLIBRI_ALLOCATE_TIMEOUT";
+
+    /**
+     * Six seconds, so that all the attempts take about as long as the single
+     * attempt used to.
+     */
+    public static final long DEFAULT_ALLOCATE_TIMEOUT = 6000L;
+
+    /**
+     * Configuration property which specifies how long in milliseconds to wait
+     * for the response to single attempt of channels update request.
+     */
+    public static final String UPDATE_TIMEOUT_PNAME
+        = "org.jitsi.focus.COLIBRI_UPDATE_TIMEOUT";
+
+    /**
+     * Five seconds.
+     */
+    public static final long DEFAULT_UPDATE_TIMEOUT = 5000L;
+
+    /**
+     * Configuration property which specifies how many times the request which
+     * has timed out is sent again. Zero disables retries.
+     */
+    public static final String MAX_RETRIES_PNAME
+        = "org.jitsi.focus.COLIBRI_MAX_RETRIES";
+
+    /**
+     * The default number of retries.
+     */
+    public static final int DEFAULT_MAX_RETRIES = 2;
+
+    /**
+     * Configuration property which specifies how long in milliseconds to wait
+     * before the first retry. The delay is doubled for every next one.
+     */
+    public static final String RETRY_BACKOFF_PNAME
+        = "org.jitsi.focus.COLIBRI_RETRY_BACKOFF";
+
+    /**
+     * The default delay before the first retry.
+     */
+    public static final long DEFAULT_RETRY_BACKOFF = 250L;
+
+    /**
+     * The policy with the default values.
+     */
+    public static final ColibriRequestPolicy DEFAULT
+        = new ColibriRequestPolicy(
+                DEFAULT_ALLOCATE_TIMEOUT,
+                DEFAULT_UPDATE_TIMEOUT,
+                DEFAULT_MAX_RETRIES,
+                DEFAULT_RETRY_BACKOFF);
+
+    /**
+     * The timeout of single attempt of allocate channels request.
+     */
+    private final long allocateTimeout;
+
+    /**
+     * The timeout of single attempt of channels update request.
+     */
+    private final long updateTimeout;
+
+    /**
+     * How many times the request is retried.
+     */
+    private final int maxRetries;
+
+    /**
+     * The delay before the first retry.
+     */
+    private final long retryBackoff;
+
+    /**
+     * Creates new instance of <tt>ColibriRequestPolicy</tt>.
+     *
+     * @param allocateTimeout the timeout of single attempt of allocate
+     *                        channels request in milliseconds.
+     * @param updateTimeout the timeout of single attempt of channels update
+     *                      request in milliseconds.
+     * @param maxRetries how many times the request which has timed out is
+     *                   sent again.
+     * @param retryBackoff the delay before the first retry in milliseconds.
+     */
+    public ColibriRequestPolicy(long allocateTimeout,
+                                long updateTimeout,
+                                int maxRetries,
+                                long retryBackoff)
+    {
+        this.allocateTimeout = allocateTimeout;
+        this.updateTimeout = updateTimeout;
+        this.maxRetries = Math.max(0, maxRetries);
+        this.retryBackoff = Math.max(0, retryBackoff);
+    }
+
+    /**
+     * Reads the policy from the configuration.
+     *
+     * @param config the configuration service to read the settings from.
+     */
+    public static ColibriRequestPolicy fromConfig(ConfigurationService config)
+    {
+        return new ColibriRequestPolicy(
+                config.getLong(
+                        ALLOCATE_TIMEOUT_PNAME, DEFAULT_ALLOCATE_TIMEOUT),
+                config.getLong(UPDATE_TIMEOUT_PNAME, DEFAULT_UPDATE_TIMEOUT),
+                config.getInt(MAX_RETRIES_PNAME, DEFAULT_MAX_RETRIES),
+                config.getLong(RETRY_BACKOFF_PNAME, DEFAULT_RETRY_BACKOFF));
+    }
+
+    /**
+     * Returns the timeout of single attempt of allocate channels request.
+     */
+    public long getAllocateTimeout()
+    {
+        return allocateTimeout;
+    }
+
+    /**
+     * Returns the timeout of single attempt of channels update request.
+     */
+    public long getUpdateTimeout()
+    {
+        return updateTimeout;
+    }
+
+    /**
+     * Returns how many times the request which has timed out is sent again.
+     */
+    public int getMaxRetries()
+    {
+        return maxRetries;
+    }
+
+    /**
+     * Returns the delay before given retry.
+     *
+     * @param retry the number of the retry starting from zero.
+     */
+    public long getRetryDelay(int retry)
+    {
+        return retryBackoff << Math.min(retry, 16);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "allocate_timeout=" + allocateTimeout
+            + ", update_timeout=" + updateTimeout
+            + ", max_retries=" + maxRetries
+            + ", retry_backoff=" + retryBackoff;
+    }
+}
@@ -0,0 +1,382 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.protocol.xmpp.colibri;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.*;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+import net.java.sip.communicator.util.Logger;
+
+import org.jitsi.jicofo.*;
+import org.jitsi.protocol.xmpp.util.*;
+
+import java.util.*;
+
+/**
+ * Accumulates the changes of the channels of single participant which have
+ * not been sent to the bridge yet. The sources are the full state, so only
+ * the latest one is kept and it is sent only for the channels on which it
+ * differs from the state acknowledged by the bridge. The transport candidates
+ * are trickled, so they are merged in the order in which they have arrived.
+ * The RTP description of each content and the endpoint to which
+ * the channels are assigned are replaced by the newer ones.
+ */
+class ColibriUpdate
+{
+    /**
+     * The logger.
+     */
+    private final static Logger logger = Logger.getLogger(ColibriUpdate.class);
+
+    /**
+     * The channels of the participant to be updated.
+     */
+    private final ColibriConferenceIQ channelsInfo;
+
+    /**
+     * The latest SSRCs or <tt>null</tt> if not changed.
+     */
+    private MediaSSRCMap ssrcs;
+
+    /**
+     * The latest SSRC groups or <tt>null</tt> if not changed.
+     */
+    private MediaSSRCGroupMap ssrcGroups;
+
+    /**
+     * Whether the participant is the initiator of ICE session.
+     */
+    private boolean initiator;
+
+    /**
+     * Maps content name to the transport merged from all the updates.
+     */
+    private final Map<String, IceUdpTransportPacketExtension> transports
+        = new LinkedHashMap<String, IceUdpTransportPacketExtension>();
+
+    /**
+     * The channel bundle transport merged from all the updates or
+     * <tt>null</tt> if not changed.
+     */
+    private IceUdpTransportPacketExtension bundleTransport;
+
+    /**
+     * Maps content name to the latest RTP description.
+     */
+    private final Map<String, RtpDescriptionPacketExtension> rtpDescriptions
+        = new LinkedHashMap<String, RtpDescriptionPacketExtension>();
+
+    /**
+     * The endpoint to which the channels are assigned or <tt>null</tt> if not
+     * changed.
+     */
+    private String endpoint;
+
+    /**
+     * Creates new instance of <tt>ColibriUpdate</tt>.
+     *
+     * @param channelsInfo the channels of the participant to be updated.
+     */
+    ColibriUpdate(ColibriConferenceIQ channelsInfo)
+    {
+        this.channelsInfo = channelsInfo;
+    }
+
+    /**
+     * Replaces the sources of the participant.
+     *
+     * @param ssrcs the SSRCs of the participant.
+     * @param ssrcGroups the SSRC groups of the participant.
+     */
+    void setSources(MediaSSRCMap ssrcs, MediaSSRCGroupMap ssrcGroups)
+    {
+        this.ssrcs = ssrcs;
+        this.ssrcGroups = ssrcGroups;
+    }
+
+    /**
+     * Merges the transport of the channels.
+     *
+     * @param initiator <tt>true</tt> if peer is the initiator of ICE session.
+     * @param map the map of content name to transport packet extension.
+     */
+    void addTransports(boolean initiator,
+                       Map<String, IceUdpTransportPacketExtension> map)
+    {
+        this.initiator = initiator;
+
+        for (Map.Entry<String, IceUdpTransportPacketExtension> entry
+            : map.entrySet())
+        {
+            String contentName = entry.getKey();
+
+            transports.put(
+                contentName,
+                mergeTransport(transports.get(contentName), entry.getValue()));
+        }
+    }
+
+    /**
+     * Merges the transport of the channel bundle.
+     *
+     * @param initiator <tt>true</tt> if peer is the initiator of ICE session.
+     * @param transport the transport of the channel bundle.
+     */
+    void addBundleTransport(boolean initiator,
+                            IceUdpTransportPacketExtension transport)
+    {
+        this.initiator = initiator;
+        this.bundleTransport = mergeTransport(bundleTransport, transport);
+    }
+
+    /**
+     * Replaces the RTP description of the contents.
+     *
+     * @param map the map of content name to RTP description packet extension.
+     */
+    void addRtpDescriptions(Map<String, RtpDescriptionPacketExtension> map)
+    {
+        rtpDescriptions.putAll(map);
+    }
+
+    /**
+     * Assigns the channels to another endpoint.
+     *
+     * @param endpoint the ID of the endpoint.
+     */
+    void setEndpoint(String endpoint)
+    {
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * Returns the channels of the participant to be updated.
+     */
+    ColibriConferenceIQ getChannelsInfo()
+    {
+        return channelsInfo;
+    }
+
+    /**
+     * Adds the channels with all the accumulated changes to given request.
+     *
+     * @param request the Colibri request to be sent to the bridge.
+     * @param fragments the serialized sources and payload types of
+     *                  the participant kept since the previous updates.
+     * @param acknowledgedSources the sources acknowledged by the bridge in
+     *                            the form returned by
+     *                            {@link ColibriFragments#getSources}, keyed
+     *                            by channel ID. The sources equal to these
+     *                            are not added to the request.
+     * @param sentSources the map to which the sources added to the request
+     *                    are put, keyed by channel ID.
+     *
+     * @return <tt>true</tt> if anything has been added to the request.
+     */
+    boolean addTo(ColibriConferenceIQ request,
+                  ColibriFragments fragments,
+                  Map<String, String> acknowledgedSources,
+                  Map<String, String> sentSources)
+    {
+        boolean modified = false;
+
+        for (ColibriConferenceIQ.Content content : channelsInfo.getContents())
+        {
+            String contentName = content.getName();
+            IceUdpTransportPacketExtension transport
+                = transports.get(contentName);
+
+            for (ColibriConferenceIQ.Channel channel : content.getChannels())
+            {
+                FragmentChannel reqChannel = new FragmentChannel();
+
+                reqChannel.setID(channel.getID());
+
+                boolean channelModified = false;
+
+                if (endpoint != null)
+                {
+                    reqChannel.setEndpoint(endpoint);
+                    channelModified = true;
+                }
+
+                if (ssrcs != null)
+                {
+                    String sources
+                        = fragments.getSources(
+                                contentName,
+                                ssrcs.getSSRCsForMedia(contentName),
+                                ssrcGroups.getSSRCGroupsForMedia(contentName));
+
+                    if (!sources.equals(
+                            acknowledgedSources.get(channel.getID())))
+                    {
+                        reqChannel.addFragment(sources);
+                        sentSources.put(channel.getID(), sources);
+                        channelModified = true;
+                    }
+                }
+
+                if (transport != null)
+                {
+                    setTransport(channel, reqChannel, transport);
+                    channelModified = true;
+                }
+
+                RtpDescriptionPacketExtension rtpDescription
+                    = rtpDescriptions.get(contentName);
+                if (rtpDescription != null
+                    && !rtpDescription.getPayloadTypes().isEmpty())
+                {
+                    reqChannel.addFragment(
+                        fragments.getPayloadTypes(
+                                contentName, rtpDescription));
+                    channelModified = true;
+                }
+
+                if (channelModified)
+                {
+                    request.getOrCreateContent(contentName)
+                        .addChannel(reqChannel);
+                    modified = true;
+                }
+            }
+
+            if (transport == null && endpoint == null)
+                continue;
+
+            for (ColibriConferenceIQ.SctpConnection sctp
+                : content.getSctpConnections())
+            {
+                ColibriConferenceIQ.SctpConnection reqSctp
+                    = new ColibriConferenceIQ.SctpConnection();
+
+                reqSctp.setID(sctp.getID());
+                reqSctp.setEndpoint(sctp.getEndpoint());
+                if (transport != null)
+                {
+                    setTransport(sctp, reqSctp, transport);
+                }
+
+                request.getOrCreateContent(contentName)
+                    .addSctpConnection(reqSctp);
+                modified = true;
+            }
+        }
+
+        if (bundleTransport != null)
+        {
+            List<ColibriConferenceIQ.ChannelBundle> bundles
+                = channelsInfo.getChannelBundles();
+            if (bundles.size() != 1)
+            {
+                logger.error(
+                    "Can not update bundle transport, expected single bundle"
+                        + " but got: " + bundles.size());
+            }
+            else
+            {
+                ColibriConferenceIQ.ChannelBundle reqBundle
+                    = new ColibriConferenceIQ.ChannelBundle(
+                            bundles.get(0).getId());
+
+                reqBundle.setTransport(bundleTransport);
+
+                request.addChannelBundle(reqBundle);
+                modified = true;
+            }
+        }
+
+        return modified;
+    }
+
+    /**
+     * Sets the transport on the channel request.
+     */
+    private void setTransport(ColibriConferenceIQ.ChannelCommon channel,
+                              ColibriConferenceIQ.ChannelCommon reqChannel,
+                              IceUdpTransportPacketExtension transport)
+    {
+        reqChannel.setEndpoint(channel.getEndpoint());
+        reqChannel.setInitiator(initiator);
+        reqChannel.setTransport(transport);
+    }
+
+    /**
+     * Merges the transport update with the transport which has not been sent
+     * yet. The attributes of the newer transport win, but the candidates
+     * trickled before are kept. ICE restart, that is the change of
+     * the credentials, discards the older candidates.
+     *
+     * @param previous the transport accumulated so far or <tt>null</tt>.
+     * @param update the newer transport.
+     *
+     * @return the merged transport.
+     */
+    static IceUdpTransportPacketExtension mergeTransport(
+            IceUdpTransportPacketExtension previous,
+            IceUdpTransportPacketExtension update)
+    {
+        IceUdpTransportPacketExtension merged
+            = IceUdpTransportPacketExtension.cloneTransportAndCandidates(
+                    update, true);
+
+        if (previous == null || isIceRestart(previous, update))
+            return merged;
+
+        for (CandidatePacketExtension candidate
+            : previous.getCandidateList())
+        {
+            merged.addCandidate(candidate);
+        }
+
+        if (previous.isRtcpMux() && !merged.isRtcpMux())
+        {
+            merged.addChildExtension(new RtcpmuxPacketExtension());
+        }
+
+        if (merged.getChildExtensionsOfType(
+                DtlsFingerprintPacketExtension.class).isEmpty())
+        {
+            for (DtlsFingerprintPacketExtension fingerprint
+                : previous.getChildExtensionsOfType(
+                        DtlsFingerprintPacketExtension.class))
+            {
+                merged.addChildExtension(
+                    AbstractPacketExtension.clone(fingerprint));
+            }
+        }
+
+        if (merged.getUfrag() == null)
+        {
+            merged.setUfrag(previous.getUfrag());
+            merged.setPassword(previous.getPassword());
+        }
+
+        return merged;
+    }
+
+    private static boolean isIceRestart(
+            IceUdpTransportPacketExtension previous,
+            IceUdpTransportPacketExtension update)
+    {
+        return previous.getUfrag() != null
+            && update.getUfrag() != null
+            && !previous.getUfrag().equals(update.getUfrag());
+    }
+}
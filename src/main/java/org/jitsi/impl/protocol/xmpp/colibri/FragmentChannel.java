@@ -0,0 +1,75 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.protocol.xmpp.colibri;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+
+import java.util.*;
+
+/**
+ * Channel of Colibri request which carries some of its child elements as
+ * already serialized XML fragments. The fragments are appended to the content
+ * of the channel as they are, so the same string can be shared by many
+ * requests and by all the attempts of single request.
+ */
+class FragmentChannel
+    extends ColibriConferenceIQ.Channel
+{
+    /**
+     * The serialized child elements.
+     */
+    private final List<String> fragments = new ArrayList<String>();
+
+    /**
+     * Adds serialized child elements to this channel.
+     *
+     * @param fragment the XML of the child elements.
+     */
+    void addFragment(String fragment)
+    {
+        if (fragment.length() > 0)
+        {
+            fragments.add(fragment);
+        }
+    }
+
+    /**
+     * Returns the serialized child elements of this channel.
+     */
+    List<String> getFragments()
+    {
+        return fragments;
+    }
+
+    @Override
+    protected boolean hasContent()
+    {
+        return !fragments.isEmpty() || super.hasContent();
+    }
+
+    @Override
+    protected void printContent(StringBuilder xml)
+    {
+        super.printContent(xml);
+
+        for (String fragment : fragments)
+        {
+            xml.append(fragment);
+        }
+    }
+}
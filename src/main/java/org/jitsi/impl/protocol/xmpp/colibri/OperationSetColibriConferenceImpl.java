@@ -21,8 +21,10 @@ import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
 import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
 import net.java.sip.communicator.util.Logger;
 
+import org.jitsi.jicofo.*;
 import org.jitsi.protocol.xmpp.*;
 import org.jitsi.protocol.xmpp.colibri.*;
+import org.jitsi.service.configuration.*;
 
 import org.jivesoftware.smack.provider.*;
 
@@ -41,6 +43,11 @@ public class OperationSetColibriConferenceImpl
 
     private XmppConnection connection;
 
+    /**
+     * The statistics shared by all the conferences.
+     */
+    private final ColibriMetrics metrics = new ColibriMetrics();
+
     /**
      * Initializes this operation set.
      *
@@ -70,8 +77,41 @@ public class OperationSetColibriConferenceImpl
     @Override
     public ColibriConference createNewConference()
     {
-        ColibriConference conf = new ColibriConferenceImpl(connection);
+        ConfigurationService config = FocusBundleActivator.getConfigService();
+        long batchWindow = 0;
+        long updateInterval = 0;
+        ColibriRequestPolicy requestPolicy = ColibriRequestPolicy.DEFAULT;
+        if (config != null)
+        {
+            requestPolicy = ColibriRequestPolicy.fromConfig(config);
+            batchWindow = config.getLong(
+                    ColibriConferenceImpl.BATCH_WINDOW_PNAME,
+                    ColibriConferenceImpl.DEFAULT_BATCH_WINDOW);
+            updateInterval = config.getLong(
+                    ColibriConferenceImpl.UPDATE_INTERVAL_PNAME,
+                    ColibriConferenceImpl.DEFAULT_UPDATE_INTERVAL);
+        }
+
+        ColibriConferenceImpl conf
+            = new ColibriConferenceImpl(
+                    connection,
+                    FocusBundleActivator.getSharedThreadPool(),
+                    batchWindow,
+                    updateInterval);
+
+        conf.setRequestPolicy(requestPolicy);
+        conf.setMetrics(metrics);
+
         //logger.info("Conference created: " + conf);
         return conf;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ColibriMetrics getMetrics()
+    {
+        return metrics;
+    }
 }
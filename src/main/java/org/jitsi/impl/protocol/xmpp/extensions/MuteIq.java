@@ -23,7 +23,8 @@ import org.jivesoftware.smack.packet.*;
 
 /**
  * IQ used for the signaling of audio muting functionality in Jitsi Meet
- * conferences.
+ * conferences. The 'mute-all' variant is sent by the moderator to mute all
+ * the other participants at once, it does not carry the 'jid' attribute.
  *
  * @author Pawel Domas
  */
@@ -40,6 +41,11 @@ public class MuteIq
      */
     public static final String ELEMENT_NAME = "mute";
 
+    /**
+     * XML element name of the variant which mutes all the participants.
+     */
+    public static final String ALL_ELEMENT_NAME = "mute-all";
+
     /**
      * Attribute name of "jid".
      */
@@ -55,12 +61,19 @@ public class MuteIq
      */
     private Boolean mute;
 
+    /**
+     * Whether this is 'mute-all' variant.
+     */
+    private boolean all;
+
     @Override
     public String getChildElementXML()
     {
         StringBuilder output = new StringBuilder();
 
-        output.append("<mute ")
+        String elementName = all ? ALL_ELEMENT_NAME : ELEMENT_NAME;
+
+        output.append("<").append(elementName).append(" ")
             .append("xmlns='").append(NAMESPACE).append("' ");
         if (!StringUtils.isNullOrEmpty(jid))
         {
@@ -68,7 +81,8 @@ public class MuteIq
         }
         if (mute != null)
         {
-            output.append(">").append(mute).append("</mute>");
+            output.append(">").append(mute)
+                .append("</").append(elementName).append(">");
         }
         else
         {
@@ -113,4 +127,22 @@ public class MuteIq
     {
         return mute;
     }
+
+    /**
+     * Sets whether this is 'mute-all' variant of the IQ.
+     * @param all <tt>true</tt> to mute/unmute all the participants of
+     *            the conference instead of the one identified by the jid.
+     */
+    public void setAll(boolean all)
+    {
+        this.all = all;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this is 'mute-all' variant of the IQ.
+     */
+    public boolean isAll()
+    {
+        return all;
+    }
 }
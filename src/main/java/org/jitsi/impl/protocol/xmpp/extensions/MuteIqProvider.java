@@ -41,6 +41,11 @@ public class MuteIqProvider
             MuteIq.ELEMENT_NAME,
             MuteIq.NAMESPACE,
             this);
+
+        providerManager.addIQProvider(
+            MuteIq.ALL_ELEMENT_NAME,
+            MuteIq.NAMESPACE,
+            this);
     }
 
     /**
@@ -71,6 +76,12 @@ public class MuteIqProvider
 
             iq.setJid(jid);
         }
+        else if (MuteIq.ALL_ELEMENT_NAME.equals(rootElement))
+        {
+            iq = new MuteIq();
+
+            iq.setAll(true);
+        }
         else
         {
             return null;
@@ -0,0 +1,88 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.protocol.xmpp.extensions;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.*;
+
+import org.jivesoftware.smack.provider.*;
+
+/**
+ * A packet extension added to MUC presence by Jitsi Meet participants in order
+ * to advertise the region they are connecting from.
+ *
+ * <tt>&lt;region xmlns="http://jitsi.org/jitsi-meet" id="us-east"/&gt;</tt>
+ */
+public class RegionPacketExtension
+    extends AbstractPacketExtension
+{
+    /**
+     * XML namespace of this packets extension.
+     */
+    public static final String NAMESPACE = "http://jitsi.org/jitsi-meet";
+
+    /**
+     * XML element name of this packets extension.
+     */
+    public static final String ELEMENT_NAME = "region";
+
+    /**
+     * The name of the attribute which holds the region identifier.
+     */
+    public static final String ID_ATTR_NAME = "id";
+
+    /**
+     * Creates new instance of <tt>RegionPacketExtension</tt>.
+     */
+    public RegionPacketExtension()
+    {
+        super(NAMESPACE, ELEMENT_NAME);
+    }
+
+    /**
+     * Returns the identifier of the region or <tt>null</tt> if not set.
+     */
+    public String getRegionId()
+    {
+        return getAttributeAsString(ID_ATTR_NAME);
+    }
+
+    /**
+     * Sets the identifier of the region.
+     *
+     * @param regionId the region identifier to set.
+     */
+    public void setRegionId(String regionId)
+    {
+        setAttribute(ID_ATTR_NAME, regionId);
+    }
+
+    /**
+     * Registers the provider of this extension into given
+     * <tt>ProviderManager</tt>.
+     *
+     * @param providerManager the <tt>ProviderManager</tt> to which
+     *                        the provider will be bound to.
+     */
+    public static void registerProvider(ProviderManager providerManager)
+    {
+        providerManager.addExtensionProvider(
+            ELEMENT_NAME, NAMESPACE,
+            new DefaultPacketExtensionProvider<RegionPacketExtension>(
+                    RegionPacketExtension.class));
+    }
+}
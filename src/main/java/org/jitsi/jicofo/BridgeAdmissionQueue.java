@@ -0,0 +1,458 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.util.Logger;
+
+import org.jitsi.protocol.xmpp.util.*;
+import org.jitsi.service.configuration.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Bounded FIFO queue of new conferences waiting for the bridge capacity when
+ * all bridges are full. Only the conference at the head of the queue is
+ * admitted, so that the ones waiting the longest get the capacity first.
+ * Every conference takes single place in the queue, no matter how many
+ * of its participants wait for the bridge.
+ *
+ * Nobody's thread is blocked while waiting. The queue is processed on
+ * the shared thread pool whenever the capacity might have become available
+ * and the waiting conferences are notified through the futures returned by
+ * {@link #admit(String, String)}.
+ *
+ * The selector is never called while holding the lock of the queue, because
+ * {@link #onCapacityAvailable()} is called with the bridge state locked.
+ */
+public class BridgeAdmissionQueue
+{
+    /**
+     * The logger.
+     */
+    private final static Logger logger
+        = Logger.getLogger(BridgeAdmissionQueue.class);
+
+    /**
+     * Configuration property which specifies how many conferences can wait
+     * in the queue. Conferences above the limit are rejected immediately.
+     */
+    public static final String MAX_SIZE_PNAME
+        = "org.jitsi.focus.BRIDGE_ADMISSION_QUEUE_SIZE";
+
+    /**
+     * The default maximal number of waiting conferences.
+     */
+    public static final int DEFAULT_MAX_SIZE = 100;
+
+    /**
+     * Configuration property which specifies how long the conference can wait
+     * for the bridge capacity.
+     */
+    public static final String TIMEOUT_PNAME
+        = "org.jitsi.focus.BRIDGE_ADMISSION_TIMEOUT";
+
+    /**
+     * Ten seconds.
+     */
+    public static final long DEFAULT_TIMEOUT = 10L * 1000L;
+
+    /**
+     * How often the capacity is checked even if nobody tells us about it,
+     * because some of the changes like failed bridges getting another chance
+     * are not notified.
+     */
+    private static final long RECHECK_INTERVAL = 500L;
+
+    /**
+     * The selector which provides the bridges.
+     */
+    private final BridgeSelector selector;
+
+    /**
+     * The maximal number of waiting conferences.
+     */
+    private final int maxSize;
+
+    /**
+     * The maximal waiting time.
+     */
+    private final long timeout;
+
+    /**
+     * Waiting conferences in arrival order, by room name.
+     */
+    private final LinkedHashMap<String, Waiter> waiters
+        = new LinkedHashMap<String, Waiter>();
+
+    /**
+     * The number of waiting conferences, read without locking.
+     */
+    private volatile int depth;
+
+    /**
+     * Makes sure that the conferences are admitted one by one, in the order
+     * of the queue.
+     */
+    private final Object admitSyncRoot = new Object();
+
+    /**
+     * Whether the processing of the queue has been submitted to the thread
+     * pool and not started yet.
+     */
+    private boolean processingPending;
+
+    /**
+     * The check of the queue scheduled for when the head of the queue times
+     * out or the capacity should be checked again.
+     */
+    private ScheduledFuture<?> recheck;
+
+    /**
+     * Processes the queue on the thread pool, when the capacity might have
+     * become available.
+     */
+    private final Runnable processTask = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            synchronized (BridgeAdmissionQueue.this)
+            {
+                processingPending = false;
+            }
+            processQueue();
+        }
+    };
+
+    /**
+     * Processes the queue on the thread pool, when it is time to check it
+     * again.
+     */
+    private final Runnable recheckTask = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            synchronized (BridgeAdmissionQueue.this)
+            {
+                recheck = null;
+            }
+            processQueue();
+        }
+    };
+
+    /**
+     * The number of conferences which have waited in the queue.
+     */
+    private long queuedCount;
+
+    /**
+     * The number of conferences which have not been admitted in time.
+     */
+    private long timedOutCount;
+
+    /**
+     * The number of conferences rejected because the queue was full.
+     */
+    private long rejectedCount;
+
+    /**
+     * The total time spent in the queue in millis.
+     */
+    private long totalWaitTime;
+
+    /**
+     * The longest time spent in the queue in millis.
+     */
+    private long maxWaitTime;
+
+    /**
+     * Creates new instance of <tt>BridgeAdmissionQueue</tt>.
+     *
+     * @param selector the selector which provides the bridges.
+     * @param config the configuration service to read the settings from.
+     */
+    BridgeAdmissionQueue(BridgeSelector selector, ConfigurationService config)
+    {
+        this.selector = selector;
+        this.maxSize = config.getInt(MAX_SIZE_PNAME, DEFAULT_MAX_SIZE);
+        this.timeout = config.getLong(TIMEOUT_PNAME, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Selects the bridge for new conference, waiting for the capacity if all
+     * bridges are full. If the conference is in the queue already, it keeps
+     * its place and gets the same result.
+     *
+     * @param roomName the name of the conference room.
+     * @param region the region of the participants or <tt>null</tt>.
+     *
+     * @return the future completed with the JID of the bridge or with
+     *         <tt>null</tt> if there is no bridge, the queue is full or
+     *         the capacity has not become available in time.
+     */
+    SettableFuture<String> admit(String roomName, String region)
+    {
+        // Nobody is waiting, so we do not take anyone's turn
+        if (depth == 0 && !selector.isAtCapacity())
+        {
+            return SettableFuture.completed(
+                selector.selectVideobridge(roomName, region));
+        }
+
+        Waiter waiter;
+        synchronized (this)
+        {
+            waiter = waiters.get(roomName);
+            if (waiter != null)
+            {
+                return waiter.future;
+            }
+            if (waiters.size() >= maxSize)
+            {
+                rejectedCount++;
+                logger.warn(
+                    "Admission queue full, rejected conference: " + roomName);
+                return SettableFuture.completed(null);
+            }
+            waiter = new Waiter(roomName, region);
+            waiters.put(roomName, waiter);
+            depth = waiters.size();
+            queuedCount++;
+        }
+
+        logger.info(
+            "All bridges are full, " + roomName + " waits for admission");
+
+        // The capacity might have become available in the meantime
+        processQueue();
+
+        return waiter.future;
+    }
+
+    /**
+     * Admits the conferences from the head of the queue while there is
+     * capacity for them and drops the ones which have waited for too long.
+     * Schedules next check if anyone is left in the queue.
+     */
+    private void processQueue()
+    {
+        synchronized (admitSyncRoot)
+        {
+            while (true)
+            {
+                Waiter head;
+                synchronized (this)
+                {
+                    if (waiters.isEmpty())
+                        return;
+
+                    head = waiters.values().iterator().next();
+                }
+
+                long now = System.currentTimeMillis();
+                String bridge = null;
+                boolean timedOut = false;
+                if (!selector.isAtCapacity())
+                {
+                    bridge
+                        = selector.selectVideobridge(
+                                head.roomName, head.region);
+                }
+                else if (now < head.deadline)
+                {
+                    scheduleRecheck(
+                        Math.min(head.deadline - now, RECHECK_INTERVAL));
+                    return;
+                }
+                else
+                {
+                    logger.warn("Admission timed out for: " + head.roomName);
+                    timedOut = true;
+                }
+
+                long waitTime = now - head.start;
+                synchronized (this)
+                {
+                    waiters.remove(head.roomName);
+                    depth = waiters.size();
+
+                    if (timedOut)
+                        timedOutCount++;
+                    totalWaitTime += waitTime;
+                    maxWaitTime = Math.max(maxWaitTime, waitTime);
+                }
+
+                head.future.complete(bridge);
+            }
+        }
+    }
+
+    /**
+     * Schedules the processing of the queue after given delay, unless it has
+     * been scheduled already.
+     *
+     * @param delay the delay in milliseconds.
+     */
+    private void scheduleRecheck(long delay)
+    {
+        ScheduledExecutorService executor
+            = FocusBundleActivator.getSharedThreadPool();
+        if (executor == null)
+        {
+            logger.error("No thread pool to process the admission queue");
+            return;
+        }
+
+        synchronized (this)
+        {
+            if (recheck != null)
+            {
+                if (recheck.getDelay(TimeUnit.MILLISECONDS) <= delay)
+                    return;
+
+                recheck.cancel(false);
+            }
+
+            recheck
+                = executor.schedule(recheckTask, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Processes the waiting conferences, because one of the bridges might
+     * have room for new conference.
+     */
+    void onCapacityAvailable()
+    {
+        if (depth == 0)
+            return;
+
+        ScheduledExecutorService executor
+            = FocusBundleActivator.getSharedThreadPool();
+        if (executor == null)
+            return;
+
+        synchronized (this)
+        {
+            // The processing which has not started yet will notice it
+            if (processingPending)
+                return;
+
+            processingPending = true;
+        }
+
+        executor.execute(processTask);
+    }
+
+    /**
+     * Returns the number of conferences currently waiting for admission.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * Returns the maximal number of conferences that can wait for admission.
+     */
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of conferences which have waited for admission.
+     */
+    public synchronized long getQueuedCount()
+    {
+        return queuedCount;
+    }
+
+    /**
+     * Returns the number of conferences which have not been admitted in time.
+     */
+    public synchronized long getTimedOutCount()
+    {
+        return timedOutCount;
+    }
+
+    /**
+     * Returns the number of conferences rejected because the queue was full.
+     */
+    public synchronized long getRejectedCount()
+    {
+        return rejectedCount;
+    }
+
+    /**
+     * Returns the average time spent in the queue in millis.
+     */
+    public synchronized long getAverageWaitTime()
+    {
+        return queuedCount > 0 ? totalWaitTime / queuedCount : 0;
+    }
+
+    /**
+     * Returns the longest time spent in the queue in millis.
+     */
+    public synchronized long getMaxWaitTime()
+    {
+        return maxWaitTime;
+    }
+
+    /**
+     * The conference waiting in the queue.
+     */
+    private class Waiter
+    {
+        /**
+         * The name of the conference room.
+         */
+        private final String roomName;
+
+        /**
+         * The region of the participants or <tt>null</tt>.
+         */
+        private final String region;
+
+        /**
+         * The time when the conference has been put in the queue.
+         */
+        private final long start = System.currentTimeMillis();
+
+        /**
+         * The time after which the conference is not admitted anymore.
+         */
+        private final long deadline = start + timeout;
+
+        /**
+         * The future completed with the bridge once the conference leaves
+         * the queue.
+         */
+        private final SettableFuture<String> future
+            = new SettableFuture<String>();
+
+        Waiter(String roomName, String region)
+        {
+            this.roomName = roomName;
+            this.region = region;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.util.Logger;
+
+import org.jitsi.service.configuration.*;
+import org.jitsi.util.*;
+
+import java.util.*;
+
+/**
+ * Immutable capacity ceilings of the videobridge. The bridge which has
+ * reached any of the ceilings is considered full and gets new conferences
+ * only if all the other bridges are full too.
+ */
+public class BridgeCapacity
+{
+    /**
+     * The logger.
+     */
+    private final static Logger logger = Logger.getLogger(BridgeCapacity.class);
+
+    /**
+     * Configuration property which specifies the maximal number of
+     * conferences on every bridge which has no capacity configured with
+     * {@link #BRIDGE_CAPACITY_PNAME}.
+     */
+    public static final String MAX_CONFERENCES_PNAME
+        = "org.jitsi.focus.BRIDGE_MAX_CONFERENCES";
+
+    /**
+     * Configuration property which specifies the maximal number of video
+     * channels on every bridge which has no capacity configured with
+     * {@link #BRIDGE_CAPACITY_PNAME}.
+     */
+    public static final String MAX_VIDEO_CHANNELS_PNAME
+        = "org.jitsi.focus.BRIDGE_MAX_VIDEO_CHANNELS";
+
+    /**
+     * Configuration property which specifies the maximal number of video
+     * streams on every bridge which has no capacity configured with
+     * {@link #BRIDGE_CAPACITY_PNAME}.
+     */
+    public static final String MAX_VIDEO_STREAMS_PNAME
+        = "org.jitsi.focus.BRIDGE_MAX_VIDEO_STREAMS";
+
+    /**
+     * Property used to configure the capacity of particular bridges. Single
+     * entry is defined by writing videobridge JID followed by ':' and comma
+     * separated maximal number of conferences, video channels and video
+     * streams. Empty value means that the default is used. Multiple entries
+     * are separated with ';'.
+     *
+     * org.jitsi.focus.BRIDGE_CAPACITY
+     * =jvb1.server.net:100,2000,4000;jvb2.server.net:50,,
+     */
+    public static final String BRIDGE_CAPACITY_PNAME
+        = "org.jitsi.focus.BRIDGE_CAPACITY";
+
+    /**
+     * The value which means that there is no ceiling.
+     */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    /**
+     * The capacity with no ceilings.
+     */
+    public static final BridgeCapacity NO_LIMITS
+        = new BridgeCapacity(UNLIMITED, UNLIMITED, UNLIMITED);
+
+    /**
+     * The maximal number of conferences.
+     */
+    private final int maxConferences;
+
+    /**
+     * The maximal number of video channels.
+     */
+    private final int maxVideoChannels;
+
+    /**
+     * The maximal number of video streams.
+     */
+    private final int maxVideoStreams;
+
+    /**
+     * Creates new instance of <tt>BridgeCapacity</tt>.
+     *
+     * @param maxConferences the maximal number of conferences.
+     * @param maxVideoChannels the maximal number of video channels.
+     * @param maxVideoStreams the maximal number of video streams.
+     */
+    public BridgeCapacity(int maxConferences,
+                          int maxVideoChannels,
+                          int maxVideoStreams)
+    {
+        this.maxConferences = maxConferences;
+        this.maxVideoChannels = maxVideoChannels;
+        this.maxVideoStreams = maxVideoStreams;
+    }
+
+    /**
+     * Returns the maximal number of conferences.
+     */
+    public int getMaxConferences()
+    {
+        return maxConferences;
+    }
+
+    /**
+     * Returns the maximal number of video channels.
+     */
+    public int getMaxVideoChannels()
+    {
+        return maxVideoChannels;
+    }
+
+    /**
+     * Returns the maximal number of video streams.
+     */
+    public int getMaxVideoStreams()
+    {
+        return maxVideoStreams;
+    }
+
+    /**
+     * Checks if any of given values has reached its ceiling. Values which are
+     * not known, that is equal to {@link Integer#MAX_VALUE}, are not taken
+     * into account.
+     *
+     * @param conferences the number of conferences.
+     * @param videoChannels the number of video channels.
+     * @param videoStreams the number of video streams.
+     *
+     * @return <tt>true</tt> if there is no room for new conference.
+     */
+    public boolean isReached(int conferences,
+                             int videoChannels,
+                             int videoStreams)
+    {
+        return isReached(conferences, maxConferences)
+            || isReached(videoChannels, maxVideoChannels)
+            || isReached(videoStreams, maxVideoStreams);
+    }
+
+    private static boolean isReached(int value, int max)
+    {
+        return max != UNLIMITED && value != Integer.MAX_VALUE && value >= max;
+    }
+
+    /**
+     * Reads the capacity used by default for all bridges.
+     *
+     * @param config the configuration service to read the ceilings from.
+     */
+    static BridgeCapacity getDefault(ConfigurationService config)
+    {
+        return new BridgeCapacity(
+                config.getInt(MAX_CONFERENCES_PNAME, UNLIMITED),
+                config.getInt(MAX_VIDEO_CHANNELS_PNAME, UNLIMITED),
+                config.getInt(MAX_VIDEO_STREAMS_PNAME, UNLIMITED));
+    }
+
+    /**
+     * Parses the value of {@link #BRIDGE_CAPACITY_PNAME}.
+     *
+     * @param capacityValue the value of the property.
+     * @param defaultCapacity the capacity used for the ceilings which are not
+     *                        specified.
+     *
+     * @return the map of bridge JIDs to their capacity.
+     */
+    static Map<String, BridgeCapacity> parse(String capacityValue,
+                                             BridgeCapacity defaultCapacity)
+    {
+        Map<String, BridgeCapacity> capacities
+            = new HashMap<String, BridgeCapacity>();
+
+        if (StringUtils.isNullOrEmpty(capacityValue))
+            return capacities;
+
+        for (String entry : capacityValue.split(";"))
+        {
+            String[] bridgeAndCapacity = entry.split(":");
+            if (bridgeAndCapacity.length != 2)
+            {
+                logger.error("Invalid bridge capacity: " + entry);
+                continue;
+            }
+
+            String[] ceilings = bridgeAndCapacity[1].split(",", -1);
+            try
+            {
+                BridgeCapacity capacity
+                    = new BridgeCapacity(
+                            parseCeiling(
+                                ceilings, 0, defaultCapacity.maxConferences),
+                            parseCeiling(
+                                ceilings, 1, defaultCapacity.maxVideoChannels),
+                            parseCeiling(
+                                ceilings, 2, defaultCapacity.maxVideoStreams));
+
+                capacities.put(bridgeAndCapacity[0].trim(), capacity);
+
+                logger.info(
+                    "Bridge capacity: " + bridgeAndCapacity[0] + " -> "
+                        + capacity);
+            }
+            catch (NumberFormatException e)
+            {
+                logger.error("Invalid bridge capacity: " + entry);
+            }
+        }
+        return capacities;
+    }
+
+    private static int parseCeiling(String[] ceilings, int idx, int def)
+    {
+        if (ceilings.length <= idx)
+            return def;
+
+        String ceiling = ceilings[idx].trim();
+
+        return ceiling.length() == 0 ? def : Integer.parseInt(ceiling);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "conferences=" + toString(maxConferences)
+            + ", video_channels=" + toString(maxVideoChannels)
+            + ", video_streams=" + toString(maxVideoStreams);
+    }
+
+    private static String toString(int ceiling)
+    {
+        return ceiling == UNLIMITED ? "unlimited" : String.valueOf(ceiling);
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.util.Logger;
+
+import org.jitsi.protocol.xmpp.*;
+import org.jitsi.protocol.xmpp.util.*;
+import org.jitsi.service.configuration.*;
+
+import org.jivesoftware.smack.packet.*;
+import org.jivesoftware.smackx.packet.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Actively checks the liveness of the videobridges by sending them disco#info
+ * queries. The round trip times are reported to {@link BridgeSelector}, so
+ * that slow bridges get less new conferences, and the bridges which do not
+ * respond are marked as not *operational* before any participant has to wait
+ * for the channel allocation to time out.
+ */
+public class BridgeProber
+{
+    /**
+     * The logger.
+     */
+    private final static Logger logger = Logger.getLogger(BridgeProber.class);
+
+    /**
+     * Configuration property which specifies how often the bridges are probed
+     * in milliseconds. Zero or negative value disables the probing.
+     */
+    public static final String PROBE_INTERVAL_PNAME
+        = "org.jitsi.focus.BRIDGE_PROBE_INTERVAL";
+
+    /**
+     * Five seconds.
+     */
+    public static final long DEFAULT_PROBE_INTERVAL = 5000L;
+
+    /**
+     * Configuration property which specifies how long to wait for the response
+     * to the probe in milliseconds.
+     */
+    public static final String PROBE_TIMEOUT_PNAME
+        = "org.jitsi.focus.BRIDGE_PROBE_TIMEOUT";
+
+    /**
+     * Two seconds.
+     */
+    public static final long DEFAULT_PROBE_TIMEOUT = 2000L;
+
+    /**
+     * Configuration property which specifies how many probes in a row have to
+     * fail before the bridge is considered not *operational*.
+     */
+    public static final String PROBE_MAX_MISSED_PNAME
+        = "org.jitsi.focus.BRIDGE_PROBE_MAX_MISSED";
+
+    /**
+     * The default number of failed probes in a row.
+     */
+    public static final int DEFAULT_PROBE_MAX_MISSED = 2;
+
+    /**
+     * The selector which knows the bridges to probe.
+     */
+    private final BridgeSelector selector;
+
+    /**
+     * The connection used to send the probes.
+     */
+    private final XmppConnection connection;
+
+    /**
+     * The executor which schedules the probes.
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * How often the bridges are probed.
+     */
+    private final long interval;
+
+    /**
+     * How long to wait for the response.
+     */
+    private final long timeout;
+
+    /**
+     * How many probes in a row have to fail.
+     */
+    private final int maxMissed;
+
+    /**
+     * Maps the bridge JID to the number of probes it has failed in a row.
+     */
+    private final Map<String, Integer> missedProbes
+        = new ConcurrentHashMap<String, Integer>();
+
+    /**
+     * The JIDs of the bridges which are being probed. The next probe is not
+     * sent before the previous one has finished, so that the probes of wedged
+     * bridges do not pile up.
+     */
+    private final Set<String> inProgress
+        = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Cyclic task which sends the probes.
+     */
+    private ScheduledFuture<?> probeTask;
+
+    /**
+     * Creates new instance of <tt>BridgeProber</tt>.
+     *
+     * @param selector the selector which knows the bridges to probe.
+     * @param connection the connection used to send the probes.
+     * @param executor the executor which will schedule the probes.
+     * @param config the configuration service to read the settings from.
+     */
+    public BridgeProber(BridgeSelector selector,
+                        XmppConnection connection,
+                        ScheduledExecutorService executor,
+                        ConfigurationService config)
+    {
+        if (executor == null)
+            throw new NullPointerException("executor");
+
+        this.selector = selector;
+        this.connection = connection;
+        this.executor = executor;
+        this.interval
+            = config.getLong(PROBE_INTERVAL_PNAME, DEFAULT_PROBE_INTERVAL);
+        this.timeout
+            = config.getLong(PROBE_TIMEOUT_PNAME, DEFAULT_PROBE_TIMEOUT);
+        this.maxMissed
+            = config.getInt(PROBE_MAX_MISSED_PNAME, DEFAULT_PROBE_MAX_MISSED);
+    }
+
+    /**
+     * Starts probing the bridges.
+     */
+    public synchronized void start()
+    {
+        if (interval <= 0)
+        {
+            logger.info("Bridge probing disabled");
+            return;
+        }
+
+        if (probeTask != null)
+        {
+            logger.warn("Bridge probing already started");
+            return;
+        }
+
+        logger.info(
+            "Bridge probe interval: " + interval + " ms, timeout: "
+                + timeout + " ms");
+
+        probeTask = executor.scheduleAtFixedRate(
+            new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    probeAll();
+                }
+            },
+            interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops probing the bridges.
+     */
+    public synchronized void stop()
+    {
+        if (probeTask != null)
+        {
+            probeTask.cancel(true);
+            probeTask = null;
+        }
+        missedProbes.clear();
+    }
+
+    /**
+     * Sends the probe to every bridge which is not being probed already.
+     */
+    void probeAll()
+    {
+        for (BridgeSelector.BridgeState bridge : selector.getBridgeStates())
+        {
+            String bridgeJid = bridge.getJid();
+
+            if (inProgress.add(bridgeJid))
+            {
+                probe(bridgeJid);
+            }
+        }
+    }
+
+    /**
+     * Sends the probe to given bridge. No thread waits for the response, it is
+     * processed by the listener of the reply.
+     *
+     * @param bridgeJid the JID of the bridge to probe.
+     *
+     * @return the future which is completed with <tt>true</tt> if the bridge
+     *         has answered the probe in time or with <tt>false</tt> otherwise,
+     *         after the outcome has been reported to the selector.
+     */
+    SettableFuture<Boolean> probe(final String bridgeJid)
+    {
+        DiscoverInfo ping = new DiscoverInfo();
+        ping.setType(IQ.Type.GET);
+        ping.setTo(bridgeJid);
+
+        final long start = System.nanoTime();
+        final SettableFuture<Boolean> result = new SettableFuture<Boolean>();
+
+        connection.sendPacketAsync(ping, timeout).addListener(
+            new SettableFuture.Listener<Packet>()
+            {
+                @Override
+                public void onSuccess(Packet response)
+                {
+                    long rtt
+                        = TimeUnit.NANOSECONDS.toMillis(
+                                System.nanoTime() - start);
+
+                    boolean answered
+                        = onProbeResponse(bridgeJid, response, rtt);
+
+                    inProgress.remove(bridgeJid);
+
+                    result.complete(answered);
+                }
+
+                @Override
+                public void onFailure(Throwable error)
+                {
+                    logger.warn(
+                        "Probe failed for: " + bridgeJid + ": " + error);
+
+                    onProbeMissed(bridgeJid);
+
+                    inProgress.remove(bridgeJid);
+
+                    result.complete(false);
+                }
+            });
+
+        return result;
+    }
+
+    /**
+     * Processes the response to the probe.
+     *
+     * @param bridgeJid the JID of the probed bridge.
+     * @param response the response or <tt>null</tt> if the probe has timed
+     *                 out.
+     * @param rtt the round trip time of the probe in milliseconds.
+     *
+     * @return <tt>true</tt> if the bridge has answered the probe in time.
+     */
+    private boolean onProbeResponse(String bridgeJid, Packet response,
+                                    long rtt)
+    {
+        if (response instanceof IQ
+            && IQ.Type.RESULT.equals(((IQ) response).getType()))
+        {
+            missedProbes.remove(bridgeJid);
+
+            selector.onProbeResponse(bridgeJid, rtt);
+
+            return true;
+        }
+
+        if (response == null)
+        {
+            logger.warn("Probe timed out for: " + bridgeJid);
+        }
+        else
+        {
+            logger.warn(
+                "Probe failed for: " + bridgeJid + ": " + response.toXML());
+        }
+
+        onProbeMissed(bridgeJid);
+
+        return false;
+    }
+
+    /**
+     * Counts the probe which the bridge has not answered and marks the bridge
+     * as not operational after too many of them in a row.
+     *
+     * @param bridgeJid the JID of the probed bridge.
+     */
+    private void onProbeMissed(String bridgeJid)
+    {
+        selector.onProbeTimeout(bridgeJid);
+
+        Integer missed = missedProbes.get(bridgeJid);
+        missed = missed == null ? 1 : missed + 1;
+        missedProbes.put(bridgeJid, missed);
+
+        if (missed >= maxMissed)
+        {
+            logger.error(
+                bridgeJid + " has not answered " + missed + " probes");
+
+            selector.updateBridgeOperationalStatus(bridgeJid, false);
+        }
+    }
+}
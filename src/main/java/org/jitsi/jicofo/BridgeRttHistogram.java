@@ -0,0 +1,138 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+/**
+ * Histogram of the round trip times of the requests sent to the videobridge,
+ * either the probes or the Colibri requests. The buckets have fixed upper
+ * bounds, so that the histograms of different bridges can be compared with
+ * each other.
+ */
+public class BridgeRttHistogram
+{
+    /**
+     * Upper bounds of the buckets in milliseconds. The last bucket holds
+     * everything above the last bound.
+     */
+    public static final long[] BUCKET_BOUNDS
+        = { 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000 };
+
+    /**
+     * The number of samples in each bucket.
+     */
+    private final long[] counts = new long[BUCKET_BOUNDS.length + 1];
+
+    /**
+     * The number of all samples.
+     */
+    private long count;
+
+    /**
+     * The number of requests which have not been answered in time.
+     */
+    private long timeoutCount;
+
+    /**
+     * The last round trip time recorded or -1 if none.
+     */
+    private long lastRtt = -1;
+
+    /**
+     * Records the round trip time of the request.
+     *
+     * @param rtt the round trip time in milliseconds.
+     */
+    public synchronized void record(long rtt)
+    {
+        int idx = 0;
+        while (idx < BUCKET_BOUNDS.length && rtt > BUCKET_BOUNDS[idx])
+        {
+            idx++;
+        }
+        counts[idx]++;
+        count++;
+        lastRtt = rtt;
+    }
+
+    /**
+     * Records the request which has not been answered in time.
+     */
+    public synchronized void recordTimeout()
+    {
+        timeoutCount++;
+    }
+
+    /**
+     * Returns the copy of the bucket counts. The bucket with index
+     * <tt>i</tt> holds the samples not greater than
+     * <tt>BUCKET_BOUNDS[i]</tt>, the last one holds the rest.
+     */
+    public synchronized long[] getCounts()
+    {
+        return counts.clone();
+    }
+
+    /**
+     * Returns the number of recorded round trip times.
+     */
+    public synchronized long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Returns the number of requests which have not been answered in time.
+     */
+    public synchronized long getTimeoutCount()
+    {
+        return timeoutCount;
+    }
+
+    /**
+     * Returns the last round trip time recorded or -1 if none.
+     */
+    public synchronized long getLastRtt()
+    {
+        return lastRtt;
+    }
+
+    /**
+     * Estimates given percentile of the round trip times.
+     *
+     * @param percentile the percentile in range (0, 100].
+     *
+     * @return the upper bound of the bucket which contains the percentile,
+     *         {@link Long#MAX_VALUE} if it is the last bucket or -1 if no
+     *         samples have been recorded.
+     */
+    public synchronized long getPercentile(double percentile)
+    {
+        if (count == 0)
+            return -1;
+
+        long rank = (long) Math.ceil(count * percentile / 100d);
+        long sum = 0;
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++)
+        {
+            sum += counts[i];
+            if (sum >= rank)
+                return BUCKET_BOUNDS[i];
+        }
+        return Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import java.util.*;
+
+/**
+ * Strategy used by {@link BridgeSelector} to decide in which order
+ * videobridges should be tried when allocating channels for a conference.
+ *
+ * Custom strategies can be provided by registering an implementation of this
+ * interface as an OSGi service. The strategy to be used is selected by its
+ * name with {@link BridgeSelector#BRIDGE_SELECTION_STRATEGY_PNAME} config
+ * property. Built-in strategies are:
+ * <li>{@link LeastLoadedStrategy#NAME}</li>
+ * <li>{@link ConferenceCountStrategy#NAME}</li>
+ * <li>{@link WeightedRoundRobinStrategy#NAME}</li>
+ * <li>{@link RoomHashStrategy#NAME}</li>
+ */
+public interface BridgeSelectionStrategy
+{
+    /**
+     * Returns the name under which this strategy can be selected in the
+     * config.
+     */
+    String getName();
+
+    /**
+     * Orders the list of *operational* bridges, so that the one which should
+     * be tried first is at the head of the list.
+     *
+     * @param bridges the list of operational bridges to be reordered in place.
+     *                When passed to the strategy the list is sorted by stress
+     *                score (see {@link BridgeStressScore}) with the least
+     *                loaded bridge first.
+     * @param roomName the name of the conference room for which the bridge is
+     *                 being selected or <tt>null</tt> if unknown.
+     */
+    void order(List<BridgeSelector.BridgeState> bridges, String roomName);
+
+    /**
+     * Notifies the strategy that the conference has been started on given
+     * bridge. Unlike {@link #order(List, String)}, which may be called many
+     * times for the same conference, it is called once for every bridge that
+     * the conference has committed to.
+     *
+     * @param bridgeJid the JID of the bridge selected for the conference.
+     * @param roomName the name of the conference room or <tt>null</tt> if
+     *                 unknown.
+     */
+    void bridgeSelected(String bridgeJid, String roomName);
+
+    /**
+     * Notifies the strategy that given bridge has gone down or has been
+     * removed, so any state kept for it can be discarded.
+     *
+     * @param bridgeJid the JID of the bridge.
+     */
+    void bridgeRemoved(String bridgeJid);
+}
@@ -20,14 +20,19 @@ package org.jitsi.jicofo;
 import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
 import net.java.sip.communicator.util.Logger;
 
+import org.jitsi.jicofo.log.*;
 import org.jitsi.protocol.xmpp.*;
+import org.jitsi.protocol.xmpp.util.*;
 import org.jitsi.service.configuration.*;
 import org.jitsi.util.*;
-import org.jitsi.videobridge.stats.*;
+import org.jitsi.videobridge.eventadmin.*;
+import org.jitsi.videobridge.osgi.*;
 
 import org.jivesoftware.smack.packet.*;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 /**
  * Class exposes methods for selecting best videobridge from all currently
@@ -69,16 +74,200 @@ public class BridgeSelector
     public static final String BRIDGE_FAILURE_RESET_THRESHOLD_PNAME
         = "org.jitsi.focus.BRIDGE_FAILURE_RESET_THRESHOLD";
 
+    /**
+     * Configuration property which specifies the maximal amount of time
+     * the selector will wait before giving another chance to the bridge which
+     * keeps on failing. The time is doubled on every consecutive failure,
+     * starting from {@link #BRIDGE_FAILURE_RESET_THRESHOLD_PNAME}.
+     */
+    public static final String BRIDGE_FAILURE_MAX_BACKOFF_PNAME
+        = "org.jitsi.focus.BRIDGE_FAILURE_MAX_BACKOFF";
+
+    /**
+     * Configuration property which specifies how long the selector will wait
+     * for the result of the trial allocation on the bridge which is given
+     * another chance after failure, before the trial is allowed to another
+     * conference.
+     */
+    public static final String BRIDGE_TRIAL_TIMEOUT_PNAME
+        = "org.jitsi.focus.BRIDGE_TRIAL_TIMEOUT";
+
+    /**
+     * Property used to configure the order in which the other regions are
+     * tried when there is no operational bridge in the region of
+     * the participant. Single entry is defined by writing the region name
+     * followed by ':' and the comma separated list of regions from the closest
+     * one. Multiple entries are separated with ';'.
+     *
+     * org.jitsi.focus.BRIDGE_REGION_PROXIMITY
+     * =us-east:us-west,eu-west;eu-west:eu-central,us-east
+     *
+     * The regions not listed are tried last.
+     */
+    public static final String BRIDGE_REGION_PROXIMITY_PNAME
+        = "org.jitsi.focus.BRIDGE_REGION_PROXIMITY";
+
+    /**
+     * Configuration property which specifies the name of
+     * {@link BridgeSelectionStrategy} used to order the bridges. It can be
+     * either one of the built-in strategies or the name of the strategy
+     * registered as an OSGi service. {@link LeastLoadedStrategy} is used by
+     * default.
+     */
+    public static final String BRIDGE_SELECTION_STRATEGY_PNAME
+        = "org.jitsi.focus.BRIDGE_SELECTION_STRATEGY";
+
+    /**
+     * Configuration property which specifies how many video streams are added
+     * to the load of the bridge for every endpoint allocated on it, until
+     * the bridge reports stats which include that endpoint.
+     */
+    public static final String RESERVED_STREAMS_PER_ENDPOINT_PNAME
+        = "org.jitsi.focus.BRIDGE_RESERVED_STREAMS_PER_ENDPOINT";
+
+    /**
+     * By default each endpoint is assumed to send one and receive one video
+     * stream.
+     */
+    public static final int DEFAULT_RESERVED_STREAMS_PER_ENDPOINT = 2;
+
+    /**
+     * Configuration property which specifies how old the allocation has to be
+     * when the stats update arrives in order to consider it reflected by that
+     * update. It accounts for the time the bridge needs to generate and
+     * publish the stats.
+     */
+    public static final String RESERVATION_STATS_LAG_PNAME
+        = "org.jitsi.focus.BRIDGE_RESERVATION_STATS_LAG";
+
+    /**
+     * One second.
+     */
+    public static final long DEFAULT_RESERVATION_STATS_LAG = 1000L;
+
+    /**
+     * Configuration property which specifies the time after which
+     * the allocation reservation is dropped even if no stats have been
+     * received from the bridge.
+     */
+    public static final String RESERVATION_TTL_PNAME
+        = "org.jitsi.focus.BRIDGE_RESERVATION_TTL";
+
+    /**
+     * Thirty seconds.
+     */
+    public static final long DEFAULT_RESERVATION_TTL = 30L * 1000L;
+
     /**
      * Five minutes.
      */
     public static final long DEFAULT_FAILURE_RESET_THRESHOLD = 5L * 60L * 1000L;
 
+    /**
+     * Thirty minutes.
+     */
+    public static final long DEFAULT_FAILURE_MAX_BACKOFF = 30L * 60L * 1000L;
+
+    /**
+     * Thirty seconds.
+     */
+    public static final long DEFAULT_TRIAL_TIMEOUT = 30L * 1000L;
+
+    /**
+     * The maximal part of the failure backoff added at random, so that
+     * the bridges which have failed at the same time are not retried all at
+     * once.
+     */
+    private static final double FAILURE_BACKOFF_JITTER = 0.2;
+
+    /**
+     * The state of the circuit breaker which guards allocations on the bridge.
+     */
+    public enum BreakerState
+    {
+        /**
+         * The bridge is working and used for the allocations.
+         */
+        CLOSED,
+
+        /**
+         * The bridge has failed and is not used until its backoff time
+         * elapses.
+         */
+        OPEN,
+
+        /**
+         * The backoff time has elapsed and single trial allocation is allowed
+         * on the bridge. Its result either closes or opens the breaker again.
+         */
+        HALF_OPEN
+    }
+
     /**
      * The amount of time we will wait after bridge instance failure before it
      * will get another chance.
      */
-    private long failureResetThreshold;
+    private volatile long failureResetThreshold;
+
+    /**
+     * The maximal amount of time we will wait after bridge failure.
+     */
+    private volatile long failureMaxBackoff;
+
+    /**
+     * How long the trial allocation can take before another one is allowed.
+     */
+    private final long trialTimeout;
+
+    /**
+     * Used to add jitter to the failure backoff.
+     */
+    private final Random random = new Random();
+
+    /**
+     * Counts the transitions of bridge circuit breakers, indexed by
+     * the ordinal of the {@link BreakerState} entered.
+     */
+    private final AtomicLong[] breakerTransitions
+        = new AtomicLong[BreakerState.values().length];
+
+    /**
+     * The number of video streams reserved for every endpoint allocated on
+     * the bridge until it reports new stats.
+     */
+    private final int reservedStreamsPerEndpoint;
+
+    /**
+     * How old the reservation has to be in order to be cleared by the stats
+     * update.
+     */
+    private final long reservationStatsLag;
+
+    /**
+     * The time after which reservations expire.
+     */
+    private final long reservationTtl;
+
+    /**
+     * Calculates the stress score of the bridges used to order them.
+     */
+    private final BridgeStressScore stressScore;
+
+    /**
+     * The capacity of the bridges which have none configured explicitly.
+     */
+    private final BridgeCapacity defaultCapacity;
+
+    /**
+     * The map of bridge JIDs to their configured capacity.
+     */
+    private final Map<String, BridgeCapacity> bridgeCapacities;
+
+    /**
+     * The queue of new conferences waiting for the capacity when all bridges
+     * are full.
+     */
+    private final BridgeAdmissionQueue admissionQueue;
 
     /**
      * Operation set used to subscribe to PubSub nodes notifications.
@@ -86,21 +275,67 @@ public class BridgeSelector
     private final OperationSetSubscription subscriptionOpSet;
 
     /**
-     * The map of bridge JID to <tt>BridgeState</tt>.
+     * The map of bridge JID to <tt>BridgeState</tt>. Modified by discovery and
+     * pub-sub threads and read by conference threads concurrently.
+     */
+    private final ConcurrentMap<String, BridgeState> bridges
+        = new ConcurrentHashMap<String, BridgeState>();
+
+    /**
+     * The index of all bridges kept ordered by *operational* status and load,
+     * so that the least loaded bridge can be found without sorting. Every
+     * bridge state change replaces the entry of that bridge, so the index
+     * never has to be sorted from scratch.
+     */
+    private final ConcurrentSkipListSet<OrderKey> index
+        = new ConcurrentSkipListSet<OrderKey>();
+
+    /**
+     * The time after which at least one of the failed bridges should get
+     * another chance. {@link Long#MAX_VALUE} if there are no failed bridges.
      */
-    private Map<String, BridgeState> bridges
-        = new HashMap<String, BridgeState>();
+    private volatile long nextFailureResetCheck = Long.MAX_VALUE;
 
     /**
      * Pre-configured JVB used as last chance option even if no bridge has been
      * auto-detected on startup.
      */
-    private String preConfiguredBridge;
+    private volatile String preConfiguredBridge;
+
+    /**
+     * The map of Pub-Sub nodes to videobridge JIDs. Read only once
+     * the selector has been created.
+     */
+    private final Map<String, String> pubSubToBridge;
 
     /**
-     * The map of Pub-Sub nodes to videobridge JIDs.
+     * The map of region names to the lists of the other regions ordered from
+     * the closest one.
      */
-    private Map<String, String> pubSubToBridge = new HashMap<String, String>();
+    private final Map<String, List<String>> regionProximity;
+
+    /**
+     * The map of built-in bridge selection strategies names to instances.
+     */
+    private final Map<String, BridgeSelectionStrategy> builtInStrategies
+        = new HashMap<String, BridgeSelectionStrategy>();
+
+    /**
+     * The name of the bridge selection strategy read from the config.
+     */
+    private final String strategyName;
+
+    /**
+     * The strategy used to order the bridges. Stays <tt>null</tt> until
+     * the configured strategy is found.
+     */
+    private volatile BridgeSelectionStrategy strategy;
+
+    /**
+     * Indicates whether we have warned about configured strategy not being
+     * available, so that the log is not flooded on every allocation.
+     */
+    private boolean strategyMissingLogged;
 
     /**
      * Creates new instance of {@link BridgeSelector}.
@@ -114,8 +349,67 @@ public class BridgeSelector
 
         ConfigurationService config = FocusBundleActivator.getConfigService();
 
+        addBuiltInStrategy(new LeastLoadedStrategy());
+        addBuiltInStrategy(new ConferenceCountStrategy());
+        addBuiltInStrategy(new WeightedRoundRobinStrategy(config));
+        addBuiltInStrategy(new RoomHashStrategy());
+
+        strategyName
+            = config.getString(
+                    BRIDGE_SELECTION_STRATEGY_PNAME, LeastLoadedStrategy.NAME);
+
+        logger.info("Bridge selection strategy: " + strategyName);
+
+        stressScore = new BridgeStressScore(config);
+
+        defaultCapacity = BridgeCapacity.getDefault(config);
+        bridgeCapacities
+            = BridgeCapacity.parse(
+                    config.getString(BridgeCapacity.BRIDGE_CAPACITY_PNAME),
+                    defaultCapacity);
+
+        logger.info("Default bridge capacity: " + defaultCapacity);
+
+        admissionQueue = new BridgeAdmissionQueue(this, config);
+
+        reservedStreamsPerEndpoint
+            = config.getInt(
+                    RESERVED_STREAMS_PER_ENDPOINT_PNAME,
+                    DEFAULT_RESERVED_STREAMS_PER_ENDPOINT);
+        reservationStatsLag
+            = config.getLong(
+                    RESERVATION_STATS_LAG_PNAME, DEFAULT_RESERVATION_STATS_LAG);
+        reservationTtl
+            = config.getLong(RESERVATION_TTL_PNAME, DEFAULT_RESERVATION_TTL);
+
+        for (int i = 0; i < breakerTransitions.length; i++)
+        {
+            breakerTransitions[i] = new AtomicLong();
+        }
+
+        setFailureResetThreshold(
+            config.getLong( BRIDGE_FAILURE_RESET_THRESHOLD_PNAME,
+                            DEFAULT_FAILURE_RESET_THRESHOLD));
+
+        logger.info(
+            "Bridge failure reset threshold: " + getFailureResetThreshold());
+
+        failureMaxBackoff
+            = config.getLong(
+                    BRIDGE_FAILURE_MAX_BACKOFF_PNAME,
+                    DEFAULT_FAILURE_MAX_BACKOFF);
+        trialTimeout
+            = config.getLong(BRIDGE_TRIAL_TIMEOUT_PNAME, DEFAULT_TRIAL_TIMEOUT);
+
+        regionProximity
+            = parseRegionProximity(
+                    config.getString(BRIDGE_REGION_PROXIMITY_PNAME));
+
         String mappingPropertyValue = config.getString(BRIDGE_TO_PUBSUB_PNAME);
 
+        Map<String, String> pubSubMapping = new HashMap<String, String>();
+        pubSubToBridge = Collections.unmodifiableMap(pubSubMapping);
+
         if (StringUtils.isNullOrEmpty(mappingPropertyValue))
         {
             return;
@@ -127,17 +421,54 @@ public class BridgeSelector
             String[] bridgeAndNode = pair.split(":");
             String bridge = bridgeAndNode[0];
             String pubSubNode = bridgeAndNode[1];
-            pubSubToBridge.put(pubSubNode, bridge);
+            pubSubMapping.put(pubSubNode, bridge);
 
             logger.info("Pub-sub mapping: " + pubSubNode + " -> " + bridge);
         }
+    }
 
-        setFailureResetThreshold(
-            config.getLong( BRIDGE_FAILURE_RESET_THRESHOLD_PNAME,
-                            DEFAULT_FAILURE_RESET_THRESHOLD));
+    /**
+     * Parses the value of {@link #BRIDGE_REGION_PROXIMITY_PNAME}.
+     *
+     * @param proximityPropertyValue the value of the property.
+     *
+     * @return unmodifiable map of region names to the lists of the other
+     *         regions ordered from the closest one.
+     */
+    private static Map<String, List<String>> parseRegionProximity(
+            String proximityPropertyValue)
+    {
+        Map<String, List<String>> proximity
+            = new HashMap<String, List<String>>();
 
-        logger.info(
-            "Bridge failure reset threshold: " + getFailureResetThreshold());
+        if (StringUtils.isNullOrEmpty(proximityPropertyValue))
+        {
+            return Collections.unmodifiableMap(proximity);
+        }
+
+        for (String entry : proximityPropertyValue.split(";"))
+        {
+            String[] regionAndNeighbours = entry.split(":");
+            String region = regionAndNeighbours[0].trim();
+            if (region.length() == 0)
+                continue;
+
+            List<String> neighbours = new ArrayList<String>();
+            if (regionAndNeighbours.length > 1)
+            {
+                for (String neighbour : regionAndNeighbours[1].split(","))
+                {
+                    neighbour = neighbour.trim();
+                    if (neighbour.length() > 0)
+                        neighbours.add(neighbour);
+                }
+            }
+            proximity.put(region, Collections.unmodifiableList(neighbours));
+
+            logger.info("Region proximity: " + region + " -> " + neighbours);
+        }
+
+        return Collections.unmodifiableMap(proximity);
     }
 
     /**
@@ -149,7 +480,9 @@ public class BridgeSelector
      */
     public void addJvbAddress(String bridgeJid)
     {
-        if (isJvbOnTheList(bridgeJid))
+        BridgeState bridge = new BridgeState(bridgeJid);
+
+        if (bridges.putIfAbsent(bridgeJid, bridge) != null)
         {
             return;
         }
@@ -169,7 +502,52 @@ public class BridgeSelector
             logger.warn("No pub-sub node mapped for " + bridgeJid);
         }
 
-        bridges.put(bridgeJid, new BridgeState(bridgeJid));
+        bridge.updateIndex();
+    }
+
+    /**
+     * Returns the states of all bridges known to this selector in no
+     * particular order.
+     */
+    public List<BridgeState> getBridgeStates()
+    {
+        return new ArrayList<BridgeState>(bridges.values());
+    }
+
+    /**
+     * Returns the state of the bridge with given JID.
+     *
+     * @param bridgeJid the XMPP address of the bridge.
+     *
+     * @return the <tt>BridgeState</tt> or <tt>null</tt> if the bridge is not
+     *         known to this selector.
+     */
+    public BridgeState getBridgeState(String bridgeJid)
+    {
+        return bridges.get(bridgeJid);
+    }
+
+    /**
+     * Starts or stops draining of the bridge. Draining bridge gets no new
+     * conferences, but keeps serving the ones already allocated on it.
+     *
+     * @param bridgeJid the XMPP address of the bridge.
+     * @param draining <tt>true</tt> to start draining the bridge or
+     *                 <tt>false</tt> to put it back in rotation.
+     *
+     * @return <tt>false</tt> if the bridge is not known to this selector.
+     */
+    public boolean setBridgeDraining(String bridgeJid, boolean draining)
+    {
+        BridgeState bridge = bridges.get(bridgeJid);
+        if (bridge == null)
+        {
+            logger.warn("No bridge registered for jid: " + bridgeJid);
+            return false;
+        }
+
+        bridge.setDrainRequested(draining);
+        return true;
     }
 
     /**
@@ -197,7 +575,13 @@ public class BridgeSelector
     {
         logger.info("Removing JVB: " + bridgeJid);
 
-        bridges.remove(bridgeJid);
+        BridgeState bridge = bridges.remove(bridgeJid);
+        if (bridge != null)
+        {
+            bridge.removeFromIndex();
+        }
+
+        notifyBridgeRemoved(bridgeJid);
 
         String pubSubNode = findNodeForBridge(bridgeJid);
         if (pubSubNode != null)
@@ -213,111 +597,697 @@ public class BridgeSelector
     /**
      * Returns least loaded and *operational* videobridge. By operational it
      * means that it was not reported by any of conference focuses to fail while
-     * allocating channels.
+     * allocating channels. Draining bridges are never returned. If the bridge
+     * which is given another chance after failure is returned, it will not be
+     * returned again until the result of the trial allocation is reported
+     * with {@link #updateBridgeOperationalStatus(String, boolean)}.
      *
      * @return the JID of least loaded videobridge or <tt>null</tt> if there are
-     *         not any operational bridges currently.
+     *         not any operational bridges currently or the trial of the one
+     *         given another chance has been taken already.
      */
     public String selectVideobridge()
     {
-        List<String> bridges = getPrioritizedBridgesList();
-        return bridges.size() > 0 ? bridges.get(0) : null;
+        return selectVideobridge(null);
     }
 
     /**
-     * Returns the list of all known videobridges JIDs ordered by load and
-     * *operational* status. Not operational bridges are at the end of the list.
+     * Returns the videobridge which should be tried first when allocating
+     * channels for given room. It is the same bridge which would be at the head
+     * of {@link #getPrioritizedBridgesList(String)}, but for the default
+     * {@link LeastLoadedStrategy} it is read straight from the index without
+     * building the list.
+     *
+     * @param roomName the name of the conference room for which the bridge is
+     *                 being selected or <tt>null</tt> if unknown.
+     *
+     * @return the JID of the videobridge or <tt>null</tt> if there are not any
+     *         bridges available.
      */
-    public List<String> getPrioritizedBridgesList()
+    public String selectVideobridge(String roomName)
     {
-        ArrayList<BridgeState> bridgeList
-            = new ArrayList<BridgeState>(bridges.values());
-
-        Collections.sort(bridgeList);
+        return selectVideobridge(roomName, null);
+    }
 
-        boolean isAnyBridgeUp = false;
-        ArrayList<String> bridgeJidList = new ArrayList<String>();
-        for (BridgeState bridgeState : bridgeList)
+    /**
+     * Returns the videobridge which should be tried first when allocating
+     * channels for given room and region. It is the same bridge which would be
+     * at the head of {@link #getPrioritizedBridgesList(String, String)}.
+     *
+     * @param roomName the name of the conference room for which the bridge is
+     *                 being selected or <tt>null</tt> if unknown.
+     * @param region the region of the participants of the conference or
+     *               <tt>null</tt> if unknown.
+     *
+     * @return the JID of the videobridge or <tt>null</tt> if there are not any
+     *         bridges available.
+     */
+    public String selectVideobridge(String roomName, String region)
+    {
+        if (region != null || !(getStrategy() instanceof LeastLoadedStrategy))
         {
-            bridgeJidList.add(bridgeState.jid);
-            if (bridgeState.isOperational())
+            List<String> bridgeList
+                = getPrioritizedBridgesList(roomName, region);
+            for (String bridgeJid : bridgeList)
             {
-                isAnyBridgeUp = true;
+                if (tryAcquireBridge(bridgeJid))
+                    return bridgeJid;
             }
+            return null;
         }
-        // Check if we have pre-configured bridge to include in the list
+
+        verifyFailureThresholds();
+
+        for (OrderKey key = firstKey(); key != null; key = index.higher(key))
+        {
+            if (key.isStale())
+                continue;
+
+            // Only the draining and faulty bridges are left
+            if (key.isDraining || !key.isOperational)
+                break;
+
+            // Someone else might have taken the trial in the meantime
+            if (key.bridge.tryAcquireTrial())
+                return key.bridge.jid;
+        }
+
+        // No bridge is up, so the pre-configured one goes first
         if (!StringUtils.isNullOrEmpty(preConfiguredBridge)
-            && !bridgeJidList.contains(preConfiguredBridge))
+            && !bridges.containsKey(preConfiguredBridge))
         {
-            // If no auto-detected bridge is up then put pre-configured up front
-            if (!isAnyBridgeUp)
-            {
-                bridgeJidList.add(0, preConfiguredBridge);
-            }
-            else
-            {
-                bridgeJidList.add(preConfiguredBridge);
-            }
+            return preConfiguredBridge;
         }
-        return bridgeJidList;
+
+        return null;
     }
 
     /**
-     * Updates given *operational* status of the videobridge identified by given
-     * <tt>bridgeJid</tt> address.
+     * Checks if given bridge from the list returned by
+     * {@link #getPrioritizedBridgesList(String, String)} can be used for
+     * channel allocation. The bridge which has failed recently can not be
+     * used and the one which is given another chance after failure can be
+     * used only by the caller which has claimed the trial allocation. It
+     * will not be available again until the result of the trial allocation
+     * is reported with {@link #updateBridgeOperationalStatus(String, boolean)}.
      *
      * @param bridgeJid the XMPP address of the bridge.
-     * @param isWorking <tt>true</tt> if bridge successfully allocated
-     *                  the channels which means it is in *operational* state.
+     *
+     * @return <tt>true</tt> if the bridge can be used by the caller.
      */
-    public void updateBridgeOperationalStatus(String bridgeJid,
-                                              boolean isWorking)
+    public boolean tryAcquireBridge(String bridgeJid)
     {
         BridgeState bridge = bridges.get(bridgeJid);
-        if (bridge != null)
-        {
-            bridge.setIsOperational(isWorking);
-        }
-        else
-        {
-            logger.warn("No bridge registered for jid: " + bridgeJid);
-        }
+
+        // The pre-configured bridge which we know nothing about
+        return bridge == null || bridge.tryAcquireTrial();
     }
 
     /**
-     * Returns videobridge JID for given pub-sub node, but only if it has been
-     * added using {@link #addJvbAddress(String)} method.
+     * Returns the videobridge for new conference. If all operational bridges
+     * have reached their capacity the conference waits in the admission queue
+     * until one of them has room for it. The conference which is waiting
+     * already keeps its place in the queue.
      *
-     * @param pubSubNode the pub-sub node name.
+     * @param roomName the name of the conference room for which the bridge is
+     *                 being selected.
+     * @param region the region of the participants of the conference or
+     *               <tt>null</tt> if unknown.
      *
-     * @return videobridge JID for given pub-sub node.
+     * @return the future completed with the JID of the videobridge or with
+     *         <tt>null</tt> if there are not any bridges available or
+     *         the capacity has not become available in time.
      */
-    public String getBridgeForPubSubNode(String pubSubNode)
+    public SettableFuture<String> admitConference(String roomName,
+                                                  String region)
     {
-        BridgeState bridge = findBridgeForNode(pubSubNode);
-        return bridge != null ? bridge.jid : null;
+        return admissionQueue.admit(roomName, region);
     }
 
     /**
-     * Finds <tt>BridgeState</tt> for given pub-sub node.
-     *
-     * @param pubSubNode the name of pub-sub node to match with the bridge.
-     *
-     * @return <tt>BridgeState</tt> for given pub-sub node name.
+     * Returns <tt>true</tt> if there are operational bridges, but all of
+     * them have reached their capacity.
      */
-    private BridgeState findBridgeForNode(String pubSubNode)
+    public boolean isAtCapacity()
     {
-        String bridgeJid = pubSubToBridge.get(pubSubNode);
-        if (bridgeJid != null)
+        verifyFailureThresholds();
+
+        for (OrderKey key = firstKey(); key != null; key = index.higher(key))
         {
-            return bridges.get(bridgeJid);
+            if (key.isStale())
+                continue;
+
+            // The bridges with room for new conference go first
+            return !key.isDraining && key.isOperational && key.isFull;
         }
-        return null;
+        return false;
     }
 
     /**
-     * Finds pub-sub node name for given videobridge JID.
-     *
+     * Returns the queue of new conferences waiting for the bridge capacity.
+     */
+    public BridgeAdmissionQueue getAdmissionQueue()
+    {
+        return admissionQueue;
+    }
+
+    /**
+     * Returns the list of all known videobridges JIDs ordered by load and
+     * *operational* status. Not operational bridges are at the end of the list.
+     */
+    public List<String> getPrioritizedBridgesList()
+    {
+        return getPrioritizedBridgesList(null);
+    }
+
+    /**
+     * Returns the list of all known videobridges JIDs ordered by
+     * the {@link BridgeSelectionStrategy} and *operational* status.
+     * Not operational bridges are at the end of the list.
+     *
+     * @param roomName the name of the conference room for which the bridge is
+     *                 being selected or <tt>null</tt> if unknown.
+     */
+    public List<String> getPrioritizedBridgesList(String roomName)
+    {
+        return getPrioritizedBridgesList(roomName, null);
+    }
+
+    /**
+     * Returns the list of all known videobridges JIDs ordered by
+     * the {@link BridgeSelectionStrategy} and *operational* status.
+     * Operational bridges in given region go first, followed by the ones in
+     * the other regions, from the closest one according to
+     * {@link #BRIDGE_REGION_PROXIMITY_PNAME}. Operational bridges which have
+     * reached their capacity follow by load and not operational bridges are
+     * at the end of the list. Draining bridges are not included. The bridges
+     * taken from the list must be checked with
+     * {@link #tryAcquireBridge(String)} before they are used for
+     * the allocation.
+     *
+     * @param roomName the name of the conference room for which the bridge is
+     *                 being selected or <tt>null</tt> if unknown.
+     * @param region the region of the participants of the conference or
+     *               <tt>null</tt> if unknown.
+     */
+    public List<String> getPrioritizedBridgesList(String roomName,
+                                                  final String region)
+    {
+        verifyFailureThresholds();
+
+        ArrayList<BridgeState> operationalBridges
+            = new ArrayList<BridgeState>(bridges.size());
+        ArrayList<BridgeState> fullBridges = new ArrayList<BridgeState>();
+        ArrayList<BridgeState> faultyBridges = new ArrayList<BridgeState>();
+        for (OrderKey key : index)
+        {
+            if (key.isStale())
+                continue;
+
+            // Only the draining bridges are left
+            if (key.isDraining)
+                break;
+
+            if (key.isOperational && key.isFull)
+            {
+                fullBridges.add(key.bridge);
+            }
+            else if (key.isOperational)
+            {
+                operationalBridges.add(key.bridge);
+            }
+            else
+            {
+                faultyBridges.add(key.bridge);
+            }
+        }
+
+        BridgeSelectionStrategy strategy = getStrategy();
+        try
+        {
+            strategy.order(operationalBridges, roomName);
+        }
+        catch (RuntimeException e)
+        {
+            logger.error(
+                "Bridge selection strategy " + strategy.getName()
+                    + " has failed, using load order", e);
+        }
+
+        if (region != null)
+        {
+            // Stable sort keeps the strategy order within the regions
+            final List<String> proximity = regionProximity.get(region);
+            Collections.sort(
+                operationalBridges,
+                new Comparator<BridgeState>()
+                {
+                    @Override
+                    public int compare(BridgeState b1, BridgeState b2)
+                    {
+                        int r1
+                            = getRegionRank(b1.getRegion(), region, proximity);
+                        int r2
+                            = getRegionRank(b2.getRegion(), region, proximity);
+
+                        return r1 < r2 ? -1 : (r1 == r2 ? 0 : 1);
+                    }
+                });
+        }
+
+        ArrayList<String> bridgeJidList = new ArrayList<String>();
+        for (BridgeState bridgeState : operationalBridges)
+        {
+            bridgeJidList.add(bridgeState.jid);
+        }
+        for (BridgeState bridgeState : fullBridges)
+        {
+            bridgeJidList.add(bridgeState.jid);
+        }
+        for (BridgeState bridgeState : faultyBridges)
+        {
+            bridgeJidList.add(bridgeState.jid);
+        }
+
+        boolean isAnyBridgeUp
+            = !operationalBridges.isEmpty() || !fullBridges.isEmpty();
+        // Check if we have pre-configured bridge to include in the list
+        BridgeState preConfiguredState
+            = preConfiguredBridge != null
+                ? bridges.get(preConfiguredBridge) : null;
+        if (!StringUtils.isNullOrEmpty(preConfiguredBridge)
+            && !bridgeJidList.contains(preConfiguredBridge)
+            && (preConfiguredState == null || !preConfiguredState.isDraining()))
+        {
+            // If no auto-detected bridge is up then put pre-configured up front
+            if (!isAnyBridgeUp)
+            {
+                bridgeJidList.add(0, preConfiguredBridge);
+            }
+            else
+            {
+                bridgeJidList.add(preConfiguredBridge);
+            }
+        }
+        return bridgeJidList;
+    }
+
+    /**
+     * Tells how far the bridge region is from the region of the participants.
+     *
+     * @param bridgeRegion the region of the bridge or <tt>null</tt>.
+     * @param region the region of the participants.
+     * @param proximity the regions ordered by the proximity to
+     *                  <tt>region</tt> or <tt>null</tt> if not configured.
+     *
+     * @return 0 for the same region, the position in the proximity list
+     *         increased by one for the regions listed there or the size of
+     *         the list increased by one for all the other regions.
+     */
+    private static int getRegionRank(String bridgeRegion,
+                                     String region,
+                                     List<String> proximity)
+    {
+        if (region.equals(bridgeRegion))
+            return 0;
+
+        int size = proximity != null ? proximity.size() : 0;
+        if (bridgeRegion == null || size == 0)
+            return size + 1;
+
+        int idx = proximity.indexOf(bridgeRegion);
+
+        return idx != -1 ? idx + 1 : size + 1;
+    }
+
+    /**
+     * Returns the first entry of the {@link #index} or <tt>null</tt> if it is
+     * empty.
+     */
+    private OrderKey firstKey()
+    {
+        try
+        {
+            return index.first();
+        }
+        catch (NoSuchElementException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Gives failed bridges another chance if it has been long enough since
+     * their failure. Bridges are checked only when the earliest of the circuit
+     * breaker deadlines has passed, so that the selection does not have to
+     * visit every bridge.
+     */
+    private void verifyFailureThresholds()
+    {
+        if (System.currentTimeMillis() < nextFailureResetCheck)
+            return;
+
+        synchronized (index)
+        {
+            long nextCheck = Long.MAX_VALUE;
+            for (BridgeState bridge : bridges.values())
+            {
+                nextCheck = Math.min(nextCheck, bridge.verifyBreaker());
+            }
+            nextFailureResetCheck = nextCheck;
+        }
+    }
+
+    /**
+     * Schedules circuit breaker verification for the bridge that has just
+     * failed or started the trial allocation.
+     *
+     * @param deadline the time after which the breaker of the bridge should
+     *                 be verified.
+     */
+    private void scheduleFailureResetCheck(long deadline)
+    {
+        synchronized (index)
+        {
+            if (deadline < nextFailureResetCheck)
+            {
+                nextFailureResetCheck = deadline;
+            }
+        }
+    }
+
+    /**
+     * Calculates the time to wait before the bridge gets another chance.
+     * It is doubled on every consecutive failure, up to
+     * {@link #failureMaxBackoff}, and the random jitter is added to it.
+     *
+     * @param consecutiveFailures the number of times the bridge has failed
+     *                            since it was last working.
+     *
+     * @return the backoff time in millis.
+     */
+    private long calculateBackoff(int consecutiveFailures)
+    {
+        long base = getFailureResetThreshold();
+        long maxBackoff = Math.max(base, failureMaxBackoff);
+        long backoff = base;
+        for (int i = 1; i < consecutiveFailures && backoff < maxBackoff; i++)
+        {
+            backoff *= 2;
+        }
+        backoff = Math.min(backoff, maxBackoff);
+
+        double jitter;
+        synchronized (random)
+        {
+            jitter = random.nextDouble();
+        }
+        return backoff + (long) (jitter * FAILURE_BACKOFF_JITTER * backoff);
+    }
+
+    /**
+     * Counts the circuit breaker transition and sends the event about it.
+     *
+     * @param bridge the bridge whose circuit breaker has changed the state.
+     * @param state the state which has been entered.
+     * @param consecutiveFailures the number of consecutive bridge failures.
+     * @param retryDelay the time after which the bridge gets another chance.
+     */
+    private void onBreakerStateChanged(BridgeState bridge,
+                                       BreakerState state,
+                                       int consecutiveFailures,
+                                       long retryDelay)
+    {
+        breakerTransitions[state.ordinal()].incrementAndGet();
+
+        logger.info(
+            "Bridge " + bridge.jid + " circuit breaker " + state
+                + ", failures: " + consecutiveFailures
+                + ", retry delay: " + retryDelay);
+
+        EventAdmin eventAdmin = FocusBundleActivator.getEventAdmin();
+        if (eventAdmin != null)
+        {
+            eventAdmin.sendEvent(
+                EventFactory.bridgeBreakerStateChanged(
+                        bridge.jid,
+                        state.toString(),
+                        consecutiveFailures,
+                        retryDelay));
+        }
+    }
+
+    /**
+     * Returns how many times circuit breakers of the bridges have entered
+     * given state.
+     *
+     * @param state the state of the circuit breaker.
+     */
+    public long getBreakerTransitionCount(BreakerState state)
+    {
+        return breakerTransitions[state.ordinal()].get();
+    }
+
+    /**
+     * Returns the {@link BridgeSelectionStrategy} used by this selector.
+     * Strategies registered as OSGi services take precedence over the built-in
+     * ones with the same name. If configured strategy can not be found
+     * {@link LeastLoadedStrategy} is used until it becomes available.
+     */
+    public BridgeSelectionStrategy getStrategy()
+    {
+        BridgeSelectionStrategy strategy = this.strategy;
+        if (strategy != null)
+        {
+            return strategy;
+        }
+
+        strategy = findStrategy(strategyName);
+        if (strategy != null)
+        {
+            this.strategy = strategy;
+            return strategy;
+        }
+
+        if (!strategyMissingLogged)
+        {
+            strategyMissingLogged = true;
+            logger.warn(
+                "Bridge selection strategy " + strategyName
+                    + " not found, using " + LeastLoadedStrategy.NAME);
+        }
+        return builtInStrategies.get(LeastLoadedStrategy.NAME);
+    }
+
+    /**
+     * Sets the {@link BridgeSelectionStrategy} to be used by this selector.
+     *
+     * @param strategy the strategy instance to be used from now on.
+     */
+    public void setStrategy(BridgeSelectionStrategy strategy)
+    {
+        if (strategy == null)
+            throw new NullPointerException("strategy");
+
+        logger.info("Bridge selection strategy: " + strategy.getName());
+
+        this.strategy = strategy;
+    }
+
+    /**
+     * Finds {@link BridgeSelectionStrategy} for given name.
+     *
+     * @param name the name of the strategy to find.
+     *
+     * @return the strategy registered in OSGi or the built-in one for given
+     *         name or <tt>null</tt> if not found.
+     */
+    private BridgeSelectionStrategy findStrategy(String name)
+    {
+        if (FocusBundleActivator.bundleContext != null)
+        {
+            for (BridgeSelectionStrategy strategy
+                : ServiceUtils2.getServices(
+                        FocusBundleActivator.bundleContext,
+                        BridgeSelectionStrategy.class))
+            {
+                if (name.equals(strategy.getName()))
+                {
+                    return strategy;
+                }
+            }
+        }
+        return builtInStrategies.get(name);
+    }
+
+    /**
+     * Adds built-in {@link BridgeSelectionStrategy}.
+     *
+     * @param strategy the strategy to be added.
+     */
+    private void addBuiltInStrategy(BridgeSelectionStrategy strategy)
+    {
+        builtInStrategies.put(strategy.getName(), strategy);
+    }
+
+    /**
+     * Updates given *operational* status of the videobridge identified by given
+     * <tt>bridgeJid</tt> address.
+     *
+     * @param bridgeJid the XMPP address of the bridge.
+     * @param isWorking <tt>true</tt> if bridge successfully allocated
+     *                  the channels which means it is in *operational* state.
+     */
+    public void updateBridgeOperationalStatus(String bridgeJid,
+                                              boolean isWorking)
+    {
+        BridgeState bridge = bridges.get(bridgeJid);
+        if (bridge != null)
+        {
+            bridge.setIsOperational(isWorking);
+        }
+        else
+        {
+            logger.warn("No bridge registered for jid: " + bridgeJid);
+        }
+
+        if (!isWorking)
+        {
+            notifyBridgeRemoved(bridgeJid);
+        }
+    }
+
+    /**
+     * Tells the {@link BridgeSelectionStrategy} that the conference has
+     * been started on given bridge. Should be called once for every bridge
+     * which the conference has committed to, as opposed to
+     * {@link #selectVideobridge(String, String)} which only tells which bridge
+     * should be tried first.
+     *
+     * @param bridgeJid the XMPP address of the bridge.
+     * @param roomName the name of the conference room.
+     */
+    public void bridgeSelected(String bridgeJid, String roomName)
+    {
+        BridgeSelectionStrategy strategy = getStrategy();
+        try
+        {
+            strategy.bridgeSelected(bridgeJid, roomName);
+        }
+        catch (RuntimeException e)
+        {
+            logger.error(
+                "Bridge selection strategy " + strategy.getName()
+                    + " has failed", e);
+        }
+    }
+
+    /**
+     * Tells the {@link BridgeSelectionStrategy} to discard the state of given
+     * bridge.
+     *
+     * @param bridgeJid the XMPP address of the bridge which has gone down or
+     *                  has been removed.
+     */
+    private void notifyBridgeRemoved(String bridgeJid)
+    {
+        BridgeSelectionStrategy strategy = getStrategy();
+        try
+        {
+            strategy.bridgeRemoved(bridgeJid);
+        }
+        catch (RuntimeException e)
+        {
+            logger.error(
+                "Bridge selection strategy " + strategy.getName()
+                    + " has failed", e);
+        }
+    }
+
+    /**
+     * Records the round trip time of the probe answered by the bridge. Slow
+     * bridges are moved down the list of the bridges.
+     *
+     * @param bridgeJid the XMPP address of the bridge.
+     * @param rtt the round trip time in milliseconds.
+     */
+    public void onProbeResponse(String bridgeJid, long rtt)
+    {
+        BridgeState bridge = bridges.get(bridgeJid);
+        if (bridge != null)
+        {
+            bridge.onProbeResponse(rtt);
+        }
+    }
+
+    /**
+     * Records the probe which has not been answered by the bridge in time.
+     *
+     * @param bridgeJid the XMPP address of the bridge.
+     */
+    public void onProbeTimeout(String bridgeJid)
+    {
+        BridgeState bridge = bridges.get(bridgeJid);
+        if (bridge != null)
+        {
+            bridge.onProbeTimeout();
+        }
+    }
+
+    /**
+     * Reserves the capacity for the endpoint which has just been allocated on
+     * given bridge. Until the bridge reports stats that include the endpoint,
+     * the reservation is added to the load of the bridge, so that subsequent
+     * allocations are spread across the bridges instead of all going to the
+     * one which was the least loaded when the stats have been received.
+     *
+     * @param bridgeJid the XMPP address of the bridge.
+     * @param newConference <tt>true</tt> if the allocation has created new
+     *                      conference on the bridge.
+     */
+    public void reserveAllocation(String bridgeJid, boolean newConference)
+    {
+        BridgeState bridge = bridges.get(bridgeJid);
+        if (bridge != null)
+        {
+            bridge.reserve(newConference);
+        }
+    }
+
+    /**
+     * Returns videobridge JID for given pub-sub node, but only if it has been
+     * added using {@link #addJvbAddress(String)} method.
+     *
+     * @param pubSubNode the pub-sub node name.
+     *
+     * @return videobridge JID for given pub-sub node.
+     */
+    public String getBridgeForPubSubNode(String pubSubNode)
+    {
+        BridgeState bridge = findBridgeForNode(pubSubNode);
+        return bridge != null ? bridge.jid : null;
+    }
+
+    /**
+     * Finds <tt>BridgeState</tt> for given pub-sub node.
+     *
+     * @param pubSubNode the name of pub-sub node to match with the bridge.
+     *
+     * @return <tt>BridgeState</tt> for given pub-sub node name.
+     */
+    private BridgeState findBridgeForNode(String pubSubNode)
+    {
+        String bridgeJid = pubSubToBridge.get(pubSubNode);
+        if (bridgeJid != null)
+        {
+            return bridges.get(bridgeJid);
+        }
+        return null;
+    }
+
+    /**
+     * Finds pub-sub node name for given videobridge JID.
+     *
      * @param bridgeJid the JID of videobridge to be matched with
      *                  pub-sub node name.
      *
@@ -385,170 +1355,444 @@ public class BridgeSelector
             }
         }
 
-        ColibriStatsExtension stats = (ColibriStatsExtension) payload;
-        for (PacketExtension child : stats.getChildExtensions())
+        bridgeState.updateStats((ColibriStatsExtension) payload);
+    }
+
+    /**
+     * Returns the JID of pre-configured Jitsi Videobridge instance.
+     */
+    public String getPreConfiguredBridge()
+    {
+        return preConfiguredBridge;
+    }
+
+    /**
+     * Sets the JID of pre-configured JVB instance which will be used when all
+     * auto-detected bridges are down.
+     * @param preConfiguredBridge XMPP address of pre-configured JVB component.
+     */
+    public void setPreConfiguredBridge(String preConfiguredBridge)
+    {
+        this.preConfiguredBridge = preConfiguredBridge;
+    }
+
+    /**
+     * The time since last bridge failure we will wait before it gets another
+     * chance.
+     *
+     * @return failure reset threshold in millis.
+     */
+    public long getFailureResetThreshold()
+    {
+        return failureResetThreshold;
+    }
+
+    /**
+     * Sets the amount of time we will wait after bridge failure before it will
+     * get another chance. Bridges which have failed already keep their current
+     * backoff.
+     *
+     * @param failureResetThreshold the amount of time in millis.
+     */
+    public void setFailureResetThreshold(long failureResetThreshold)
+    {
+        this.failureResetThreshold = failureResetThreshold;
+    }
+
+    /**
+     * Returns the maximal amount of time we will wait before giving another
+     * chance to the bridge which keeps on failing.
+     *
+     * @return maximal failure backoff in millis.
+     */
+    public long getFailureMaxBackoff()
+    {
+        return failureMaxBackoff;
+    }
+
+    /**
+     * Sets the maximal amount of time we will wait before giving another
+     * chance to the bridge which keeps on failing.
+     *
+     * @param failureMaxBackoff the amount of time in millis.
+     */
+    public void setFailureMaxBackoff(long failureMaxBackoff)
+    {
+        this.failureMaxBackoff = failureMaxBackoff;
+    }
+
+    /**
+     * Class holds videobridge state and implements {@link java.lang.Comparable}
+     * interface to find least loaded bridge.
+     *
+     * The state can be read from any thread without locking. Stats are kept
+     * in immutable {@link BridgeStats} snapshot and all the fields are
+     * volatile. Writers synchronize on the instance, so that concurrent
+     * updates of the same bridge are not lost.
+     */
+    public class BridgeState
+        implements Comparable<BridgeState>
+    {
+        /**
+         * Videobridge XMPP address.
+         */
+        private final String jid;
+
+        /**
+         * The last stats reported by the bridge.
+         */
+        private volatile BridgeStats stats = BridgeStats.UNKNOWN;
+
+        /**
+         * The part of the stress score calculated from noisy stats, smoothed
+         * over time. {@link Double#NaN} until the first stats are received.
+         */
+        private double smoothedRateScore = Double.NaN;
+
+        /**
+         * Stress score calculated from the stats, without the reservations.
+         */
+        private volatile double statsScore = Double.POSITIVE_INFINITY;
+
+        /**
+         * The round trip times of the probes sent to the bridge.
+         */
+        private final BridgeRttHistogram probeRtts = new BridgeRttHistogram();
+
+        /**
+         * Smoothed round trip time of the probes in milliseconds or
+         * {@link Double#NaN} if the bridge has not been probed yet.
+         */
+        private volatile double probeRtt = Double.NaN;
+
+        /**
+         * Stores *operational* status which means the bridge can be used to
+         * allocate the channels. It is <tt>true</tt> when the circuit breaker
+         * is closed or half open with no trial allocation in progress.
+         */
+        private volatile boolean isOperational
+            = true /* we assume it is operational */;
+
+        /**
+         * The state of the circuit breaker of this bridge.
+         */
+        private volatile BreakerState breakerState = BreakerState.CLOSED;
+
+        /**
+         * The number of times the bridge has failed since it was last
+         * working.
+         */
+        private volatile int consecutiveFailures;
+
+        /**
+         * The time after which the open breaker becomes half open.
+         */
+        private volatile long retryTimestamp;
+
+        /**
+         * The time when the trial allocation has been started or 0 if there
+         * is no trial in progress.
+         */
+        private long trialTimestamp;
+
+        /**
+         * The entry which currently represents this bridge in the
+         * {@link #index} or <tt>null</tt> if the bridge is not indexed.
+         */
+        private volatile OrderKey indexKey;
+
+        /**
+         * Allocations done on this bridge which have not been reflected in
+         * the stats yet, ordered from the oldest.
+         */
+        private final LinkedList<Reservation> reservations
+            = new LinkedList<Reservation>();
+
+        /**
+         * The number of endpoints in {@link #reservations}.
+         */
+        private volatile int reservedEndpoints;
+
+        /**
+         * The number of new conferences in {@link #reservations}.
+         */
+        private volatile int reservedConferences;
+
+        /**
+         * Whether the bridge has been put in the drain mode through
+         * {@link #setBridgeDraining(String, boolean)}.
+         */
+        private volatile boolean drainRequested;
+
+        /**
+         * Set to <tt>true</tt> once the bridge is removed from the selector,
+         * so that late updates will not put it back in the {@link #index}.
+         */
+        private boolean removed;
+
+        BridgeState(String bridgeJid)
         {
-            if (!(child instanceof ColibriStatsExtension.Stat))
-            {
-                continue;
-            }
+            if (StringUtils.isNullOrEmpty(bridgeJid))
+                throw new NullPointerException("bridgeJid");
 
-            ColibriStatsExtension.Stat stat
-                = (ColibriStatsExtension.Stat) child;
-            if (VideobridgeStatistics.CONFERENCES.equals(stat.getName()))
-            {
-                Integer val = getStatisticIntValue(stat);
-                if(val != null)
-                    bridgeState.setConferenceCount(val);
-            }
-            else if (VideobridgeStatistics.VIDEOCHANNELS.equals(stat.getName()))
+            this.jid = bridgeJid;
+        }
+
+        /**
+         * Returns the XMPP address of the videobridge.
+         */
+        public String getJid()
+        {
+            return jid;
+        }
+
+        /**
+         * Returns the region in which the bridge is deployed or
+         * <tt>null</tt> if it has not been advertised in the stats.
+         */
+        public String getRegion()
+        {
+            return stats.getRegion();
+        }
+
+        /**
+         * Returns the snapshot of the last stats reported by the bridge.
+         * Values read from a single snapshot are always consistent with each
+         * other.
+         */
+        public BridgeStats getStats()
+        {
+            return stats;
+        }
+
+        /**
+         * Replaces the stats of this bridge.
+         *
+         * @param newStats the new stats snapshot.
+         */
+        synchronized void setStats(BridgeStats newStats)
+        {
+            BridgeStats oldStats = this.stats;
+
+            this.stats = newStats;
+
+            if (oldStats.getConferenceCount() != newStats.getConferenceCount())
             {
-                Integer val = getStatisticIntValue(stat);
-                if(val != null)
-                    bridgeState.setVideoChannelCount(val);
+                logger.info(
+                    "Conference count for: " + jid + ": "
+                        + newStats.getConferenceCount()
+                        + (isDraining() ? " (draining)" : ""));
             }
-            else if (VideobridgeStatistics.VIDEOSTREAMS.equals(stat.getName()))
+            if (oldStats.isShutdownInProgress()
+                    != newStats.isShutdownInProgress())
             {
-                Integer val = getStatisticIntValue(stat);
-                if(val != null)
-                    bridgeState.setVideoStreamCount(val);
+                logger.info(
+                    "Graceful shutdown in progress for " + jid + ": "
+                        + newStats.isShutdownInProgress());
             }
+
+            smoothedRateScore
+                = stressScore.smooth(
+                        smoothedRateScore,
+                        stressScore.calculateRateScore(newStats));
+            statsScore
+                = stressScore.calculateCountScore(newStats)
+                    + smoothedRateScore;
+
+            updateIndex();
         }
-    }
 
-    /**
-     * Extracts the statistic integer value from <tt>currentStats</tt> if
-     * available and in correct format.
-     * @param currentStats the current stats
-     */
-    private static Integer getStatisticIntValue(
-        ColibriStatsExtension.Stat currentStats)
-    {
-        Object statValue = currentStats.getValue();
-        if (statValue == null)
+        /**
+         * Updates the stats of this bridge with the values found in given
+         * stats extension.
+         *
+         * @param statsExt the stats received from the bridge.
+         */
+        synchronized void updateStats(ColibriStatsExtension statsExt)
         {
-            return null;
+            // Allocations done long enough before the stats have arrived are
+            // included in them
+            expireReservations(
+                System.currentTimeMillis() - reservationStatsLag);
+
+            setStats(stats.merge(statsExt));
         }
-        String stringStatValue = String.valueOf(statValue);
-        try
+
+        /**
+         * Adds the reservation for newly allocated endpoint.
+         *
+         * @param newConference <tt>true</tt> if the allocation has created
+         *                      new conference on the bridge.
+         */
+        synchronized void reserve(boolean newConference)
+        {
+            long now = System.currentTimeMillis();
+
+            expireReservations(now - reservationTtl);
+
+            reservations.add(new Reservation(now, newConference));
+            reservedEndpoints++;
+            if (newConference)
+                reservedConferences++;
+
+            updateIndex();
+        }
+
+        /**
+         * Removes the reservations made before given time.
+         *
+         * @param time the time before which reservations are removed.
+         */
+        private synchronized void expireReservations(long time)
         {
-            return new Integer(stringStatValue);
+            boolean expired = false;
+            while (!reservations.isEmpty()
+                && reservations.getFirst().timestamp <= time)
+            {
+                Reservation reservation = reservations.removeFirst();
+                reservedEndpoints--;
+                if (reservation.newConference)
+                    reservedConferences--;
+                expired = true;
+            }
+            if (expired)
+            {
+                updateIndex();
+            }
         }
-        catch(NumberFormatException e)
+
+        /**
+         * Returns the stress score of this bridge, the least the score is
+         * the least the bridge is loaded. It includes the allocations which
+         * are not reflected in the stats yet.
+         *
+         * @return the stress score of the bridge or
+         *         {@link Double#POSITIVE_INFINITY} if no stats have been
+         *         received yet.
+         */
+        public double getStressScore()
         {
-            logger.error(
-                "Error parsing conference count stat: "
-                    + stringStatValue);
+            double score = statsScore;
+            if (Double.isInfinite(score))
+                return score;
+
+            return score
+                + stressScore.calculateProbeScore(probeRtt)
+                + stressScore.reservationScore(
+                        reservedEndpoints * reservedStreamsPerEndpoint,
+                        reservedConferences);
         }
 
-        return null;
-    }
-
-    /**
-     * Returns the JID of pre-configured Jitsi Videobridge instance.
-     */
-    public String getPreConfiguredBridge()
-    {
-        return preConfiguredBridge;
-    }
-
-    /**
-     * Sets the JID of pre-configured JVB instance which will be used when all
-     * auto-detected bridges are down.
-     * @param preConfiguredBridge XMPP address of pre-configured JVB component.
-     */
-    public void setPreConfiguredBridge(String preConfiguredBridge)
-    {
-        this.preConfiguredBridge = preConfiguredBridge;
-    }
+        /**
+         * Records the round trip time of the probe answered by the bridge.
+         *
+         * @param rtt the round trip time in milliseconds.
+         */
+        synchronized void onProbeResponse(long rtt)
+        {
+            probeRtts.record(rtt);
+            probeRtt = stressScore.smooth(probeRtt, rtt);
 
-    /**
-     * The time since last bridge failure we will wait before it gets another
-     * chance.
-     *
-     * @return failure reset threshold in millis.
-     */
-    public long getFailureResetThreshold()
-    {
-        return failureResetThreshold;
-    }
+            updateIndex();
+        }
 
-    /**
-     * Sets the amount of time we will wait after bridge failure before it will
-     * get another chance.
-     *
-     * @param failureResetThreshold the amount of time in millis.
-     */
-    public void setFailureResetThreshold(long failureResetThreshold)
-    {
-        this.failureResetThreshold = failureResetThreshold;
-    }
+        /**
+         * Records the probe which has not been answered by the bridge in time.
+         */
+        void onProbeTimeout()
+        {
+            probeRtts.recordTimeout();
+        }
 
-    /**
-     * Class holds videobridge state and implements {@link java.lang.Comparable}
-     * interface to find least loaded bridge.
-     */
-    class BridgeState
-        implements Comparable<BridgeState>
-    {
         /**
-         * Videobridge XMPP address.
+         * Returns the histogram of the round trip times of the probes sent to
+         * the bridge.
          */
-        private final String jid;
+        public BridgeRttHistogram getProbeRttHistogram()
+        {
+            return probeRtts;
+        }
 
         /**
-         * If not set we consider it highly occupied,
-         * because no stats we have been fetched so far.
+         * Returns smoothed round trip time of the probes in milliseconds or
+         * {@link Double#NaN} if the bridge has not been probed yet.
          */
-        private int conferenceCount = Integer.MAX_VALUE;
+        public double getProbeRtt()
+        {
+            return probeRtt;
+        }
 
         /**
-         * If not set we consider it highly occupied,
-         * because no stats we have been fetched so far.
+         * Returns the number of endpoints allocated on the bridge which have
+         * not been reflected in the stats yet.
          */
-        private int videoChannelCount = Integer.MAX_VALUE;
+        public int getReservedEndpoints()
+        {
+            return reservedEndpoints;
+        }
 
         /**
-         * If not set we consider it highly occupied,
-         * because no stats we have been fetched so far.
+         * Returns the capacity ceilings of this bridge.
          */
-        private int videoStreamCount = Integer.MAX_VALUE;
+        public BridgeCapacity getCapacity()
+        {
+            BridgeCapacity capacity = bridgeCapacities.get(jid);
+
+            return capacity != null ? capacity : defaultCapacity;
+        }
 
         /**
-         * Stores *operational* status which means it has been successfully used
-         * by the focus to allocate the channels. It is reset to false when
-         * focus fails to allocate channels, but it gets another chance when all
-         * currently working bridges go down and might eventually get elevated
-         * back to *operational* state.
+         * Returns <tt>true</tt> if the bridge has reached any of its capacity
+         * ceilings, including the allocations which are not reflected in
+         * the stats yet.
          */
-        private boolean isOperational = true /* we assume it is operational */;
+        public boolean isFull()
+        {
+            return getCapacity().isReached(
+                getEstimatedConferenceCount(),
+                getEstimatedVideoChannelCount(),
+                getEstimatedVideoStreamCount());
+        }
 
         /**
-         * The time when this instance has failed.
+         * Returns the number of video channels reported by the bridge
+         * increased by one channel for every endpoint allocated since the last
+         * stats update.
          */
-        private long failureTimestamp;
+        public int getEstimatedVideoChannelCount()
+        {
+            return addReserved(getVideoChannelCount(), reservedEndpoints);
+        }
 
-        BridgeState(String bridgeJid)
+        /**
+         * Returns the number of conferences reported by the bridge increased
+         * by the conferences allocated since the last stats update.
+         */
+        public int getEstimatedConferenceCount()
         {
-            if (StringUtils.isNullOrEmpty(bridgeJid))
-                throw new NullPointerException("bridgeJid");
+            return addReserved(getConferenceCount(), reservedConferences);
+        }
 
-            this.jid = bridgeJid;
+        /**
+         * Returns the number of video streams reported by the bridge increased
+         * by the streams reserved for the endpoints allocated since the last
+         * stats update.
+         */
+        public int getEstimatedVideoStreamCount()
+        {
+            return addReserved(
+                getVideoStreamCount(),
+                reservedEndpoints * reservedStreamsPerEndpoint);
         }
 
-        public void setConferenceCount(int conferenceCount)
+        public synchronized void setConferenceCount(int conferenceCount)
         {
-            if (this.conferenceCount != conferenceCount)
-            {
-                logger.info(
-                    "Conference count for: " + jid + ": " + conferenceCount);
-            }
-            this.conferenceCount = conferenceCount;
+            setStats(stats.withConferenceCount(conferenceCount));
         }
 
         public int getConferenceCount()
         {
-            return this.conferenceCount;
+            return stats.getConferenceCount();
         }
 
         /**
@@ -557,16 +1801,16 @@ public class BridgeSelector
          */
         public int getVideoChannelCount()
         {
-            return videoChannelCount;
+            return stats.getVideoChannelCount();
         }
 
         /**
          * Sets the number of channels used.
          * @param channelCount the number of channels used.
          */
-        public void setVideoChannelCount(int channelCount)
+        public synchronized void setVideoChannelCount(int channelCount)
         {
-            this.videoChannelCount = channelCount;
+            setStats(stats.withVideoChannelCount(channelCount));
         }
 
         /**
@@ -575,56 +1819,288 @@ public class BridgeSelector
          */
         public int getVideoStreamCount()
         {
-            return videoStreamCount;
+            return stats.getVideoStreamCount();
         }
 
         /**
          * Sets the stream count currently used.
          * @param streamCount the stream count currently used.
          */
-        public void setVideoStreamCount(int streamCount)
+        public synchronized void setVideoStreamCount(int streamCount)
         {
-            this.videoStreamCount = streamCount;
+            setStats(stats.withVideoStreamCount(streamCount));
         }
 
+        /**
+         * Reports the result of the allocation on this bridge. Success closes
+         * the circuit breaker. Failure opens it for the time which grows with
+         * every consecutive failure. Failures reported while the breaker is
+         * already open come from the allocations started before it has been
+         * opened, so they do not extend the backoff.
+         *
+         * @param isOperational <tt>true</tt> if the allocation has succeeded.
+         */
         public void setIsOperational(boolean isOperational)
         {
-            this.isOperational = isOperational;
+            BreakerState newState = null;
+            long retryDelay = 0;
+            int failures;
+
+            synchronized (this)
+            {
+                BreakerState oldState = breakerState;
+
+                if (isOperational)
+                {
+                    consecutiveFailures = 0;
+                    if (oldState != BreakerState.CLOSED)
+                        newState = BreakerState.CLOSED;
+                }
+                else if (oldState != BreakerState.OPEN)
+                {
+                    consecutiveFailures++;
+                    retryDelay = calculateBackoff(consecutiveFailures);
+                    retryTimestamp = System.currentTimeMillis() + retryDelay;
+                    newState = BreakerState.OPEN;
+                }
+                failures = consecutiveFailures;
+
+                if (newState != null)
+                    setBreakerState(newState);
+            }
 
-            if (!isOperational)
+            if (newState == BreakerState.OPEN)
+            {
+                scheduleFailureResetCheck(retryTimestamp + 1);
+            }
+            if (newState != null)
             {
-                // Remember when the bridge has failed
-                failureTimestamp = System.currentTimeMillis();
+                onBreakerStateChanged(this, newState, failures, retryDelay);
             }
         }
 
+        /**
+         * Returns <tt>true</tt> if the bridge should not get any new
+         * conferences, either because the drain has been requested or because
+         * the bridge is shutting down gracefully.
+         */
+        public boolean isDraining()
+        {
+            return drainRequested || stats.isShutdownInProgress();
+        }
+
+        /**
+         * Returns <tt>true</tt> if the drain has been requested through
+         * {@link #setBridgeDraining(String, boolean)}.
+         */
+        public boolean isDrainRequested()
+        {
+            return drainRequested;
+        }
+
+        /**
+         * Starts or stops draining of this bridge.
+         *
+         * @param drainRequested <tt>true</tt> to start draining the bridge.
+         */
+        synchronized void setDrainRequested(boolean drainRequested)
+        {
+            if (this.drainRequested == drainRequested)
+                return;
+
+            this.drainRequested = drainRequested;
+
+            logger.info(
+                (drainRequested ? "Draining " : "Stopped draining ") + jid
+                    + ", conferences: " + getConferenceCount());
+
+            updateIndex();
+        }
+
+        /**
+         * Returns <tt>true</tt> if the bridge can be used to allocate
+         * the channels.
+         */
         public boolean isOperational()
         {
             // Check if we should give this bridge another try
-            verifyFailureThreshold();
+            verifyBreaker();
 
             return isOperational;
         }
 
         /**
-         * Verifies if it has been long enough since last bridge failure to give
-         * it another try(reset isOperational flag).
+         * Returns the state of the circuit breaker of this bridge.
+         */
+        public BreakerState getBreakerState()
+        {
+            verifyBreaker();
+
+            return breakerState;
+        }
+
+        /**
+         * Returns the number of times the bridge has failed since it was last
+         * working.
+         */
+        public int getConsecutiveFailures()
+        {
+            return consecutiveFailures;
+        }
+
+        /**
+         * Enters given circuit breaker state and updates the *operational*
+         * status accordingly.
+         *
+         * @param state the new state of the breaker.
+         */
+        private synchronized void setBreakerState(BreakerState state)
+        {
+            breakerState = state;
+            trialTimestamp = 0;
+            isOperational = state != BreakerState.OPEN;
+
+            updateIndex();
+        }
+
+        /**
+         * Claims the trial allocation if the circuit breaker is half open.
+         *
+         * @return <tt>true</tt> if the bridge can be used for the allocation,
+         *         which is either when the breaker is closed or the trial has
+         *         been claimed by the caller.
          */
-        private void verifyFailureThreshold()
+        boolean tryAcquireTrial()
         {
-            if (isOperational)
+            if (breakerState == BreakerState.CLOSED)
+                return true;
+
+            long deadline;
+            synchronized (this)
             {
-                return;
+                if (breakerState == BreakerState.CLOSED)
+                    return true;
+
+                if (breakerState != BreakerState.HALF_OPEN
+                    || trialTimestamp != 0)
+                    return false;
+
+                trialTimestamp = System.currentTimeMillis();
+                deadline = trialTimestamp + trialTimeout + 1;
+                isOperational = false;
+
+                updateIndex();
+            }
+
+            scheduleFailureResetCheck(deadline);
+
+            return true;
+        }
+
+        /**
+         * Moves the open circuit breaker to the half open state if it has
+         * been long enough since last bridge failure to give it another try.
+         * Allows another trial if the result of the current one has not been
+         * reported in time.
+         *
+         * @return the time after which the breaker should be verified again
+         *         or {@link Long#MAX_VALUE} if it does not have to.
+         */
+        private long verifyBreaker()
+        {
+            if (breakerState == BreakerState.CLOSED)
+                return Long.MAX_VALUE;
+
+            boolean halfOpened = false;
+            long nextCheck;
+            synchronized (this)
+            {
+                long now = System.currentTimeMillis();
+
+                if (breakerState == BreakerState.OPEN && now > retryTimestamp)
+                {
+                    setBreakerState(BreakerState.HALF_OPEN);
+                    halfOpened = true;
+                }
+                else if (breakerState == BreakerState.HALF_OPEN
+                    && trialTimestamp != 0
+                    && now - trialTimestamp > trialTimeout)
+                {
+                    logger.warn("Trial allocation timed out on " + jid);
+                    trialTimestamp = 0;
+                    isOperational = true;
+
+                    updateIndex();
+                }
+
+                if (breakerState == BreakerState.OPEN)
+                    nextCheck = retryTimestamp + 1;
+                else if (breakerState == BreakerState.HALF_OPEN
+                        && trialTimestamp != 0)
+                    nextCheck = trialTimestamp + trialTimeout + 1;
+                else
+                    nextCheck = Long.MAX_VALUE;
+            }
+
+            if (halfOpened)
+            {
+                onBreakerStateChanged(
+                    this, BreakerState.HALF_OPEN, consecutiveFailures, 0);
             }
 
-            if (System.currentTimeMillis() - failureTimestamp
-                    > getFailureResetThreshold())
+            return nextCheck;
+        }
+
+        /**
+         * Puts the entry reflecting current state of this bridge in the
+         * {@link #index}. The new entry is inserted before the old one is
+         * removed, so that concurrent readers always find the bridge. The old
+         * entry is skipped by the readers as stale in the meantime.
+         */
+        synchronized void updateIndex()
+        {
+            if (removed)
+                return;
+
+            OrderKey oldKey = indexKey;
+            OrderKey newKey
+                = new OrderKey(
+                        this,
+                        isOperational,
+                        isDraining(),
+                        isFull(),
+                        getStressScore());
+
+            if (newKey.equals(oldKey))
+                return;
+
+            index.add(newKey);
+            indexKey = newKey;
+
+            if (oldKey != null)
+                index.remove(oldKey);
+
+            if (newKey.isAvailable()
+                && (oldKey == null || !oldKey.isAvailable()))
             {
-                logger.info("Resetting operational status for " + jid);
-                isOperational = true;
+                admissionQueue.onCapacityAvailable();
             }
         }
 
+        /**
+         * Removes this bridge from the {@link #index}.
+         */
+        synchronized void removeFromIndex()
+        {
+            removed = true;
+
+            OrderKey oldKey = indexKey;
+            indexKey = null;
+
+            if (oldKey != null)
+                index.remove(oldKey);
+        }
+
         /**
          * The least value is returned the least the bridge is loaded.
          *
@@ -633,6 +2109,12 @@ public class BridgeSelector
         @Override
         public int compareTo(BridgeState o)
         {
+            boolean meDraining = isDraining();
+            boolean otherDraining = o.isDraining();
+
+            if (meDraining != otherDraining)
+                return meDraining ? 1 : -1;
+
             boolean meOperational = isOperational();
             boolean otherOperational = o.isOperational();
 
@@ -641,7 +2123,163 @@ public class BridgeSelector
             else if (!meOperational && otherOperational)
                 return 1;
 
-            return videoStreamCount - o.videoStreamCount;
+            return Double.compare(getStressScore(), o.getStressScore());
+        }
+    }
+
+    /**
+     * Adds reserved amount to the reported stat value. Unknown value stays
+     * unknown.
+     *
+     * @param value the value reported by the bridge.
+     * @param reserved the amount to add.
+     */
+    private static int addReserved(int value, int reserved)
+    {
+        if (value == Integer.MAX_VALUE)
+            return value;
+
+        long sum = (long) value + reserved;
+
+        return sum >= Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum;
+    }
+
+    /**
+     * Describes single allocation which is not yet reflected in the bridge
+     * stats.
+     */
+    private static class Reservation
+    {
+        /**
+         * The time when the allocation has been done.
+         */
+        final long timestamp;
+
+        /**
+         * Whether the allocation has created new conference.
+         */
+        final boolean newConference;
+
+        Reservation(long timestamp, boolean newConference)
+        {
+            this.timestamp = timestamp;
+            this.newConference = newConference;
+        }
+    }
+
+    /**
+     * Immutable entry of the bridge {@link #index}. Operational bridges with
+     * room for new conference go first, followed by the full ones, the not
+     * operational ones and the draining ones. Bridges in each group are
+     * ordered by the stress score. Bridge JID is used to tell
+     * apart bridges with the same load.
+     */
+    private static class OrderKey
+        implements Comparable<OrderKey>
+    {
+        /**
+         * The bridge described by this entry.
+         */
+        final BridgeState bridge;
+
+        /**
+         * Operational status of the bridge at the time of indexing.
+         */
+        final boolean isOperational;
+
+        /**
+         * Drain status of the bridge at the time of indexing.
+         */
+        final boolean isDraining;
+
+        /**
+         * Whether the bridge had reached its capacity at the time of indexing.
+         */
+        final boolean isFull;
+
+        /**
+         * The stress score of the bridge at the time of indexing.
+         */
+        final double load;
+
+        OrderKey(BridgeState bridge,
+                 boolean isOperational,
+                 boolean isDraining,
+                 boolean isFull,
+                 double load)
+        {
+            this.bridge = bridge;
+            this.isOperational = isOperational;
+            this.isDraining = isDraining;
+            this.isFull = isFull;
+            this.load = load;
+        }
+
+        /**
+         * Returns <tt>true</tt> if this entry does not reflect the current
+         * state of the bridge anymore and is about to be removed.
+         */
+        boolean isStale()
+        {
+            return bridge.indexKey != this;
+        }
+
+        /**
+         * Returns <tt>true</tt> if the bridge could take new conference at
+         * the time of indexing.
+         */
+        boolean isAvailable()
+        {
+            return isOperational && !isDraining && !isFull;
+        }
+
+        @Override
+        public int compareTo(OrderKey o)
+        {
+            if (isDraining != o.isDraining)
+                return isDraining ? 1 : -1;
+
+            if (isOperational != o.isOperational)
+                return isOperational ? -1 : 1;
+
+            if (isFull != o.isFull)
+                return isFull ? 1 : -1;
+
+            int loadCompare = Double.compare(load, o.load);
+            if (loadCompare != 0)
+                return loadCompare;
+
+            int jidCompare = bridge.jid.compareTo(o.bridge.jid);
+            if (jidCompare != 0)
+                return jidCompare;
+
+            // Different instances for the same JID, when the bridge has been
+            // removed and added back
+            int h1 = System.identityHashCode(bridge);
+            int h2 = System.identityHashCode(o.bridge);
+
+            return h1 < h2 ? -1 : (h1 == h2 ? 0 : 1);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof OrderKey))
+                return false;
+
+            OrderKey other = (OrderKey) o;
+
+            return bridge == other.bridge
+                && isOperational == other.isOperational
+                && isDraining == other.isDraining
+                && isFull == other.isFull
+                && load == other.load;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return bridge.jid.hashCode();
         }
     }
 }
@@ -0,0 +1,430 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+import net.java.sip.communicator.util.Logger;
+
+import org.jitsi.videobridge.stats.*;
+
+import org.jivesoftware.smack.packet.*;
+
+/**
+ * Immutable snapshot of videobridge statistics as reported through
+ * {@link ColibriStatsExtension}. New snapshot is created on every stats
+ * update, so that the readers always see consistent set of values without
+ * locking.
+ *
+ * Integer stats which have not been reported are equal to
+ * {@link Integer#MAX_VALUE}, the floating point ones to {@link Double#NaN}
+ * and the region is <tt>null</tt>. Graceful shutdown is assumed not to be in
+ * progress until reported.
+ */
+public class BridgeStats
+{
+    /**
+     * The logger.
+     */
+    private final static Logger logger = Logger.getLogger(BridgeStats.class);
+
+    /**
+     * The name of the stat which carries the average round trip time to
+     * the endpoints in milliseconds.
+     */
+    public static final String RTT_AGGREGATE = "rtt_aggregate";
+
+    /**
+     * The name of the stat which carries the name of the region in which
+     * the bridge is deployed.
+     */
+    public static final String REGION = "region";
+
+    /**
+     * Stats used before the first update arrives. If not set we consider
+     * the bridge highly occupied, because no stats we have been fetched so far.
+     */
+    public static final BridgeStats UNKNOWN = new BridgeStats();
+
+    /**
+     * The number of conferences.
+     */
+    private int conferenceCount = Integer.MAX_VALUE;
+
+    /**
+     * The number of video channels.
+     */
+    private int videoChannelCount = Integer.MAX_VALUE;
+
+    /**
+     * The number of video streams.
+     */
+    private int videoStreamCount = Integer.MAX_VALUE;
+
+    /**
+     * CPU usage in range from 0 to 1.
+     */
+    private double cpuUsage = Double.NaN;
+
+    /**
+     * Download bitrate in kbps.
+     */
+    private double bitrateDownload = Double.NaN;
+
+    /**
+     * Upload bitrate in kbps.
+     */
+    private double bitrateUpload = Double.NaN;
+
+    /**
+     * RTP packet loss rate in range from 0 to 1.
+     */
+    private double rtpLoss = Double.NaN;
+
+    /**
+     * Average round trip time in milliseconds.
+     */
+    private double rtt = Double.NaN;
+
+    /**
+     * The region in which the bridge is deployed.
+     */
+    private String region;
+
+    /**
+     * Whether the bridge is shutting down gracefully and should not get any
+     * new conferences.
+     */
+    private boolean shutdownInProgress;
+
+    /**
+     * Creates <tt>BridgeStats</tt> with no values reported.
+     */
+    private BridgeStats()
+    {
+    }
+
+    /**
+     * Creates a copy of given <tt>BridgeStats</tt>.
+     *
+     * @param other the instance to copy the values from.
+     */
+    private BridgeStats(BridgeStats other)
+    {
+        this.conferenceCount = other.conferenceCount;
+        this.videoChannelCount = other.videoChannelCount;
+        this.videoStreamCount = other.videoStreamCount;
+        this.cpuUsage = other.cpuUsage;
+        this.bitrateDownload = other.bitrateDownload;
+        this.bitrateUpload = other.bitrateUpload;
+        this.rtpLoss = other.rtpLoss;
+        this.rtt = other.rtt;
+        this.region = other.region;
+        this.shutdownInProgress = other.shutdownInProgress;
+    }
+
+    /**
+     * Creates new instance of <tt>BridgeStats</tt>.
+     *
+     * @param conferenceCount the number of conferences.
+     * @param videoChannelCount the number of video channels.
+     * @param videoStreamCount the number of video streams.
+     */
+    public BridgeStats(int conferenceCount,
+                       int videoChannelCount,
+                       int videoStreamCount)
+    {
+        this.conferenceCount = conferenceCount;
+        this.videoChannelCount = videoChannelCount;
+        this.videoStreamCount = videoStreamCount;
+    }
+
+    /**
+     * Returns the number of conferences.
+     */
+    public int getConferenceCount()
+    {
+        return conferenceCount;
+    }
+
+    /**
+     * Returns the number of video channels.
+     */
+    public int getVideoChannelCount()
+    {
+        return videoChannelCount;
+    }
+
+    /**
+     * Returns the number of video streams.
+     */
+    public int getVideoStreamCount()
+    {
+        return videoStreamCount;
+    }
+
+    /**
+     * Returns CPU usage in range from 0 to 1.
+     */
+    public double getCpuUsage()
+    {
+        return cpuUsage;
+    }
+
+    /**
+     * Returns download bitrate in kbps.
+     */
+    public double getBitrateDownload()
+    {
+        return bitrateDownload;
+    }
+
+    /**
+     * Returns upload bitrate in kbps.
+     */
+    public double getBitrateUpload()
+    {
+        return bitrateUpload;
+    }
+
+    /**
+     * Returns RTP packet loss rate in range from 0 to 1.
+     */
+    public double getRtpLoss()
+    {
+        return rtpLoss;
+    }
+
+    /**
+     * Returns average round trip time in milliseconds.
+     */
+    public double getRtt()
+    {
+        return rtt;
+    }
+
+    /**
+     * Returns the region in which the bridge is deployed or <tt>null</tt> if
+     * the bridge has not advertised any.
+     */
+    public String getRegion()
+    {
+        return region;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the bridge has reported that graceful shutdown
+     * is in progress.
+     */
+    public boolean isShutdownInProgress()
+    {
+        return shutdownInProgress;
+    }
+
+    /**
+     * Returns a copy of this snapshot with given conference count.
+     */
+    public BridgeStats withConferenceCount(int conferenceCount)
+    {
+        BridgeStats copy = new BridgeStats(this);
+        copy.conferenceCount = conferenceCount;
+        return copy;
+    }
+
+    /**
+     * Returns a copy of this snapshot with given video channel count.
+     */
+    public BridgeStats withVideoChannelCount(int videoChannelCount)
+    {
+        BridgeStats copy = new BridgeStats(this);
+        copy.videoChannelCount = videoChannelCount;
+        return copy;
+    }
+
+    /**
+     * Returns a copy of this snapshot with given video stream count.
+     */
+    public BridgeStats withVideoStreamCount(int videoStreamCount)
+    {
+        BridgeStats copy = new BridgeStats(this);
+        copy.videoStreamCount = videoStreamCount;
+        return copy;
+    }
+
+    /**
+     * Creates new snapshot which contains the values found in given stats
+     * extension. The values missing from the extension are copied from this
+     * instance.
+     *
+     * @param stats the <tt>ColibriStatsExtension</tt> received from the bridge.
+     *
+     * @return new <tt>BridgeStats</tt> instance.
+     */
+    public BridgeStats merge(ColibriStatsExtension stats)
+    {
+        BridgeStats merged = new BridgeStats(this);
+
+        for (PacketExtension child : stats.getChildExtensions())
+        {
+            if (!(child instanceof ColibriStatsExtension.Stat))
+            {
+                continue;
+            }
+
+            ColibriStatsExtension.Stat stat
+                = (ColibriStatsExtension.Stat) child;
+            String name = stat.getName();
+            if (VideobridgeStatistics.CONFERENCES.equals(name))
+            {
+                Integer val = getStatisticIntValue(stat);
+                if(val != null)
+                    merged.conferenceCount = val;
+            }
+            else if (VideobridgeStatistics.VIDEOCHANNELS.equals(name))
+            {
+                Integer val = getStatisticIntValue(stat);
+                if(val != null)
+                    merged.videoChannelCount = val;
+            }
+            else if (VideobridgeStatistics.VIDEOSTREAMS.equals(name))
+            {
+                Integer val = getStatisticIntValue(stat);
+                if(val != null)
+                    merged.videoStreamCount = val;
+            }
+            else if (VideobridgeStatistics.CPU_USAGE.equals(name))
+            {
+                Double val = getStatisticDoubleValue(stat);
+                if (val != null)
+                    merged.cpuUsage = val;
+            }
+            else if (VideobridgeStatistics.BITRATE_DOWNLOAD.equals(name))
+            {
+                Double val = getStatisticDoubleValue(stat);
+                if (val != null)
+                    merged.bitrateDownload = val;
+            }
+            else if (VideobridgeStatistics.BITRATE_UPLOAD.equals(name))
+            {
+                Double val = getStatisticDoubleValue(stat);
+                if (val != null)
+                    merged.bitrateUpload = val;
+            }
+            else if (VideobridgeStatistics.RTP_LOSS.equals(name))
+            {
+                Double val = getStatisticDoubleValue(stat);
+                if (val != null)
+                    merged.rtpLoss = val;
+            }
+            else if (RTT_AGGREGATE.equals(name))
+            {
+                Double val = getStatisticDoubleValue(stat);
+                if (val != null)
+                    merged.rtt = val;
+            }
+            else if (VideobridgeStatistics.SHUTDOWN_IN_PROGRESS.equals(name))
+            {
+                Object val = stat.getValue();
+                if (val != null)
+                    merged.shutdownInProgress
+                        = Boolean.parseBoolean(val.toString());
+            }
+            else if (REGION.equals(name))
+            {
+                Object val = stat.getValue();
+                if (val != null && val.toString().length() > 0)
+                    merged.region = val.toString();
+            }
+        }
+
+        return merged;
+    }
+
+    /**
+     * Extracts the statistic integer value from <tt>currentStats</tt> if
+     * available and in correct format.
+     * @param currentStats the current stats
+     */
+    private static Integer getStatisticIntValue(
+        ColibriStatsExtension.Stat currentStats)
+    {
+        Object statValue = currentStats.getValue();
+        if (statValue == null)
+        {
+            return null;
+        }
+        String stringStatValue = String.valueOf(statValue);
+        try
+        {
+            return new Integer(stringStatValue);
+        }
+        catch(NumberFormatException e)
+        {
+            logger.error(
+                "Error parsing " + currentStats.getName() + " stat: "
+                    + stringStatValue);
+        }
+
+        return null;
+    }
+
+    /**
+     * Extracts the statistic floating point value from <tt>currentStats</tt>
+     * if available and in correct format.
+     * @param currentStats the current stats
+     */
+    private static Double getStatisticDoubleValue(
+        ColibriStatsExtension.Stat currentStats)
+    {
+        Object statValue = currentStats.getValue();
+        if (statValue == null)
+        {
+            return null;
+        }
+        String stringStatValue = String.valueOf(statValue);
+        try
+        {
+            double value = Double.parseDouble(stringStatValue);
+
+            return Double.isNaN(value) || Double.isInfinite(value)
+                ? null : value;
+        }
+        catch(NumberFormatException e)
+        {
+            logger.error(
+                "Error parsing " + currentStats.getName() + " stat: "
+                    + stringStatValue);
+        }
+
+        return null;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "conferences=" + conferenceCount
+            + ", video_channels=" + videoChannelCount
+            + ", video_streams=" + videoStreamCount
+            + ", cpu_usage=" + cpuUsage
+            + ", bit_rate_download=" + bitrateDownload
+            + ", bit_rate_upload=" + bitrateUpload
+            + ", rtp_loss=" + rtpLoss
+            + ", rtt=" + rtt
+            + ", region=" + region
+            + ", graceful_shutdown=" + shutdownInProgress;
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import org.jitsi.service.configuration.*;
+
+/**
+ * Calculates the stress score of the videobridge from the stats it reports.
+ * The score is a weighted sum of the stats, each normalized by the value
+ * which is considered the full capacity of a bridge, so that the score of
+ * 1 means more or less fully loaded bridge. The stats that have not been
+ * reported by the bridge do not contribute to the score.
+ *
+ * The score consists of two parts. Conference and video stream counts are
+ * exact, so the latest reported values are used as they are. CPU usage,
+ * bitrates, packet loss and round trip time are noisy samples, so they are
+ * smoothed with exponentially weighted moving average. That way a single spike
+ * does not move all new conferences to other bridges.
+ */
+public class BridgeStressScore
+{
+    /**
+     * The prefix of config properties used to configure the score.
+     */
+    private static final String PNAME_PREFIX = "org.jitsi.focus.BRIDGE_SCORE_";
+
+    /**
+     * The weight of CPU usage.
+     */
+    public static final String CPU_WEIGHT_PNAME = PNAME_PREFIX + "CPU_WEIGHT";
+
+    /**
+     * The weight of the number of video streams.
+     */
+    public static final String STREAMS_WEIGHT_PNAME
+        = PNAME_PREFIX + "STREAMS_WEIGHT";
+
+    /**
+     * The number of video streams at which the bridge is considered full.
+     */
+    public static final String STREAMS_CAPACITY_PNAME
+        = PNAME_PREFIX + "STREAMS_CAPACITY";
+
+    /**
+     * The weight of the number of conferences.
+     */
+    public static final String CONFERENCES_WEIGHT_PNAME
+        = PNAME_PREFIX + "CONFERENCES_WEIGHT";
+
+    /**
+     * The number of conferences at which the bridge is considered full.
+     */
+    public static final String CONFERENCES_CAPACITY_PNAME
+        = PNAME_PREFIX + "CONFERENCES_CAPACITY";
+
+    /**
+     * The weight of the sum of upload and download bitrate.
+     */
+    public static final String BITRATE_WEIGHT_PNAME
+        = PNAME_PREFIX + "BITRATE_WEIGHT";
+
+    /**
+     * The sum of upload and download bitrate in kbps at which the bridge is
+     * considered full.
+     */
+    public static final String BITRATE_CAPACITY_PNAME
+        = PNAME_PREFIX + "BITRATE_CAPACITY";
+
+    /**
+     * The weight of RTP packet loss.
+     */
+    public static final String LOSS_WEIGHT_PNAME
+        = PNAME_PREFIX + "LOSS_WEIGHT";
+
+    /**
+     * Packet loss rate which gets the score of 1.
+     */
+    public static final String LOSS_CAPACITY_PNAME
+        = PNAME_PREFIX + "LOSS_CAPACITY";
+
+    /**
+     * The weight of round trip time.
+     */
+    public static final String RTT_WEIGHT_PNAME = PNAME_PREFIX + "RTT_WEIGHT";
+
+    /**
+     * Round trip time in milliseconds which gets the score of 1.
+     */
+    public static final String RTT_CAPACITY_PNAME
+        = PNAME_PREFIX + "RTT_CAPACITY";
+
+    /**
+     * The weight of round trip time of the probes sent by the focus to
+     * the bridge.
+     */
+    public static final String PROBE_RTT_WEIGHT_PNAME
+        = PNAME_PREFIX + "PROBE_RTT_WEIGHT";
+
+    /**
+     * Round trip time of the probes in milliseconds which gets the score of 1.
+     */
+    public static final String PROBE_RTT_CAPACITY_PNAME
+        = PNAME_PREFIX + "PROBE_RTT_CAPACITY";
+
+    /**
+     * The smoothing factor of exponentially weighted moving average in range
+     * (0, 1]. The value of 1 disables smoothing.
+     */
+    public static final String SMOOTHING_PNAME = PNAME_PREFIX + "SMOOTHING";
+
+    /**
+     * The default smoothing factor.
+     */
+    public static final double DEFAULT_SMOOTHING = 0.5;
+
+    /**
+     * The weight of CPU usage.
+     */
+    private final double cpuWeight;
+
+    /**
+     * The weight of the number of video streams.
+     */
+    private final double streamsWeight;
+
+    /**
+     * The number of video streams of fully loaded bridge.
+     */
+    private final double streamsCapacity;
+
+    /**
+     * The weight of the number of conferences.
+     */
+    private final double conferencesWeight;
+
+    /**
+     * The number of conferences of fully loaded bridge.
+     */
+    private final double conferencesCapacity;
+
+    /**
+     * The weight of the total bitrate.
+     */
+    private final double bitrateWeight;
+
+    /**
+     * The total bitrate of fully loaded bridge in kbps.
+     */
+    private final double bitrateCapacity;
+
+    /**
+     * The weight of RTP packet loss.
+     */
+    private final double lossWeight;
+
+    /**
+     * Packet loss rate which gets the score of 1.
+     */
+    private final double lossCapacity;
+
+    /**
+     * The weight of round trip time.
+     */
+    private final double rttWeight;
+
+    /**
+     * Round trip time which gets the score of 1.
+     */
+    private final double rttCapacity;
+
+    /**
+     * The weight of round trip time of the probes.
+     */
+    private final double probeRttWeight;
+
+    /**
+     * Round trip time of the probes which gets the score of 1.
+     */
+    private final double probeRttCapacity;
+
+    /**
+     * The smoothing factor of exponentially weighted moving average.
+     */
+    private final double smoothing;
+
+    /**
+     * Creates new instance of <tt>BridgeStressScore</tt>.
+     *
+     * @param config <tt>ConfigurationService</tt> from which the weights will
+     *               be read or <tt>null</tt> to use the defaults.
+     */
+    public BridgeStressScore(ConfigurationService config)
+    {
+        cpuWeight = getDouble(config, CPU_WEIGHT_PNAME, 1.0);
+        streamsWeight = getDouble(config, STREAMS_WEIGHT_PNAME, 1.0);
+        streamsCapacity = getDouble(config, STREAMS_CAPACITY_PNAME, 1000.0);
+        conferencesWeight = getDouble(config, CONFERENCES_WEIGHT_PNAME, 0.5);
+        conferencesCapacity
+            = getDouble(config, CONFERENCES_CAPACITY_PNAME, 100.0);
+        bitrateWeight = getDouble(config, BITRATE_WEIGHT_PNAME, 0.5);
+        // 1 Gbps
+        bitrateCapacity = getDouble(config, BITRATE_CAPACITY_PNAME, 1000000.0);
+        lossWeight = getDouble(config, LOSS_WEIGHT_PNAME, 1.0);
+        lossCapacity = getDouble(config, LOSS_CAPACITY_PNAME, 0.1);
+        rttWeight = getDouble(config, RTT_WEIGHT_PNAME, 0.5);
+        rttCapacity = getDouble(config, RTT_CAPACITY_PNAME, 500.0);
+        probeRttWeight = getDouble(config, PROBE_RTT_WEIGHT_PNAME, 0.5);
+        probeRttCapacity
+            = getDouble(config, PROBE_RTT_CAPACITY_PNAME, 1000.0);
+
+        double smoothing = getDouble(config, SMOOTHING_PNAME, DEFAULT_SMOOTHING);
+        if (smoothing <= 0 || smoothing > 1)
+        {
+            throw new IllegalArgumentException(
+                SMOOTHING_PNAME + ": " + smoothing);
+        }
+        this.smoothing = smoothing;
+    }
+
+    /**
+     * Calculates the part of the score which comes from the conference and
+     * video stream counts.
+     *
+     * @param stats the stats reported by the bridge.
+     *
+     * @return the count score of the bridge or
+     *         {@link Double#POSITIVE_INFINITY} if no stats have been received
+     *         yet.
+     */
+    public double calculateCountScore(BridgeStats stats)
+    {
+        if (stats == BridgeStats.UNKNOWN)
+            return Double.POSITIVE_INFINITY;
+
+        return term(
+                streamsWeight, intStat(stats.getVideoStreamCount()),
+                streamsCapacity)
+            + term(
+                conferencesWeight, intStat(stats.getConferenceCount()),
+                conferencesCapacity);
+    }
+
+    /**
+     * Calculates the raw (not smoothed) part of the score which comes from
+     * CPU usage, bitrates, packet loss and round trip time.
+     *
+     * @param stats the stats reported by the bridge.
+     *
+     * @return the rate score of the bridge.
+     */
+    public double calculateRateScore(BridgeStats stats)
+    {
+        double score = term(cpuWeight, stats.getCpuUsage(), 1.0);
+
+        double bitrate = stats.getBitrateDownload();
+        if (Double.isNaN(bitrate))
+            bitrate = stats.getBitrateUpload();
+        else if (!Double.isNaN(stats.getBitrateUpload()))
+            bitrate += stats.getBitrateUpload();
+        score += term(bitrateWeight, bitrate, bitrateCapacity);
+
+        score += term(lossWeight, stats.getRtpLoss(), lossCapacity);
+        score += term(rttWeight, stats.getRtt(), rttCapacity);
+
+        return score;
+    }
+
+    /**
+     * Smooths the new raw score with the previous smoothed score.
+     *
+     * @param previous previous smoothed score or {@link Double#NaN} if there
+     *                 is none.
+     * @param score new raw score.
+     *
+     * @return new smoothed score.
+     */
+    public double smooth(double previous, double score)
+    {
+        if (Double.isNaN(previous))
+        {
+            return score;
+        }
+        return smoothing * score + (1 - smoothing) * previous;
+    }
+
+    /**
+     * Calculates the part of the score which comes from the round trip time
+     * of the probes sent by the focus. Slow responses mean that the bridge is
+     * overloaded or that the path to it is congested.
+     *
+     * @param probeRtt the smoothed round trip time of the probes in
+     *                 milliseconds or {@link Double#NaN} if unknown.
+     */
+    public double calculateProbeScore(double probeRtt)
+    {
+        return term(probeRttWeight, probeRtt, probeRttCapacity);
+    }
+
+    /**
+     * Calculates the score added by the allocations which are not reflected
+     * in the stats yet.
+     *
+     * @param reservedStreams the number of video streams reserved.
+     * @param reservedConferences the number of conferences reserved.
+     */
+    public double reservationScore(int reservedStreams,
+                                   int reservedConferences)
+    {
+        return term(streamsWeight, reservedStreams, streamsCapacity)
+            + term(conferencesWeight, reservedConferences, conferencesCapacity);
+    }
+
+    /**
+     * Calculates single term of the score.
+     *
+     * @param weight the weight of the term.
+     * @param value the value of the stat or {@link Double#NaN} if unknown.
+     * @param capacity the value of the stat which gets the score of 1.
+     */
+    private static double term(double weight, double value, double capacity)
+    {
+        if (Double.isNaN(value) || weight == 0 || capacity <= 0)
+            return 0;
+
+        return weight * value / capacity;
+    }
+
+    /**
+     * Converts integer stat to floating point value.
+     *
+     * @param value the integer stat.
+     *
+     * @return the value or {@link Double#NaN} if the stat is unknown.
+     */
+    private static double intStat(int value)
+    {
+        return value == Integer.MAX_VALUE ? Double.NaN : value;
+    }
+
+    /**
+     * Reads floating point config property.
+     */
+    private static double getDouble(ConfigurationService config,
+                                    String pname,
+                                    double defaultValue)
+    {
+        return config != null
+            ? config.getDouble(pname, defaultValue) : defaultValue;
+    }
+}
@@ -0,0 +1,378 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.protocol.xmpp.colibri.*;
+import org.jitsi.protocol.xmpp.util.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Keeps a few bundled channels allocated on the bridge in advance, so that
+ * the participant who joins the conference can be sent the offer without
+ * waiting for the allocation round trip. The channels are allocated for
+ * placeholder endpoints and assigned to the participant when taken. The ones
+ * which have not been taken for too long are expired and replaced with new
+ * ones, before the bridge expires them for inactivity.
+ */
+public class ChannelPool
+{
+    /**
+     * The logger.
+     */
+    private final static Logger logger = Logger.getLogger(ChannelPool.class);
+
+    /**
+     * Configuration property which specifies how many channel sets are kept
+     * allocated in advance for each conference. Zero disables the pool.
+     */
+    public static final String POOL_SIZE_PNAME
+        = "org.jitsi.focus.CHANNEL_POOL_SIZE";
+
+    /**
+     * The pool is disabled by default.
+     */
+    public static final int DEFAULT_POOL_SIZE = 0;
+
+    /**
+     * Configuration property which specifies how long in milliseconds
+     * the pooled channels are kept before they are replaced with new ones.
+     * Must be shorter than the channel expire time of the bridge.
+     */
+    public static final String MAX_IDLE_PNAME
+        = "org.jitsi.focus.CHANNEL_POOL_MAX_IDLE";
+
+    /**
+     * Half of the default channel expire time of the bridge.
+     */
+    public static final long DEFAULT_MAX_IDLE = 30000L;
+
+    /**
+     * The prefix of the names of the placeholder endpoints.
+     */
+    private static final String ENDPOINT_PREFIX = "pool-";
+
+    /**
+     * The conference in which the channels are allocated.
+     */
+    private final ColibriConference colibriConference;
+
+    /**
+     * The media offer description for which the channels are allocated.
+     */
+    private final List<ContentPacketExtension> contents;
+
+    /**
+     * XML of {@link #contents} used to tell whether the pooled channels match
+     * the offer of the participant.
+     */
+    private final String contentsXml;
+
+    /**
+     * The executor which runs the recycling task.
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * How many channel sets are kept allocated.
+     */
+    private final int size;
+
+    /**
+     * How long the channels are kept before they are replaced.
+     */
+    private final long maxIdle;
+
+    /**
+     * The allocated channels which have not been taken yet, the oldest first.
+     */
+    private final LinkedList<PooledChannels> idle
+        = new LinkedList<PooledChannels>();
+
+    /**
+     * How many allocations are in progress.
+     */
+    private int allocating;
+
+    /**
+     * The number of the next placeholder endpoint.
+     */
+    private int nextEndpoint;
+
+    /**
+     * Whether the failed allocation has stopped refilling until the next run
+     * of the recycling task.
+     */
+    private boolean failed;
+
+    /**
+     * Whether the pool has been disposed.
+     */
+    private boolean disposed;
+
+    /**
+     * Cyclic task which replaces the old channels.
+     */
+    private ScheduledFuture<?> recycleTask;
+
+    /**
+     * Creates new instance of <tt>ChannelPool</tt>.
+     *
+     * @param colibriConference the conference in which the channels will be
+     *                          allocated. The bridge must be set already.
+     * @param contents the media offer description for which the channels
+     *                 will be allocated.
+     * @param executor the executor which will run the recycling task.
+     * @param size how many channel sets to keep allocated.
+     * @param maxIdle how long in milliseconds to keep the channels before
+     *                replacing them.
+     */
+    public ChannelPool(ColibriConference colibriConference,
+                       List<ContentPacketExtension> contents,
+                       ScheduledExecutorService executor,
+                       int size,
+                       long maxIdle)
+    {
+        this.colibriConference = colibriConference;
+        this.contents = contents;
+        this.contentsXml = toXml(contents);
+        this.executor = executor;
+        this.size = size;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Allocates the channels and starts the recycling task.
+     */
+    public void start()
+    {
+        List<String> endpoints;
+        synchronized (this)
+        {
+            if (size <= 0 || disposed || recycleTask != null)
+                return;
+
+            long period = Math.max(1000L, maxIdle / 2);
+            recycleTask = executor.scheduleAtFixedRate(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        recycle();
+                    }
+                },
+                period, period, TimeUnit.MILLISECONDS);
+
+            endpoints = fill();
+        }
+        allocate(endpoints);
+    }
+
+    /**
+     * Takes the pooled channels and assigns them to given endpoint.
+     *
+     * @param endpoint the ID of the endpoint which will own the channels.
+     * @param offerContents the media offer description of the participant.
+     *
+     * @return the channels or <tt>null</tt> if there are no channels matching
+     *         the offer in the pool.
+     */
+    public ColibriConferenceIQ take(
+            String endpoint, List<ContentPacketExtension> offerContents)
+    {
+        if (!contentsXml.equals(toXml(offerContents)))
+            return null;
+
+        PooledChannels taken;
+        List<String> endpoints;
+        synchronized (this)
+        {
+            if (disposed || idle.isEmpty())
+                return null;
+
+            taken = idle.removeFirst();
+
+            endpoints = fill();
+        }
+
+        colibriConference.updateChannelsEndpoint(endpoint, taken.channels);
+
+        logger.info(
+            "Assigned pooled channels of " + taken.endpoint + " to "
+                + endpoint);
+
+        allocate(endpoints);
+
+        return taken.channels;
+    }
+
+    /**
+     * Stops the recycling task. The channels are not expired, as the pool is
+     * disposed together with the conference.
+     */
+    public synchronized void dispose()
+    {
+        disposed = true;
+
+        if (recycleTask != null)
+        {
+            recycleTask.cancel(false);
+            recycleTask = null;
+        }
+
+        idle.clear();
+    }
+
+    /**
+     * Reserves as many placeholder endpoints as there are channel sets
+     * missing from the pool. Must be called with this instance locked.
+     *
+     * @return the placeholder endpoints for which the channels are to be
+     *         allocated.
+     */
+    private List<String> fill()
+    {
+        List<String> endpoints = new ArrayList<String>();
+        while (!disposed && !failed && idle.size() + allocating < size)
+        {
+            endpoints.add(ENDPOINT_PREFIX + nextEndpoint++);
+            allocating++;
+        }
+        return endpoints;
+    }
+
+    /**
+     * Sends the allocations of the channels for given placeholder endpoints.
+     * The requests are sent without holding the lock of this instance, as
+     * the responses may be delivered on the calling thread.
+     */
+    private void allocate(List<String> endpoints)
+    {
+        for (String endpoint : endpoints)
+        {
+            allocate(endpoint);
+        }
+    }
+
+    private void allocate(final String endpoint)
+    {
+        colibriConference.createColibriChannelsAsync(
+                true, endpoint, true, contents)
+            .addListener(
+                new SettableFuture.Listener<ColibriConferenceIQ>()
+                {
+                    @Override
+                    public void onSuccess(ColibriConferenceIQ channels)
+                    {
+                        onAllocated(endpoint, channels);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable error)
+                    {
+                        logger.warn(
+                            "Failed to allocate pooled channels for "
+                                + endpoint + ": " + error.getMessage());
+
+                        synchronized (ChannelPool.this)
+                        {
+                            allocating--;
+                            failed = true;
+                        }
+                    }
+                });
+    }
+
+    private synchronized void onAllocated(String endpoint,
+                                          ColibriConferenceIQ channels)
+    {
+        allocating--;
+
+        // Null if the conference has been expired in the meantime
+        if (!disposed && channels != null)
+        {
+            idle.add(new PooledChannels(endpoint, channels));
+        }
+    }
+
+    /**
+     * Expires the channels which have been kept for too long and allocates
+     * the new ones.
+     */
+    private void recycle()
+    {
+        List<PooledChannels> expired = new ArrayList<PooledChannels>();
+        List<String> endpoints;
+
+        synchronized (this)
+        {
+            if (disposed)
+                return;
+
+            long now = System.currentTimeMillis();
+            while (!idle.isEmpty()
+                && now - idle.getFirst().allocated >= maxIdle)
+            {
+                expired.add(idle.removeFirst());
+            }
+
+            failed = false;
+            endpoints = fill();
+        }
+
+        for (PooledChannels channels : expired)
+        {
+            colibriConference.expireChannels(channels.channels);
+        }
+        allocate(endpoints);
+    }
+
+    private static String toXml(List<ContentPacketExtension> contents)
+    {
+        StringBuilder xml = new StringBuilder();
+        for (ContentPacketExtension content : contents)
+        {
+            xml.append(content.toXML());
+        }
+        return xml.toString();
+    }
+
+    /**
+     * The channels allocated for placeholder endpoint.
+     */
+    private static class PooledChannels
+    {
+        final String endpoint;
+
+        final ColibriConferenceIQ channels;
+
+        final long allocated = System.currentTimeMillis();
+
+        PooledChannels(String endpoint, ColibriConferenceIQ channels)
+        {
+            this.endpoint = endpoint;
+            this.channels = channels;
+        }
+    }
+}
@@ -95,6 +95,11 @@ public class ComponentsDiscovery
      */
     private ThroughPubSubDiscovery pubSubBridgeDiscovery;
 
+    /**
+     * Sends liveness probes to the videobridges.
+     */
+    private BridgeProber bridgeProber;
+
     /**
      * The name of PubSub node where videobridges are publishing their stats.
      */
@@ -199,6 +204,21 @@ public class ComponentsDiscovery
 
             pubSubBridgeDiscovery.start();
         }
+
+        OperationSetDirectSmackXmpp smackOpSet
+            = protocolProviderHandler.getOperationSet(
+                    OperationSetDirectSmackXmpp.class);
+        if (smackOpSet != null)
+        {
+            bridgeProber
+                = new BridgeProber(
+                        meetServices.getBridgeSelector(),
+                        smackOpSet.getXmppConnection(),
+                        FocusBundleActivator.getSharedThreadPool(),
+                        FocusBundleActivator.getConfigService());
+
+            bridgeProber.start();
+        }
     }
 
     private void cancelRediscovery()
@@ -214,6 +234,12 @@ public class ComponentsDiscovery
             pubSubBridgeDiscovery.stop();
             pubSubBridgeDiscovery = null;
         }
+
+        if (bridgeProber != null)
+        {
+            bridgeProber.stop();
+            bridgeProber = null;
+        }
     }
 
     /**
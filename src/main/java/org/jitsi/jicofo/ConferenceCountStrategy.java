@@ -0,0 +1,88 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import java.util.*;
+
+/**
+ * {@link BridgeSelectionStrategy} which prefers the bridge hosting the least
+ * conferences, including the ones allocated since the last stats update.
+ * Bridges with equal conference count keep their load order.
+ */
+public class ConferenceCountStrategy
+    implements BridgeSelectionStrategy
+{
+    /**
+     * The name of this strategy.
+     */
+    public static final String NAME = "conference-count";
+
+    /**
+     * Compares bridges by the number of conferences.
+     */
+    private static final Comparator<BridgeSelector.BridgeState> COMPARATOR
+        = new Comparator<BridgeSelector.BridgeState>()
+        {
+            @Override
+            public int compare(BridgeSelector.BridgeState b1,
+                               BridgeSelector.BridgeState b2)
+            {
+                int c1 = b1.getEstimatedConferenceCount();
+                int c2 = b2.getEstimatedConferenceCount();
+
+                return c1 < c2 ? -1 : (c1 == c2 ? 0 : 1);
+            }
+        };
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void order(List<BridgeSelector.BridgeState> bridges,
+                      String roomName)
+    {
+        // Collections.sort is stable, so the load order is preserved for
+        // bridges with the same conference count
+        Collections.sort(bridges, COMPARATOR);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void bridgeSelected(String bridgeJid, String roomName)
+    {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void bridgeRemoved(String bridgeJid)
+    {
+    }
+}
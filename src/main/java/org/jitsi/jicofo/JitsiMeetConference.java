@@ -38,6 +38,7 @@ import org.jitsi.protocol.xmpp.*;
 import org.jitsi.impl.protocol.xmpp.*;
 import org.jitsi.protocol.xmpp.colibri.*;
 import org.jitsi.protocol.xmpp.util.*;
+import org.jitsi.service.configuration.*;
 import org.jitsi.service.neomedia.*;
 import org.jitsi.util.*;
 import org.jitsi.videobridge.eventadmin.*;
@@ -143,6 +144,35 @@ public class JitsiMeetConference
      */
     private volatile ColibriConference colibriConference;
 
+    /**
+     * The channels allocated in advance for the participants who are about to
+     * join or <tt>null</tt> if the pool is disabled.
+     */
+    private volatile ChannelPool channelPool;
+
+    /**
+     * The selection of the bridge for {@link #bridgeSelectionConference} in
+     * progress, which the participants invited at the same time wait for.
+     */
+    private SettableFuture<String> bridgeSelection;
+
+    /**
+     * The Colibri conference for which {@link #bridgeSelection} has been
+     * started.
+     */
+    private ColibriConference bridgeSelectionConference;
+
+    /**
+     * Synchronizes the scheduling of {@link #flushSourceUpdates()}.
+     */
+    private final Object sourceUpdatesSyncRoot = new Object();
+
+    /**
+     * Whether {@link #flushSourceUpdates()} has been scheduled and not run
+     * yet.
+     */
+    private boolean sourceUpdatesScheduled;
+
     /**
      * Jitsi Meet tool used for specific operations like adding presence
      * extensions.
@@ -154,6 +184,14 @@ public class JitsiMeetConference
      */
     private final List<Participant> participants
         = new CopyOnWriteArrayList<Participant>();
+
+    /**
+     * The active conference participants indexed by their MUC address, which
+     * is also the address of their Jingle session, and by their Colibri
+     * endpoint ID.
+     */
+    private final SessionRegistry<Participant> participantRegistry
+        = new SessionRegistry<Participant>();
     
     
     private static Map<String,String> participantType = new HashMap<String, String>();    
@@ -282,6 +320,8 @@ public class JitsiMeetConference
             if (protocolProviderHandler.isRegistered())
             {
                 joinTheRoom();
+
+                startChannelPool();
             }
 
             protocolProviderHandler.addRegistrationListener(this);
@@ -477,15 +517,7 @@ public class JitsiMeetConference
         }
 
         // FIXME: verify
-        if (colibriConference == null)
-        {
-            colibriConference = colibri.createNewConference();
-
-            colibriConference.setConfig(config);
-
-            String roomName = MucUtil.extractName(chatRoom.getName());
-            colibriConference.setName(roomName);
-        }
+        getOrCreateColibriConference();
 
         // Invite all not invited yet
         if (participants.size() == 0)
@@ -505,6 +537,142 @@ public class JitsiMeetConference
         }
     }
 
+    /**
+     * Returns the Colibri conference of this instance, creating it if it does
+     * not exist yet.
+     */
+    private synchronized ColibriConference getOrCreateColibriConference()
+    {
+        if (colibriConference == null)
+        {
+            colibriConference = colibri.createNewConference();
+
+            colibriConference.setConfig(config);
+
+            String roomName = MucUtil.extractName(chatRoom.getName());
+            colibriConference.setName(roomName);
+        }
+        return colibriConference;
+    }
+
+    /**
+     * Creates the Colibri conference and the pool of channels allocated in
+     * advance, if enabled, so that the first participants do not have to wait
+     * for the bridge. It is done on separate thread, as the conference may
+     * have to wait for the bridge capacity.
+     */
+    private void startChannelPool()
+    {
+        ConfigurationService cfg = FocusBundleActivator.getConfigService();
+
+        final int poolSize
+            = cfg.getInt(
+                    ChannelPool.POOL_SIZE_PNAME, ChannelPool.DEFAULT_POOL_SIZE);
+        if (poolSize <= 0)
+            return;
+
+        final long maxIdle
+            = cfg.getLong(
+                    ChannelPool.MAX_IDLE_PNAME, ChannelPool.DEFAULT_MAX_IDLE);
+
+        FocusBundleActivator.getSharedThreadPool().submit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    warmUpChannelPool(poolSize, maxIdle);
+                }
+                catch (Exception e)
+                {
+                    logger.error(
+                        "Code=Error, Failed to start the channel pool", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Selects the bridge for the conference and starts the channel pool.
+     *
+     * @param poolSize how many channel sets to keep allocated.
+     * @param maxIdle how long in milliseconds to keep the channels before
+     *                replacing them.
+     */
+    private void warmUpChannelPool(final int poolSize, final long maxIdle)
+    {
+        final ColibriConference conference;
+        synchronized (this)
+        {
+            if (!started || chatRoom == null)
+                return;
+
+            conference = getOrCreateColibriConference();
+        }
+
+        selectBridge(conference, null).addListener(
+            new SettableFuture.Listener<String>()
+            {
+                @Override
+                public void onSuccess(String bridge)
+                {
+                    if (bridge == null)
+                    {
+                        onFailure(null);
+                        return;
+                    }
+
+                    createChannelPool(conference, poolSize, maxIdle);
+                }
+
+                @Override
+                public void onFailure(Throwable error)
+                {
+                    logger.warn(
+                        "No bridge for the channel pool of " + roomName);
+                }
+            });
+    }
+
+    /**
+     * Starts the channel pool on the bridge selected for the conference.
+     *
+     * @param conference the Colibri conference which has the bridge set.
+     * @param poolSize how many channel sets to keep allocated.
+     * @param maxIdle how long in milliseconds to keep the channels before
+     *                replacing them.
+     */
+    private void createChannelPool(ColibriConference conference,
+                                   int poolSize,
+                                   long maxIdle)
+    {
+        // The offer of Jitsi Meet participant
+        List<ContentPacketExtension> contents
+            = createOfferContents(true, true, isSctpEnabled(), false, true);
+        ChannelPool pool
+            = new ChannelPool(
+                    conference,
+                    contents,
+                    FocusBundleActivator.getSharedThreadPool(),
+                    poolSize,
+                    maxIdle);
+
+        synchronized (this)
+        {
+            if (conference != colibriConference || channelPool != null)
+                return;
+
+            channelPool = pool;
+        }
+
+        logger.info(
+            "Allocating " + poolSize + " pooled channel sets for " + roomName
+                + " on " + conference.getJitsiVideobridge());
+
+        pool.start();
+    }
+
     /**
      * Invites new member to the conference which means new Jingle session
      * established and videobridge channels being allocated.
@@ -529,7 +697,7 @@ public class JitsiMeetConference
 
         newParticipant = new Participant((XmppChatMember) chatRoomMember);
 
-        participants.add(newParticipant);
+        addParticipant(newParticipant);
         
         String endpoint = address.split("/")[1];
         String room = roomName.substring(0,roomName.indexOf('@'));
@@ -623,9 +791,9 @@ public class JitsiMeetConference
      * will start audio muted. if the second element is <tt>true</tt> the
      * participant will start video muted.
      */
-    private void discoverFeaturesAndInvite(Participant     newParticipant,
-                                           String          address,
-                                           boolean[]       startMuted)
+    private void discoverFeaturesAndInvite(final Participant newParticipant,
+                                           final String      address,
+                                           final boolean[]   startMuted)
     {
         // Feature discovery
         List<String> features
@@ -649,46 +817,133 @@ public class JitsiMeetConference
         	
         
         
+        allocateAndInvite(newParticipant, address, startMuted);
+    }
+
+    /**
+     * Allocates the channels for the participant and sends Jingle offer once
+     * they are allocated. Does not block the calling thread.
+     *
+     * @param newParticipant the participant to be invited.
+     * @param address the participant full MUC address.
+     * @param startMuted if the first element is <tt>true</tt> the participant
+     * will start audio muted. if the second element is <tt>true</tt> the
+     * participant will start video muted.
+     */
+    private void allocateAndInvite(final Participant newParticipant,
+                                   final String      address,
+                                   final boolean[]   startMuted)
+    {
         // Store instance here as it is set to null when conference is disposed
-        ColibriConference conference = this.colibriConference;
-        List<ContentPacketExtension> offer;
+        final ColibriConference conference = this.colibriConference;
+        final List<ContentPacketExtension> contents
+            = createOfferContents(newParticipant);
 
-        try
-        {
-            offer = createOffer(newParticipant);
-            if (offer == null)
+        // The thread is released while the bridge allocates the channels
+        allocateChannels(newParticipant, contents).addListener(
+            new SettableFuture.Listener<ColibriConferenceIQ>()
             {
-                logger.info("Channel allocation cancelled for " + address);
-                return;
-            }
-        }
-        catch (OperationFailedException e)
-        {
-            //FIXME: retry ? sometimes it's just timeout
-            logger.error("Code=Error, Failed to allocate channels for " + address, e);
+                @Override
+                public void onSuccess(ColibriConferenceIQ peerChannels)
+                {
+                    try
+                    {
+                        if (peerChannels == null)
+                        {
+                            logger.info(
+                                "Channel allocation cancelled for " + address);
+                            return;
+                        }
+
+                        List<ContentPacketExtension> offer;
+                        synchronized (JitsiMeetConference.this)
+                        {
+                            // Allocated on the bridge which has failed in
+                            // the meantime. The participant is re-invited
+                            // with the channels on the new bridge, which
+                            // must not be replaced with these ones.
+                            if (colibriConference != null
+                                && conference != colibriConference)
+                            {
+                                logger.info(
+                                    "Expiring " + address + " channels"
+                                        + " - conference moved to another"
+                                        + " bridge");
+                                conference.expireChannels(peerChannels);
+                                return;
+                            }
+
+                            offer
+                                = completeOffer(
+                                        newParticipant, contents,
+                                        peerChannels);
+                        }
+
+                        inviteParticipant(
+                            conference, newParticipant, address, offer,
+                            startMuted);
+                    }
+                    catch (Exception e)
+                    {
+                        logger.error(
+                            "Code=Error, Exception on participant invite", e);
+                    }
+                }
 
-            // Notify users about bridge is down event
-            if (BRIDGE_FAILURE_ERR_CODE == e.getErrorCode())
-            {
-                meetTools.sendPresenceExtension(
-                    chatRoom, new BridgeIsDownPacketExt());
-            }
-            // Cancel - no channels allocated
-            return;
-        }
+                @Override
+                public void onFailure(Throwable error)
+                {
+                    // Timeouts have been retried already
+                    logger.error(
+                        "Code=Error, Failed to allocate channels for "
+                            + address, error);
+
+                    // Notify users about bridge is down event
+                    if (error instanceof OperationFailedException
+                        && BRIDGE_FAILURE_ERR_CODE
+                            == ((OperationFailedException) error)
+                                    .getErrorCode())
+                    {
+                        meetTools.sendPresenceExtension(
+                            chatRoom, new BridgeIsDownPacketExt());
+                    }
+                    // Cancel - no channels allocated
+                }
+            });
+    }
+
+    /**
+     * Sends Jingle session-initiate with given offer to the participant
+     * whose channels have been allocated. The acknowledgement is not waited
+     * for, the channels are expired when it fails to arrive.
+     *
+     * @param conference the Colibri conference on which the channels have
+     *                   been allocated.
+     * @param newParticipant the participant to invite.
+     * @param address the participant full MUC address.
+     * @param offer the Jingle offer.
+     * @param startMuted if the first element is <tt>true</tt> the participant
+     * will start audio muted. if the second element is <tt>true</tt> the
+     * participant will start video muted.
+     */
+    private void inviteParticipant(
+            final ColibriConference conference,
+            final Participant newParticipant,
+            final String address,
+            List<ContentPacketExtension> offer,
+            boolean[] startMuted)
+    {
         /*
            This check makes sure that at the point when we're trying to
            invite new participant:
            - the conference has not been disposed in the meantime
            - he's still in the room
-           - we have managed to send Jingle session-initiate
+           - the conference has not been moved to another bridge
            Otherwise we expire allocated channels.
         */
-        if (chatRoom == null ||
-            findMember(address) == null ||
-            !jingle.initiateSession(
-                newParticipant.hasBundleSupport(), address, offer, this,
-                startMuted))
+        if (chatRoom == null
+            || findMember(address) == null
+            || conference != colibriConference)
         {
             if (chatRoom == null)
             {
@@ -696,6 +951,13 @@ public class JitsiMeetConference
                 logger.info(
                     "Expiring " + address + " channels - conference disposed");
             }
+            else if (conference != colibriConference)
+            {
+                // Re-invited with the channels on the new bridge
+                logger.info(
+                    "Expiring " + address
+                        + " channels - conference moved to another bridge");
+            }
             else
             {
                 // Participant has left the room
@@ -704,208 +966,364 @@ public class JitsiMeetConference
             }
             conference.expireChannels(
                 newParticipant.getColibriChannelsInfo());
+            return;
         }
+
+        jingle.initiateSession(
+                newParticipant.hasBundleSupport(), address, offer, this,
+                startMuted)
+            .addListener(new SettableFuture.Listener<Boolean>()
+            {
+                @Override
+                public void onSuccess(Boolean acknowledged)
+                {
+                    if (!Boolean.TRUE.equals(acknowledged))
+                        onSessionInitiateFailed();
+                }
+
+                @Override
+                public void onFailure(Throwable error)
+                {
+                    onSessionInitiateFailed();
+                }
+
+                private void onSessionInitiateFailed()
+                {
+                    logger.info(
+                        "Expiring " + address
+                            + " channels - session-initiate failed");
+                    conference.expireChannels(
+                        newParticipant.getColibriChannelsInfo());
+                }
+            });
     }
 
     /**
      * Allocates Colibri channels for given {@link Participant} by trying all
-     * available bridges returned by {@link BridgeSelector}.
+     * available bridges returned by {@link BridgeSelector}. The calling thread
+     * is never blocked, if new conference has to wait for the bridge capacity
+     * the channels are allocated once it is admitted.
      *
      * @param peer the for whom Colibri channel are to be allocated.
      * @param contents the media offer description passed to the bridge.
      *
-     * @return {@link ColibriConferenceIQ} that describes channels allocated for
-     *         given <tt>peer</tt>. <tt>null</tt> is returned if conference is
-     *         disposed before we manage to allocate the channels.
-     *
-     * @throws OperationFailedException if we have failed to allocate channels
-     *         using existing bridge and we can not switch to another bridge.
-     */
-    private ColibriConferenceIQ allocateChannels(
-            Participant peer, List<ContentPacketExtension> contents)
-        throws OperationFailedException
+     * @return the future completed with {@link ColibriConferenceIQ} that
+     *         describes channels allocated for given <tt>peer</tt> or with
+     *         <tt>null</tt> if conference is disposed before we manage to
+     *         allocate the channels. It fails with
+     *         {@link OperationFailedException} if we have failed to allocate
+     *         channels using existing bridge and we can not switch to another
+     *         bridge.
+     */
+    private SettableFuture<ColibriConferenceIQ> allocateChannels(
+            final Participant peer, final List<ContentPacketExtension> contents)
     {
-        // This method is executed on thread pool.
-
         // Store colibri instance here to be able to free the channels even
         // after the conference has been disposed.
-        ColibriConference colibriConference = this.colibriConference;
-        if (this.colibriConference == null)
+        final ColibriConference colibriConference = this.colibriConference;
+        if (colibriConference == null)
         {
             // Nope - the conference has been disposed, before the thread got
             // the chance to do anything
-            return null;
+            return SettableFuture.completed(null);
         }
 
-        // Allocate by trying all bridges on prioritized list
-        BridgeSelector bridgeSelector = services.getBridgeSelector();
-
-        Iterator<String> bridgesIterator
-            = bridgeSelector.getPrioritizedBridgesList().iterator();
-
         // Set initial bridge if we haven't used any yet
         if (StringUtils.isNullOrEmpty(colibriConference.getJitsiVideobridge()))
         {
-            if (!bridgesIterator.hasNext())
-            {
-                throw new OperationFailedException(
-                    "Code=Error, Failed to allocate channels - no bridge configured",
-                    OperationFailedException.GENERAL_ERROR);
-            }
+            final SettableFuture<ColibriConferenceIQ> result
+                = new SettableFuture<ColibriConferenceIQ>();
 
-            colibriConference.setJitsiVideobridge(
-                bridgesIterator.next());
-        }
+            selectBridge(colibriConference, getConferenceRegion(peer))
+                .addListener(new SettableFuture.Listener<String>()
+                {
+                    @Override
+                    public void onSuccess(String bridge)
+                    {
+                        if (bridge == null)
+                        {
+                            onFailure(
+                                new OperationFailedException(
+                                    "Code=Error, Failed to allocate channels"
+                                        + " - no bridge available"
+                                        + " or all bridges are full",
+                                    OperationFailedException.GENERAL_ERROR));
+                            return;
+                        }
+
+                        ChannelAllocation allocation
+                            = new ChannelAllocation(
+                                    colibriConference, peer, contents);
+
+                        allocation.result.addListener(
+                            new SettableFuture.Listener<ColibriConferenceIQ>()
+                            {
+                                @Override
+                                public void onSuccess(
+                                        ColibriConferenceIQ channels)
+                                {
+                                    result.complete(channels);
+                                }
+
+                                @Override
+                                public void onFailure(Throwable error)
+                                {
+                                    result.fail(error);
+                                }
+                            });
+
+                        allocation.allocate();
+                    }
 
-        while (this.colibriConference != null)
-        {
-            try
-            {
-                /*logger.info(
-                    "Using " + colibriConference.getJitsiVideobridge()
-                        + " to allocate channels for: "
-                        + peer.getChatMember().getContactAddress());*/
-            	
-            	String endpoint = peer.getChatMember().getContactAddress().split("/")[1];
-            	
-            	/*logger.audit("Code= Info, Action= Invite Peer"+", MucID:" +roomName + ", RoutingID :" +endpoint +", Message:"+"Using " + colibriConference.getJitsiVideobridge()
-                        + " to allocate channels for: "
-                        + peer.getChatMember().getContactAddress() );*/
-
-            	
-            	 String room = roomName.substring(0,roomName.indexOf('@'));
-                 
-                 logger.audit("room-id=" +room + ", routing_id=" +endpoint +", Code=Info, Action=InvitePeer,  Message="+"Using " + colibriConference.getJitsiVideobridge()
-                 + " to allocate channels for: "
-                 + peer.getChatMember().getContactAddress());
-            	
+                    @Override
+                    public void onFailure(Throwable error)
+                    {
+                        if (colibriConference !=
+                                JitsiMeetConference.this.colibriConference)
+                        {
+                            // Disposed while waiting for the bridge
+                            result.complete(null);
+                        }
+                        else
+                        {
+                            result.fail(error);
+                        }
+                    }
+                });
 
-                ColibriConferenceIQ peerChannels
-                    = colibriConference.createColibriChannels(
-                            peer.hasBundleSupport(),
-                            peer.getEndpointId(),
-                            true, contents);
+            return result;
+        }
 
-                bridgeSelector.updateBridgeOperationalStatus(
-                    colibriConference.getJitsiVideobridge(), true);
+        ChannelAllocation allocation
+            = new ChannelAllocation(colibriConference, peer, contents);
 
-                if (colibriConference.hasJustAllocated())
-                {
-                    EventAdmin eventAdmin
-                            = FocusBundleActivator.getEventAdmin();
-                    if (eventAdmin != null)
-                    {
-                        eventAdmin.sendEvent(
-                            EventFactory.conferenceRoom(
-                                    colibriConference.getConferenceId(),
-                                    roomName,
-                                    getId(),
-                                    colibriConference.getJitsiVideobridge()));
-                    }
-                }
-                return peerChannels;
-            }
-            catch(OperationFailedException exc)
-            {
-                String faultyBridge = colibriConference.getJitsiVideobridge();
+        allocation.allocate();
 
-                logger.error("Code=Error, Failed to allocate channels using bridge: "
-                        + colibriConference.getJitsiVideobridge(), exc);
+        return allocation.result;
+    }
 
-                bridgeSelector.updateBridgeOperationalStatus(
-                    faultyBridge, false);
+    /**
+     * Selects the bridge for given Colibri conference, unless one has been
+     * selected already. The participants which are invited at the same time
+     * get the selection started by the first one of them, so that all of them
+     * end up on the same bridge. The selection waits in the admission queue
+     * if all bridges are full, without blocking the calling thread.
+     *
+     * @param conference the Colibri conference of this conference.
+     * @param region the region of the participants of the conference or
+     *               <tt>null</tt> if unknown.
+     *
+     * @return the future completed with the JID of the bridge used by
+     *         the conference or with <tt>null</tt> if there are not any
+     *         bridges available or the conference has been disposed.
+     */
+    private SettableFuture<String> selectBridge(
+            final ColibriConference conference, String region)
+    {
+        final SettableFuture<String> selection;
+        synchronized (this)
+        {
+            String bridge = conference.getJitsiVideobridge();
+            if (!StringUtils.isNullOrEmpty(bridge))
+                return SettableFuture.completed(bridge);
 
-                // Check if the conference is in progress
-                if (!StringUtils.isNullOrEmpty(
-                        colibriConference.getConferenceId()))
-                {
-                    // Restart
-                	logger.error("Code=Error, Bridge failure - stopping the conference");
-                    stop();
-                }
+            if (conference != colibriConference)
+                return SettableFuture.completed(null);
 
-                // Try next bridge
-                String nextBridge = null;
-                if (bridgesIterator.hasNext())
-                    nextBridge = bridgesIterator.next();
+            if (bridgeSelection != null
+                && bridgeSelectionConference == conference)
+            {
+                return bridgeSelection;
+            }
 
-                // Is it the same which has just failed ?
-                // (we do not always call iterator.next() at the beginning)
-                if (faultyBridge.equals(nextBridge))
-                    nextBridge = null;
+            selection = new SettableFuture<String>();
+            bridgeSelection = selection;
+            bridgeSelectionConference = conference;
+        }
 
-                if (nextBridge != null)
+        services.getBridgeSelector().admitConference(roomName, region)
+            .addListener(new SettableFuture.Listener<String>()
+            {
+                @Override
+                public void onSuccess(String bridge)
                 {
-                    colibriConference.setJitsiVideobridge(nextBridge);
+                    onBridgeAdmitted(conference, selection, bridge);
                 }
-                else
+
+                @Override
+                public void onFailure(Throwable error)
                 {
-                    // No more bridges to try
-                    throw new OperationFailedException(
-                        "Failed to allocate channels - all bridges are faulty",
-                        BRIDGE_FAILURE_ERR_CODE);
+                    logger.error("Bridge admission failed: " + roomName, error);
+
+                    onBridgeAdmitted(conference, selection, null);
                 }
+            });
+
+        return selection;
+    }
+
+    /**
+     * Sets the bridge admitted for the conference, unless some other one has
+     * been set in the meantime, and completes the selection.
+     *
+     * @param conference the Colibri conference for which the bridge has been
+     *                   selected.
+     * @param selection the selection started by
+     *                  {@link #selectBridge(ColibriConference, String)}.
+     * @param bridge the JID of the bridge or <tt>null</tt> if none has been
+     *               admitted.
+     */
+    private void onBridgeAdmitted(ColibriConference          conference,
+                                  SettableFuture<String>     selection,
+                                  String                     bridge)
+    {
+        boolean isNewBridge = false;
+        synchronized (this)
+        {
+            if (bridgeSelection == selection)
+            {
+                bridgeSelection = null;
+                bridgeSelectionConference = null;
+            }
+
+            if (conference != colibriConference)
+            {
+                bridge = null;
+            }
+            else if (!StringUtils.isNullOrEmpty(
+                        conference.getJitsiVideobridge()))
+            {
+                bridge = conference.getJitsiVideobridge();
+            }
+            else if (bridge != null)
+            {
+                conference.setJitsiVideobridge(bridge);
+                isNewBridge = true;
             }
         }
-        // If we reach this point it means that the conference has been disposed
-        // before we've managed to allocate anything
-        return null;
+
+        if (isNewBridge)
+        {
+            services.getBridgeSelector().bridgeSelected(bridge, roomName);
+        }
+
+        selection.complete(bridge);
     }
 
     /**
-     * Creates Jingle offer for given {@link Participant}.
+     * Returns the region in which the bridge for this conference should be
+     * located. It is the region of the first participant which has advertised
+     * one.
      *
-     * @param peer the participant for whom Jingle offer will be created.
+     * @param peer the participant for whom the channels are being allocated,
+     *             used if none of the participants has advertised the region
+     *             yet.
+     *
+     * @return the region name or <tt>null</tt> if unknown.
+     */
+    private String getConferenceRegion(Participant peer)
+    {
+        for (Participant participant : participants)
+        {
+            String region = participant.getChatMember().getRegion();
+            if (!StringUtils.isNullOrEmpty(region))
+                return region;
+        }
+        return peer.getChatMember().getRegion();
+    }
+
+    /**
+     * Creates the contents of Jingle offer for given {@link Participant},
+     * which describe the media to allocate the channels for.
      *
-     * @return the list of contents describing conference Jingle offer or
-     *         <tt>null</tt> if the conference has been disposed before we've
-     *         managed to allocate Colibri channels.
+     * @param peer the participant for whom Jingle offer will be created.
      *
-     * @throws OperationFailedException if focus fails to allocate channels
-     *         or something goes wrong.
+     * @return the list of contents without the transport information.
      */
-    private List<ContentPacketExtension> createOffer(Participant peer)
-        throws OperationFailedException
+    private List<ContentPacketExtension> createOfferContents(Participant peer)
+    {
+        return createOfferContents(
+                peer.hasAudioSupport(),
+                peer.hasVideoSupport(),
+                isSctpEnabled() && peer.hasSctpSupport(),
+                !peer.hasIceSupport(),
+                peer.hasDtlsSupport());
+    }
+
+    /**
+     * Creates the contents of Jingle offer which describe the media to
+     * allocate the channels for.
+     *
+     * @param audio whether to include audio content.
+     * @param video whether to include video content.
+     * @param sctp whether to include data content.
+     * @param disableIce <tt>true</tt> to use raw UDP transport instead of ICE.
+     * @param useDtls whether to use DTLS.
+     *
+     * @return the list of contents without the transport information.
+     */
+    private List<ContentPacketExtension> createOfferContents(
+            boolean audio,
+            boolean video,
+            boolean sctp,
+            boolean disableIce,
+            boolean useDtls)
     {
         List<ContentPacketExtension> contents
             = new ArrayList<ContentPacketExtension>();
 
-        boolean disableIce = !peer.hasIceSupport();
-        boolean useDtls = peer.hasDtlsSupport();
-
-        if (peer.hasAudioSupport())
+        if (audio)
         {
             contents.add(
-                JingleOfferFactory.createContentForMedia(
+                JingleOfferFactory.getContentForMedia(
                     MediaType.AUDIO, disableIce, useDtls));
         }
 
-        if (peer.hasVideoSupport())
+        if (video)
         {
             contents.add(
-                JingleOfferFactory.createContentForMedia(
+                JingleOfferFactory.getContentForMedia(
                     MediaType.VIDEO, disableIce, useDtls));
         }
 
-        // Is SCTP enabled ?
-        boolean openSctp = config == null || config.openSctp() == null
-                ? true : config.openSctp();
-
-        if (openSctp && peer.hasSctpSupport())
+        if (sctp)
         {
             contents.add(
-                JingleOfferFactory.createContentForMedia(
+                JingleOfferFactory.getContentForMedia(
                     MediaType.DATA, disableIce, useDtls));
         }
 
-        boolean useBundle = peer.hasBundleSupport();
-
-        ColibriConferenceIQ peerChannels = allocateChannels(peer, contents);
+        return contents;
+    }
 
-        if (peerChannels == null)
-            return null;
+    /**
+     * Returns <tt>true</tt> if SCTP data channels are to be opened.
+     */
+    private boolean isSctpEnabled()
+    {
+        return config == null || config.openSctp() == null
+                ? true : config.openSctp();
+    }
 
-        if (earlyRecordingState != null)
+    /**
+     * Completes Jingle offer for given {@link Participant} with the channels
+     * allocated on the bridge.
+     *
+     * @param peer the participant for whom Jingle offer is created.
+     * @param contents the contents created by
+     *                 {@link #createOfferContents(Participant)}.
+     * @param peerChannels the channels allocated for the participant.
+     *
+     * @return the list of contents describing conference Jingle offer.
+     */
+    private List<ContentPacketExtension> completeOffer(
+            Participant                  peer,
+            List<ContentPacketExtension> contents,
+            ColibriConferenceIQ          peerChannels)
+    {
+        boolean useBundle = peer.hasBundleSupport();
+
+        if (earlyRecordingState != null)
         {
             RecordingState recState = earlyRecordingState;
             earlyRecordingState = null;
@@ -951,6 +1369,10 @@ public class JitsiMeetConference
 
         peer.setColibriChannelsInfo(peerChannels);
 
+        // The offer describes all sources of the conference, so the updates
+        // queued until now must not be sent again after session-accept
+        discardSourceUpdates(peer);
+
         for (ContentPacketExtension cpe : contents)
         {
             ColibriConferenceIQ.Content colibriContent
@@ -1226,6 +1648,12 @@ public class JitsiMeetConference
             recorder = null;
         }
 
+        if (channelPool != null)
+        {
+            channelPool.dispose();
+            channelPool = null;
+        }
+
         if (colibriConference != null)
         {
             if (protocolProviderHandler.isRegistered())
@@ -1305,7 +1733,7 @@ public class JitsiMeetConference
 		// Notify MUC by PrivateIQ message
 		sendPrivateIQ(leftPeer);
             }
-            boolean removed = participants.remove(leftPeer);
+            boolean removed = removeParticipant(leftPeer);
             
     		if(participantType.get(endpoint)=="SIP")
             {
@@ -1363,38 +1791,213 @@ public class JitsiMeetConference
         }
     }
 
-    private Participant findParticipantForJingleSession(
-            JingleSession jingleSession)
+    /**
+     * Schedules {@link #moveToNewBridge(ColibriConference)} on the shared
+     * thread pool, as it may be called from the thread which processes
+     * Colibri responses.
+     *
+     * @param failedConference the Colibri conference on the bridge which has
+     *                         failed.
+     */
+    private void scheduleMoveToNewBridge(
+            final ColibriConference failedConference)
     {
-        for (Participant participant : participants)
+        FocusBundleActivator.getSharedThreadPool().submit(new Runnable()
         {
-            if (participant.getChatMember()
-                .getContactAddress().equals(jingleSession.getAddress()))
-                return participant;
-        }
-        return null;
+            @Override
+            public void run()
+            {
+                try
+                {
+                    moveToNewBridge(failedConference);
+                }
+                catch (Exception e)
+                {
+                    logger.error(
+                        "Code=Error, Failed to move the conference"
+                            + " to another bridge", e);
+                    stop();
+                }
+            }
+        });
     }
 
-    private Participant findParticipantForChatMember(ChatRoomMember chatMember)
+    /**
+     * Moves the conference in progress to another bridge after the failure
+     * of the current one. Creates new Colibri conference on the next bridge
+     * and re-invites all participants at once, instead of stopping
+     * the conference and waiting for everyone to join again. The channels
+     * of all participants are requested in parallel, so that they are
+     * allocated in single round trip. Stops the conference if there is no
+     * other bridge.
+     *
+     * @param failedConference the Colibri conference on the bridge which has
+     *                         failed.
+     */
+    private void moveToNewBridge(ColibriConference failedConference)
     {
-        for (Participant participant : participants)
+        String faultyBridge = failedConference.getJitsiVideobridge();
+        String newBridge = null;
+        List<Participant> toReinvite;
+
+        synchronized (this)
         {
-            if (participant.getChatMember().equals(chatMember))
-                return participant;
+            // Other allocation may have noticed the failure first
+            if (!started || failedConference != colibriConference)
+                return;
+
+            toReinvite = new ArrayList<Participant>(participants);
+
+            String region
+                = toReinvite.isEmpty()
+                    ? null : getConferenceRegion(toReinvite.get(0));
+
+            BridgeSelector bridgeSelector = services.getBridgeSelector();
+            for (String bridge
+                : bridgeSelector.getPrioritizedBridgesList(roomName, region))
+            {
+                if (!bridge.equals(faultyBridge)
+                    && bridgeSelector.tryAcquireBridge(bridge))
+                {
+                    newBridge = bridge;
+                    break;
+                }
+            }
+            if (newBridge == null)
+            {
+                logger.error(
+                    "Code=Error, Bridge failure - no other bridge,"
+                        + " stopping the conference");
+                stop();
+                return;
+            }
+
+            logger.error(
+                "Code=Error, Bridge failure - moving the conference from "
+                    + faultyBridge + " to " + newBridge);
+
+            if (channelPool != null)
+            {
+                channelPool.dispose();
+                channelPool = null;
+            }
+
+            // In case the bridge is only not responding
+            if (protocolProviderHandler.isRegistered())
+            {
+                failedConference.expireConference();
+            }
+            colibriConference = null;
+
+            getOrCreateColibriConference().setJitsiVideobridge(newBridge);
         }
-        return null;
+
+        services.getBridgeSelector().bridgeSelected(newBridge, roomName);
+
+        for (Participant participant : toReinvite)
+        {
+            reinviteParticipant(participant);
+        }
+
+        startChannelPool();
     }
 
-    Participant findParticipantForRoomJid(String roomJid)
+    /**
+     * Terminates the Jingle session of the participant, if any, and sends new
+     * offer with the channels allocated on the current bridge.
+     *
+     * @param participant the participant to be re-invited.
+     */
+    private void reinviteParticipant(Participant participant)
     {
-        for (Participant participant : participants)
+        JingleSession jingleSession = participant.getJingleSession();
+        if (jingleSession != null)
         {
-            if (participant.getChatMember().getContactAddress().equals(roomJid))
-            {
-                return participant;
-            }
+            jingle.terminateSession(jingleSession, Reason.FAILED_TRANSPORT);
         }
-        return null;
+
+        // The sources are signalled again with the new session
+        participant.setJingleSession(null);
+        participant.setColibriChannelsInfo(null);
+        participant.removeSSRCs(participant.getSSRCsCopy());
+        participant.removeSSRCGroups(participant.getSSRCGroupsCopy());
+        discardSourceUpdates(participant);
+
+        ChatRoomMember member = participant.getChatMember();
+
+        allocateAndInvite(
+            participant,
+            member.getContactAddress(),
+            hasToStartMuted(member, false));
+    }
+
+    /**
+     * Adds the participant to the list and to the indexes.
+     *
+     * @param participant the participant who has joined the conference.
+     */
+    private void addParticipant(Participant participant)
+    {
+        participants.add(participant);
+
+        participantRegistry.add(
+            participant,
+            null,
+            participant.getChatMember().getContactAddress(),
+            participant.getEndpointId());
+    }
+
+    /**
+     * Removes the participant from the list and from the indexes.
+     *
+     * @param participant the participant who has left the conference.
+     *
+     * @return <tt>true</tt> if the participant was on the list.
+     */
+    private boolean removeParticipant(Participant participant)
+    {
+        // Conditional removal, the member who has joined again with the same
+        // nickname may be indexed already
+        participantRegistry.remove(
+            participant,
+            null,
+            participant.getChatMember().getContactAddress(),
+            participant.getEndpointId());
+
+        return participants.remove(participant);
+    }
+
+    private Participant findParticipantForJingleSession(
+            JingleSession jingleSession)
+    {
+        return findParticipantForRoomJid(jingleSession.getAddress());
+    }
+
+    private Participant findParticipantForChatMember(ChatRoomMember chatMember)
+    {
+        Participant participant
+            = findParticipantForRoomJid(chatMember.getContactAddress());
+
+        return participant != null
+                && participant.getChatMember().equals(chatMember)
+            ? participant : null;
+    }
+
+    Participant findParticipantForRoomJid(String roomJid)
+    {
+        return participantRegistry.findByAddress(roomJid);
+    }
+
+    /**
+     * Finds the participant for given Colibri endpoint ID.
+     *
+     * @param endpointId the ID of the participant's endpoint on the bridge.
+     *
+     * @return the participant or <tt>null</tt> if not found.
+     */
+    Participant findParticipantForEndpoint(String endpointId)
+    {
+        return participantRegistry.findByEndpoint(endpointId);
     }
 
     ChatRoomMemberRole getRoleForMucJid(String mucJid)
@@ -1464,58 +2067,16 @@ public class JitsiMeetConference
         {
             participants.get(participants.indexOf(peerToNotify)).setJabberid(
                 peerToNotify.getChatMember().getJabberID());
-            JingleSession jingleSessionToNotify
-                    = peerToNotify.getJingleSession();
-            if (jingleSessionToNotify == null)
-            {
-                logger.warn(
-                    "No jingle session yet for "
-                        + peerToNotify.getChatMember().getContactAddress());
-
-                peerToNotify.scheduleSSRCsToAdd(participant.getSSRCS());
-
-                peerToNotify.scheduleSSRCGroupsToAdd(
-                    participant.getSSRCGroups());
-
-                continue;
-            }
-            else
-            {
-            	
-            }
-
-            // Skip origin
-            if (peerJingleSession.equals(jingleSessionToNotify))
-                continue;
-
-            jingle.sendAddSourceIQ(
-                participant.getSSRCS(),
-                participant.getSSRCGroups(),
-                jingleSessionToNotify);
         }
 
+        queueSourcesToAdd(
+            participant, participant.getSSRCS(), participant.getSSRCGroups());
+
 	// Notify the MUC by PrivateIQ message
 	sendPrivateIQ(participant);
 
         // Notify the peer itself since it is now stable
-        if (participant.hasSsrcsToAdd())
-        {
-            jingle.sendAddSourceIQ(
-                    participant.getSsrcsToAdd(),
-                    participant.getSSRCGroupsToAdd(),
-                    peerJingleSession);
-
-            participant.clearSsrcsToAdd();
-        }
-        if (participant.hasSsrcsToRemove())
-        {
-            jingle.sendRemoveSourceIQ(
-                    participant.getSsrcsToRemove(),
-                    participant.getSsrcGroupsToRemove(),
-                    peerJingleSession);
-
-            participant.clearSsrcsToRemove();
-        }
+        sendSourceUpdates(participant);
 
         // Notify the bridge about eventual transport included
         onTransportInfo(peerJingleSession, answer);
@@ -1636,28 +2197,7 @@ public class JitsiMeetConference
             participant.getSSRCGroupsCopy(),
             participant.getColibriChannelsInfo());
 
-        for (Participant peerToNotify : participants)
-        {
-            if (peerToNotify == participant)
-                continue;
-
-            JingleSession peerJingleSession = peerToNotify.getJingleSession();
-            if (peerJingleSession == null)
-            {
-                logger.warn(
-                    "Code=Warning, Add source: no call for "
-                        + peerToNotify.getChatMember().getContactAddress());
-
-                peerToNotify.scheduleSSRCsToAdd(ssrcsToAdd);
-
-                peerToNotify.scheduleSSRCGroupsToAdd(ssrcGroupsToAdd);
-
-                continue;
-            }
-
-            jingle.sendAddSourceIQ(
-                ssrcsToAdd, ssrcGroupsToAdd, peerJingleSession);
-        }
+        queueSourcesToAdd(participant, ssrcsToAdd, ssrcGroupsToAdd);
     }
 
     /**
@@ -1764,27 +2304,177 @@ public class JitsiMeetConference
         
         logger.audit("room-id=" +room + ", routing_id=" +endpoint +", Code=Info, Action=MemberLeaving,  Message="+" Remove SSRC " + sourceJingleSession.getAddress());
         
+        queueSourcesToRemove(sourcePeer, ssrcsToRemove, ssrcGroupsToRemove);
+    }
+
+    /**
+     * Queues the SSRCs of the participant for 'source-add' to all other
+     * participants and schedules the flush of the queues.
+     *
+     * @param sourcePeer the participant to whom the SSRCs belong.
+     * @param ssrcs the media SSRC map to be added.
+     * @param ssrcGroups the media SSRC groups to be added.
+     */
+    private void queueSourcesToAdd(Participant          sourcePeer,
+                                   MediaSSRCMap         ssrcs,
+                                   MediaSSRCGroupMap    ssrcGroups)
+    {
         for (Participant peer : participants)
         {
-            if (peer == sourcePeer)
-                continue;
+            if (peer != sourcePeer)
+                peer.getSourceUpdates().add(ssrcs, ssrcGroups);
+        }
+
+        scheduleSourceUpdates();
+    }
+
+    /**
+     * Queues the SSRCs of the participant for 'source-remove' to all other
+     * participants and schedules the flush of the queues.
+     *
+     * @param sourcePeer the participant to whom the SSRCs belong.
+     * @param ssrcs the media SSRC map to be removed.
+     * @param ssrcGroups the media SSRC groups to be removed.
+     */
+    private void queueSourcesToRemove(Participant          sourcePeer,
+                                      MediaSSRCMap         ssrcs,
+                                      MediaSSRCGroupMap    ssrcGroups)
+    {
+        for (Participant peer : participants)
+        {
+            if (peer != sourcePeer)
+                peer.getSourceUpdates().remove(ssrcs, ssrcGroups);
+        }
+
+        scheduleSourceUpdates();
+    }
+
+    /**
+     * Schedules {@link #flushSourceUpdates()} after the configured interval,
+     * so that the changes which come in the meantime are sent together. Runs
+     * it immediately if the interval is not positive.
+     */
+    private void scheduleSourceUpdates()
+    {
+        long interval
+            = FocusBundleActivator.getConfigService().getLong(
+                    SourceUpdateQueue.UPDATE_INTERVAL_PNAME,
+                    SourceUpdateQueue.DEFAULT_UPDATE_INTERVAL);
+
+        if (interval <= 0)
+        {
+            flushSourceUpdates();
+            return;
+        }
+
+        synchronized (sourceUpdatesSyncRoot)
+        {
+            if (sourceUpdatesScheduled)
+                return;
+
+            sourceUpdatesScheduled = true;
+        }
 
-            JingleSession jingleSessionToNotify = peer.getJingleSession();
-            if (jingleSessionToNotify == null)
+        try
+        {
+            FocusBundleActivator.getSharedThreadPool().schedule(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        synchronized (sourceUpdatesSyncRoot)
+                        {
+                            sourceUpdatesScheduled = false;
+                        }
+                        try
+                        {
+                            flushSourceUpdates();
+                        }
+                        catch (Exception e)
+                        {
+                            logger.error(
+                                "Code=Error, Failed to send source updates",
+                                e);
+                        }
+                    }
+                },
+                interval, TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e)
+        {
+            synchronized (sourceUpdatesSyncRoot)
             {
-                logger.warn(
-                    "Code=Warning, Remove source: no jingle session for "
-                        + peer.getChatMember().getContactAddress());
+                sourceUpdatesScheduled = false;
+            }
+            logger.error("Code=Error, Failed to schedule source updates", e);
+        }
+    }
 
-                peer.scheduleSSRCsToRemove(ssrcsToRemove);
+    /**
+     * Sends the queued SSRCs to all participants who have Jingle session
+     * established. The queues of the others are flushed when they accept
+     * the session.
+     */
+    private void flushSourceUpdates()
+    {
+        for (Participant peer : participants)
+        {
+            sendSourceUpdates(peer);
+        }
+    }
 
-                peer.scheduleSSRCGroupsToRemove(ssrcGroupsToRemove);
+    /**
+     * Sends single 'source-remove' and single 'source-add' with all the
+     * changes queued for the participant. The removal goes first, so that
+     * the SSRC which has been removed and added back ends up signalled with
+     * its latest description.
+     *
+     * @param peer the participant to be notified.
+     */
+    private void sendSourceUpdates(Participant peer)
+    {
+        // The flush scheduled for the conference and the one done on
+        // session-accept can run at the same time. Without the lock the one
+        // which has polled first could send its update after the other one.
+        synchronized (peer.getSourceUpdatesSyncRoot())
+        {
+            JingleSession jingleSession = peer.getJingleSession();
+            if (jingleSession == null)
+                return;
 
-                continue;
+            SourceUpdateQueue.Update update = peer.getSourceUpdates().poll();
+            if (update == null)
+                return;
+
+            if (update.hasRemovals())
+            {
+                jingle.sendRemoveSourceIQ(
+                    update.getSSRCsToRemove(),
+                    update.getSSRCGroupsToRemove(),
+                    jingleSession);
             }
+            if (update.hasAdditions())
+            {
+                jingle.sendAddSourceIQ(
+                    update.getSSRCsToAdd(),
+                    update.getSSRCGroupsToAdd(),
+                    jingleSession);
+            }
+        }
+    }
 
-            jingle.sendRemoveSourceIQ(
-                    ssrcsToRemove, ssrcGroupsToRemove, jingleSessionToNotify);
+    /**
+     * Drops the changes queued for the participant who is being sent
+     * the offer, which describes all the sources of the conference.
+     *
+     * @param peer the participant whose queue is to be cleared.
+     */
+    private void discardSourceUpdates(Participant peer)
+    {
+        synchronized (peer.getSourceUpdatesSyncRoot())
+        {
+            peer.getSourceUpdates().poll();
         }
     }
 
@@ -1977,11 +2667,13 @@ public class JitsiMeetConference
      * @param toBeMutedJid MUC jid of the participant whose mute status will be
      *                     changed(eventually).
      * @param doMute the new audio mute status to set.
-     * @return <tt>true</tt> if status has been set successfully.
+     * @return the future completed with <tt>true</tt> once the bridge has
+     *         confirmed the new status or with <tt>false</tt> if the request
+     *         has been refused or has failed.
      */
-    boolean handleMuteRequest(String fromJid,
-                              String toBeMutedJid,
-                              boolean doMute)
+    SettableFuture<Boolean> handleMuteRequest(String fromJid,
+                                              String toBeMutedJid,
+                                              final boolean doMute)
     {
         Participant principal = findParticipantForRoomJid(fromJid);
         if (principal == null)
@@ -1989,7 +2681,7 @@ public class JitsiMeetConference
             logger.error(
                 "Code=Error, Failed to perform mute operation - " + fromJid
                     +" not exists in the conference.");
-            return false;
+            return SettableFuture.completed(false);
         }
         // Only moderators can mute others
         if (!fromJid.equals(toBeMutedJid)
@@ -1998,30 +2690,146 @@ public class JitsiMeetConference
         {
             logger.error(
                 "Code=Error, Permission denied for mute operation from " + fromJid);
-            return false;
+            return SettableFuture.completed(false);
         }
 
-        Participant participant = findParticipantForRoomJid(toBeMutedJid);
+        final Participant participant = findParticipantForRoomJid(toBeMutedJid);
         if (participant == null)
         {
             logger.error("Code=Error, Participant for jid: " + toBeMutedJid + " not found");
-            return false;
+            return SettableFuture.completed(false);
+        }
+
+        ColibriConference colibriConference = this.colibriConference;
+        ColibriConferenceIQ channels = participant.getColibriChannelsInfo();
+        if (colibriConference == null || channels == null)
+        {
+            logger.error(
+                "Code=Error, No channels to mute for " + toBeMutedJid);
+            return SettableFuture.completed(false);
         }
 
         logger.info(
             "Will " + (doMute ? "mute" : "unmute")
                 + " " + toBeMutedJid + " on behalf of " + fromJid);
 
-        boolean succeeded
-            = colibriConference.muteParticipant(
-                    participant.getColibriChannelsInfo(), doMute);
+        SettableFuture<Boolean> result
+            = colibriConference.muteParticipant(channels, doMute);
+
+        result.addListener(new SettableFuture.Listener<Boolean>()
+        {
+            @Override
+            public void onSuccess(Boolean succeeded)
+            {
+                if (succeeded)
+                {
+                    participant.setMuted(doMute);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable error)
+            {
+                // Never fails
+            }
+        });
+
+        return result;
+    }
 
-        if (succeeded)
+    /**
+     * Handles the request of the moderator to mute all the other participants.
+     * The audio channels of all of them are modified in single request sent
+     * to the bridge.
+     * @param fromJid MUC jid of the participant that requested mute.
+     * @return the future completed with the MUC jids of the participants who
+     *         have been muted or with <tt>null</tt> if the request has been
+     *         refused or has failed.
+     */
+    SettableFuture<List<String>> handleMuteAllRequest(String fromJid)
+    {
+        Participant principal = findParticipantForRoomJid(fromJid);
+        if (principal == null)
         {
-            participant.setMuted(doMute);
+            logger.error(
+                "Code=Error, Failed to perform mute all operation - " + fromJid
+                    +" not exists in the conference.");
+            return SettableFuture.completed(null);
         }
+        if (ChatRoomMemberRole.MODERATOR.compareTo(
+                principal.getChatMember().getRole()) < 0)
+        {
+            logger.error(
+                "Code=Error, Permission denied for mute all operation from "
+                    + fromJid);
+            return SettableFuture.completed(null);
+        }
+
+        ColibriConference colibriConference = this.colibriConference;
+        if (colibriConference == null)
+        {
+            logger.error("Code=Error, No conference to mute all in");
+            return SettableFuture.completed(null);
+        }
+
+        final List<Participant> toBeMuted = new ArrayList<Participant>();
+        List<ColibriConferenceIQ> channels
+            = new ArrayList<ColibriConferenceIQ>();
+        for (Participant participant : participants)
+        {
+            if (participant == principal
+                || participant.isMuted()
+                || participant.getColibriChannelsInfo() == null)
+            {
+                continue;
+            }
+            toBeMuted.add(participant);
+            channels.add(participant.getColibriChannelsInfo());
+        }
+
+        if (toBeMuted.isEmpty())
+        {
+            return SettableFuture.completed(
+                (List<String>) new ArrayList<String>());
+        }
+
+        logger.info(
+            "Will mute " + toBeMuted.size() + " participants on behalf of "
+                + fromJid);
+
+        final SettableFuture<List<String>> result
+            = new SettableFuture<List<String>>();
+
+        colibriConference.muteParticipants(channels, true).addListener(
+            new SettableFuture.Listener<Boolean>()
+            {
+                @Override
+                public void onSuccess(Boolean succeeded)
+                {
+                    if (!succeeded)
+                    {
+                        result.complete(null);
+                        return;
+                    }
+
+                    List<String> mutedJids = new ArrayList<String>();
+                    for (Participant participant : toBeMuted)
+                    {
+                        participant.setMuted(true);
+                        mutedJids.add(
+                            participant.getChatMember().getContactAddress());
+                    }
+                    result.complete(mutedJids);
+                }
 
-        return succeeded;
+                @Override
+                public void onFailure(Throwable error)
+                {
+                    result.complete(null);
+                }
+            });
+
+        return result;
     }
 
     /**
@@ -2139,4 +2947,253 @@ public class JitsiMeetConference
             this.to = to;
         }
     }
+
+    /**
+     * Allocates the channels of single participant asynchronously, switching
+     * to another bridge after a failure.
+     */
+    private class ChannelAllocation
+        implements SettableFuture.Listener<ColibriConferenceIQ>
+    {
+        /**
+         * The Colibri conference stored to be able to free the channels even
+         * after the conference has been disposed.
+         */
+        private final ColibriConference colibriConference;
+
+        /**
+         * The participant for whom the channels are allocated.
+         */
+        private final Participant peer;
+
+        /**
+         * The media offer description passed to the bridge.
+         */
+        private final List<ContentPacketExtension> contents;
+
+        /**
+         * The future completed with the allocated channels.
+         */
+        final SettableFuture<ColibriConferenceIQ> result
+            = new SettableFuture<ColibriConferenceIQ>();
+
+        /**
+         * The list is only needed to switch to another bridge after
+         * a failure.
+         */
+        private Iterator<String> bridgesIterator;
+
+        ChannelAllocation(ColibriConference colibriConference,
+                          Participant peer,
+                          List<ContentPacketExtension> contents)
+        {
+            this.colibriConference = colibriConference;
+            this.peer = peer;
+            this.contents = contents;
+        }
+
+        /**
+         * Sends allocate request to the current bridge of the conference.
+         */
+        void allocate()
+        {
+            if (JitsiMeetConference.this.colibriConference == null)
+            {
+                // The conference has been disposed before we've managed to
+                // allocate anything
+                result.complete(null);
+                return;
+            }
+
+            String endpoint
+                = peer.getChatMember().getContactAddress().split("/")[1];
+            String room = roomName.substring(0,roomName.indexOf('@'));
+
+            logger.audit("room-id=" +room + ", routing_id=" +endpoint +", Code=Info, Action=InvitePeer,  Message="+"Using " + colibriConference.getJitsiVideobridge()
+                + " to allocate channels for: "
+                + peer.getChatMember().getContactAddress());
+
+            // Only on the first attempt, the pool stays on the initial bridge
+            ChannelPool channelPool = JitsiMeetConference.this.channelPool;
+            if (channelPool != null
+                && bridgesIterator == null
+                && peer.hasBundleSupport())
+            {
+                ColibriConferenceIQ pooledChannels
+                    = channelPool.take(peer.getEndpointId(), contents);
+                if (pooledChannels != null)
+                {
+                    onSuccess(pooledChannels);
+                    return;
+                }
+            }
+
+            colibriConference.createColibriChannelsAsync(
+                    peer.hasBundleSupport(),
+                    peer.getEndpointId(),
+                    true, contents)
+                .addListener(this);
+        }
+
+        @Override
+        public void onSuccess(ColibriConferenceIQ peerChannels)
+        {
+            BridgeSelector bridgeSelector = services.getBridgeSelector();
+
+            bridgeSelector.updateBridgeOperationalStatus(
+                colibriConference.getJitsiVideobridge(), true);
+
+            boolean hasJustAllocated
+                = colibriConference.hasJustAllocated();
+
+            bridgeSelector.reserveAllocation(
+                colibriConference.getJitsiVideobridge(),
+                hasJustAllocated);
+
+            if (hasJustAllocated)
+            {
+                EventAdmin eventAdmin
+                        = FocusBundleActivator.getEventAdmin();
+                if (eventAdmin != null)
+                {
+                    eventAdmin.sendEvent(
+                        EventFactory.conferenceRoom(
+                                colibriConference.getConferenceId(),
+                                roomName,
+                                getId(),
+                                colibriConference.getJitsiVideobridge()));
+                }
+            }
+            result.complete(peerChannels);
+        }
+
+        @Override
+        public void onFailure(Throwable error)
+        {
+            BridgeSelector bridgeSelector = services.getBridgeSelector();
+            String faultyBridge = colibriConference.getJitsiVideobridge();
+
+            logger.error("Code=Error, Failed to allocate channels using bridge: "
+                    + faultyBridge, error);
+
+            bridgeSelector.updateBridgeOperationalStatus(
+                faultyBridge, false);
+
+            try
+            {
+                if (switchBridge(faultyBridge))
+                {
+                    allocate();
+                }
+            }
+            catch (Exception e)
+            {
+                logger.error(
+                    "Code=Error, Failed to switch the bridge of: " + roomName,
+                    e);
+
+                result.fail(e);
+            }
+        }
+
+        /**
+         * Switches the conference to the next bridge after the failure of
+         * the current one. The allocations of the participants invited at
+         * the same time fail together, so only the first one of them selects
+         * the next bridge, the others retry on the bridge it has selected.
+         *
+         * @param faultyBridge the JID of the bridge which has failed.
+         *
+         * @return <tt>true</tt> if the allocation should be retried on
+         *         the current bridge of the conference or <tt>false</tt> if
+         *         the result has been completed.
+         */
+        private boolean switchBridge(String faultyBridge)
+        {
+            BridgeSelector bridgeSelector = services.getBridgeSelector();
+            boolean isInProgress = false;
+            String nextBridge = null;
+
+            synchronized (JitsiMeetConference.this)
+            {
+                if (!faultyBridge.equals(
+                        colibriConference.getJitsiVideobridge()))
+                {
+                    // Other participant has switched the bridge already
+                    return true;
+                }
+
+                // Check if the conference is in progress
+                if (!StringUtils.isNullOrEmpty(
+                        colibriConference.getConferenceId()))
+                {
+                    isInProgress = true;
+                }
+                else
+                {
+                    nextBridge = findNextBridge(faultyBridge);
+                    if (nextBridge != null)
+                    {
+                        colibriConference.setJitsiVideobridge(nextBridge);
+                    }
+                }
+            }
+
+            if (isInProgress)
+            {
+                // The participant is re-invited together with the others
+                scheduleMoveToNewBridge(colibriConference);
+                result.complete(null);
+                return false;
+            }
+
+            if (nextBridge == null)
+            {
+                // No more bridges to try
+                result.fail(
+                    new OperationFailedException(
+                        "Failed to allocate channels - all bridges are faulty",
+                        BRIDGE_FAILURE_ERR_CODE));
+                return false;
+            }
+
+            bridgeSelector.bridgeSelected(nextBridge, roomName);
+            return true;
+        }
+
+        /**
+         * Finds the next bridge to try after the failure of given one.
+         *
+         * @param faultyBridge the JID of the bridge which has failed.
+         *
+         * @return the JID of the next bridge or <tt>null</tt> if there are no
+         *         more bridges to try.
+         */
+        private String findNextBridge(String faultyBridge)
+        {
+            BridgeSelector bridgeSelector = services.getBridgeSelector();
+
+            if (bridgesIterator == null)
+            {
+                bridgesIterator
+                    = bridgeSelector.getPrioritizedBridgesList(
+                            roomName, getConferenceRegion(peer))
+                        .iterator();
+            }
+
+            while (bridgesIterator.hasNext())
+            {
+                String bridge = bridgesIterator.next();
+
+                // Is it the same which has just failed ?
+                // (we do not always call iterator.next() at the beginning)
+                if (!faultyBridge.equals(bridge)
+                    && bridgeSelector.tryAcquireBridge(bridge))
+                {
+                    return bridge;
+                }
+            }
+            return null;
+        }
+    }
 }
@@ -0,0 +1,69 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import java.util.*;
+
+/**
+ * The default {@link BridgeSelectionStrategy} which selects the least loaded
+ * bridge. {@link BridgeSelector} passes bridges already sorted by load, so
+ * the order is left untouched.
+ */
+public class LeastLoadedStrategy
+    implements BridgeSelectionStrategy
+{
+    /**
+     * The name of this strategy.
+     */
+    public static final String NAME = "least-loaded";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void order(List<BridgeSelector.BridgeState> bridges,
+                      String roomName)
+    {
+        // Bridges are sorted by load already
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void bridgeSelected(String bridgeJid, String roomName)
+    {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void bridgeRemoved(String bridgeJid)
+    {
+    }
+}
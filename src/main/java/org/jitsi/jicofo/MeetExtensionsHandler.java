@@ -26,6 +26,7 @@ import net.java.sip.communicator.util.Logger;
 import org.jitsi.impl.protocol.xmpp.extensions.*;
 import org.jitsi.jicofo.log.*;
 import org.jitsi.protocol.xmpp.*;
+import org.jitsi.protocol.xmpp.util.*;
 import org.jitsi.util.*;
 import org.jitsi.videobridge.eventadmin.*;
 import org.jivesoftware.smack.*;
@@ -35,6 +36,8 @@ import org.jivesoftware.smack.packet.Message; //disambiguation
 import org.jivesoftware.smack.provider.*;
 import org.jivesoftware.smackx.packet.*;
 
+import java.util.*;
+
 /**
  * Class handles various Jitsi Meet extensions IQs like {@link MuteIq} and
  * Colibri for recording.
@@ -85,6 +88,8 @@ public class MeetExtensionsHandler
         startMutedProvider.registerStartMutedProvider(
             ProviderManager.getInstance());
 
+        RegionPacketExtension.registerProvider(ProviderManager.getInstance());
+
 	PrivateIQProvider privateIQProvider = new PrivateIQProvider();
 	privateIQProvider.registerPrivateIQProvider(ProviderManager.getInstance());
     }
@@ -246,10 +251,16 @@ public class MeetExtensionsHandler
         return focusManager.getConference(roomName);
     }
 
-    private void handleMuteIq(MuteIq muteIq)
+    private void handleMuteIq(final MuteIq muteIq)
     {
-        Boolean doMute = muteIq.getMute();
-        String jid = muteIq.getJid();
+        if (muteIq.isAll())
+        {
+            handleMuteAllIq(muteIq);
+            return;
+        }
+
+        final Boolean doMute = muteIq.getMute();
+        final String jid = muteIq.getJid();
 
         if (doMute == null || StringUtils.isNullOrEmpty(jid))
             return;
@@ -262,22 +273,81 @@ public class MeetExtensionsHandler
             return;
         }
 
-        IQ result;
+        // The response is sent once the bridge has confirmed the new status
+        conference.handleMuteRequest(muteIq.getFrom(), jid, doMute)
+            .addListener(new SettableFuture.Listener<Boolean>()
+            {
+                @Override
+                public void onSuccess(Boolean succeeded)
+                {
+                    onMuteResult(muteIq, succeeded);
+
+                    if (succeeded && !muteIq.getFrom().equals(jid))
+                    {
+                        sendMuteStatusUpdate(jid, doMute);
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable error)
+                {
+                    onMuteResult(muteIq, false);
+                }
+            });
+    }
+
+    private void handleMuteAllIq(final MuteIq muteIq)
+    {
+        String from = muteIq.getFrom();
+        JitsiMeetConference conference = getConferenceForMucJid(from);
+        if (conference == null)
+        {
+            logger.debug("Mute all error: room not found for JID: " + from);
+            return;
+        }
 
-        if (conference.handleMuteRequest(muteIq.getFrom(), jid, doMute))
+        // Unmuting everybody at once is not supported
+        if (!Boolean.TRUE.equals(muteIq.getMute()))
         {
-            result = IQ.createResultIQ(muteIq);
+            sendPacket(
+                IQ.createErrorResponse(
+                    muteIq,
+                    new XMPPError(XMPPError.Condition.bad_request)));
+            return;
+        }
 
-            if (!muteIq.getFrom().equals(jid))
+        conference.handleMuteAllRequest(from)
+            .addListener(new SettableFuture.Listener<List<String>>()
             {
-                MuteIq muteStatusUpdate = new MuteIq();
-                muteStatusUpdate.setType(IQ.Type.SET);
-                muteStatusUpdate.setTo(jid);
+                @Override
+                public void onSuccess(List<String> mutedJids)
+                {
+                    onMuteResult(muteIq, mutedJids != null);
 
-                muteStatusUpdate.setMute(doMute);
+                    if (mutedJids == null)
+                        return;
 
-                smackXmpp.getXmppConnection().sendPacket(muteStatusUpdate);
-            }
+                    for (String jid : mutedJids)
+                    {
+                        sendMuteStatusUpdate(jid, true);
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable error)
+                {
+                    onMuteResult(muteIq, false);
+                }
+            });
+    }
+
+    private void onMuteResult(MuteIq muteIq, boolean succeeded)
+    {
+        IQ result;
+
+        if (succeeded)
+        {
+            result = IQ.createResultIQ(muteIq);
         }
         else
         {
@@ -286,7 +356,32 @@ public class MeetExtensionsHandler
                 new XMPPError(XMPPError.Condition.interna_server_error));
         }
 
-        smackXmpp.getXmppConnection().sendPacket(result);
+        sendPacket(result);
+    }
+
+    private void sendMuteStatusUpdate(String jid, boolean doMute)
+    {
+        MuteIq muteStatusUpdate = new MuteIq();
+        muteStatusUpdate.setType(IQ.Type.SET);
+        muteStatusUpdate.setTo(jid);
+
+        muteStatusUpdate.setMute(doMute);
+
+        sendPacket(muteStatusUpdate);
+    }
+
+    /**
+     * Sends the packet unless this instance has been disposed in
+     * the meantime, as the responses to the mute requests are sent
+     * asynchronously.
+     */
+    private void sendPacket(Packet packet)
+    {
+        OperationSetDirectSmackXmpp smackXmpp = this.smackXmpp;
+        if (smackXmpp != null)
+        {
+            smackXmpp.getXmppConnection().sendPacket(packet);
+        }
     }
 
     private boolean acceptRayoIq(Packet p)
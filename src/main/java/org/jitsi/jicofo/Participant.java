@@ -61,31 +61,17 @@ public class Participant
     private MediaSSRCGroupMap ssrcGroups = new MediaSSRCGroupMap();
 
     /**
-     * SSRCs received from other peers scheduled for later addition, because
-     * of the Jingle session not being ready at the point when SSRCs appeared in
-     * the conference.
+     * SSRCs and SSRC groups of other peers which wait to be sent to this
+     * participant with 'source-add' and 'source-remove'.
      */
-    private MediaSSRCMap ssrcsToAdd = new MediaSSRCMap();
+    private final SourceUpdateQueue sourceUpdates = new SourceUpdateQueue();
 
     /**
-     * SSRC groups received from other peers scheduled for later addition.
-     * @see #ssrcsToAdd
+     * Held while the changes are taken from {@link #sourceUpdates} and sent
+     * to this participant, so that they arrive in the order in which they
+     * have been taken from the queue.
      */
-    private MediaSSRCGroupMap ssrcGroupsToAdd = new MediaSSRCGroupMap();
-
-    /**
-     * SSRCs received from other peers scheduled for later removal, because
-     * of the Jingle session not being ready at the point when SSRCs appeared in
-     * the conference.
-     * FIXME: do we need that since these were never added ? - check
-     */
-    private MediaSSRCMap ssrcsToRemove = new MediaSSRCMap();
-
-    /**
-     * SSRC groups received from other peers scheduled for later removal.
-     * @see #ssrcsToRemove
-     */
-    private MediaSSRCGroupMap ssrcGroupsToRemove = new MediaSSRCGroupMap();
+    private final Object sourceUpdatesSyncRoot = new Object();
 
     /**
      * The list of XMPP features supported by this participant. 
@@ -217,80 +203,21 @@ public class Participant
     }
 
     /**
-     * Returns <tt>true</tt> if this peer has any not synchronized SSRCs
-     * scheduled for addition.
-     */
-    public boolean hasSsrcsToAdd()
-    {
-        return !ssrcsToAdd.isEmpty() || !ssrcGroupsToAdd.isEmpty();
-    }
-
-    /**
-     * Reset the queue that holds not synchronized SSRCs scheduled for future
-     * addition.
-     */
-    public void clearSsrcsToAdd()
-    {
-        ssrcsToAdd = new MediaSSRCMap();
-        ssrcGroupsToAdd = new MediaSSRCGroupMap();
-    }
-
-    /**
-     * Reset the queue that holds not synchronized SSRCs scheduled for future
-     * removal.
-     */
-    public void clearSsrcsToRemove()
-    {
-        ssrcsToRemove = new MediaSSRCMap();
-        ssrcGroupsToRemove = new MediaSSRCGroupMap();
-    }
-
-    /**
-     * Returns <tt>true</tt> if this peer has any not synchronized SSRCs
-     * scheduled for removal.
-     */
-    public boolean hasSsrcsToRemove()
-    {
-        return !ssrcsToRemove.isEmpty() || !ssrcGroupsToRemove.isEmpty();
-    }
-
-    /**
-     * Returns <tt>true</tt> if this peer has any not synchronized SSRCs
-     * scheduled for addition.
-     */
-    public MediaSSRCMap getSsrcsToAdd()
-    {
-        return ssrcsToAdd;
-    }
-
-    /**
-     * Returns <tt>true</tt> if this peer has any not synchronized SSRCs
-     * scheduled for removal.
+     * Returns the queue of SSRCs and SSRC groups of other peers which wait to
+     * be sent to this participant.
      */
-    public MediaSSRCMap getSsrcsToRemove()
+    public SourceUpdateQueue getSourceUpdates()
     {
-        return ssrcsToRemove;
+        return sourceUpdates;
     }
 
     /**
-     * Schedules SSRCs received from other peer for future 'source-add' update.
-     *
-     * @param ssrcMap the media SSRC map that contains SSRCs for future updates.
+     * Returns the lock which has to be held while the changes taken from
+     * the queue returned by {@link #getSourceUpdates()} are being sent.
      */
-    public void scheduleSSRCsToAdd(MediaSSRCMap ssrcMap)
+    public Object getSourceUpdatesSyncRoot()
     {
-        ssrcsToAdd.add(ssrcMap);
-    }
-
-    /**
-     * Schedules SSRCs received from other peer for future 'source-remove'
-     * update.
-     *
-     * @param ssrcMap the media SSRC map that contains SSRCs for future updates.
-     */
-    public void scheduleSSRCsToRemove(MediaSSRCMap ssrcMap)
-    {
-        ssrcsToRemove.add(ssrcMap);
+        return sourceUpdatesSyncRoot;
     }
 
     /**
@@ -445,43 +372,6 @@ public class Participant
         }
     }
 
-    /**
-     * Schedules given media SSRC groups for later addition.
-     * @param ssrcGroups the <tt>MediaSSRCGroupMap</tt> to be scheduled for
-     *                   later addition.
-     */
-    public void scheduleSSRCGroupsToAdd(MediaSSRCGroupMap ssrcGroups)
-    {
-        ssrcGroupsToAdd.add(ssrcGroups);
-    }
-
-    /**
-     * Schedules given media SSRC groups for later removal.
-     * @param ssrcGroups the <tt>MediaSSRCGroupMap</tt> to be scheduled for
-     *                   later removal.
-     */
-    public void scheduleSSRCGroupsToRemove(MediaSSRCGroupMap ssrcGroups)
-    {
-        ssrcGroupsToRemove.add(ssrcGroups);
-    }
-
-    /**
-     * Returns the map of SSRC groups that are waiting for synchronization.
-     */
-    public MediaSSRCGroupMap getSSRCGroupsToAdd()
-    {
-        return ssrcGroupsToAdd;
-    }
-
-    /**
-     * Returns the map of SSRC groups that are waiting for being removed from
-     * peer session.
-     */
-    public MediaSSRCGroupMap getSsrcGroupsToRemove()
-    {
-        return ssrcGroupsToRemove;
-    }
-
     /**
      * Removes SSRC groups from this participant state.
      * @param ssrcGroupsToRemove the map of SSRC groups that will be removed
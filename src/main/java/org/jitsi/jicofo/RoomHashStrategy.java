@@ -0,0 +1,108 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import java.util.*;
+
+/**
+ * {@link BridgeSelectionStrategy} which pins conference rooms to bridges using
+ * rendezvous (highest random weight) hashing of the room name and bridge JID.
+ * The same room always lands on the same bridge as long as it is operational
+ * and adding or removing a bridge moves only the rooms which were pinned to
+ * it. If room name is not known bridges are left in load order.
+ */
+public class RoomHashStrategy
+    implements BridgeSelectionStrategy
+{
+    /**
+     * The name of this strategy.
+     */
+    public static final String NAME = "room-hash";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void order(List<BridgeSelector.BridgeState> bridges,
+                      final String roomName)
+    {
+        if (roomName == null || bridges.size() < 2)
+            return;
+
+        Collections.sort(bridges, new Comparator<BridgeSelector.BridgeState>()
+        {
+            @Override
+            public int compare(BridgeSelector.BridgeState b1,
+                               BridgeSelector.BridgeState b2)
+            {
+                int h1 = hash(roomName, b1.getJid());
+                int h2 = hash(roomName, b2.getJid());
+
+                // Highest weight goes first
+                return h1 > h2 ? -1 : (h1 == h2 ? 0 : 1);
+            }
+        });
+    }
+
+    /**
+     * Calculates the weight of given bridge for given room.
+     *
+     * @param roomName the name of the conference room.
+     * @param bridgeJid the JID of the bridge.
+     *
+     * @return the weight of the (room, bridge) pair.
+     */
+    static int hash(String roomName, String bridgeJid)
+    {
+        int h = roomName.hashCode() * 31 + bridgeJid.hashCode();
+
+        // MurmurHash3 finalizer gives good spread for similar inputs
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+
+        return h;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void bridgeSelected(String bridgeJid, String roomName)
+    {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void bridgeRemoved(String bridgeJid)
+    {
+    }
+}
@@ -87,6 +87,15 @@ public class SSRCGroup
         return group.copy();
     }
 
+    /**
+     * Returns the XML of underlying <tt>SourceGroupPacketExtension</tt>
+     * without copying it.
+     */
+    public String toXML()
+    {
+        return group.toXML();
+    }
+
     /**
      * Returns full copy of this <tt>SSRCGroup</tt>.
      */
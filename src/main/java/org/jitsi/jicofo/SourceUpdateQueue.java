@@ -0,0 +1,258 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+
+import org.jitsi.protocol.xmpp.util.*;
+
+import java.util.*;
+
+/**
+ * The SSRCs and SSRC groups of the other participants which are waiting to
+ * be sent to the peer with 'source-add' and 'source-remove'. The changes
+ * which arrive before the queue is flushed are merged, so that the peer
+ * receives at most one 'source-remove' and one 'source-add' per flush,
+ * instead of one notification for every change in the conference. The SSRC
+ * removed before its addition has been sent is dropped from the queue and
+ * the peer never hears about it.
+ */
+public class SourceUpdateQueue
+{
+    /**
+     * Configuration property which specifies how long in milliseconds
+     * the changes of the sources are collected, before they are sent to
+     * the participants. Zero or less sends every change immediately.
+     */
+    public static final String UPDATE_INTERVAL_PNAME
+        = "org.jitsi.focus.SOURCE_UPDATE_INTERVAL";
+
+    /**
+     * The default interval of collecting the changes of the sources.
+     */
+    public static final long DEFAULT_UPDATE_INTERVAL = 100;
+
+    /**
+     * SSRCs waiting for 'source-add'.
+     */
+    private MediaSSRCMap ssrcsToAdd = new MediaSSRCMap();
+
+    /**
+     * SSRC groups waiting for 'source-add'.
+     */
+    private MediaSSRCGroupMap ssrcGroupsToAdd = new MediaSSRCGroupMap();
+
+    /**
+     * SSRCs waiting for 'source-remove'.
+     */
+    private MediaSSRCMap ssrcsToRemove = new MediaSSRCMap();
+
+    /**
+     * SSRC groups waiting for 'source-remove'.
+     */
+    private MediaSSRCGroupMap ssrcGroupsToRemove = new MediaSSRCGroupMap();
+
+    /**
+     * Schedules SSRCs and SSRC groups for 'source-add'. The ones which are
+     * already waiting for the addition are not added twice.
+     *
+     * @param ssrcs the media SSRC map to be added.
+     * @param ssrcGroups the media SSRC groups to be added.
+     */
+    public synchronized void add(MediaSSRCMap       ssrcs,
+                                 MediaSSRCGroupMap  ssrcGroups)
+    {
+        for (String media : ssrcs.getMediaTypes())
+        {
+            List<SourcePacketExtension> queued
+                = ssrcsToAdd.getSSRCsForMedia(media);
+
+            for (SourcePacketExtension ssrc : ssrcs.getSSRCsForMedia(media))
+            {
+                if (indexOf(queued, ssrc) == -1)
+                    queued.add(ssrc);
+            }
+        }
+        for (String media : ssrcGroups.getMediaTypes())
+        {
+            List<SSRCGroup> queued
+                = ssrcGroupsToAdd.getSSRCGroupsForMedia(media);
+
+            for (SSRCGroup group : ssrcGroups.getSSRCGroupsForMedia(media))
+            {
+                if (!queued.contains(group))
+                    queued.add(group);
+            }
+        }
+    }
+
+    /**
+     * Schedules SSRCs and SSRC groups for 'source-remove'. The ones which
+     * are still waiting for the addition are only taken out of the queue.
+     *
+     * @param ssrcs the media SSRC map to be removed.
+     * @param ssrcGroups the media SSRC groups to be removed.
+     */
+    public synchronized void remove(MediaSSRCMap       ssrcs,
+                                    MediaSSRCGroupMap  ssrcGroups)
+    {
+        for (String media : ssrcs.getMediaTypes())
+        {
+            List<SourcePacketExtension> added
+                = ssrcsToAdd.getSSRCsForMedia(media);
+            List<SourcePacketExtension> removed
+                = ssrcsToRemove.getSSRCsForMedia(media);
+
+            for (SourcePacketExtension ssrc : ssrcs.getSSRCsForMedia(media))
+            {
+                int idx = indexOf(added, ssrc);
+                if (idx != -1)
+                {
+                    // Never sent
+                    added.remove(idx);
+                }
+                else if (indexOf(removed, ssrc) == -1)
+                {
+                    removed.add(ssrc);
+                }
+            }
+        }
+        for (String media : ssrcGroups.getMediaTypes())
+        {
+            List<SSRCGroup> added
+                = ssrcGroupsToAdd.getSSRCGroupsForMedia(media);
+            List<SSRCGroup> removed
+                = ssrcGroupsToRemove.getSSRCGroupsForMedia(media);
+
+            for (SSRCGroup group : ssrcGroups.getSSRCGroupsForMedia(media))
+            {
+                if (!added.remove(group) && !removed.contains(group))
+                    removed.add(group);
+            }
+        }
+    }
+
+    /**
+     * Returns <tt>true</tt> if there is nothing waiting to be sent.
+     */
+    public synchronized boolean isEmpty()
+    {
+        return ssrcsToAdd.isEmpty() && ssrcGroupsToAdd.isEmpty()
+            && ssrcsToRemove.isEmpty() && ssrcGroupsToRemove.isEmpty();
+    }
+
+    /**
+     * Takes everything that is waiting to be sent and clears the queue.
+     *
+     * @return the merged changes or <tt>null</tt> if the queue is empty.
+     */
+    public synchronized Update poll()
+    {
+        if (isEmpty())
+            return null;
+
+        Update update
+            = new Update(
+                    ssrcsToAdd, ssrcGroupsToAdd,
+                    ssrcsToRemove, ssrcGroupsToRemove);
+
+        ssrcsToAdd = new MediaSSRCMap();
+        ssrcGroupsToAdd = new MediaSSRCGroupMap();
+        ssrcsToRemove = new MediaSSRCMap();
+        ssrcGroupsToRemove = new MediaSSRCGroupMap();
+
+        return update;
+    }
+
+    /**
+     * Finds the SSRC with the same value on the list.
+     *
+     * @return the index of the SSRC or <tt>-1</tt> if not found.
+     */
+    private static int indexOf(List<SourcePacketExtension> ssrcs,
+                               SourcePacketExtension ssrc)
+    {
+        for (int i = 0; i < ssrcs.size(); i++)
+        {
+            if (ssrcs.get(i).getSSRC() == ssrc.getSSRC())
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * The changes of the sources taken from the queue in single flush.
+     */
+    public static class Update
+    {
+        private final MediaSSRCMap ssrcsToAdd;
+
+        private final MediaSSRCGroupMap ssrcGroupsToAdd;
+
+        private final MediaSSRCMap ssrcsToRemove;
+
+        private final MediaSSRCGroupMap ssrcGroupsToRemove;
+
+        private Update(MediaSSRCMap       ssrcsToAdd,
+                       MediaSSRCGroupMap  ssrcGroupsToAdd,
+                       MediaSSRCMap       ssrcsToRemove,
+                       MediaSSRCGroupMap  ssrcGroupsToRemove)
+        {
+            this.ssrcsToAdd = ssrcsToAdd;
+            this.ssrcGroupsToAdd = ssrcGroupsToAdd;
+            this.ssrcsToRemove = ssrcsToRemove;
+            this.ssrcGroupsToRemove = ssrcGroupsToRemove;
+        }
+
+        /**
+         * Returns <tt>true</tt> if there is anything for 'source-add'.
+         */
+        public boolean hasAdditions()
+        {
+            return !ssrcsToAdd.isEmpty() || !ssrcGroupsToAdd.isEmpty();
+        }
+
+        /**
+         * Returns <tt>true</tt> if there is anything for 'source-remove'.
+         */
+        public boolean hasRemovals()
+        {
+            return !ssrcsToRemove.isEmpty() || !ssrcGroupsToRemove.isEmpty();
+        }
+
+        public MediaSSRCMap getSSRCsToAdd()
+        {
+            return ssrcsToAdd;
+        }
+
+        public MediaSSRCGroupMap getSSRCGroupsToAdd()
+        {
+            return ssrcGroupsToAdd;
+        }
+
+        public MediaSSRCMap getSSRCsToRemove()
+        {
+            return ssrcsToRemove;
+        }
+
+        public MediaSSRCGroupMap getSSRCGroupsToRemove()
+        {
+            return ssrcGroupsToRemove;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.util.Logger;
+
+import org.jitsi.service.configuration.*;
+import org.jitsi.util.*;
+
+import java.util.*;
+
+/**
+ * {@link BridgeSelectionStrategy} which distributes conferences between
+ * bridges proportionally to their configured capacity weights using smooth
+ * weighted round-robin. The bridge which is due in the current round is moved
+ * to the head of the list and the remaining ones keep their load order, so
+ * they can be used as a fallback. Ordering the bridges does not move to
+ * the next round, it happens only when the conference is started on one of
+ * them (see {@link #bridgeSelected(String, String)}).
+ */
+public class WeightedRoundRobinStrategy
+    implements BridgeSelectionStrategy
+{
+    /**
+     * The logger.
+     */
+    private final static Logger logger
+        = Logger.getLogger(WeightedRoundRobinStrategy.class);
+
+    /**
+     * The name of this strategy.
+     */
+    public static final String NAME = "weighted-round-robin";
+
+    /**
+     * Property used to configure bridge weights. Single weight is defined by
+     * writing videobridge JID followed by ':' and positive integer weight.
+     * Multiple entries are separated with ';'. Bridges without configured
+     * weight get {@link #DEFAULT_WEIGHT}.
+     *
+     * org.jitsi.focus.BRIDGE_WEIGHTS
+     * =jvb1.server.net:4;jvb2.server.net:2;jvb3.server.net:1
+     */
+    public static final String BRIDGE_WEIGHTS_PNAME
+        = "org.jitsi.focus.BRIDGE_WEIGHTS";
+
+    /**
+     * The weight used for bridges which have not been configured.
+     */
+    public static final int DEFAULT_WEIGHT = 1;
+
+    /**
+     * The map of bridge JID to configured weight.
+     */
+    private final Map<String, Integer> weights
+        = new HashMap<String, Integer>();
+
+    /**
+     * The map of bridge JID to the current weight used by smooth weighted
+     * round-robin algorithm.
+     */
+    private final Map<String, Integer> currentWeights
+        = new HashMap<String, Integer>();
+
+    /**
+     * The JIDs of the bridges which have been ordered most recently, they
+     * take part in the next round.
+     */
+    private final Set<String> candidates = new LinkedHashSet<String>();
+
+    /**
+     * Creates new instance of <tt>WeightedRoundRobinStrategy</tt>.
+     *
+     * @param config <tt>ConfigurationService</tt> from which bridge weights
+     *               will be read or <tt>null</tt> if all bridges should have
+     *               equal weight.
+     */
+    public WeightedRoundRobinStrategy(ConfigurationService config)
+    {
+        String weightsValue
+            = config != null ? config.getString(BRIDGE_WEIGHTS_PNAME) : null;
+
+        if (StringUtils.isNullOrEmpty(weightsValue))
+        {
+            return;
+        }
+
+        for (String pair : weightsValue.split(";"))
+        {
+            String[] bridgeAndWeight = pair.split(":");
+            if (bridgeAndWeight.length != 2)
+            {
+                logger.error("Invalid bridge weight: " + pair);
+                continue;
+            }
+            try
+            {
+                setWeight(
+                    bridgeAndWeight[0].trim(),
+                    Integer.parseInt(bridgeAndWeight[1].trim()));
+            }
+            catch (NumberFormatException e)
+            {
+                logger.error("Invalid bridge weight: " + pair);
+            }
+        }
+    }
+
+    /**
+     * Sets the weight of given bridge.
+     *
+     * @param bridgeJid the JID of the bridge.
+     * @param weight positive weight which tells how many conferences the
+     *               bridge should get relatively to the others.
+     */
+    public synchronized void setWeight(String bridgeJid, int weight)
+    {
+        if (weight <= 0)
+            throw new IllegalArgumentException("weight: " + weight);
+
+        logger.info("Bridge weight: " + bridgeJid + " -> " + weight);
+
+        weights.put(bridgeJid, weight);
+    }
+
+    /**
+     * Returns the weight of given bridge.
+     *
+     * @param bridgeJid the JID of the bridge.
+     */
+    public synchronized int getWeight(String bridgeJid)
+    {
+        Integer weight = weights.get(bridgeJid);
+
+        return weight != null ? weight : DEFAULT_WEIGHT;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void order(List<BridgeSelector.BridgeState> bridges,
+                                   String roomName)
+    {
+        candidates.clear();
+        for (BridgeSelector.BridgeState bridge : bridges)
+        {
+            candidates.add(bridge.getJid());
+        }
+
+        if (bridges.size() < 2)
+            return;
+
+        int selectedIdx = -1;
+        int selectedWeight = 0;
+
+        for (int i = 0; i < bridges.size(); i++)
+        {
+            String jid = bridges.get(i).getJid();
+            int nextWeight = getCurrentWeight(jid) + getWeight(jid);
+
+            if (selectedIdx == -1 || nextWeight > selectedWeight)
+            {
+                selectedIdx = i;
+                selectedWeight = nextWeight;
+            }
+        }
+
+        bridges.add(0, bridges.remove(selectedIdx));
+    }
+
+    /**
+     * Moves to the next round of weighted round-robin. The current weights of
+     * the bridges passed to the last {@link #order(List, String)} call are
+     * increased by their weights and the selected bridge gets the total weight
+     * subtracted, so it goes back in the queue.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void bridgeSelected(String bridgeJid, String roomName)
+    {
+        candidates.add(bridgeJid);
+
+        int totalWeight = 0;
+        for (String jid : candidates)
+        {
+            int weight = getWeight(jid);
+
+            currentWeights.put(jid, getCurrentWeight(jid) + weight);
+            totalWeight += weight;
+        }
+
+        currentWeights.put(
+            bridgeJid, getCurrentWeight(bridgeJid) - totalWeight);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void bridgeRemoved(String bridgeJid)
+    {
+        currentWeights.remove(bridgeJid);
+        candidates.remove(bridgeJid);
+    }
+
+    /**
+     * Returns the current weight of given bridge.
+     *
+     * @param bridgeJid the JID of the bridge.
+     */
+    private int getCurrentWeight(String bridgeJid)
+    {
+        Integer current = currentWeights.get(bridgeJid);
+
+        return current != null ? current : 0;
+    }
+}
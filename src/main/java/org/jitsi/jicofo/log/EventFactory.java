@@ -56,6 +56,39 @@ public class EventFactory
      */
     public static final String BRIDGE_JID_KEY = "bridge_jid";
 
+    /**
+     * The name of the key for the state of videobridge circuit breaker.
+     */
+    public static final String BREAKER_STATE_KEY = "breaker_state";
+
+    /**
+     * The name of the key for the number of consecutive videobridge failures.
+     */
+    public static final String BREAKER_FAILURES_KEY = "consecutive_failures";
+
+    /**
+     * The name of the key for the time in millis after which the videobridge
+     * will be given another chance.
+     */
+    public static final String BREAKER_RETRY_DELAY_KEY = "retry_delay";
+
+    /**
+     * The name of the key for the kind of Colibri request.
+     */
+    public static final String COLIBRI_OPERATION_KEY = "operation";
+
+    /**
+     * The name of the key for the time in millis it took the videobridge to
+     * answer Colibri request.
+     */
+    public static final String COLIBRI_LATENCY_KEY = "latency";
+
+    /**
+     * The name of the key for the result of Colibri request: "ok", "timeout"
+     * or the condition of the error returned by the videobridge.
+     */
+    public static final String COLIBRI_RESULT_KEY = "result";
+
     /**
      * The name of the key for conference ID.
      */
@@ -98,6 +131,18 @@ public class EventFactory
     public static final String CONFERENCE_ROOM_TOPIC
             = "org/jitsi/jicofo/CONFERENCE_ROOM_CREATED";
 
+    /**
+     * The name of the topic of a "bridge breaker state changed" event.
+     */
+    public static final String BRIDGE_BREAKER_TOPIC
+            = "org/jitsi/jicofo/BRIDGE_BREAKER_STATE_CHANGED";
+
+    /**
+     * The name of the topic of a "colibri request completed" event.
+     */
+    public static final String COLIBRI_REQUEST_TOPIC
+            = "org/jitsi/jicofo/COLIBRI_REQUEST_COMPLETED";
+
     /**
      * The name of the topic of a "peer connection stats" event.
      */
@@ -307,6 +352,64 @@ public class EventFactory
         return new Event(CONFERENCE_ROOM_TOPIC, properties);
     }
 
+    /**
+     * Creates new "bridge breaker state changed" event.
+     *
+     * @param bridgeJid the JID of the videobridge.
+     * @param state the name of the new state of the circuit breaker.
+     * @param consecutiveFailures the number of times the bridge has failed
+     *                            since it was last working.
+     * @param retryDelay the time in millis after which the bridge will get
+     *                   another chance or 0 if it is not failed.
+     *
+     * @return "bridge breaker state changed" <tt>Event</tt>.
+     */
+    public static Event bridgeBreakerStateChanged(
+            String bridgeJid,
+            String state,
+            int    consecutiveFailures,
+            long   retryDelay)
+    {
+        Dictionary<String, Object> eventProps
+                = new Hashtable<String, Object>(4);
+
+        eventProps.put(BRIDGE_JID_KEY, bridgeJid);
+        eventProps.put(BREAKER_STATE_KEY, state);
+        eventProps.put(BREAKER_FAILURES_KEY, consecutiveFailures);
+        eventProps.put(BREAKER_RETRY_DELAY_KEY, retryDelay);
+
+        return new Event(BRIDGE_BREAKER_TOPIC, eventProps);
+    }
+
+    /**
+     * Creates new "colibri request completed" event.
+     *
+     * @param bridgeJid the JID of the videobridge.
+     * @param operation the kind of the request.
+     * @param latency the time in millis from sending the request to
+     *                receiving the response or giving up.
+     * @param result "ok", "timeout" or the condition of the error returned
+     *               by the videobridge.
+     *
+     * @return "colibri request completed" <tt>Event</tt>.
+     */
+    public static Event colibriRequestCompleted(
+            String bridgeJid,
+            String operation,
+            long   latency,
+            String result)
+    {
+        Dictionary<String, Object> eventProps
+                = new Hashtable<String, Object>(4);
+
+        eventProps.put(BRIDGE_JID_KEY, bridgeJid);
+        eventProps.put(COLIBRI_OPERATION_KEY, operation);
+        eventProps.put(COLIBRI_LATENCY_KEY, latency);
+        eventProps.put(COLIBRI_RESULT_KEY, result);
+
+        return new Event(COLIBRI_REQUEST_TOPIC, eventProps);
+    }
+
     /**
      * Creates new "authentication session created" event.
      *
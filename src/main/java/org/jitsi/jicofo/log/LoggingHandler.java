@@ -150,6 +150,40 @@ public class LoggingHandler
                     EventFactory.ROOM_JID_KEY
             };
 
+    /**
+     * The name of InfluxDb series for "bridge breaker state changed" event.
+     */
+    private static final String BRIDGE_BREAKER = "bridge_breaker";
+
+    /**
+     * The names of the columns of a "bridge breaker state changed" event.
+     */
+    public static final String[] BRIDGE_BREAKER_COLUMNS
+            = new String[]
+            {
+                    EventFactory.BRIDGE_JID_KEY,
+                    EventFactory.BREAKER_STATE_KEY,
+                    EventFactory.BREAKER_FAILURES_KEY,
+                    EventFactory.BREAKER_RETRY_DELAY_KEY
+            };
+
+    /**
+     * The name of InfluxDb series for "colibri request completed" event.
+     */
+    private static final String COLIBRI_REQUEST = "colibri_request";
+
+    /**
+     * The names of the columns of a "colibri request completed" event.
+     */
+    public static final String[] COLIBRI_REQUEST_COLUMNS
+            = new String[]
+            {
+                    EventFactory.BRIDGE_JID_KEY,
+                    EventFactory.COLIBRI_OPERATION_KEY,
+                    EventFactory.COLIBRI_LATENCY_KEY,
+                    EventFactory.COLIBRI_RESULT_KEY
+            };
+
     /**
      * Initializes a new <tt>LoggingHandler</tt> instance. Exposes the
      * constructor as public.
@@ -250,6 +284,34 @@ public class LoggingHandler
                     }
             ));
         }
+        else if (EventFactory.BRIDGE_BREAKER_TOPIC.equals(topic))
+        {
+            logEvent(new InfluxDBEvent(
+                BRIDGE_BREAKER,
+                BRIDGE_BREAKER_COLUMNS,
+                new Object[]
+                    {
+                        event.getProperty(EventFactory.BRIDGE_JID_KEY),
+                        event.getProperty(EventFactory.BREAKER_STATE_KEY),
+                        event.getProperty(EventFactory.BREAKER_FAILURES_KEY),
+                        event.getProperty(EventFactory.BREAKER_RETRY_DELAY_KEY)
+                    }
+            ));
+        }
+        else if (EventFactory.COLIBRI_REQUEST_TOPIC.equals(topic))
+        {
+            logEvent(new InfluxDBEvent(
+                COLIBRI_REQUEST,
+                COLIBRI_REQUEST_COLUMNS,
+                new Object[]
+                    {
+                        event.getProperty(EventFactory.BRIDGE_JID_KEY),
+                        event.getProperty(EventFactory.COLIBRI_OPERATION_KEY),
+                        event.getProperty(EventFactory.COLIBRI_LATENCY_KEY),
+                        event.getProperty(EventFactory.COLIBRI_RESULT_KEY)
+                    }
+            ));
+        }
         else
         {
             super.handleEvent(event);
@@ -0,0 +1,193 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.rest;
+
+import java.io.*;
+import javax.servlet.*;
+import javax.servlet.http.*;
+import org.eclipse.jetty.server.*;
+import org.jitsi.jicofo.*;
+import org.json.simple.*;
+
+/**
+ * Exposes the state of the videobridges known to {@link BridgeSelector} and
+ * allows to put them in the drain mode.
+ */
+public class Bridges
+{
+    /**
+     * The name of the drain action.
+     */
+    static final String DRAIN = "drain";
+
+    /**
+     * The name of the action which puts the bridge back in rotation.
+     */
+    static final String UNDRAIN = "undrain";
+
+    /**
+     * Gets a JSON representation of all the bridges known to given
+     * {@link BridgeSelector} and of the queue of conferences waiting for
+     * the bridge capacity.
+     *
+     * @param selector the {@code BridgeSelector} to get the bridges from
+     * @param baseRequest the original unwrapped {@link Request} object
+     * @param request the request either as the {@code Request} object or a
+     * wrapper of that request
+     * @param response the response either as the {@code Response} object or a
+     * wrapper of that response
+     * @throws IOException
+     * @throws ServletException
+     */
+    @SuppressWarnings("unchecked")
+    static void getJSON(
+            BridgeSelector selector,
+            Request baseRequest,
+            HttpServletRequest request,
+            HttpServletResponse response)
+        throws IOException,
+               ServletException
+    {
+        JSONArray bridgesJSON = new JSONArray();
+
+        for (BridgeSelector.BridgeState bridge : selector.getBridgeStates())
+        {
+            bridgesJSON.add(toJSON(bridge));
+        }
+
+        JSONObject json = new JSONObject();
+        json.put("bridges", bridgesJSON);
+        json.put("admission_queue", toJSON(selector.getAdmissionQueue()));
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        json.writeJSONString(response.getWriter());
+    }
+
+    /**
+     * Starts or stops draining of the bridge and writes its JSON
+     * representation, which tells how many conferences remain on the bridge.
+     *
+     * @param selector the {@code BridgeSelector} which knows the bridge
+     * @param bridgeJid the JID of the bridge
+     * @param action either {@link #DRAIN} or {@link #UNDRAIN}
+     * @param baseRequest the original unwrapped {@link Request} object
+     * @param request the request either as the {@code Request} object or a
+     * wrapper of that request
+     * @param response the response either as the {@code Response} object or a
+     * wrapper of that response
+     * @throws IOException
+     * @throws ServletException
+     */
+    static void drain(
+            BridgeSelector selector,
+            String bridgeJid,
+            String action,
+            Request baseRequest,
+            HttpServletRequest request,
+            HttpServletResponse response)
+        throws IOException,
+               ServletException
+    {
+        boolean drain;
+        if (DRAIN.equals(action))
+        {
+            drain = true;
+        }
+        else if (UNDRAIN.equals(action))
+        {
+            drain = false;
+        }
+        else
+        {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        if (!selector.setBridgeDraining(bridgeJid, drain))
+        {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        toJSON(selector.getBridgeState(bridgeJid))
+            .writeJSONString(response.getWriter());
+    }
+
+    /**
+     * Returns JSON representation of given bridge state.
+     *
+     * @param bridge the state of the bridge
+     */
+    @SuppressWarnings("unchecked")
+    private static JSONObject toJSON(BridgeSelector.BridgeState bridge)
+    {
+        BridgeStats stats = bridge.getStats();
+        JSONObject bridgeJSON = new JSONObject();
+
+        bridgeJSON.put("jid", bridge.getJid());
+        bridgeJSON.put("operational", bridge.isOperational());
+        bridgeJSON.put("breaker", bridge.getBreakerState().toString());
+        bridgeJSON.put("draining", bridge.isDraining());
+        bridgeJSON.put("drain_requested", bridge.isDrainRequested());
+        bridgeJSON.put("graceful_shutdown", stats.isShutdownInProgress());
+        bridgeJSON.put("region", stats.getRegion());
+        bridgeJSON.put("full", bridge.isFull());
+        bridgeJSON.put("capacity", bridge.getCapacity().toString());
+
+        // The number of conferences remaining on draining bridge
+        int conferenceCount = stats.getConferenceCount();
+        bridgeJSON.put(
+            "conferences",
+            conferenceCount != Integer.MAX_VALUE ? conferenceCount : null);
+
+        double probeRtt = bridge.getProbeRtt();
+        bridgeJSON.put("probe_rtt", Double.isNaN(probeRtt) ? null : probeRtt);
+        bridgeJSON.put(
+            "probe_timeouts",
+            bridge.getProbeRttHistogram().getTimeoutCount());
+
+        double stressScore = bridge.getStressScore();
+        bridgeJSON.put(
+            "stress_score",
+            Double.isInfinite(stressScore) ? null : stressScore);
+
+        return bridgeJSON;
+    }
+
+    /**
+     * Returns JSON representation of given admission queue.
+     *
+     * @param queue the queue of conferences waiting for the bridge capacity
+     */
+    @SuppressWarnings("unchecked")
+    private static JSONObject toJSON(BridgeAdmissionQueue queue)
+    {
+        JSONObject queueJSON = new JSONObject();
+
+        queueJSON.put("depth", queue.getDepth());
+        queueJSON.put("max_size", queue.getMaxSize());
+        queueJSON.put("queued", queue.getQueuedCount());
+        queueJSON.put("timed_out", queue.getTimedOutCount());
+        queueJSON.put("rejected", queue.getRejectedCount());
+        queueJSON.put("average_wait", queue.getAverageWaitTime());
+        queueJSON.put("max_wait", queue.getMaxWaitTime());
+
+        return queueJSON;
+    }
+}
@@ -21,7 +21,8 @@ import java.io.*;
 import javax.servlet.*;
 import javax.servlet.http.*;
 import org.eclipse.jetty.server.*;
-import org.jitsi.jicofo.FocusManager;
+import org.jitsi.jicofo.*;
+import org.jitsi.protocol.xmpp.colibri.*;
 import org.jitsi.videobridge.rest.*;
 import org.osgi.framework.*;
 
@@ -34,6 +35,19 @@ import org.osgi.framework.*;
 public class HandlerImpl
     extends AbstractJSONHandler
 {
+    /**
+     * The HTTP resource which lists the videobridges and allows to drain them
+     * with <tt>POST /bridges/{jid}/drain</tt> and
+     * <tt>POST /bridges/{jid}/undrain</tt>.
+     */
+    private static final String BRIDGES = "/bridges";
+
+    /**
+     * The HTTP resource which exposes the statistics of the Colibri requests
+     * sent to the videobridges.
+     */
+    private static final String STATS = "/stats";
+
     /**
      * Initializes a new {@code HandlerImpl} instance within a specific
      * {@code BundleContext}.
@@ -46,6 +60,84 @@ public class HandlerImpl
         super(bundleContext);
     }
 
+    /**
+     * Handles <tt>/bridges</tt> and <tt>/stats</tt> resources in addition to
+     * the ones provided by {@link AbstractJSONHandler}.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected void handleJSON(
+            String target,
+            Request baseRequest,
+            HttpServletRequest request,
+            HttpServletResponse response)
+        throws IOException,
+               ServletException
+    {
+        super.handleJSON(target, baseRequest, request, response);
+
+        if (baseRequest.isHandled())
+            return; // The super implementation has handled the request.
+
+        if (BRIDGES.equals(target))
+        {
+            if (GET_HTTP_METHOD.equals(request.getMethod()))
+            {
+                beginResponse(target, baseRequest, request, response);
+                doGetBridgesJSON(baseRequest, request, response);
+                endResponse(target, baseRequest, request, response);
+            }
+            else
+            {
+                response.setStatus(
+                        HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+                baseRequest.setHandled(true);
+            }
+        }
+        else if (STATS.equals(target))
+        {
+            if (GET_HTTP_METHOD.equals(request.getMethod()))
+            {
+                beginResponse(target, baseRequest, request, response);
+                doGetStatsJSON(baseRequest, request, response);
+                endResponse(target, baseRequest, request, response);
+            }
+            else
+            {
+                response.setStatus(
+                        HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+                baseRequest.setHandled(true);
+            }
+        }
+        else if (target.startsWith(BRIDGES + "/"))
+        {
+            // /bridges/{jid}/{action}
+            String bridgeAndAction = target.substring(BRIDGES.length() + 1);
+            int slash = bridgeAndAction.lastIndexOf('/');
+
+            if (slash <= 0)
+            {
+                return;
+            }
+            else if (POST_HTTP_METHOD.equals(request.getMethod()))
+            {
+                beginResponse(target, baseRequest, request, response);
+                doPostBridgeJSON(
+                        bridgeAndAction.substring(0, slash),
+                        bridgeAndAction.substring(slash + 1),
+                        baseRequest, request, response);
+                endResponse(target, baseRequest, request, response);
+            }
+            else
+            {
+                response.setStatus(
+                        HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+                baseRequest.setHandled(true);
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -73,6 +165,134 @@ public class HandlerImpl
         endResponse(/* target */ null, baseRequest, request, response);
     }
 
+    /**
+     * Lists the videobridges known to the {@link BridgeSelector}.
+     *
+     * @param baseRequest the original unwrapped {@link Request} object
+     * @param request the request either as the {@code Request} object or a
+     * wrapper of that request
+     * @param response the response either as the {@code Response} object or a
+     * wrapper of that response
+     * @throws IOException
+     * @throws ServletException
+     */
+    private void doGetBridgesJSON(
+            Request baseRequest,
+            HttpServletRequest request,
+            HttpServletResponse response)
+        throws IOException,
+               ServletException
+    {
+        BridgeSelector selector = getBridgeSelector();
+
+        if (selector == null)
+        {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+        else
+        {
+            Bridges.getJSON(selector, baseRequest, request, response);
+        }
+    }
+
+    /**
+     * Gets the statistics of the Colibri requests sent to the videobridges.
+     *
+     * @param baseRequest the original unwrapped {@link Request} object
+     * @param request the request either as the {@code Request} object or a
+     * wrapper of that request
+     * @param response the response either as the {@code Response} object or a
+     * wrapper of that response
+     * @throws IOException
+     * @throws ServletException
+     */
+    private void doGetStatsJSON(
+            Request baseRequest,
+            HttpServletRequest request,
+            HttpServletResponse response)
+        throws IOException,
+               ServletException
+    {
+        ColibriMetrics metrics = getColibriMetrics();
+
+        if (metrics == null)
+        {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+        else
+        {
+            Stats.getJSON(metrics, baseRequest, request, response);
+        }
+    }
+
+    /**
+     * Starts or stops draining of the videobridge.
+     *
+     * @param bridgeJid the JID of the videobridge
+     * @param action the name of the action to perform
+     * @param baseRequest the original unwrapped {@link Request} object
+     * @param request the request either as the {@code Request} object or a
+     * wrapper of that request
+     * @param response the response either as the {@code Response} object or a
+     * wrapper of that response
+     * @throws IOException
+     * @throws ServletException
+     */
+    private void doPostBridgeJSON(
+            String bridgeJid,
+            String action,
+            Request baseRequest,
+            HttpServletRequest request,
+            HttpServletResponse response)
+        throws IOException,
+               ServletException
+    {
+        BridgeSelector selector = getBridgeSelector();
+
+        if (selector == null)
+        {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+        else
+        {
+            Bridges.drain(
+                selector, bridgeJid, action, baseRequest, request, response);
+        }
+    }
+
+    /**
+     * Gets the {@link BridgeSelector} instance available to this Jetty
+     * {@code Handler}.
+     *
+     * @return the {@code BridgeSelector} instance or {@code null} if Jicofo
+     * services have not been started yet
+     */
+    public BridgeSelector getBridgeSelector()
+    {
+        JitsiMeetServices services = getService(JitsiMeetServices.class);
+
+        return services != null ? services.getBridgeSelector() : null;
+    }
+
+    /**
+     * Gets the statistics of the Colibri requests sent by the focus.
+     *
+     * @return the {@code ColibriMetrics} instance or {@code null} if Jicofo
+     * services have not been started yet
+     */
+    public ColibriMetrics getColibriMetrics()
+    {
+        FocusManager focusManager = getFocusManager();
+        if (focusManager == null)
+            return null;
+
+        OperationSetColibriConference colibri
+            = focusManager.getOperationSet(
+                    OperationSetColibriConference.class);
+
+        return colibri != null ? colibri.getMetrics() : null;
+    }
+
     /**
      * Gets the {@code FocusManager} instance available to this Jetty
      * {@code Handler}.
@@ -0,0 +1,139 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.rest;
+
+import java.io.*;
+import java.util.*;
+import javax.servlet.*;
+import javax.servlet.http.*;
+import org.eclipse.jetty.server.*;
+import org.jitsi.jicofo.*;
+import org.jitsi.protocol.xmpp.colibri.*;
+import org.json.simple.*;
+
+/**
+ * Exposes the statistics of the Colibri requests sent to the videobridges.
+ */
+public class Stats
+{
+    /**
+     * Gets a JSON representation of the statistics of the Colibri requests,
+     * for every bridge and every kind of request.
+     *
+     * @param metrics the statistics of the Colibri requests
+     * @param baseRequest the original unwrapped {@link Request} object
+     * @param request the request either as the {@code Request} object or a
+     * wrapper of that request
+     * @param response the response either as the {@code Response} object or a
+     * wrapper of that response
+     * @throws IOException
+     * @throws ServletException
+     */
+    @SuppressWarnings("unchecked")
+    static void getJSON(
+            ColibriMetrics metrics,
+            Request baseRequest,
+            HttpServletRequest request,
+            HttpServletResponse response)
+        throws IOException,
+               ServletException
+    {
+        JSONObject colibriJSON = new JSONObject();
+
+        for (String bridgeJid : metrics.getBridges())
+        {
+            JSONObject bridgeJSON = new JSONObject();
+
+            for (ColibriMetrics.Operation operation
+                : ColibriMetrics.Operation.values())
+            {
+                ColibriMetrics.OperationMetrics operationMetrics
+                    = metrics.getOperationMetrics(bridgeJid, operation);
+
+                if (operationMetrics != null)
+                {
+                    bridgeJSON.put(
+                        operation.getName(), toJSON(operationMetrics));
+                }
+            }
+            colibriJSON.put(bridgeJid, bridgeJSON);
+        }
+
+        JSONObject json = new JSONObject();
+        json.put("colibri", colibriJSON);
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        json.writeJSONString(response.getWriter());
+    }
+
+    /**
+     * Returns JSON representation of the statistics of single kind of
+     * requests.
+     *
+     * @param metrics the statistics of the requests
+     */
+    @SuppressWarnings("unchecked")
+    private static JSONObject toJSON(
+            ColibriMetrics.OperationMetrics metrics)
+    {
+        BridgeRttHistogram latency = metrics.getLatency();
+        JSONObject json = new JSONObject();
+
+        json.put("requests", metrics.getRequestCount());
+        json.put("retries", metrics.getRetryCount());
+        json.put("timeouts", latency.getTimeoutCount());
+        json.put("responses", latency.getCount());
+
+        JSONObject errorsJSON = new JSONObject();
+        for (Map.Entry<String, Long> error : metrics.getErrors().entrySet())
+        {
+            errorsJSON.put(error.getKey(), error.getValue());
+        }
+        json.put("errors", errorsJSON);
+
+        json.put("latency_p50", toJSON(latency.getPercentile(50)));
+        json.put("latency_p95", toJSON(latency.getPercentile(95)));
+        json.put("latency_p99", toJSON(latency.getPercentile(99)));
+
+        // Upper bound of the bucket in millis to the number of samples, the
+        // last bucket has no upper bound
+        long[] counts = latency.getCounts();
+        JSONObject bucketsJSON = new JSONObject();
+        for (int i = 0; i < counts.length; i++)
+        {
+            bucketsJSON.put(
+                i < BridgeRttHistogram.BUCKET_BOUNDS.length
+                    ? String.valueOf(BridgeRttHistogram.BUCKET_BOUNDS[i])
+                    : "inf",
+                counts[i]);
+        }
+        json.put("latency_buckets", bucketsJSON);
+
+        return json;
+    }
+
+    /**
+     * Returns the percentile estimated by the histogram or <tt>null</tt> if
+     * it is unknown or unbounded.
+     */
+    private static Long toJSON(long percentile)
+    {
+        return percentile >= 0 && percentile != Long.MAX_VALUE
+            ? percentile : null;
+    }
+}
@@ -21,7 +21,10 @@ import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
 
 import org.jitsi.service.neomedia.*;
 
+import org.jivesoftware.smack.packet.*;
+
 import java.net.*;
+import java.util.concurrent.*;
 
 /**
  * Contains factory methods for creating Jingle offer sent in 'session-invite'
@@ -31,8 +34,78 @@ import java.net.*;
  */
 public class JingleOfferFactory
 {
+    /**
+     * The RTP descriptions built by {@link #createContentForMedia(MediaType,
+     * boolean, boolean)}, keyed by the media type. Their payload types and
+     * RTP header extensions are the same for every participant, so they are
+     * built once and shared by all offers. The descriptions themselves are
+     * never handed out, as the SSRCs are added to the offer.
+     */
+    private static final ConcurrentMap<MediaType, RtpDescriptionPacketExtension>
+        descriptions
+            = new ConcurrentHashMap<MediaType, RtpDescriptionPacketExtension>();
+
     private JingleOfferFactory(){ }
 
+    /**
+     * Returns <tt>ContentPacketExtension</tt> for given media type that will be
+     * included in initial conference offer. Unlike
+     * {@link #createContentForMedia(MediaType, boolean, boolean)} it does not
+     * build the payload types and RTP header extensions again for every
+     * offer, but shares the ones built for the first offer. They must not be
+     * modified. The content, the description and the transport are new
+     * instances.
+     *
+     * @param mediaType the media type for which new offer content will
+     * be created.
+     * @param disableIce pass <tt>true</tt> if RAW transport instead of ICE
+     * should be indicated in the offer.
+     * @param useDtls whether to add a DTLS element under the transport
+     * elements in the offer.
+     *
+     * @return <tt>ContentPacketExtension</tt> for given media type or
+     *         <tt>null</tt> if the media type is not supported.
+     */
+    public static ContentPacketExtension getContentForMedia(
+            MediaType mediaType, boolean disableIce, boolean useDtls)
+    {
+        RtpDescriptionPacketExtension template = descriptions.get(mediaType);
+        if (template == null)
+        {
+            ContentPacketExtension content
+                = createContentForMedia(mediaType, disableIce, useDtls);
+            if (content == null)
+                return null;
+
+            template
+                = content.getFirstChildOfType(
+                        RtpDescriptionPacketExtension.class);
+
+            RtpDescriptionPacketExtension existing
+                = descriptions.putIfAbsent(mediaType, template);
+            if (existing != null)
+                template = existing;
+        }
+
+        ContentPacketExtension content = createContent(mediaType);
+
+        RtpDescriptionPacketExtension rtpDesc
+            = new RtpDescriptionPacketExtension();
+        for (String name : template.getAttributeNames())
+        {
+            rtpDesc.setAttribute(name, template.getAttribute(name));
+        }
+        for (PacketExtension child : template.getChildExtensions())
+        {
+            rtpDesc.addChildExtension(child);
+        }
+        content.addChildExtension(rtpDesc);
+
+        addTransport(content, disableIce, useDtls);
+
+        return content;
+    }
+
     /**
      * Creates <tt>ContentPacketExtension</tt> for given media type that will be
      * included in initial conference offer.
@@ -50,12 +123,7 @@ public class JingleOfferFactory
     public static ContentPacketExtension createContentForMedia(
             MediaType mediaType, boolean disableIce, boolean useDtls)
     {
-        ContentPacketExtension content
-            = new ContentPacketExtension(
-                    ContentPacketExtension.CreatorEnum.initiator,
-                    mediaType.name().toLowerCase());
-
-        content.setSenders(ContentPacketExtension.SendersEnum.both);
+        ContentPacketExtension content = createContent(mediaType);
 
         // FIXME: re-use Format and EncodingConfiguration
         // to construct the offer
@@ -236,6 +304,39 @@ public class JingleOfferFactory
         // DTLS-SRTP
         //setDtlsEncryptionOnContent(mediaType, content, null);
 
+        addTransport(content, disableIce, useDtls);
+
+        return content;
+    }
+
+    /**
+     * Creates empty <tt>ContentPacketExtension</tt> for given media type.
+     */
+    private static ContentPacketExtension createContent(MediaType mediaType)
+    {
+        ContentPacketExtension content
+            = new ContentPacketExtension(
+                    ContentPacketExtension.CreatorEnum.initiator,
+                    mediaType.name().toLowerCase());
+
+        content.setSenders(ContentPacketExtension.SendersEnum.both);
+
+        return content;
+    }
+
+    /**
+     * Adds empty transport to the offer content.
+     *
+     * @param content the content to which the transport will be added.
+     * @param disableIce pass <tt>true</tt> if RAW transport instead of ICE
+     * should be indicated in the offer.
+     * @param useDtls whether to add a DTLS element under the transport
+     * elements in the offer.
+     */
+    private static void addTransport(ContentPacketExtension content,
+                                     boolean disableIce,
+                                     boolean useDtls)
+    {
         if (!disableIce)
         {
             IceUdpTransportPacketExtension iceUdpTransportPacketExtension
@@ -250,7 +351,5 @@ public class JingleOfferFactory
         {
             content.addChildExtension(new RawUdpTransportPacketExtension());
         }
-
-        return content;
     }
 }
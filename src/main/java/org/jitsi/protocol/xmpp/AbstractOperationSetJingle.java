@@ -45,10 +45,12 @@ public abstract class AbstractOperationSetJingle
         = Logger.getLogger(AbstractOperationSetJingle.class);
 
     /**
-     * The list of active Jingle session.
+     * The active Jingle sessions, indexed by the session ID. Modified by
+     * the threads which invite the peers and read by the thread which
+     * processes incoming Jingle IQs.
      */
-    protected Map<String, JingleSession> sessions
-        = new HashMap<String, JingleSession>();
+    protected final SessionRegistry<JingleSession> sessions
+        = new SessionRegistry<JingleSession>();
 
     /**
      * Implementing classes should return our JID here.
@@ -70,11 +72,12 @@ public abstract class AbstractOperationSetJingle
      */
     public JingleSession getSession(String sid)
     {
-        return sessions.get(sid);
+        return sessions.findBySessionId(sid);
     }
 
     /**
      * Sends 'session-initiate' to the peer identified by given <tt>address</tt>
+     * without blocking the calling thread until the peer acknowledges it.
      *
      * @param useBundle <tt>true</tt> if invite IQ should include
      *                  {@link GroupPacketExtension}
@@ -87,13 +90,17 @@ public abstract class AbstractOperationSetJingle
      * @param startMuted if the first element is <tt>true</tt> the participant
      * will start audio muted. if the second element is <tt>true</tt> the
      * participant will start video muted.
+     *
+     * @return the future completed with <tt>true</tt> when the peer has
+     *         acknowledged session-initiate or with <tt>false</tt> otherwise.
      */
     @Override
-    public boolean initiateSession(boolean useBundle,
-                                String address,
-                                List<ContentPacketExtension> contents,
-                                JingleRequestHandler requestHandler,
-                                boolean[] startMuted)
+    public SettableFuture<Boolean> initiateSession(
+            boolean useBundle,
+            final String address,
+            List<ContentPacketExtension> contents,
+            JingleRequestHandler requestHandler,
+            boolean[] startMuted)
     {
     	
     	String split[] = address.split("/");
@@ -114,7 +121,7 @@ public abstract class AbstractOperationSetJingle
 
         JingleSession session = new JingleSession(sid, address, requestHandler);
 
-        sessions.put(sid, session);
+        sessions.add(session, sid, null, null);
 
         JingleIQ inviteIQ
             = JinglePacketFactory.createSessionInitiate(
@@ -148,26 +155,47 @@ public abstract class AbstractOperationSetJingle
             inviteIQ.addExtension(startMutedExt);
         }
 
-        IQ reply = (IQ) getConnection().sendPacketAndGetReply(inviteIQ);
-        if (reply != null && IQ.Type.RESULT.equals(reply.getType()))
-        {
-            return true;
-        }
-        else
-        {
-            if (reply == null)
-            {
-                logger.error(
-                    "Timeout waiting for session-accept from " + address);
-            }
-            else
+        final SettableFuture<Boolean> result = new SettableFuture<Boolean>();
+
+        getConnection().sendPacketAsync(inviteIQ).addListener(
+            new SettableFuture.Listener<Packet>()
             {
-                logger.error(
-                    "Failed to send session-initiate to " + address
-                        + ", error: " + reply.getError());
-            }
-            return false;
-        }
+                @Override
+                public void onSuccess(Packet reply)
+                {
+                    if (reply instanceof IQ
+                        && IQ.Type.RESULT.equals(((IQ) reply).getType()))
+                    {
+                        result.complete(true);
+                        return;
+                    }
+
+                    if (reply == null)
+                    {
+                        logger.error(
+                            "Timeout waiting for session-accept from "
+                                + address);
+                    }
+                    else
+                    {
+                        logger.error(
+                            "Failed to send session-initiate to " + address
+                                + ", error: " + reply.getError());
+                    }
+                    result.complete(false);
+                }
+
+                @Override
+                public void onFailure(Throwable error)
+                {
+                    logger.error(
+                        "Failed to send session-initiate to " + address,
+                        error);
+                    result.complete(false);
+                }
+            });
+
+        return result;
     }
 
     /**
@@ -481,9 +509,7 @@ public abstract class AbstractOperationSetJingle
     @Override
     public void terminateHandlersSessions(JingleRequestHandler requestHandler)
     {
-        List<JingleSession> sessions
-            = new ArrayList<JingleSession>(this.sessions.values());
-        for (JingleSession session : sessions)
+        for (JingleSession session : sessions.getSessions())
         {
             if (session.getRequestHandler() == requestHandler)
             {
@@ -517,6 +543,6 @@ public abstract class AbstractOperationSetJingle
 
         getConnection().sendPacket(terminate);
 
-        sessions.remove(session.getSessionID());
+        sessions.remove(session, session.getSessionID(), null, null);
     }
 }
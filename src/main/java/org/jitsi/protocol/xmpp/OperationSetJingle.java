@@ -37,6 +37,7 @@ public interface OperationSetJingle
 {
     /**
      * Start new session by sending 'session-initiate' IQ to given XMPP address.
+     * Returns without waiting for the peer to acknowledge the IQ.
      *
      * @param useBundle <tt>true</tt> if contents description in the IQ sent
      *                  should contain additional signaling required for RTP
@@ -50,10 +51,11 @@ public interface OperationSetJingle
      * will start audio muted. if the second element is <tt>true</tt> the
      * participant will start video muted.
      *
-     * @return <tt>true</tt> if have have received RESULT response to
-     *         session-initiate IQ.
+     * @return the future completed with <tt>true</tt> when RESULT response to
+     *         session-initiate IQ is received or with <tt>false</tt> if
+     *         the peer has returned an error or has not answered in time.
      */
-    boolean initiateSession(
+    SettableFuture<Boolean> initiateSession(
             boolean useBundle,
             String address,
             List<ContentPacketExtension> contents,
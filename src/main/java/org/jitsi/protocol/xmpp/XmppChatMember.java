@@ -37,4 +37,10 @@ public interface XmppChatMember
      * @return number based on the order of joining of the members in the room.
      */
     int getJoinOrderNumber();
+
+    /**
+     * Returns the region advertised by the member in MUC presence.
+     * @return the region identifier or <tt>null</tt> if not advertised.
+     */
+    String getRegion();
 }
@@ -17,6 +17,8 @@
  */
 package org.jitsi.protocol.xmpp;
 
+import org.jitsi.protocol.xmpp.util.*;
+
 import org.jivesoftware.smack.packet.*;
 
 /**
@@ -42,4 +44,44 @@ public interface XmppConnection
      *         or <tt>null</tt> if no response was collected.
      */
     Packet sendPacketAndGetReply(Packet packet);
+
+    /**
+     * Sends the packet and wait for reply in blocking mode, but no longer than
+     * given amount of time.
+     *
+     * @param packet the packet to be sent.
+     * @param timeout how long to wait for the response in milliseconds.
+     *
+     * @return the response packet received within the time limit
+     *         or <tt>null</tt> if no response was collected.
+     */
+    Packet sendPacketAndGetReply(Packet packet, long timeout);
+
+    /**
+     * Sends the packet and returns immediately. Works like
+     * {@link #sendPacketAsync(Packet, long)} with the default reply timeout
+     * of the connection.
+     *
+     * @param packet the packet to be sent.
+     *
+     * @return the future completed with the response packet or with
+     *         <tt>null</tt> if no response has been received within the time
+     *         limit.
+     */
+    SettableFuture<Packet> sendPacketAsync(Packet packet);
+
+    /**
+     * Sends the packet and returns immediately. The response is delivered
+     * through the returned future, which is never completed on the thread
+     * that reads the packets from the connection, so that its listeners are
+     * allowed to block.
+     *
+     * @param packet the packet to be sent.
+     * @param timeout how long to wait for the response in milliseconds.
+     *
+     * @return the future completed with the response packet or with
+     *         <tt>null</tt> if no response has been received within the time
+     *         limit.
+     */
+    SettableFuture<Packet> sendPacketAsync(Packet packet, long timeout);
 }
@@ -32,6 +32,10 @@ import java.util.*;
  * operations like allocating/expiring channels, updating channel transport
  * and so on.
  *
+ * The updates of the channels do not block. The implementation may send
+ * the changes later and merge them with the other changes of the same
+ * channels, but they are applied on the bridge in the order of the calls.
+ *
  * @author Pawel Domas
  */
 public interface ColibriConference
@@ -109,6 +113,27 @@ public interface ColibriConference
         List<ContentPacketExtension> contents)
         throws OperationFailedException;
 
+    /**
+     * Creates channels on the videobridge for given parameters without
+     * blocking the calling thread while waiting for the response.
+     *
+     * @param useBundle <tt>true</tt> if channel transport bundle should be used
+     *                  for this allocation.
+     * @param endpointName the name that will identify channels endpoint.
+     * @param peerIsInitiator <tt>true</tt> if peer is ICE an initiator
+     *                        of ICE session.
+     * @param contents content list that describes peer media.
+     * @return the future completed with <tt>ColibriConferenceIQ</tt> that
+     *         describes allocated channels or failed with
+     *         {@link OperationFailedException} if channel allocation failed
+     *         due to network or bridge failure.
+     */
+    SettableFuture<ColibriConferenceIQ> createColibriChannelsAsync(
+        boolean useBundle,
+        String endpointName,
+        boolean peerIsInitiator,
+        List<ContentPacketExtension> contents);
+
     /**
      * Updates the RTP description for active channels (existing on the bridge).
      *
@@ -169,6 +194,20 @@ public interface ColibriConference
         IceUdpTransportPacketExtension transport,
         ColibriConferenceIQ localChannelsInfo);
 
+    /**
+     * Assigns the channels described by <tt>localChannelsInfo</tt> to another
+     * endpoint. The endpoint of the local description is changed immediately,
+     * the bridge is updated together with the other pending changes.
+     *
+     * @param endpoint the ID of the endpoint which will own the channels.
+     * @param localChannelsInfo <tt>ColibriConferenceIQ</tt> that contains
+     *                          the description of the channels to be
+     *                          reassigned.
+     */
+    void updateChannelsEndpoint(
+        String endpoint,
+        ColibriConferenceIQ localChannelsInfo);
+
     /**
      * Expires the channels described by given <tt>ColibriConferenceIQ</tt>.
      *
@@ -188,8 +227,24 @@ public interface ColibriConference
      * @param channelsInfo the IQ that describes the channels to be muted.
      * @param mute <tt>true</tt> to mute or <tt>false</tt> to unmute audio
      *             channels described in <tt>channelsInfo</tt>.
-     * @return <tt>true</tt> if the operation has succeeded or <tt>false</tt>
-     *         otherwise.
+     * @return the future completed with <tt>true</tt> once the bridge has
+     *         confirmed the operation or with <tt>false</tt> if it has
+     *         failed or has not been confirmed in time.
+     */
+    SettableFuture<Boolean> muteParticipant(
+        ColibriConferenceIQ channelsInfo, boolean mute);
+
+    /**
+     * Mutes audio channels of many participants in single request sent to
+     * the bridge.
+     * @param channelsInfos the IQs that describe the channels of
+     *                      the participants to be muted.
+     * @param mute <tt>true</tt> to mute or <tt>false</tt> to unmute audio
+     *             channels described in <tt>channelsInfos</tt>.
+     * @return the future completed with <tt>true</tt> once the bridge has
+     *         confirmed the operation or with <tt>false</tt> if it has
+     *         failed or has not been confirmed in time.
      */
-    boolean muteParticipant(ColibriConferenceIQ channelsInfo, boolean mute);
+    SettableFuture<Boolean> muteParticipants(
+        List<ColibriConferenceIQ> channelsInfos, boolean mute);
 }
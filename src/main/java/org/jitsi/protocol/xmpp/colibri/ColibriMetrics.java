@@ -0,0 +1,273 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.protocol.xmpp.colibri;
+
+import org.jitsi.jicofo.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Collects the statistics of the Colibri requests sent to the videobridges:
+ * the latency histograms, the timeouts, the retries and the errors returned
+ * by the bridge, separately for every bridge and every kind of request.
+ * One instance is shared by all the conferences.
+ */
+public class ColibriMetrics
+{
+    /**
+     * The kinds of Colibri requests.
+     */
+    public enum Operation
+    {
+        /**
+         * Allocates the channels.
+         */
+        ALLOCATE,
+
+        /**
+         * Updates the sources, transport or RTP description of the channels.
+         */
+        UPDATE,
+
+        /**
+         * Mutes or unmutes the channels.
+         */
+        MUTE,
+
+        /**
+         * Expires the channels. It is not answered, so only the requests are
+         * counted.
+         */
+        EXPIRE;
+
+        /**
+         * Returns the lower case name used in the statistics.
+         */
+        public String getName()
+        {
+            return name().toLowerCase();
+        }
+    }
+
+    /**
+     * The statistics of the bridges, keyed by the JID of the bridge.
+     */
+    private final ConcurrentMap<String, BridgeMetrics> bridges
+        = new ConcurrentHashMap<String, BridgeMetrics>();
+
+    /**
+     * Records the request sent to the bridge.
+     *
+     * @param bridgeJid the JID of the bridge.
+     * @param operation the kind of the request.
+     */
+    public void recordRequest(String bridgeJid, Operation operation)
+    {
+        getMetrics(bridgeJid, operation).recordRequest();
+    }
+
+    /**
+     * Records the request which has been sent again after it has timed out.
+     *
+     * @param bridgeJid the JID of the bridge.
+     * @param operation the kind of the request.
+     */
+    public void recordRetry(String bridgeJid, Operation operation)
+    {
+        getMetrics(bridgeJid, operation).recordRetry();
+    }
+
+    /**
+     * Records the request answered by the bridge, either with the result or
+     * with an error.
+     *
+     * @param bridgeJid the JID of the bridge.
+     * @param operation the kind of the request.
+     * @param latency the time in milliseconds from sending the request to
+     *                receiving the response, including the retries.
+     * @param errorCondition the condition of the error returned by the bridge
+     *                       or <tt>null</tt> if the request has succeeded.
+     */
+    public void recordResponse(String bridgeJid,
+                               Operation operation,
+                               long latency,
+                               String errorCondition)
+    {
+        getMetrics(bridgeJid, operation).recordResponse(
+            latency, errorCondition);
+    }
+
+    /**
+     * Records the request which has not been answered by the bridge after
+     * all the retries.
+     *
+     * @param bridgeJid the JID of the bridge.
+     * @param operation the kind of the request.
+     */
+    public void recordTimeout(String bridgeJid, Operation operation)
+    {
+        getMetrics(bridgeJid, operation).recordTimeout();
+    }
+
+    /**
+     * Returns the JIDs of the bridges for which any request has been
+     * recorded.
+     */
+    public Set<String> getBridges()
+    {
+        return new TreeSet<String>(bridges.keySet());
+    }
+
+    /**
+     * Returns the statistics of given kind of requests sent to the bridge.
+     *
+     * @param bridgeJid the JID of the bridge.
+     * @param operation the kind of the requests.
+     *
+     * @return the statistics or <tt>null</tt> if no request has been
+     *         recorded for the bridge.
+     */
+    public OperationMetrics getOperationMetrics(String bridgeJid,
+                                                Operation operation)
+    {
+        BridgeMetrics bridge = bridges.get(bridgeJid);
+
+        return bridge != null ? bridge.operations.get(operation) : null;
+    }
+
+    private OperationMetrics getMetrics(String bridgeJid, Operation operation)
+    {
+        BridgeMetrics bridge = bridges.get(bridgeJid);
+        if (bridge == null)
+        {
+            BridgeMetrics newBridge = new BridgeMetrics();
+
+            bridge = bridges.putIfAbsent(bridgeJid, newBridge);
+            if (bridge == null)
+                bridge = newBridge;
+        }
+        return bridge.operations.get(operation);
+    }
+
+    /**
+     * The statistics of all the kinds of requests sent to single bridge.
+     */
+    private static class BridgeMetrics
+    {
+        final Map<Operation, OperationMetrics> operations
+            = new EnumMap<Operation, OperationMetrics>(Operation.class);
+
+        BridgeMetrics()
+        {
+            for (Operation operation : Operation.values())
+            {
+                operations.put(operation, new OperationMetrics());
+            }
+        }
+    }
+
+    /**
+     * The statistics of single kind of requests sent to single bridge.
+     */
+    public static class OperationMetrics
+    {
+        /**
+         * The latencies of the answered requests and the number of
+         * the requests which have timed out.
+         */
+        private final BridgeRttHistogram latency = new BridgeRttHistogram();
+
+        /**
+         * The number of the errors returned by the bridge, keyed by
+         * the condition of the error.
+         */
+        private final Map<String, Long> errors = new TreeMap<String, Long>();
+
+        /**
+         * The number of the requests sent.
+         */
+        private long requestCount;
+
+        /**
+         * The number of the requests sent again after timing out.
+         */
+        private long retryCount;
+
+        synchronized void recordRequest()
+        {
+            requestCount++;
+        }
+
+        synchronized void recordRetry()
+        {
+            retryCount++;
+        }
+
+        synchronized void recordResponse(long latency, String errorCondition)
+        {
+            this.latency.record(latency);
+
+            if (errorCondition != null)
+            {
+                Long count = errors.get(errorCondition);
+                errors.put(errorCondition, count == null ? 1 : count + 1);
+            }
+        }
+
+        void recordTimeout()
+        {
+            latency.recordTimeout();
+        }
+
+        /**
+         * Returns the histogram of the latencies of the answered requests.
+         * Its timeout count is the number of requests which have not been
+         * answered after all the retries.
+         */
+        public BridgeRttHistogram getLatency()
+        {
+            return latency;
+        }
+
+        /**
+         * Returns the copy of the error counts keyed by the condition of
+         * the error.
+         */
+        public synchronized Map<String, Long> getErrors()
+        {
+            return new TreeMap<String, Long>(errors);
+        }
+
+        /**
+         * Returns the number of the requests sent.
+         */
+        public synchronized long getRequestCount()
+        {
+            return requestCount;
+        }
+
+        /**
+         * Returns the number of the requests sent again after timing out.
+         */
+        public synchronized long getRetryCount()
+        {
+            return retryCount;
+        }
+    }
+}
@@ -36,4 +36,10 @@ public interface OperationSetColibriConference
      *         channels allocated nor conference ID on the bridge.
      */
     ColibriConference createNewConference();
+
+    /**
+     * Returns the statistics of the Colibri requests sent by all
+     * the conferences created by this operation set.
+     */
+    ColibriMetrics getMetrics();
 }
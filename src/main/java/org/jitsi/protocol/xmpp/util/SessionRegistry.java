@@ -0,0 +1,150 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.protocol.xmpp.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Thread-safe registry of the Jingle sessions or of the participants which
+ * own them, indexed by the Jingle session ID, by the MUC address and by
+ * the endpoint ID. Every lookup is a single hash map access, so the registry
+ * can be read on every incoming stanza by the thread which processes them,
+ * while the entries are added and removed by the other threads.
+ *
+ * An entry is indexed only by the keys which are not <tt>null</tt>. The
+ * session IDs and the MUC addresses are unique on the XMPP connection, but
+ * the endpoint IDs are the MUC nicknames, so they are unique only in single
+ * conference room.
+ *
+ * @param <T> the type of the registered entries.
+ */
+public class SessionRegistry<T>
+{
+    /**
+     * The entries indexed by the Jingle session ID.
+     */
+    private final ConcurrentMap<String, T> bySessionId
+        = new ConcurrentHashMap<String, T>();
+
+    /**
+     * The entries indexed by the MUC address, which is also the address of
+     * the Jingle session.
+     */
+    private final ConcurrentMap<String, T> byAddress
+        = new ConcurrentHashMap<String, T>();
+
+    /**
+     * The entries indexed by the endpoint ID.
+     */
+    private final ConcurrentMap<String, T> byEndpoint
+        = new ConcurrentHashMap<String, T>();
+
+    /**
+     * Adds the entry to the indexes. The entries registered before under
+     * the same keys are replaced.
+     *
+     * @param entry the entry to add.
+     * @param sessionId the Jingle session ID or <tt>null</tt>.
+     * @param address the MUC address or <tt>null</tt>.
+     * @param endpointId the endpoint ID or <tt>null</tt>.
+     */
+    public void add(T entry, String sessionId, String address,
+                    String endpointId)
+    {
+        if (entry == null)
+            throw new NullPointerException("entry");
+
+        put(bySessionId, sessionId, entry);
+        put(byAddress, address, entry);
+        put(byEndpoint, endpointId, entry);
+    }
+
+    /**
+     * Removes the entry from the indexes. The keys which point to another
+     * entry already, like the address of the member who has joined the room
+     * again with the same nickname, are left alone.
+     *
+     * @param entry the entry to remove.
+     * @param sessionId the Jingle session ID or <tt>null</tt>.
+     * @param address the MUC address or <tt>null</tt>.
+     * @param endpointId the endpoint ID or <tt>null</tt>.
+     *
+     * @return <tt>true</tt> if the entry has been removed from any of
+     *         the indexes.
+     */
+    public boolean remove(T entry, String sessionId, String address,
+                          String endpointId)
+    {
+        boolean removed = remove(bySessionId, sessionId, entry);
+        removed |= remove(byAddress, address, entry);
+        removed |= remove(byEndpoint, endpointId, entry);
+        return removed;
+    }
+
+    /**
+     * Finds the entry for given Jingle session ID.
+     *
+     * @return the entry or <tt>null</tt> if not found.
+     */
+    public T findBySessionId(String sessionId)
+    {
+        return sessionId != null ? bySessionId.get(sessionId) : null;
+    }
+
+    /**
+     * Finds the entry for given MUC address.
+     *
+     * @return the entry or <tt>null</tt> if not found.
+     */
+    public T findByAddress(String address)
+    {
+        return address != null ? byAddress.get(address) : null;
+    }
+
+    /**
+     * Finds the entry for given endpoint ID.
+     *
+     * @return the entry or <tt>null</tt> if not found.
+     */
+    public T findByEndpoint(String endpointId)
+    {
+        return endpointId != null ? byEndpoint.get(endpointId) : null;
+    }
+
+    /**
+     * Returns the copy of the entries indexed by the Jingle session ID.
+     */
+    public List<T> getSessions()
+    {
+        return new ArrayList<T>(bySessionId.values());
+    }
+
+    private static <T> void put(ConcurrentMap<String, T> index,
+                                String key, T entry)
+    {
+        if (key != null)
+            index.put(key, entry);
+    }
+
+    private static <T> boolean remove(ConcurrentMap<String, T> index,
+                                      String key, T entry)
+    {
+        return key != null && index.remove(key, entry);
+    }
+}
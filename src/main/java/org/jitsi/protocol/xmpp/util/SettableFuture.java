@@ -0,0 +1,290 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.protocol.xmpp.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * <tt>Future</tt> which is completed explicitly by the code that produces
+ * the result, usually when the response to asynchronous XMPP request
+ * arrives. The listeners are notified on the thread which completes
+ * the future or, if it has been completed already, on the thread which adds
+ * the listener. Only the first completion counts, the later ones are
+ * ignored.
+ *
+ * @param <T> the type of the result.
+ */
+public class SettableFuture<T>
+    implements Future<T>
+{
+    /**
+     * The result of the operation.
+     */
+    private T result;
+
+    /**
+     * The cause of the failure or <tt>null</tt> if the operation has
+     * succeeded.
+     */
+    private Throwable error;
+
+    /**
+     * Whether the future has been cancelled.
+     */
+    private boolean cancelled;
+
+    /**
+     * Whether the future is done.
+     */
+    private boolean done;
+
+    /**
+     * The listeners to notify once the future is done.
+     */
+    private final List<Listener<? super T>> listeners
+        = new LinkedList<Listener<? super T>>();
+
+    /**
+     * Creates the future which is already completed with given result.
+     *
+     * @param result the result of the future.
+     * @param <T> the type of the result.
+     */
+    public static <T> SettableFuture<T> completed(T result)
+    {
+        SettableFuture<T> future = new SettableFuture<T>();
+
+        future.complete(result);
+
+        return future;
+    }
+
+    /**
+     * Creates the future which has already failed with given error.
+     *
+     * @param error the cause of the failure.
+     * @param <T> the type of the result.
+     */
+    public static <T> SettableFuture<T> failed(Throwable error)
+    {
+        SettableFuture<T> future = new SettableFuture<T>();
+
+        future.fail(error);
+
+        return future;
+    }
+
+    /**
+     * Completes this future with given result, unless it is done already.
+     *
+     * @param result the result of the operation.
+     *
+     * @return <tt>true</tt> if this call has completed the future.
+     */
+    public boolean complete(T result)
+    {
+        synchronized (this)
+        {
+            if (done)
+                return false;
+
+            this.result = result;
+            this.done = true;
+            notifyAll();
+        }
+        notifyListeners();
+        return true;
+    }
+
+    /**
+     * Completes this future with given error, unless it is done already.
+     *
+     * @param error the cause of the failure.
+     *
+     * @return <tt>true</tt> if this call has completed the future.
+     */
+    public boolean fail(Throwable error)
+    {
+        if (error == null)
+            throw new NullPointerException("error");
+
+        synchronized (this)
+        {
+            if (done)
+                return false;
+
+            this.error = error;
+            this.done = true;
+            notifyAll();
+        }
+        notifyListeners();
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The operation which produces the result is not interrupted, the result
+     * is discarded when it arrives.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning)
+    {
+        synchronized (this)
+        {
+            if (done)
+                return false;
+
+            this.error = new CancellationException();
+            this.cancelled = true;
+            this.done = true;
+            notifyAll();
+        }
+        notifyListeners();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone()
+    {
+        return done;
+    }
+
+    @Override
+    public synchronized T get()
+        throws InterruptedException, ExecutionException
+    {
+        while (!done)
+        {
+            wait();
+        }
+        return getResult();
+    }
+
+    @Override
+    public synchronized T get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!done)
+        {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                throw new TimeoutException();
+
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return getResult();
+    }
+
+    /**
+     * Returns the result of the future which is done.
+     */
+    private T getResult()
+        throws ExecutionException
+    {
+        if (cancelled)
+            throw (CancellationException) error;
+        if (error != null)
+            throw new ExecutionException(error);
+        return result;
+    }
+
+    /**
+     * Adds the listener to be notified when this future is done.
+     *
+     * @param listener the listener to add.
+     */
+    public void addListener(Listener<? super T> listener)
+    {
+        synchronized (this)
+        {
+            if (!done)
+            {
+                listeners.add(listener);
+                return;
+            }
+        }
+        notifyListener(listener);
+    }
+
+    /**
+     * Notifies and removes all the listeners added so far.
+     */
+    private void notifyListeners()
+    {
+        List<Listener<? super T>> toNotify;
+        synchronized (this)
+        {
+            toNotify = new ArrayList<Listener<? super T>>(listeners);
+            listeners.clear();
+        }
+        for (Listener<? super T> listener : toNotify)
+        {
+            notifyListener(listener);
+        }
+    }
+
+    /**
+     * Passes the outcome of this future to given listener.
+     */
+    private void notifyListener(Listener<? super T> listener)
+    {
+        Throwable error;
+        T result;
+        synchronized (this)
+        {
+            error = this.error;
+            result = this.result;
+        }
+
+        if (error != null)
+            listener.onFailure(error);
+        else
+            listener.onSuccess(result);
+    }
+
+    /**
+     * Receives the outcome of <tt>SettableFuture</tt>.
+     *
+     * @param <T> the type of the result.
+     */
+    public interface Listener<T>
+    {
+        /**
+         * Called when the future has been completed with the result.
+         *
+         * @param result the result of the operation.
+         */
+        void onSuccess(T result);
+
+        /**
+         * Called when the future has failed or has been cancelled.
+         *
+         * @param error the cause of the failure.
+         */
+        void onFailure(Throwable error);
+    }
+}
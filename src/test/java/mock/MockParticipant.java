@@ -67,6 +67,9 @@ public class MockParticipant
 
     private final Object addSourceLock = new Object();
 
+    private final Queue<JingleIQ> sessionTerminates
+        = new LinkedList<JingleIQ>();
+
     private final Object joinLock = new Object();
 
     private MediaSSRCMap remoteSSRCs = new MediaSSRCMap();
@@ -467,7 +470,8 @@ public class MockParticipant
 
         JingleIQ jingleIQ = (JingleIQ) packet;
         return JingleAction.SOURCEADD.equals(jingleIQ.getAction())
-            || JingleAction.SOURCEREMOVE.equals(jingleIQ.getAction());
+            || JingleAction.SOURCEREMOVE.equals(jingleIQ.getAction())
+            || JingleAction.SESSION_TERMINATE.equals(jingleIQ.getAction());
     }
 
     @Override
@@ -513,6 +517,16 @@ public class MockParticipant
 
             logger.info("source-remove received " + nick);
         }
+        else if (JingleAction.SESSION_TERMINATE.equals(action))
+        {
+            synchronized (sessionTerminates)
+            {
+                logger.info("session-terminate received " + nick);
+
+                sessionTerminates.add(modifySSRcIq);
+                sessionTerminates.notifyAll();
+            }
+        }
     }
 
     public void switchVideoSSRCs(long[] newVideoSSRCs, boolean useSsrcGroups)
@@ -575,6 +589,19 @@ public class MockParticipant
         }
     }
 
+    public JingleIQ waitForSessionTerminate(long timeout)
+        throws InterruptedException
+    {
+        synchronized (sessionTerminates)
+        {
+            if (sessionTerminates.isEmpty())
+            {
+                sessionTerminates.wait(timeout);
+            }
+            return sessionTerminates.poll();
+        }
+    }
+
     public boolean isUseSsrcGroups()
     {
         return useSsrcGroups;
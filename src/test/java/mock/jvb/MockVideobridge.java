@@ -49,6 +49,20 @@ public class MockVideobridge
 
     private Videobridge bridge;
 
+    /**
+     * When <tt>true</tt> the requests which allocate new channels are
+     * answered with an error, as by a bridge which has failed.
+     */
+    private volatile boolean failAllocations;
+
+    /**
+     * When <tt>true</tt> the results of the requests which allocate new
+     * channels are kept in {@link #heldResults} instead of being sent.
+     */
+    private boolean holdAllocations;
+
+    private final List<IQ> heldResults = new ArrayList<IQ>();
+
     public MockVideobridge(BundleContext bc,
                            MockXmppConnection connection,
                            String bridgeJid)
@@ -102,6 +116,21 @@ public class MockVideobridge
             {
                 logger.debug("JVB rcv: " + p.toXML());
 
+                if (failAllocations
+                    && isAllocation((ColibriConferenceIQ) p))
+                {
+                    IQ error
+                        = IQ.createErrorResponse(
+                                (IQ) p,
+                                new XMPPError(
+                                    XMPPError.Condition.interna_server_error));
+                    error.setFrom(bridgeJid);
+                    connection.sendPacket(error);
+
+                    logger.debug("JVB sent: " + error.toXML());
+                    continue;
+                }
+
                 IQ response
                     = bridge.handleColibriConferenceIQ(
                             (ColibriConferenceIQ) p,
@@ -115,6 +144,13 @@ public class MockVideobridge
                     {
                         response.setPacketID(p.getPacketID());
                     }
+                    if (IQ.Type.RESULT.equals(response.getType())
+                        && isAllocation((ColibriConferenceIQ) p)
+                        && holdResult(response))
+                    {
+                        logger.debug("JVB held: " + response.toXML());
+                        continue;
+                    }
                     connection.sendPacket(response);
 
                     logger.debug("JVB sent: " + response.toXML());
@@ -132,6 +168,78 @@ public class MockVideobridge
         }
     }
 
+    private static boolean isAllocation(ColibriConferenceIQ request)
+    {
+        for (ColibriConferenceIQ.Content content : request.getContents())
+        {
+            for (ColibriConferenceIQ.Channel channel : content.getChannels())
+            {
+                if (channel.getID() == null)
+                    return true;
+            }
+            for (ColibriConferenceIQ.SctpConnection connection
+                : content.getSctpConnections())
+            {
+                if (connection.getID() == null)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Makes the bridge answer the requests which allocate new channels with
+     * an error. The other requests are processed as usual.
+     *
+     * @param failAllocations <tt>true</tt> to fail the allocations.
+     */
+    public void setFailAllocations(boolean failAllocations)
+    {
+        this.failAllocations = failAllocations;
+    }
+
+    private synchronized boolean holdResult(IQ result)
+    {
+        if (!holdAllocations)
+            return false;
+
+        heldResults.add(result);
+        return true;
+    }
+
+    /**
+     * Makes the bridge allocate the channels, but keep the results until
+     * this method is called with <tt>false</tt>, so that they arrive late.
+     *
+     * @param holdAllocations <tt>true</tt> to keep the results,
+     *                        <tt>false</tt> to send the ones kept so far.
+     */
+    public void setHoldAllocations(boolean holdAllocations)
+    {
+        List<IQ> results;
+        synchronized (this)
+        {
+            this.holdAllocations = holdAllocations;
+            if (holdAllocations)
+                return;
+
+            results = new ArrayList<IQ>(heldResults);
+            heldResults.clear();
+        }
+        for (IQ result : results)
+        {
+            connection.sendPacket(result);
+        }
+    }
+
+    /**
+     * Returns the number of results of the allocations kept by the bridge.
+     */
+    public synchronized int getHeldAllocationsCount()
+    {
+        return heldResults.size();
+    }
+
     public SortedSet<SimulcastLayer> getSimulcastLayers(
         String confId, String channelId)
     {
@@ -155,6 +263,49 @@ public class MockVideobridge
         return count;
     }
 
+    /**
+     * Returns the number of channels of given conference or zero if it does
+     * not exist or has expired.
+     *
+     * @param conferenceId the ID of the Colibri conference.
+     */
+    public int getChannelsCount(String conferenceId)
+    {
+        Conference conference = bridge.getConference(conferenceId, null);
+        if (conference == null)
+            return 0;
+
+        int count = 0;
+        for (Content content: conference.getContents())
+        {
+            count += content.getChannelCount();
+        }
+        return count;
+    }
+
+    /**
+     * Returns <tt>true</tt> if given conference has the channel.
+     *
+     * @param conferenceId the ID of the Colibri conference.
+     * @param contentName the name of the content of the channel.
+     * @param channelId the ID of the channel.
+     */
+    public boolean hasChannel(String conferenceId,
+                              String contentName,
+                              String channelId)
+    {
+        Conference conference = bridge.getConference(conferenceId, null);
+        if (conference == null)
+            return false;
+
+        for (Content content: conference.getContents())
+        {
+            if (contentName.equals(content.getName()))
+                return content.getChannel(channelId) != null;
+        }
+        return false;
+    }
+
     public int getChannelCountByContent(String contentName)
     {
         int count = 0;
@@ -39,6 +39,8 @@ public class MockRoomMember
 
     private ChatRoomMemberRole role = ChatRoomMemberRole.MEMBER;
 
+    private String region;
+
     MockRoomMember(String address, MockMultiUserChat chatRoom)
     {
         this.address = address;
@@ -139,6 +141,17 @@ public class MockRoomMember
         return null;
     }
 
+    @Override
+    public String getRegion()
+    {
+        return region;
+    }
+
+    public void setRegion(String region)
+    {
+        this.region = region;
+    }
+
     @Override
     public int getJoinOrderNumber()
     {
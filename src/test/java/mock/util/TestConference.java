@@ -94,6 +94,11 @@ public class TestConference
         return focusProtocolProvider;
     }
 
+    public JitsiMeetConference getConference()
+    {
+        return conference;
+    }
+
     public MockVideobridge getMockVideoBridge()
     {
         return mockBridge;
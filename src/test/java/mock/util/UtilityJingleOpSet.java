@@ -66,7 +66,7 @@ public class UtilityJingleOpSet
 
                 String sid = jingleIQ.getSID();
 
-                if (sessions.containsKey(sid))
+                if (sessions.findBySessionId(sid) != null)
                 {
                     logger.error(
                         "Received session-initiate for existing session: " + sid);
@@ -135,7 +135,7 @@ public class UtilityJingleOpSet
         JingleSession session
             = new JingleSession(sid, invite.getFrom(), requestHandler);
 
-        sessions.put(sid, session);
+        sessions.add(session, sid, null, null);
 
         return invite;
     }
@@ -18,6 +18,7 @@
 package mock.xmpp;
 
 import org.jitsi.protocol.xmpp.*;
+import org.jitsi.protocol.xmpp.util.*;
 import org.jitsi.util.*;
 import org.jivesoftware.smack.*;
 import org.jivesoftware.smack.filter.*;
@@ -64,13 +65,47 @@ public class MockXmppConnection
 
     @Override
     public Packet sendPacketAndGetReply(Packet packet)
+    {
+        return sendPacketAndGetReply(packet, 10000);
+    }
+
+    @Override
+    public Packet sendPacketAndGetReply(Packet packet, long timeout)
     {
         String myJid = packet.getFrom();
         String packetId = packet.getPacketID();
 
         sendPacket(packet);
 
-        return readNextPacket(myJid, packetId, 10000);
+        return readNextPacket(myJid, packetId, timeout);
+    }
+
+    @Override
+    public SettableFuture<Packet> sendPacketAsync(Packet packet)
+    {
+        return sendPacketAsync(packet, 10000);
+    }
+
+    @Override
+    public SettableFuture<Packet> sendPacketAsync(Packet packet,
+                                                  final long timeout)
+    {
+        final String myJid = packet.getFrom();
+        final String packetId = packet.getPacketID();
+        final SettableFuture<Packet> reply = new SettableFuture<Packet>();
+
+        sendPacket(packet);
+
+        new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                reply.complete(readNextPacket(myJid, packetId, timeout));
+            }
+        }, "MockXmppConnection reply " + packetId).start();
+
+        return reply;
     }
 
     public Packet readNextPacket(String myJid, long timeout)
@@ -0,0 +1,164 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mock.xmpp;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+
+import org.jitsi.protocol.xmpp.*;
+import org.jitsi.protocol.xmpp.util.*;
+import org.jitsi.xmpp.util.*;
+
+import org.jivesoftware.smack.packet.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Records the Colibri requests sent asynchronously and responds to them only
+ * when the test tells it to. The requests are recorded as parsed from their
+ * XML, that is the way the bridge sees them.
+ */
+public class RecordingXmppConnection
+    implements XmppConnection
+{
+    static
+    {
+        // Registers the providers of the transport extensions
+        new JingleIQProvider();
+    }
+
+    private final BlockingQueue<ColibriConferenceIQ> requests
+        = new LinkedBlockingQueue<ColibriConferenceIQ>();
+
+    private final BlockingQueue<Packet> sentPackets
+        = new LinkedBlockingQueue<Packet>();
+
+    private final Map<String, SettableFuture<Packet>> responses
+        = new ConcurrentHashMap<String, SettableFuture<Packet>>();
+
+    /**
+     * Waits up to five seconds for the next request.
+     */
+    public ColibriConferenceIQ nextRequest()
+        throws InterruptedException
+    {
+        return pollRequest(5000);
+    }
+
+    /**
+     * Waits for the next request.
+     *
+     * @param timeout how long to wait in milliseconds.
+     *
+     * @return the request or <tt>null</tt> if none has been sent in time.
+     */
+    public ColibriConferenceIQ pollRequest(long timeout)
+        throws InterruptedException
+    {
+        return requests.poll(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Waits for the next packet sent without waiting for the response.
+     *
+     * @param timeout how long to wait in milliseconds.
+     *
+     * @return the packet or <tt>null</tt> if none has been sent in time.
+     */
+    public Packet pollSentPacket(long timeout)
+        throws InterruptedException
+    {
+        return sentPackets.poll(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Responds to the request with the result.
+     */
+    public void respond(ColibriConferenceIQ request)
+    {
+        respond(request, IQ.createResultIQ(request));
+    }
+
+    /**
+     * Responds to the request with given packet.
+     */
+    public void respond(ColibriConferenceIQ request, Packet response)
+    {
+        responses.remove(request.getPacketID()).complete(response);
+    }
+
+    /**
+     * Makes the request time out.
+     */
+    public void timeout(ColibriConferenceIQ request)
+    {
+        responses.remove(request.getPacketID()).complete(null);
+    }
+
+    @Override
+    public void sendPacket(Packet packet)
+    {
+        sentPackets.add(
+            packet instanceof ColibriConferenceIQ
+                ? parse((ColibriConferenceIQ) packet) : packet);
+    }
+
+    @Override
+    public Packet sendPacketAndGetReply(Packet packet)
+    {
+        return null;
+    }
+
+    @Override
+    public Packet sendPacketAndGetReply(Packet packet, long timeout)
+    {
+        return null;
+    }
+
+    @Override
+    public SettableFuture<Packet> sendPacketAsync(Packet packet)
+    {
+        return sendPacketAsync(packet, 0);
+    }
+
+    @Override
+    public SettableFuture<Packet> sendPacketAsync(Packet packet, long timeout)
+    {
+        SettableFuture<Packet> response = new SettableFuture<Packet>();
+        ColibriConferenceIQ request = (ColibriConferenceIQ) packet;
+
+        responses.put(request.getPacketID(), response);
+        requests.add(parse(request));
+
+        return response;
+    }
+
+    private static ColibriConferenceIQ parse(ColibriConferenceIQ iq)
+    {
+        try
+        {
+            return (ColibriConferenceIQ) IQUtils.parse(
+                    iq.toXML(), new ColibriIQProvider());
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+}
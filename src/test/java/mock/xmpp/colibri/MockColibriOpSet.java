@@ -44,7 +44,18 @@ public class MockColibriOpSet
     @Override
     public ColibriConference createNewConference()
     {
-        return new ColibriConferenceImpl(
-            protocolProvider.getMockXmppConnection());
+        ColibriConferenceImpl conf
+            = new ColibriConferenceImpl(
+                    protocolProvider.getMockXmppConnection());
+
+        conf.setMetrics(colibriImpl.getMetrics());
+
+        return conf;
+    }
+
+    @Override
+    public ColibriMetrics getMetrics()
+    {
+        return colibriImpl.getMetrics();
     }
 }
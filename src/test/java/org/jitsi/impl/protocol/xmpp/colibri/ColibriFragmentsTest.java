@@ -0,0 +1,204 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.protocol.xmpp.colibri;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+
+import org.jitsi.jicofo.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the serialized sources cached between the channel updates.
+ */
+@RunWith(JUnit4.class)
+public class ColibriFragmentsTest
+{
+    @Test
+    public void testSourcesReused()
+    {
+        ColibriFragments fragments = new ColibriFragments();
+
+        List<SourcePacketExtension> ssrcs = createSources(1, 2);
+        List<SSRCGroup> groups = createGroups(ssrcs);
+
+        String xml = fragments.getSources("video", ssrcs, groups);
+
+        // The updates carry shallow copies of the sources of the participant
+        // and the copies of the groups
+        assertSame(
+            xml,
+            fragments.getSources(
+                "video",
+                new ArrayList<SourcePacketExtension>(ssrcs),
+                copyGroups(groups)));
+
+        // Every content has its own fragment
+        assertNotSame(xml, fragments.getSources("audio", ssrcs, groups));
+        assertSame(xml, fragments.getSources("video", ssrcs, groups));
+    }
+
+    @Test
+    public void testSourcesRebuiltOnSourceChange()
+    {
+        ColibriFragments fragments = new ColibriFragments();
+
+        // No groups, they would list the sources again
+        List<SourcePacketExtension> ssrcs = createSources(1, 2);
+        List<SSRCGroup> groups = new ArrayList<SSRCGroup>();
+
+        String xml = fragments.getSources("video", ssrcs, groups);
+
+        // Source added
+        List<SourcePacketExtension> added
+            = new ArrayList<SourcePacketExtension>(ssrcs);
+        added.addAll(createSources(3));
+
+        String addedXml = fragments.getSources("video", added, groups);
+
+        assertNotSame(xml, addedXml);
+        assertTrue(addedXml.contains(added.get(2).toXML()));
+
+        // Source removed
+        String removedXml
+            = fragments.getSources("video", ssrcs.subList(0, 1), groups);
+
+        assertNotSame(addedXml, removedXml);
+        assertFalse(removedXml.contains(ssrcs.get(1).toXML()));
+
+        // The sources are compared by identity, so a new extension of
+        // the same SSRC rebuilds the fragment
+        String reAddedXml
+            = fragments.getSources("video", createSources(1, 2), groups);
+
+        assertNotSame(xml, reAddedXml);
+        assertEquals(xml, reAddedXml);
+    }
+
+    @Test
+    public void testSourcesRebuiltOnGroupChange()
+    {
+        ColibriFragments fragments = new ColibriFragments();
+
+        List<SourcePacketExtension> ssrcs = createSources(1, 2);
+        List<SSRCGroup> groups = createGroups(ssrcs);
+
+        String xml = fragments.getSources("video", ssrcs, groups);
+        String noGroupsXml
+            = fragments.getSources(
+                    "video", ssrcs, Collections.<SSRCGroup>emptyList());
+
+        assertNotSame(xml, noGroupsXml);
+        assertFalse(noGroupsXml.equals(xml));
+
+        String otherGroupsXml
+            = fragments.getSources(
+                    "video", ssrcs, createGroups(ssrcs.subList(0, 1)));
+
+        assertNotSame(noGroupsXml, otherGroupsXml);
+        assertFalse(otherGroupsXml.equals(xml));
+        assertSame(
+            otherGroupsXml,
+            fragments.getSources(
+                    "video", ssrcs, createGroups(ssrcs.subList(0, 1))));
+    }
+
+    @Test
+    public void testEmptySources()
+    {
+        ColibriFragments fragments = new ColibriFragments();
+
+        List<SourcePacketExtension> noSources
+            = Collections.emptyList();
+        List<SSRCGroup> noGroups = Collections.emptyList();
+
+        String xml = fragments.getSources("video", noSources, noGroups);
+
+        // The bridge is told to remove the sources it has
+        assertTrue(xml.length() > 0);
+        assertSame(
+            xml,
+            fragments.getSources(
+                    "video",
+                    new ArrayList<SourcePacketExtension>(),
+                    new ArrayList<SSRCGroup>()));
+    }
+
+    @Test
+    public void testFragmentChannel()
+    {
+        FragmentChannel channel = new FragmentChannel();
+        channel.setID("channel1");
+
+        String sourcesXml
+            = new ColibriFragments().getSources(
+                    "video", createSources(1), createGroups(createSources(1)));
+
+        channel.addFragment("");
+        channel.addFragment(sourcesXml);
+
+        assertEquals(1, channel.getFragments().size());
+
+        StringBuilder xml = new StringBuilder();
+        channel.toXML(xml);
+
+        assertTrue(xml.toString().contains(sourcesXml));
+    }
+
+    private static List<SourcePacketExtension> createSources(long... values)
+    {
+        List<SourcePacketExtension> ssrcs
+            = new ArrayList<SourcePacketExtension>();
+        for (long value : values)
+        {
+            SourcePacketExtension ssrc = new SourcePacketExtension();
+            ssrc.setSSRC(value);
+            ssrcs.add(ssrc);
+        }
+        return ssrcs;
+    }
+
+    private static List<SSRCGroup> createGroups(
+            List<SourcePacketExtension> ssrcs)
+    {
+        SourceGroupPacketExtension groupPe
+            = SourceGroupPacketExtension.createSimulcastGroup();
+        groupPe.addSources(ssrcs);
+
+        List<SSRCGroup> groups = new ArrayList<SSRCGroup>();
+        groups.add(new SSRCGroup(groupPe));
+        return groups;
+    }
+
+    private static List<SSRCGroup> copyGroups(List<SSRCGroup> groups)
+    {
+        List<SSRCGroup> copies = new ArrayList<SSRCGroup>();
+        for (SSRCGroup group : groups)
+        {
+            copies.add(group.copy());
+        }
+        return copies;
+    }
+}
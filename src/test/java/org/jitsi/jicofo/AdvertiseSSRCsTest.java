@@ -23,6 +23,7 @@ import mock.util.*;
 
 import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
 import net.java.sip.communicator.impl.protocol.jabber.extensions.jitsimeet.*;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
 
 import net.java.sip.communicator.util.*;
 import org.jitsi.jicofo.osgi.*;
@@ -244,6 +245,62 @@ public class AdvertiseSSRCsTest
         user1.leave();
     }
 
+    @Test
+    public void testOfferedSSRCsNotAddedAgain()
+        throws Exception
+    {
+        String roomName = "testSSRCs@conference.pawel.jitsi.net";
+        String serverName = "test-server";
+
+        TestConference testConf = new TestConference();
+        testConf.allocateMockConference(osgi, serverName, roomName);
+
+        MockProtocolProvider pps
+            = testConf.getFocusProtocolProvider();
+
+        MockMultiUserChatOpSet mucOpSet = pps.getMockChatOpSet();
+
+        MockMultiUserChat chat
+            = (MockMultiUserChat) mucOpSet.findRoom(roomName);
+
+        MockParticipant user1 = new MockParticipant("User1");
+        user1.join(chat);
+
+        MockParticipant user2 = new MockParticipant("User2");
+        user2.join(chat);
+
+        // User1's SSRCs are queued for User2, while the offer for User2,
+        // which describes them as well, is being prepared
+        assertNotNull(user1.acceptInvite(4000));
+
+        JingleIQ invite = user2.acceptInvite(4000)[0];
+
+        user2.waitForAddSource(2000);
+
+        // User2 learns about each SSRC of User1 either from the offer or
+        // from source-add, but never from both
+        MediaSSRCMap offered
+            = MediaSSRCMap.getSSRCsFromContent(invite.getContentList());
+        for (String media : new String[] { "audio", "video" })
+        {
+            List<SourcePacketExtension> received
+                = new ArrayList<SourcePacketExtension>(
+                        offered.getSSRCsForMedia(media));
+            received.addAll(user2.getRemoteSSRCs(media));
+
+            int user1SSRCs = 0;
+            for (SourcePacketExtension ssrc : received)
+            {
+                if (user1.getMyJid().equals(SSRCSignaling.getSSRCOwner(ssrc)))
+                    user1SSRCs++;
+            }
+            assertEquals(media, 1, user1SSRCs);
+        }
+
+        user2.leave();
+        user1.leave();
+    }
+
     /**
      * Verifies if number of simulcast layers on the bridge matches the SSRCs
      * count in local video group. Also checks if primary SSRCs of particular
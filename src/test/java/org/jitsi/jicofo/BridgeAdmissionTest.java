@@ -0,0 +1,136 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.jicofo.osgi.*;
+import org.jitsi.protocol.xmpp.util.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the bridge capacity ceilings and the admission queue.
+ */
+@RunWith(JUnit4.class)
+public class BridgeAdmissionTest
+{
+    static OSGiHandler osgi = new OSGiHandler();
+
+    private static String jvbAJid = "jvbA.admission.domain.net";
+    private static String jvbBJid = "jvbB.admission.domain.net";
+
+    @BeforeClass
+    public static void setUpClass()
+        throws InterruptedException
+    {
+        System.setProperty(BridgeCapacity.MAX_CONFERENCES_PNAME, "2");
+        System.setProperty(
+            BridgeCapacity.BRIDGE_CAPACITY_PNAME, jvbBJid + ":5,,");
+        System.setProperty(BridgeAdmissionQueue.MAX_SIZE_PNAME, "1");
+        System.setProperty(BridgeAdmissionQueue.TIMEOUT_PNAME, "1000");
+
+        OSGi.setUseMockProtocols(true);
+
+        osgi.init();
+    }
+
+    @AfterClass
+    public static void tearDownClass()
+    {
+        osgi.shutdown();
+
+        System.clearProperty(BridgeCapacity.MAX_CONFERENCES_PNAME);
+        System.clearProperty(BridgeCapacity.BRIDGE_CAPACITY_PNAME);
+        System.clearProperty(BridgeAdmissionQueue.MAX_SIZE_PNAME);
+        System.clearProperty(BridgeAdmissionQueue.TIMEOUT_PNAME);
+    }
+
+    @Test
+    public void testAdmission()
+        throws Exception
+    {
+        JitsiMeetServices meetServices
+            = ServiceUtils.getService(osgi.bc, JitsiMeetServices.class);
+
+        final BridgeSelector selector = meetServices.getBridgeSelector();
+        BridgeAdmissionQueue queue = selector.getAdmissionQueue();
+
+        selector.addJvbAddress(jvbAJid);
+        selector.addJvbAddress(jvbBJid);
+
+        // A is less loaded, but full
+        selector.onSharedNodeUpdate(jvbAJid, JvbStats.conferences(2));
+        selector.onSharedNodeUpdate(jvbBJid, JvbStats.conferences(4));
+
+        assertEquals(2, selector.getBridgeState(jvbAJid)
+            .getCapacity().getMaxConferences());
+        assertEquals(5, selector.getBridgeState(jvbBJid)
+            .getCapacity().getMaxConferences());
+
+        assertFalse(selector.isAtCapacity());
+        assertEquals(
+            jvbBJid, selector.admitConference("room1", null).get());
+
+        // Full bridges are still on the list, after the ones with room
+        selector.onSharedNodeUpdate(jvbBJid, JvbStats.conferences(5));
+
+        assertTrue(selector.isAtCapacity());
+        assertEquals(
+            jvbAJid, selector.getPrioritizedBridgesList().get(0));
+
+        // The conference waits until A has room for it, without blocking
+        SettableFuture<String> admitted
+            = selector.admitConference("room2", null);
+
+        assertFalse(admitted.isDone());
+        assertEquals(1, queue.getDepth());
+
+        // The other participant of the same conference does not take another
+        // place in the queue
+        assertSame(admitted, selector.admitConference("room2", null));
+        assertEquals(1, queue.getDepth());
+
+        // Queue is full
+        assertNull(selector.admitConference("room3", null).get());
+        assertEquals(1, queue.getRejectedCount());
+
+        selector.onSharedNodeUpdate(jvbAJid, JvbStats.conferences(1));
+
+        assertEquals(jvbAJid, admitted.get(1, TimeUnit.SECONDS));
+        assertEquals(0, queue.getDepth());
+        assertEquals(1, queue.getQueuedCount());
+
+        // Nobody makes room in time
+        selector.onSharedNodeUpdate(jvbAJid, JvbStats.conferences(2));
+
+        SettableFuture<String> timedOut
+            = selector.admitConference("room4", null);
+
+        assertNull(timedOut.get(2, TimeUnit.SECONDS));
+        assertEquals(1, queue.getTimedOutCount());
+        assertEquals(2, queue.getQueuedCount());
+        assertTrue(queue.getMaxWaitTime() >= 1000);
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.jicofo.osgi.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for the circuit breaker which guards allocations on failed bridges.
+ */
+@RunWith(JUnit4.class)
+public class BridgeCircuitBreakerTest
+{
+    static OSGiHandler osgi = new OSGiHandler();
+
+    private static String jvbAJid = "jvbA.breaker.domain.net";
+    private static String jvbBJid = "jvbB.breaker.domain.net";
+
+    @BeforeClass
+    public static void setUpClass()
+        throws InterruptedException
+    {
+        System.setProperty(BridgeSelector.BRIDGE_TRIAL_TIMEOUT_PNAME, "200");
+
+        OSGi.setUseMockProtocols(true);
+
+        osgi.init();
+    }
+
+    @AfterClass
+    public static void tearDownClass()
+    {
+        osgi.shutdown();
+
+        System.clearProperty(BridgeSelector.BRIDGE_TRIAL_TIMEOUT_PNAME);
+    }
+
+    @Test
+    public void testBreakerTransitions()
+        throws InterruptedException
+    {
+        JitsiMeetServices meetServices
+            = ServiceUtils.getService(osgi.bc, JitsiMeetServices.class);
+
+        BridgeSelector selector = meetServices.getBridgeSelector();
+
+        // Backoff is 100, 200 and then 400 ms at most, plus the jitter
+        selector.setFailureResetThreshold(100);
+        selector.setFailureMaxBackoff(400);
+
+        selector.addJvbAddress(jvbAJid);
+        selector.addJvbAddress(jvbBJid);
+
+        // A is the least loaded one
+        selector.onSharedNodeUpdate(jvbAJid, JvbStats.conferences(0));
+        selector.onSharedNodeUpdate(jvbBJid, JvbStats.conferences(10));
+
+        BridgeSelector.BridgeState bridgeA = findBridge(selector, jvbAJid);
+
+        long opened = selector.getBreakerTransitionCount(
+            BridgeSelector.BreakerState.OPEN);
+        long halfOpened = selector.getBreakerTransitionCount(
+            BridgeSelector.BreakerState.HALF_OPEN);
+        long closed = selector.getBreakerTransitionCount(
+            BridgeSelector.BreakerState.CLOSED);
+
+        assertEquals(jvbAJid, selector.selectVideobridge());
+
+        // First failure
+        selector.updateBridgeOperationalStatus(jvbAJid, false);
+
+        assertEquals(
+            BridgeSelector.BreakerState.OPEN, bridgeA.getBreakerState());
+        assertEquals(1, bridgeA.getConsecutiveFailures());
+        assertEquals(jvbBJid, selector.selectVideobridge());
+
+        // Failures of allocations started before do not extend the backoff
+        selector.updateBridgeOperationalStatus(jvbAJid, false);
+        assertEquals(1, bridgeA.getConsecutiveFailures());
+
+        Thread.sleep(150);
+
+        assertEquals(
+            BridgeSelector.BreakerState.HALF_OPEN, bridgeA.getBreakerState());
+
+        // Only one trial allocation is allowed
+        assertEquals(jvbAJid, selector.selectVideobridge());
+        assertEquals(jvbBJid, selector.selectVideobridge());
+
+        // Trial fails, so the backoff is doubled
+        selector.updateBridgeOperationalStatus(jvbAJid, false);
+
+        assertEquals(
+            BridgeSelector.BreakerState.OPEN, bridgeA.getBreakerState());
+        assertEquals(2, bridgeA.getConsecutiveFailures());
+
+        Thread.sleep(150);
+
+        assertEquals(jvbBJid, selector.selectVideobridge());
+
+        Thread.sleep(150);
+
+        assertEquals(jvbAJid, selector.selectVideobridge());
+
+        // Trial succeeds
+        selector.updateBridgeOperationalStatus(jvbAJid, true);
+
+        assertEquals(
+            BridgeSelector.BreakerState.CLOSED, bridgeA.getBreakerState());
+        assertEquals(0, bridgeA.getConsecutiveFailures());
+        assertEquals(jvbAJid, selector.selectVideobridge());
+        assertEquals(jvbAJid, selector.selectVideobridge());
+
+        assertEquals(
+            opened + 2,
+            selector.getBreakerTransitionCount(
+                BridgeSelector.BreakerState.OPEN));
+        assertEquals(
+            halfOpened + 2,
+            selector.getBreakerTransitionCount(
+                BridgeSelector.BreakerState.HALF_OPEN));
+        assertEquals(
+            closed + 1,
+            selector.getBreakerTransitionCount(
+                BridgeSelector.BreakerState.CLOSED));
+
+        // The trial which never completes
+        selector.updateBridgeOperationalStatus(jvbAJid, false);
+
+        Thread.sleep(150);
+
+        assertEquals(jvbAJid, selector.selectVideobridge());
+        assertEquals(jvbBJid, selector.selectVideobridge());
+
+        Thread.sleep(250);
+
+        // Trial timeout has passed, so another one is allowed
+        assertEquals(jvbAJid, selector.selectVideobridge());
+
+        // When B fails as well, there is no bridge to be used until the trial
+        // of A completes
+        selector.updateBridgeOperationalStatus(jvbBJid, false);
+
+        assertNull(selector.selectVideobridge());
+
+        selector.setStrategy(new ConferenceCountStrategy());
+        try
+        {
+            assertNull(selector.selectVideobridge("room"));
+
+            // The failed bridges are still on the list, but can not be used
+            List<String> bridges = selector.getPrioritizedBridgesList("room");
+
+            assertEquals(2, bridges.size());
+            for (String bridge : bridges)
+            {
+                assertFalse(bridge, selector.tryAcquireBridge(bridge));
+            }
+        }
+        finally
+        {
+            selector.setStrategy(new LeastLoadedStrategy());
+        }
+    }
+
+    private static BridgeSelector.BridgeState findBridge(
+            BridgeSelector selector, String jid)
+    {
+        for (BridgeSelector.BridgeState bridge : selector.getBridgeStates())
+        {
+            if (bridge.getJid().equals(jid))
+                return bridge;
+        }
+        return null;
+    }
+}
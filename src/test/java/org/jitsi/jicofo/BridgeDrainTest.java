@@ -0,0 +1,115 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.jicofo.osgi.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the drain mode of the bridges.
+ */
+@RunWith(JUnit4.class)
+public class BridgeDrainTest
+{
+    static OSGiHandler osgi = new OSGiHandler();
+
+    private static String jvbAJid = "jvbA.drain.domain.net";
+    private static String jvbBJid = "jvbB.drain.domain.net";
+
+    @BeforeClass
+    public static void setUpClass()
+        throws InterruptedException
+    {
+        OSGi.setUseMockProtocols(true);
+
+        osgi.init();
+    }
+
+    @AfterClass
+    public static void tearDownClass()
+    {
+        osgi.shutdown();
+    }
+
+    @Test
+    public void testDrain()
+    {
+        JitsiMeetServices meetServices
+            = ServiceUtils.getService(osgi.bc, JitsiMeetServices.class);
+
+        BridgeSelector selector = meetServices.getBridgeSelector();
+
+        selector.addJvbAddress(jvbAJid);
+        selector.addJvbAddress(jvbBJid);
+
+        selector.onSharedNodeUpdate(jvbAJid, JvbStats.shutdown(1, false));
+        selector.onSharedNodeUpdate(jvbBJid, JvbStats.shutdown(5, false));
+
+        assertEquals(jvbAJid, selector.selectVideobridge());
+
+        // Drained bridge gets no new conferences
+        assertTrue(selector.setBridgeDraining(jvbAJid, true));
+
+        BridgeSelector.BridgeState bridgeA = selector.getBridgeState(jvbAJid);
+
+        assertTrue(bridgeA.isDraining());
+        assertTrue(bridgeA.isOperational());
+        assertEquals(jvbBJid, selector.selectVideobridge());
+        assertEquals(
+            Arrays.asList(jvbBJid), selector.getPrioritizedBridgesList());
+
+        // Stats keep on being tracked to report drain progress
+        selector.onSharedNodeUpdate(jvbAJid, JvbStats.shutdown(0, false));
+
+        assertEquals(0, bridgeA.getConferenceCount());
+        assertEquals(jvbBJid, selector.selectVideobridge());
+
+        // Back in rotation
+        assertTrue(selector.setBridgeDraining(jvbAJid, false));
+
+        assertFalse(bridgeA.isDraining());
+        assertEquals(jvbAJid, selector.selectVideobridge());
+
+        // Graceful shutdown reported by the bridge
+        selector.onSharedNodeUpdate(jvbAJid, JvbStats.shutdown(0, true));
+
+        assertTrue(bridgeA.isDraining());
+        assertFalse(bridgeA.isDrainRequested());
+        assertEquals(jvbBJid, selector.selectVideobridge());
+
+        // No bridge to take new conferences
+        selector.setBridgeDraining(jvbBJid, true);
+
+        assertNull(selector.selectVideobridge());
+        assertTrue(selector.getPrioritizedBridgesList().isEmpty());
+
+        selector.setBridgeDraining(jvbBJid, false);
+        assertEquals(jvbBJid, selector.selectVideobridge());
+
+        assertFalse(selector.setBridgeDraining("unknown.domain.net", true));
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import mock.*;
+import mock.jvb.*;
+import mock.muc.*;
+import mock.util.*;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.jicofo.osgi.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for moving the conference in progress to another bridge after
+ * the failure of the current one.
+ */
+@RunWith(JUnit4.class)
+public class BridgeMoveTest
+{
+    static OSGiHandler osgi = new OSGiHandler();
+
+    @BeforeClass
+    public static void setUpClass()
+        throws InterruptedException
+    {
+        OSGi.setUseMockProtocols(true);
+
+        osgi.init();
+    }
+
+    @AfterClass
+    public static void tearDownClass()
+    {
+        osgi.shutdown();
+    }
+
+    @Test
+    public void testMoveToNewBridge()
+        throws Exception
+    {
+        String roomName = "testMove@conference.pawel.jitsi.net";
+        String serverName = "test-server-move";
+
+        TestConference testConf = new TestConference();
+        testConf.allocateMockConference(osgi, serverName, roomName);
+
+        MockProtocolProvider pps = testConf.getFocusProtocolProvider();
+
+        MockMultiUserChat chat
+            = (MockMultiUserChat) pps.getMockChatOpSet().findRoom(roomName);
+
+        JitsiMeetConference conference = testConf.getConference();
+        MockVideobridge bridge1 = testConf.getMockVideoBridge();
+
+        MockParticipant user1 = new MockParticipant("User1");
+        user1.join(chat);
+        MockParticipant user2 = new MockParticipant("User2");
+        user2.join(chat);
+
+        assertNotNull(user1.acceptInvite(4000));
+        assertNotNull(user2.acceptInvite(4000));
+        waitForSession(conference, user1);
+        waitForSession(conference, user2);
+
+        String failedConferenceId
+            = testConf.getConferenceUtility().getJvbConferenceId();
+
+        // Added now, so that the conference has started on bridge1
+        String bridge2Jid = "mockjvb2." + serverName;
+        MockVideobridge bridge2
+            = new MockVideobridge(
+                    osgi.bc, pps.getMockXmppConnection(), bridge2Jid);
+        bridge2.start();
+
+        ServiceUtils.getService(
+                FocusBundleActivator.bundleContext, JitsiMeetServices.class)
+            .getBridgeSelector().addJvbAddress(bridge2Jid);
+
+        // The channels of User3 are allocated on bridge1, but the result
+        // arrives after the conference has been moved
+        bridge1.setHoldAllocations(true);
+
+        MockParticipant user3 = new MockParticipant("User3");
+        user3.join(chat);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (bridge1.getHeldAllocationsCount() == 0
+            && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(50);
+        }
+        assertEquals(1, bridge1.getHeldAllocationsCount());
+
+        // The allocation for User4 fails and the conference moves to bridge2
+        bridge1.setFailAllocations(true);
+
+        MockParticipant user4 = new MockParticipant("User4");
+        user4.join(chat);
+
+        // The participants who have had the sessions are re-invited
+        for (MockParticipant user : Arrays.asList(user1, user2))
+        {
+            JingleIQ terminate = user.waitForSessionTerminate(4000);
+
+            assertNotNull(user.getNickname(), terminate);
+            assertEquals(
+                Reason.FAILED_TRANSPORT, terminate.getReason().getReason());
+        }
+
+        List<MockParticipant> users
+            = Arrays.asList(user1, user2, user3, user4);
+        for (MockParticipant user : users)
+        {
+            assertNotNull(user.acceptInvite(4000));
+        }
+
+        String newConferenceId
+            = testConf.getConferenceUtility().getJvbConferenceId();
+
+        assertNotNull(newConferenceId);
+        assertFalse(newConferenceId.equals(failedConferenceId));
+
+        // The late result of the allocation on bridge1
+        bridge1.setFailAllocations(false);
+        bridge1.setHoldAllocations(false);
+
+        for (MockParticipant user : users)
+        {
+            waitForSession(conference, user);
+        }
+        // Give the focus the time to process the late result
+        Thread.sleep(1000);
+
+        // The channels on the failed bridge have been expired
+        assertEquals(0, bridge1.getChannelsCount(failedConferenceId));
+
+        // Everyone uses the channels on bridge2
+        ConferenceUtility confUtility = testConf.getConferenceUtility();
+        for (MockParticipant user : users)
+        {
+            assertTrue(
+                user.getNickname(),
+                bridge2.hasChannel(
+                    newConferenceId,
+                    "video",
+                    confUtility.getParticipantVideoChannelId(
+                        user.getMyJid())));
+        }
+
+        // Only one session per participant
+        for (MockParticipant user : users)
+        {
+            assertNull(user.waitForSessionTerminate(200));
+        }
+
+        user4.leave();
+        user3.leave();
+        user2.leave();
+        user1.leave();
+    }
+
+    /**
+     * Waits for the focus to process session-accept of the user.
+     */
+    private static void waitForSession(JitsiMeetConference conference,
+                                       MockParticipant user)
+        throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline)
+        {
+            Participant participant
+                = conference.findParticipantForRoomJid(user.getMyJid());
+            if (participant != null && participant.getJingleSession() != null)
+                return;
+
+            Thread.sleep(50);
+        }
+        fail("Session not accepted: " + user.getNickname());
+    }
+}
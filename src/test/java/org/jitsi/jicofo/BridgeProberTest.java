@@ -0,0 +1,199 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.jicofo.osgi.*;
+import org.jitsi.protocol.xmpp.*;
+import org.jitsi.protocol.xmpp.util.*;
+import org.jitsi.service.configuration.*;
+
+import org.jivesoftware.smack.packet.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the liveness probes sent to the bridges.
+ */
+@RunWith(JUnit4.class)
+public class BridgeProberTest
+{
+    static OSGiHandler osgi = new OSGiHandler();
+
+    private static String jvbAJid = "jvbA.probe.domain.net";
+    private static String jvbBJid = "jvbB.probe.domain.net";
+
+    @BeforeClass
+    public static void setUpClass()
+        throws InterruptedException
+    {
+        OSGi.setUseMockProtocols(true);
+
+        osgi.init();
+    }
+
+    @AfterClass
+    public static void tearDownClass()
+    {
+        osgi.shutdown();
+    }
+
+    @Test
+    public void testProbes()
+        throws Exception
+    {
+        JitsiMeetServices meetServices
+            = ServiceUtils.getService(osgi.bc, JitsiMeetServices.class);
+        ConfigurationService config
+            = ServiceUtils.getService(osgi.bc, ConfigurationService.class);
+
+        BridgeSelector selector = meetServices.getBridgeSelector();
+
+        selector.addJvbAddress(jvbAJid);
+        selector.addJvbAddress(jvbBJid);
+
+        // A is the least loaded one
+        selector.onSharedNodeUpdate(jvbAJid, JvbStats.conferences(1));
+        selector.onSharedNodeUpdate(jvbBJid, JvbStats.conferences(2));
+
+        assertEquals(jvbAJid, selector.selectVideobridge());
+
+        ProbeResponder responder = new ProbeResponder();
+        ScheduledExecutorService executor
+            = Executors.newSingleThreadScheduledExecutor();
+        try
+        {
+            BridgeProber prober
+                = new BridgeProber(selector, responder, executor, config);
+
+            // A responds slowly
+            responder.delays.put(jvbAJid, 300L);
+            responder.delays.put(jvbBJid, 0L);
+
+            assertTrue(probe(prober, jvbAJid));
+            assertTrue(probe(prober, jvbBJid));
+
+            BridgeSelector.BridgeState bridgeA
+                = selector.getBridgeState(jvbAJid);
+
+            assertTrue(bridgeA.getProbeRtt() >= 300);
+            assertEquals(1, bridgeA.getProbeRttHistogram().getCount());
+            assertEquals(500, bridgeA.getProbeRttHistogram().getPercentile(50));
+            assertEquals(jvbBJid, selector.selectVideobridge());
+
+            // B stops responding
+            responder.delays.remove(jvbBJid);
+
+            assertFalse(probe(prober, jvbBJid));
+            assertTrue(selector.getBridgeState(jvbBJid).isOperational());
+
+            assertFalse(probe(prober, jvbBJid));
+            assertFalse(selector.getBridgeState(jvbBJid).isOperational());
+            assertEquals(
+                2,
+                selector.getBridgeState(jvbBJid)
+                    .getProbeRttHistogram().getTimeoutCount());
+            assertEquals(jvbAJid, selector.selectVideobridge());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Sends the probe and waits for its outcome to be reported.
+     */
+    private static boolean probe(BridgeProber prober, String bridgeJid)
+        throws Exception
+    {
+        return prober.probe(bridgeJid).get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Answers the probes of the bridges which have a delay configured. The
+     * delayed answers come from another thread, the way the replies come from
+     * the XMPP connection.
+     */
+    private static class ProbeResponder
+        implements XmppConnection
+    {
+        final Map<String, Long> delays = new ConcurrentHashMap<String, Long>();
+
+        @Override
+        public void sendPacket(Packet packet)
+        {
+        }
+
+        @Override
+        public Packet sendPacketAndGetReply(Packet packet)
+        {
+            return sendPacketAndGetReply(packet, 10000);
+        }
+
+        @Override
+        public Packet sendPacketAndGetReply(Packet packet, long timeout)
+        {
+            Long delay = delays.get(packet.getTo());
+            if (delay == null)
+                return null;
+
+            try
+            {
+                Thread.sleep(delay);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            return IQ.createResultIQ((IQ) packet);
+        }
+
+        @Override
+        public SettableFuture<Packet> sendPacketAsync(Packet packet)
+        {
+            return sendPacketAsync(packet, 10000);
+        }
+
+        @Override
+        public SettableFuture<Packet> sendPacketAsync(final Packet packet,
+                                                      final long timeout)
+        {
+            final SettableFuture<Packet> reply = new SettableFuture<Packet>();
+
+            new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    reply.complete(sendPacketAndGetReply(packet, timeout));
+                }
+            }).start();
+
+            return reply;
+        }
+    }
+}
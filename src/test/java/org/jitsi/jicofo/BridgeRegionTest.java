@@ -0,0 +1,119 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.jicofo.osgi.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for region aware bridge selection.
+ */
+@RunWith(JUnit4.class)
+public class BridgeRegionTest
+{
+    static OSGiHandler osgi = new OSGiHandler();
+
+    private static String jvbEastJid = "jvb-east.region.domain.net";
+    private static String jvbWestJid = "jvb-west.region.domain.net";
+    private static String jvbEuJid = "jvb-eu.region.domain.net";
+    private static String jvbUnknownJid = "jvb-unknown.region.domain.net";
+
+    @BeforeClass
+    public static void setUpClass()
+        throws InterruptedException
+    {
+        System.setProperty(
+            BridgeSelector.BRIDGE_REGION_PROXIMITY_PNAME,
+            "us-east:us-west,eu-west;eu-west:us-east");
+
+        OSGi.setUseMockProtocols(true);
+
+        osgi.init();
+    }
+
+    @AfterClass
+    public static void tearDownClass()
+    {
+        osgi.shutdown();
+
+        System.clearProperty(BridgeSelector.BRIDGE_REGION_PROXIMITY_PNAME);
+    }
+
+    @Test
+    public void testRegionSelection()
+    {
+        JitsiMeetServices meetServices
+            = ServiceUtils.getService(osgi.bc, JitsiMeetServices.class);
+
+        BridgeSelector selector = meetServices.getBridgeSelector();
+
+        selector.addJvbAddress(jvbEastJid);
+        selector.addJvbAddress(jvbWestJid);
+        selector.addJvbAddress(jvbEuJid);
+        selector.addJvbAddress(jvbUnknownJid);
+
+        // The bridge in us-east is the most loaded one
+        selector.onSharedNodeUpdate(jvbEastJid, JvbStats.region(5, "us-east"));
+        selector.onSharedNodeUpdate(jvbWestJid, JvbStats.region(3, "us-west"));
+        selector.onSharedNodeUpdate(jvbEuJid, JvbStats.region(2, "eu-west"));
+        selector.onSharedNodeUpdate(jvbUnknownJid, JvbStats.region(1, null));
+
+        // No region - least loaded
+        assertEquals(jvbUnknownJid, selector.selectVideobridge(null, null));
+
+        // Same region first, no matter the load
+        assertEquals(jvbEastJid, selector.selectVideobridge(null, "us-east"));
+        assertEquals(jvbEuJid, selector.selectVideobridge(null, "eu-west"));
+
+        // Fall back by proximity
+        selector.updateBridgeOperationalStatus(jvbEastJid, false);
+
+        assertEquals(
+            Arrays.asList(jvbWestJid, jvbEuJid, jvbUnknownJid, jvbEastJid),
+            selector.getPrioritizedBridgesList(null, "us-east"));
+        assertEquals(jvbWestJid, selector.selectVideobridge(null, "us-east"));
+
+        selector.updateBridgeOperationalStatus(jvbWestJid, false);
+        assertEquals(jvbEuJid, selector.selectVideobridge(null, "us-east"));
+
+        // Failed bridges go last even if in the closest region
+        assertEquals(
+            Arrays.asList(jvbEuJid, jvbUnknownJid, jvbWestJid, jvbEastJid),
+            selector.getPrioritizedBridgesList(null, "eu-west"));
+
+        selector.updateBridgeOperationalStatus(jvbEuJid, false);
+        assertEquals(jvbUnknownJid, selector.selectVideobridge(null, "us-east"));
+
+        // Unknown region has no proximity configured
+        selector.updateBridgeOperationalStatus(jvbEastJid, true);
+        selector.updateBridgeOperationalStatus(jvbWestJid, true);
+        selector.updateBridgeOperationalStatus(jvbEuJid, true);
+
+        assertEquals(
+            jvbUnknownJid, selector.selectVideobridge(null, "ap-south"));
+    }
+}
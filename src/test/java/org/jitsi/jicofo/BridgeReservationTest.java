@@ -0,0 +1,121 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.jicofo.osgi.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for allocation reservations which spread the load between
+ * the bridges until new stats are received.
+ */
+@RunWith(JUnit4.class)
+public class BridgeReservationTest
+{
+    static OSGiHandler osgi = new OSGiHandler();
+
+    private static String jvbAJid = "jvbA.reservation.domain.net";
+    private static String jvbBJid = "jvbB.reservation.domain.net";
+
+    @BeforeClass
+    public static void setUpClass()
+        throws InterruptedException
+    {
+        // Every stats update reflects all previous allocations
+        System.setProperty(BridgeSelector.RESERVATION_STATS_LAG_PNAME, "0");
+        System.setProperty(
+            BridgeSelector.RESERVED_STREAMS_PER_ENDPOINT_PNAME, "2");
+
+        OSGi.setUseMockProtocols(true);
+
+        osgi.init();
+    }
+
+    @AfterClass
+    public static void tearDownClass()
+    {
+        osgi.shutdown();
+
+        System.clearProperty(BridgeSelector.RESERVATION_STATS_LAG_PNAME);
+        System.clearProperty(
+            BridgeSelector.RESERVED_STREAMS_PER_ENDPOINT_PNAME);
+    }
+
+    @Test
+    public void testReservations()
+    {
+        JitsiMeetServices meetServices
+            = ServiceUtils.getService(osgi.bc, JitsiMeetServices.class);
+
+        BridgeSelector selector = meetServices.getBridgeSelector();
+
+        selector.addJvbAddress(jvbAJid);
+        selector.addJvbAddress(jvbBJid);
+
+        selector.onSharedNodeUpdate(jvbAJid, JvbStats.load(1, 10));
+        selector.onSharedNodeUpdate(jvbBJid, JvbStats.load(1, 14));
+
+        assertEquals(jvbAJid, selector.selectVideobridge());
+
+        // New conference lands on A, which makes it more loaded than B
+        selector.reserveAllocation(jvbAJid, true);
+
+        BridgeSelector.BridgeState bridgeA = findBridge(selector, jvbAJid);
+
+        assertEquals(1, bridgeA.getReservedEndpoints());
+        assertEquals(12, bridgeA.getEstimatedVideoStreamCount());
+        assertEquals(2, bridgeA.getEstimatedConferenceCount());
+
+        // B is preferred now, even though no stats have arrived
+        assertEquals(jvbBJid, selector.selectVideobridge());
+
+        selector.reserveAllocation(jvbBJid, true);
+        assertEquals(jvbAJid, selector.selectVideobridge());
+
+        // Stats update includes the endpoint, so reservations are cleared
+        selector.onSharedNodeUpdate(jvbAJid, JvbStats.load(2, 12));
+
+        assertEquals(0, bridgeA.getReservedEndpoints());
+        assertEquals(12, bridgeA.getEstimatedVideoStreamCount());
+        assertEquals(2, bridgeA.getEstimatedConferenceCount());
+
+        // B has 14 reported + 2 reserved streams
+        assertEquals(jvbAJid, selector.selectVideobridge());
+
+        selector.onSharedNodeUpdate(jvbBJid, JvbStats.load(2, 11));
+        assertEquals(jvbBJid, selector.selectVideobridge());
+    }
+
+    private static BridgeSelector.BridgeState findBridge(
+            BridgeSelector selector, String jid)
+    {
+        for (BridgeSelector.BridgeState bridge : selector.getBridgeStates())
+        {
+            if (bridge.getJid().equals(jid))
+                return bridge;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.jicofo.osgi.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link BridgeSelectionStrategy} implementations. Each strategy is
+ * run through a simulated join storm which reports the selection latency and
+ * checks the distribution of conferences across the bridges.
+ */
+@RunWith(JUnit4.class)
+public class BridgeSelectionStrategyTest
+{
+    /**
+     * The logger.
+     */
+    private final static Logger logger
+        = Logger.getLogger(BridgeSelectionStrategyTest.class);
+
+    static OSGiHandler osgi = new OSGiHandler();
+
+    private static String jvbAJid = "jvbA.strategy.domain.net";
+    private static String jvbBJid = "jvbB.strategy.domain.net";
+    private static String jvbCJid = "jvbC.strategy.domain.net";
+
+    /**
+     * The number of conferences started during the join storm.
+     */
+    private static final int STORM_JOINS = 6000;
+
+    /**
+     * The number of threads that allocate bridges concurrently.
+     */
+    private static final int STORM_THREADS = 8;
+
+    private static BridgeSelector selector;
+
+    @BeforeClass
+    public static void setUpClass()
+        throws InterruptedException
+    {
+        OSGi.setUseMockProtocols(true);
+
+        osgi.init();
+
+        JitsiMeetServices meetServices
+            = ServiceUtils.getService(osgi.bc, JitsiMeetServices.class);
+
+        selector = meetServices.getBridgeSelector();
+
+        selector.addJvbAddress(jvbAJid);
+        selector.addJvbAddress(jvbBJid);
+        selector.addJvbAddress(jvbCJid);
+
+        // A: medium load, B: least conferences, C: least video streams
+        selector.onSharedNodeUpdate(jvbAJid, JvbStats.load(5, 50));
+        selector.onSharedNodeUpdate(jvbBJid, JvbStats.load(1, 80));
+        selector.onSharedNodeUpdate(jvbCJid, JvbStats.load(10, 10));
+    }
+
+    @AfterClass
+    public static void tearDownClass()
+    {
+        osgi.shutdown();
+    }
+
+    @After
+    public void resetStrategy()
+    {
+        selector.setStrategy(new LeastLoadedStrategy());
+    }
+
+    @Test
+    public void testLeastLoaded()
+        throws InterruptedException
+    {
+        selector.setStrategy(new LeastLoadedStrategy());
+
+        Map<String, Integer> distribution = joinStorm();
+
+        assertEquals(STORM_JOINS, (int) distribution.get(jvbCJid));
+    }
+
+    @Test
+    public void testConferenceCount()
+        throws InterruptedException
+    {
+        selector.setStrategy(new ConferenceCountStrategy());
+
+        Map<String, Integer> distribution = joinStorm();
+
+        assertEquals(STORM_JOINS, (int) distribution.get(jvbBJid));
+    }
+
+    @Test
+    public void testWeightedRoundRobin()
+        throws InterruptedException
+    {
+        WeightedRoundRobinStrategy strategy
+            = new WeightedRoundRobinStrategy(null);
+
+        strategy.setWeight(jvbAJid, 3);
+        strategy.setWeight(jvbBJid, 2);
+        // C has default weight of 1
+
+        selector.setStrategy(strategy);
+
+        Map<String, Integer> distribution = joinStorm();
+
+        // The rooms selecting at the same time may get the same bridge, but
+        // it is corrected in the next rounds
+        int tolerance = STORM_JOINS / 100;
+        assertEquals(
+            STORM_JOINS * 3 / 6, distribution.get(jvbAJid), tolerance);
+        assertEquals(
+            STORM_JOINS * 2 / 6, distribution.get(jvbBJid), tolerance);
+        assertEquals(
+            STORM_JOINS / 6, distribution.get(jvbCJid), tolerance);
+    }
+
+    @Test
+    public void testWeightedRoundRobinAdvancesOnSelection()
+    {
+        WeightedRoundRobinStrategy strategy
+            = new WeightedRoundRobinStrategy(null);
+
+        strategy.setWeight(jvbAJid, 2);
+
+        selector.setStrategy(strategy);
+
+        // Reading the order does not move to the next round
+        for (int i = 0; i < 10; i++)
+        {
+            assertEquals(jvbAJid, selector.selectVideobridge("room"));
+            assertEquals(
+                jvbAJid, selector.getPrioritizedBridgesList("room").get(0));
+        }
+
+        // A gets 2 of every 4 conferences
+        List<String> selected = new ArrayList<String>();
+        for (int i = 0; i < 8; i++)
+        {
+            String bridge = selector.selectVideobridge("room" + i);
+            selected.add(bridge);
+            selector.bridgeSelected(bridge, "room" + i);
+        }
+        assertEquals(4, Collections.frequency(selected, jvbAJid));
+        assertEquals(2, Collections.frequency(selected, jvbBJid));
+        assertEquals(2, Collections.frequency(selected, jvbCJid));
+
+        // A is given more conferences than it should...
+        for (int i = 0; i < 3; i++)
+        {
+            selector.bridgeSelected(jvbAJid, "room");
+        }
+        assertNotEquals(jvbAJid, selector.selectVideobridge("room"));
+
+        // ...but it is forgotten when the bridges go down
+        String[] jids = { jvbAJid, jvbBJid, jvbCJid };
+        for (String jid : jids)
+        {
+            selector.updateBridgeOperationalStatus(jid, false);
+        }
+        for (String jid : jids)
+        {
+            selector.updateBridgeOperationalStatus(jid, true);
+        }
+        assertEquals(jvbAJid, selector.selectVideobridge("room"));
+    }
+
+    @Test
+    public void testRoomHash()
+        throws InterruptedException
+    {
+        selector.setStrategy(new RoomHashStrategy());
+
+        Map<String, Integer> distribution = joinStorm();
+
+        // Every bridge should get it's share of the rooms
+        for (String jid : new String[] { jvbAJid, jvbBJid, jvbCJid })
+        {
+            assertTrue(
+                jid + " got no rooms", distribution.get(jid) > 0);
+        }
+
+        // The room should be pinned to the same bridge...
+        String room = "pinned@conference.strategy.domain.net";
+        String pinned = selector.getPrioritizedBridgesList(room).get(0);
+        for (int i = 0; i < 10; i++)
+        {
+            assertEquals(
+                pinned, selector.getPrioritizedBridgesList(room).get(0));
+        }
+
+        // ...until it fails
+        selector.updateBridgeOperationalStatus(pinned, false);
+        String fallback = selector.getPrioritizedBridgesList(room).get(0);
+        assertTrue(!pinned.equals(fallback));
+
+        selector.updateBridgeOperationalStatus(pinned, true);
+        assertEquals(pinned, selector.getPrioritizedBridgesList(room).get(0));
+    }
+
+    /**
+     * Simulates a join storm where {@link #STORM_THREADS} threads select
+     * the bridge for {@link #STORM_JOINS} different rooms at the same time.
+     * The average and the maximal latency of the selection are logged for
+     * the current strategy.
+     *
+     * @return the map of bridge JID to the number of rooms it has been
+     *         selected for.
+     */
+    private Map<String, Integer> joinStorm()
+        throws InterruptedException
+    {
+        final ConcurrentHashMap<String, AtomicInteger> counts
+            = new ConcurrentHashMap<String, AtomicInteger>();
+        final AtomicInteger roomCounter = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicLong totalNanos = new AtomicLong();
+        final AtomicLong maxNanos = new AtomicLong();
+
+        counts.put(jvbAJid, new AtomicInteger());
+        counts.put(jvbBJid, new AtomicInteger());
+        counts.put(jvbCJid, new AtomicInteger());
+
+        ExecutorService executor
+            = Executors.newFixedThreadPool(STORM_THREADS);
+
+        for (int t = 0; t < STORM_THREADS; t++)
+        {
+            executor.submit(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+
+                    int room;
+                    while ((room = roomCounter.getAndIncrement())
+                                < STORM_JOINS)
+                    {
+                        String roomName = "room" + room + "@conference.net";
+                        long startNanos = System.nanoTime();
+
+                        String bridge = selector.selectVideobridge(roomName);
+
+                        selector.bridgeSelected(bridge, roomName);
+
+                        long nanos = System.nanoTime() - startNanos;
+
+                        totalNanos.addAndGet(nanos);
+                        long max;
+                        while ((max = maxNanos.get()) < nanos
+                            && !maxNanos.compareAndSet(max, nanos));
+
+                        counts.get(bridge).incrementAndGet();
+                    }
+                }
+            });
+        }
+
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        Map<String, Integer> distribution = new HashMap<String, Integer>();
+        for (Map.Entry<String, AtomicInteger> count : counts.entrySet())
+        {
+            distribution.put(count.getKey(), count.getValue().get());
+        }
+
+        logger.info(
+            "Join storm " + selector.getStrategy().getName()
+                + ": avg latency "
+                + (totalNanos.get() / STORM_JOINS / 1000) + " us"
+                + ", max latency " + (maxNanos.get() / 1000) + " us"
+                + ", distribution: " + distribution);
+
+        return distribution;
+    }
+}
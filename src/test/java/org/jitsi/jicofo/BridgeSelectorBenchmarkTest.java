@@ -0,0 +1,229 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.jicofo.osgi.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the bridge selection done through the ordered bridge index
+ * gives the same order as the sort based selection used before, with hundreds
+ * of bridges which keep sending the stats.
+ *
+ * The time spent in both ways is compared only when the
+ * {@link #BENCHMARK_PNAME} system property is set to <tt>true</tt>, so that
+ * the regular test runs do not depend on the speed of the machine.
+ */
+@RunWith(JUnit4.class)
+public class BridgeSelectorBenchmarkTest
+{
+    /**
+     * The logger.
+     */
+    private final static Logger logger
+        = Logger.getLogger(BridgeSelectorBenchmarkTest.class);
+
+    /**
+     * The name of the system property which enables the timing comparison.
+     */
+    public static final String BENCHMARK_PNAME = "org.jitsi.jicofo.BENCHMARK";
+
+    static OSGiHandler osgi = new OSGiHandler();
+
+    private static final int BRIDGE_COUNT = 500;
+
+    private static final int ROUNDS = 2000;
+
+    private static final int WARMUP_ROUNDS = 20000;
+
+    private static final int MEASURED_ROUNDS = 50000;
+
+    /**
+     * How often one of the bridges sends the stats update during the test.
+     */
+    private static final int STATS_UPDATE_INTERVAL = 10;
+
+    private static BridgeSelector selector;
+
+    private static Random random = new Random(12345);
+
+    @BeforeClass
+    public static void setUpClass()
+        throws InterruptedException
+    {
+        OSGi.setUseMockProtocols(true);
+
+        osgi.init();
+
+        JitsiMeetServices meetServices
+            = ServiceUtils.getService(osgi.bc, JitsiMeetServices.class);
+
+        selector = meetServices.getBridgeSelector();
+
+        String[] jids = new String[BRIDGE_COUNT];
+        for (int i = 0; i < BRIDGE_COUNT; i++)
+        {
+            jids[i] = "jvb" + i + ".benchmark.domain.net";
+            selector.addJvbAddress(jids[i]);
+            selector.onSharedNodeUpdate(
+                jids[i], JvbStats.videoStreams(random.nextInt(1000)));
+        }
+        // Some bridges are down
+        for (int i = 0; i < BRIDGE_COUNT; i += 50)
+        {
+            selector.updateBridgeOperationalStatus(jids[i], false);
+        }
+    }
+
+    @AfterClass
+    public static void tearDownClass()
+    {
+        osgi.shutdown();
+    }
+
+    @Test
+    public void testIndexVsSort()
+    {
+        for (int i = 0; i < ROUNDS; i++)
+        {
+            if (i % STATS_UPDATE_INTERVAL == 0)
+            {
+                updateRandomBridge();
+            }
+
+            List<BridgeSelector.BridgeState> sorted = sort(selector);
+
+            assertSameOrder(
+                sorted.subList(0, 1),
+                Collections.singletonList(selector.selectVideobridge()),
+                selector);
+            assertSameOrder(
+                sorted, selector.getPrioritizedBridgesList(), selector);
+        }
+    }
+
+    @Test
+    public void testIndexVsSortTiming()
+    {
+        Assume.assumeTrue(Boolean.getBoolean(BENCHMARK_PNAME));
+
+        run(WARMUP_ROUNDS, true);
+        run(WARMUP_ROUNDS, false);
+
+        long sortNanos = run(MEASURED_ROUNDS, true);
+        long indexNanos = run(MEASURED_ROUNDS, false);
+
+        logger.info(
+            "Bridge selection with " + BRIDGE_COUNT + " bridges, "
+                + "sort: " + (sortNanos / MEASURED_ROUNDS) + " ns/op, "
+                + "index: " + (indexNanos / MEASURED_ROUNDS) + " ns/op");
+    }
+
+    /**
+     * Runs selection rounds interleaved with the stats updates.
+     *
+     * @param rounds the number of the bridges to select.
+     * @param sort <tt>true</tt> to select by copying and sorting the list of
+     *             the bridges or <tt>false</tt> to select through the index.
+     *
+     * @return the time spent in the bridge selection in nanoseconds.
+     */
+    private static long run(int rounds, boolean sort)
+    {
+        long nanos = 0;
+        for (int i = 0; i < rounds; i++)
+        {
+            if (i % STATS_UPDATE_INTERVAL == 0)
+            {
+                updateRandomBridge();
+            }
+
+            long start = System.nanoTime();
+
+            String selected
+                = sort ? sort(selector).get(0).getJid()
+                       : selector.selectVideobridge();
+
+            nanos += System.nanoTime() - start;
+
+            if (selected == null)
+                throw new IllegalStateException("No bridge selected");
+        }
+        return nanos;
+    }
+
+    /**
+     * Sends new stats of the random bridge, the way the bridges keep doing
+     * during the conferences.
+     */
+    private static void updateRandomBridge()
+    {
+        List<BridgeSelector.BridgeState> bridges = selector.getBridgeStates();
+        BridgeSelector.BridgeState bridge
+            = bridges.get(random.nextInt(bridges.size()));
+
+        selector.onSharedNodeUpdate(
+            bridge.getJid(), JvbStats.videoStreams(random.nextInt(1000)));
+    }
+
+    /**
+     * Sorts the bridges the way it used to be done on every allocation:
+     * by copying and sorting the list of all bridges.
+     */
+    private static List<BridgeSelector.BridgeState> sort(
+            BridgeSelector selector)
+    {
+        List<BridgeSelector.BridgeState> bridges = selector.getBridgeStates();
+
+        Collections.sort(bridges);
+
+        return bridges;
+    }
+
+    /**
+     * Asserts that the bridges selected through the index are in the order of
+     * the sorted list. The bridges with equal score may come in any order.
+     */
+    private static void assertSameOrder(
+            List<BridgeSelector.BridgeState> sorted,
+            List<String> selected,
+            BridgeSelector selector)
+    {
+        assertEquals(sorted.size(), selected.size());
+
+        for (int i = 0; i < sorted.size(); i++)
+        {
+            BridgeSelector.BridgeState bridge
+                = selector.getBridgeState(selected.get(i));
+
+            assertEquals(
+                "at " + i + ": " + sorted.get(i).getJid() + " vs "
+                    + bridge.getJid(),
+                0, sorted.get(i).compareTo(bridge));
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.jicofo.osgi.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Concurrent stress test for {@link BridgeSelector}. Pub-sub stats updates,
+ * bridge failures and bridge discovery run in parallel with the threads
+ * selecting the bridges, the same way as shared pool threads do.
+ */
+@RunWith(JUnit4.class)
+public class BridgeSelectorStressTest
+{
+    static OSGiHandler osgi = new OSGiHandler();
+
+    private static final int BRIDGE_COUNT = 20;
+
+    private static final int WRITER_THREADS = 4;
+
+    private static final int READER_THREADS = 16;
+
+    private static final long TEST_DURATION = 3000;
+
+    @BeforeClass
+    public static void setUpClass()
+        throws InterruptedException
+    {
+        OSGi.setUseMockProtocols(true);
+
+        osgi.init();
+    }
+
+    @AfterClass
+    public static void tearDownClass()
+    {
+        osgi.shutdown();
+    }
+
+    @Test
+    public void testConcurrentUpdates()
+        throws InterruptedException
+    {
+        JitsiMeetServices meetServices
+            = ServiceUtils.getService(osgi.bc, JitsiMeetServices.class);
+
+        final BridgeSelector selector = meetServices.getBridgeSelector();
+
+        final String[] jids = new String[BRIDGE_COUNT];
+        for (int i = 0; i < BRIDGE_COUNT; i++)
+        {
+            jids[i] = "jvb" + i + ".stress.domain.net";
+            selector.addJvbAddress(jids[i]);
+            selector.onSharedNodeUpdate(
+                jids[i], JvbStats.load(i, 2 * i, 3 * i));
+        }
+        // The bridge which is removed and added back during the test
+        final String volatileJid = "volatile.stress.domain.net";
+        final Set<String> knownJids = new HashSet<String>(Arrays.asList(jids));
+        knownJids.add(volatileJid);
+
+        final AtomicBoolean run = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure
+            = new AtomicReference<Throwable>();
+        final AtomicLong selections = new AtomicLong();
+        final AtomicLong updates = new AtomicLong();
+
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int w = 0; w < WRITER_THREADS; w++)
+        {
+            final Random random = new Random(w);
+            threads.add(new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    while (run.get())
+                    {
+                        String jid = jids[random.nextInt(BRIDGE_COUNT)];
+                        int action = random.nextInt(20);
+                        if (action == 0)
+                        {
+                            selector.updateBridgeOperationalStatus(
+                                jid, random.nextBoolean());
+                        }
+                        else if (action == 1)
+                        {
+                            selector.addJvbAddress(volatileJid);
+                            selector.removeJvbAddress(volatileJid);
+                        }
+                        else
+                        {
+                            int conferences = random.nextInt(1000);
+                            selector.onSharedNodeUpdate(
+                                jid,
+                                JvbStats.load(
+                                    conferences,
+                                    2 * conferences,
+                                    3 * conferences));
+                        }
+                        updates.incrementAndGet();
+                    }
+                }
+            }));
+        }
+
+        for (int r = 0; r < READER_THREADS; r++)
+        {
+            threads.add(new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        while (run.get())
+                        {
+                            String selected = selector.selectVideobridge();
+                            assertNotNull(selected);
+                            assertTrue(knownJids.contains(selected));
+
+                            for (String jid
+                                : selector.getPrioritizedBridgesList())
+                            {
+                                assertTrue(knownJids.contains(jid));
+                            }
+
+                            for (BridgeSelector.BridgeState bridge
+                                : selector.getBridgeStates())
+                            {
+                                assertConsistent(bridge.getStats());
+                            }
+                            selections.incrementAndGet();
+                        }
+                    }
+                    catch (Throwable t)
+                    {
+                        failure.compareAndSet(null, t);
+                        run.set(false);
+                    }
+                }
+            }));
+        }
+
+        for (Thread t : threads)
+            t.start();
+
+        Thread.sleep(TEST_DURATION);
+        run.set(false);
+
+        for (Thread t : threads)
+            t.join();
+
+        if (failure.get() != null)
+            throw new AssertionError(failure.get());
+
+        assertTrue(selections.get() > 0);
+        assertTrue(updates.get() > 0);
+
+        // Once things settle down every bridge is listed exactly once
+        for (String jid : jids)
+        {
+            selector.updateBridgeOperationalStatus(jid, true);
+        }
+        List<String> prioritized = selector.getPrioritizedBridgesList();
+        assertEquals(BRIDGE_COUNT, prioritized.size());
+        assertEquals(
+            BRIDGE_COUNT, new HashSet<String>(prioritized).size());
+
+        // and the list is ordered by load
+        int lastLoad = -1;
+        for (String jid : prioritized)
+        {
+            int load = -1;
+            for (BridgeSelector.BridgeState bridge : selector.getBridgeStates())
+            {
+                if (bridge.getJid().equals(jid))
+                    load = bridge.getVideoStreamCount();
+            }
+            assertTrue(load >= lastLoad);
+            lastLoad = load;
+        }
+    }
+
+    /**
+     * Every update carries video channel count equal to twice the number of
+     * conferences and video stream count equal to three times the number of
+     * conferences. Any other combination means that a torn update has been
+     * observed.
+     */
+    private static void assertConsistent(BridgeStats stats)
+    {
+        if (stats == BridgeStats.UNKNOWN)
+            return;
+
+        int conferences = stats.getConferenceCount();
+
+        assertEquals(
+            stats.toString(), 2 * conferences, stats.getVideoChannelCount());
+        assertEquals(
+            stats.toString(), 3 * conferences, stats.getVideoStreamCount());
+    }
+}
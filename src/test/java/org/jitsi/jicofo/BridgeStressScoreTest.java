@@ -0,0 +1,144 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+
+import org.jitsi.videobridge.stats.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link BridgeStressScore} calculated from the bridge stats.
+ */
+@RunWith(JUnit4.class)
+public class BridgeStressScoreTest
+{
+    private static final double DELTA = 0.000001;
+
+    @Test
+    public void testUnknownStats()
+    {
+        BridgeStressScore score = new BridgeStressScore(null);
+
+        assertEquals(
+            Double.POSITIVE_INFINITY,
+            score.calculateCountScore(BridgeStats.UNKNOWN), DELTA);
+        assertEquals(
+            0, score.calculateRateScore(BridgeStats.UNKNOWN), DELTA);
+    }
+
+    @Test
+    public void testCpuBoundBridge()
+    {
+        BridgeStressScore score = new BridgeStressScore(null);
+
+        // Few streams, but CPU almost saturated
+        BridgeStats cpuBound
+            = BridgeStats.UNKNOWN.merge(
+                    createStats(2, 20, "0.95", "0.01"));
+        // More streams, but plenty of CPU left
+        BridgeStats idle
+            = BridgeStats.UNKNOWN.merge(
+                    createStats(5, 200, "0.2", "0.0"));
+
+        assertEquals(0.95, cpuBound.getCpuUsage(), DELTA);
+        assertEquals(0.01, cpuBound.getRtpLoss(), DELTA);
+
+        double cpuBoundScore
+            = score.calculateCountScore(cpuBound)
+                + score.calculateRateScore(cpuBound);
+        double idleScore
+            = score.calculateCountScore(idle)
+                + score.calculateRateScore(idle);
+
+        assertTrue(idleScore < cpuBoundScore);
+    }
+
+    @Test
+    public void testMergeKeepsMissingValues()
+    {
+        BridgeStats stats
+            = BridgeStats.UNKNOWN.merge(createStats(3, 30, "0.5", null));
+
+        ColibriStatsExtension cpuOnly = new ColibriStatsExtension();
+        cpuOnly.addStat(
+            new ColibriStatsExtension.Stat(
+                VideobridgeStatistics.CPU_USAGE, "0.7"));
+
+        BridgeStats merged = stats.merge(cpuOnly);
+
+        assertEquals(3, merged.getConferenceCount());
+        assertEquals(30, merged.getVideoStreamCount());
+        assertEquals(0.7, merged.getCpuUsage(), DELTA);
+        assertTrue(Double.isNaN(merged.getRtpLoss()));
+
+        // The original snapshot is never modified
+        assertEquals(0.5, stats.getCpuUsage(), DELTA);
+    }
+
+    @Test
+    public void testSmoothing()
+    {
+        BridgeStressScore score = new BridgeStressScore(null);
+
+        // First sample is taken as it is
+        double smoothed = score.smooth(Double.NaN, 1.0);
+        assertEquals(1.0, smoothed, DELTA);
+
+        // Default smoothing factor is 0.5
+        smoothed = score.smooth(smoothed, 0.0);
+        assertEquals(0.5, smoothed, DELTA);
+
+        smoothed = score.smooth(smoothed, 0.0);
+        assertEquals(0.25, smoothed, DELTA);
+    }
+
+    private static ColibriStatsExtension createStats(int conferences,
+                                                     int videoStreams,
+                                                     String cpuUsage,
+                                                     String rtpLoss)
+    {
+        ColibriStatsExtension statsExtension = new ColibriStatsExtension();
+
+        statsExtension.addStat(
+            new ColibriStatsExtension.Stat(
+                VideobridgeStatistics.CONFERENCES, "" + conferences));
+        statsExtension.addStat(
+            new ColibriStatsExtension.Stat(
+                VideobridgeStatistics.VIDEOSTREAMS, "" + videoStreams));
+        if (cpuUsage != null)
+        {
+            statsExtension.addStat(
+                new ColibriStatsExtension.Stat(
+                    VideobridgeStatistics.CPU_USAGE, cpuUsage));
+        }
+        if (rtpLoss != null)
+        {
+            statsExtension.addStat(
+                new ColibriStatsExtension.Stat(
+                    VideobridgeStatistics.RTP_LOSS, rtpLoss));
+        }
+        return statsExtension;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import mock.xmpp.*;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+
+import org.jitsi.impl.protocol.xmpp.colibri.*;
+
+import org.jivesoftware.smack.packet.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the channels allocated in advance.
+ */
+@RunWith(JUnit4.class)
+public class ChannelPoolTest
+{
+    private ScheduledExecutorService executor;
+
+    private RecordingXmppConnection connection;
+
+    private ColibriConferenceImpl colibriConf;
+
+    @Before
+    public void setUp()
+    {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        connection = new RecordingXmppConnection();
+
+        colibriConf = new ColibriConferenceImpl(connection, executor, 0, 0);
+        colibriConf.setJitsiVideobridge("jvb.example.com");
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testTakeAssignsEndpoint()
+        throws Exception
+    {
+        ChannelPool pool
+            = new ChannelPool(
+                    colibriConf, createContents("audio"), executor, 1, 30000);
+        pool.start();
+
+        ColibriConferenceIQ allocation = connection.nextRequest();
+        assertEquals("pool-0", getEndpoint(allocation));
+        respondWithChannels(allocation);
+
+        // Wait for the response to be processed
+        ColibriConferenceIQ channels = null;
+        for (int i = 0; i < 50 && channels == null; i++)
+        {
+            Thread.sleep(20);
+            channels = pool.take("endpoint1", createContents("audio"));
+        }
+        assertNotNull(channels);
+        assertEquals("endpoint1", getEndpoint(channels));
+
+        // The pool is refilled and the bridge is told about new endpoint
+        ColibriConferenceIQ refill = null;
+        ColibriConferenceIQ update = null;
+        for (int i = 0; i < 2; i++)
+        {
+            ColibriConferenceIQ request = connection.nextRequest();
+            assertNotNull(request);
+
+            ColibriConferenceIQ.Channel channel
+                = request.getContents().get(0).getChannels().get(0);
+            if (channel.getID() == null)
+                refill = request;
+            else
+                update = request;
+        }
+        assertEquals("pool-1", getEndpoint(refill));
+        assertEquals("endpoint1", getEndpoint(update));
+
+        // Nothing left until the refill completes
+        assertNull(pool.take("endpoint2", createContents("audio")));
+    }
+
+    @Test
+    public void testOfferMismatch()
+        throws Exception
+    {
+        ChannelPool pool
+            = new ChannelPool(
+                    colibriConf, createContents("audio"), executor, 1, 30000);
+        pool.start();
+
+        respondWithChannels(connection.nextRequest());
+        Thread.sleep(200);
+
+        assertNull(
+            pool.take("endpoint1", createContents("audio", "video")));
+        assertNotNull(pool.take("endpoint1", createContents("audio")));
+    }
+
+    @Test
+    public void testIdleChannelsRecycled()
+        throws Exception
+    {
+        ChannelPool pool
+            = new ChannelPool(
+                    colibriConf, createContents("audio"), executor, 1, 100);
+        pool.start();
+
+        respondWithChannels(connection.nextRequest());
+
+        // The old channels are expired and replaced
+        Packet expire = connection.pollSentPacket(5000);
+        assertNotNull(expire);
+        assertEquals(
+            0,
+            ((ColibriConferenceIQ) expire).getContents().get(0)
+                .getChannels().get(0).getExpire());
+
+        ColibriConferenceIQ refill = connection.nextRequest();
+        assertEquals("pool-1", getEndpoint(refill));
+
+        pool.dispose();
+    }
+
+    private void respondWithChannels(ColibriConferenceIQ request)
+    {
+        ColibriConferenceIQ response = new ColibriConferenceIQ();
+        response.setType(IQ.Type.RESULT);
+        response.setPacketID(request.getPacketID());
+        response.setID("conference1");
+
+        for (ColibriConferenceIQ.Content content : request.getContents())
+        {
+            for (ColibriConferenceIQ.Channel channel : content.getChannels())
+            {
+                ColibriConferenceIQ.Channel allocated
+                    = new ColibriConferenceIQ.Channel();
+                allocated.setID(
+                    content.getName() + "-" + channel.getEndpoint());
+                allocated.setEndpoint(channel.getEndpoint());
+                allocated.setChannelBundleId(channel.getChannelBundleId());
+
+                response.getOrCreateContent(content.getName())
+                    .addChannel(allocated);
+            }
+        }
+        for (ColibriConferenceIQ.ChannelBundle bundle
+            : request.getChannelBundles())
+        {
+            response.addChannelBundle(
+                new ColibriConferenceIQ.ChannelBundle(bundle.getId()));
+        }
+
+        connection.respond(request, response);
+    }
+
+    private static String getEndpoint(ColibriConferenceIQ channels)
+    {
+        return channels.getContents().get(0).getChannels().get(0)
+            .getEndpoint();
+    }
+
+    private static List<ContentPacketExtension> createContents(
+            String ... names)
+    {
+        List<ContentPacketExtension> contents
+            = new ArrayList<ContentPacketExtension>();
+
+        for (String name : names)
+        {
+            ContentPacketExtension content = new ContentPacketExtension();
+            content.setName(name);
+
+            RtpDescriptionPacketExtension rtpDescription
+                = new RtpDescriptionPacketExtension();
+            rtpDescription.setMedia(name);
+            content.addChildExtension(rtpDescription);
+
+            contents.add(content);
+        }
+        return contents;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import mock.xmpp.*;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+
+import org.jitsi.impl.protocol.xmpp.colibri.*;
+import org.jitsi.jicofo.util.*;
+import org.jitsi.protocol.xmpp.util.*;
+import org.jitsi.service.neomedia.*;
+
+import org.jivesoftware.smack.packet.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the asynchronous and batched allocation of the channels.
+ */
+@RunWith(JUnit4.class)
+public class ColibriAllocationTest
+{
+    private ScheduledExecutorService executor;
+
+    private RecordingXmppConnection connection;
+
+    private int channelCounter;
+
+    @Before
+    public void setUp()
+    {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        connection = new RecordingXmppConnection();
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testAsyncChannelAllocation()
+        throws Exception
+    {
+        ColibriConferenceImpl colibriConf
+            = new ColibriConferenceImpl(connection, executor, 0, 0);
+
+        colibriConf.setJitsiVideobridge("jvb.example.com");
+
+        // Both requests are sent before any response arrives, the second one
+        // has to wait for the conference created by the first one
+        SettableFuture<ColibriConferenceIQ> peer1Channels
+            = colibriConf.createColibriChannelsAsync(
+                true, "endpoint1", true, createContents());
+        SettableFuture<ColibriConferenceIQ> peer2Channels
+            = colibriConf.createColibriChannelsAsync(
+                true, "endpoint2", true, createContents());
+
+        ColibriConferenceIQ create = connection.nextRequest();
+
+        assertNull(create.getID());
+        assertNull(connection.pollRequest(200));
+        assertFalse(peer2Channels.isDone());
+
+        connection.respond(create, createResponse(create, "conference1"));
+
+        assertEquals(3, countChannels(peer1Channels.get(5, TimeUnit.SECONDS)));
+
+        ColibriConferenceIQ join = connection.nextRequest();
+
+        assertEquals("conference1", join.getID());
+
+        connection.respond(join, createResponse(join, "conference1"));
+
+        assertEquals(3, countChannels(peer2Channels.get(5, TimeUnit.SECONDS)));
+
+        assertEquals("conference1", colibriConf.getConferenceId());
+        assertTrue(colibriConf.hasJustAllocated());
+        assertFalse(colibriConf.hasJustAllocated());
+    }
+
+    @Test
+    public void testBatchedChannelAllocation()
+        throws Exception
+    {
+        // Long window, so that all the requests get into the same batch
+        ColibriConferenceImpl colibriConf
+            = new ColibriConferenceImpl(connection, executor, 500, 0);
+
+        colibriConf.setJitsiVideobridge("jvb.example.com");
+
+        String[] endpoints = { "endpoint1", "endpoint2", "endpoint3" };
+        List<SettableFuture<ColibriConferenceIQ>> allocations
+            = new ArrayList<SettableFuture<ColibriConferenceIQ>>();
+        for (String endpoint : endpoints)
+        {
+            allocations.add(
+                colibriConf.createColibriChannelsAsync(
+                    true, endpoint, true, createContents()));
+        }
+
+        ColibriConferenceIQ request = connection.nextRequest();
+
+        assertEquals(3, request.getChannelBundles().size());
+        assertEquals(9, countChannels(request));
+
+        connection.respond(request, createResponse(request, "conference1"));
+
+        for (int i = 0; i < endpoints.length; i++)
+        {
+            ColibriConferenceIQ peerChannels
+                = allocations.get(i).get(5, TimeUnit.SECONDS);
+
+            assertEquals(3, countChannels(peerChannels));
+            assertEquals(1, peerChannels.getChannelBundles().size());
+
+            for (ColibriConferenceIQ.Content content
+                : peerChannels.getContents())
+            {
+                for (ColibriConferenceIQ.Channel channel
+                    : content.getChannels())
+                {
+                    assertEquals(endpoints[i], channel.getEndpoint());
+                }
+            }
+        }
+
+        // All of them have been sent in single request
+        assertNull(connection.pollRequest(200));
+        assertTrue(colibriConf.hasJustAllocated());
+    }
+
+    /**
+     * Creates the response of the bridge which allocates all the channels
+     * requested.
+     */
+    private ColibriConferenceIQ createResponse(ColibriConferenceIQ request,
+                                               String conferenceId)
+    {
+        ColibriConferenceIQ response = new ColibriConferenceIQ();
+
+        response.setType(IQ.Type.RESULT);
+        response.setPacketID(request.getPacketID());
+        response.setID(conferenceId);
+
+        for (ColibriConferenceIQ.Content content : request.getContents())
+        {
+            ColibriConferenceIQ.Content responseContent
+                = response.getOrCreateContent(content.getName());
+
+            for (ColibriConferenceIQ.Channel channel : content.getChannels())
+            {
+                ColibriConferenceIQ.Channel allocated
+                    = new ColibriConferenceIQ.Channel();
+
+                allocated.setID("channel" + (++channelCounter));
+                allocated.setEndpoint(channel.getEndpoint());
+                allocated.setChannelBundleId(channel.getChannelBundleId());
+
+                responseContent.addChannel(allocated);
+            }
+            for (ColibriConferenceIQ.SctpConnection connection
+                : content.getSctpConnections())
+            {
+                ColibriConferenceIQ.SctpConnection allocated
+                    = new ColibriConferenceIQ.SctpConnection();
+
+                allocated.setID("channel" + (++channelCounter));
+                allocated.setEndpoint(connection.getEndpoint());
+                allocated.setChannelBundleId(connection.getChannelBundleId());
+
+                responseContent.addSctpConnection(allocated);
+            }
+        }
+        for (ColibriConferenceIQ.ChannelBundle bundle
+            : request.getChannelBundles())
+        {
+            response.addChannelBundle(
+                new ColibriConferenceIQ.ChannelBundle(bundle.getId()));
+        }
+        return response;
+    }
+
+    private static List<ContentPacketExtension> createContents()
+    {
+        List<ContentPacketExtension> contents
+            = new ArrayList<ContentPacketExtension>();
+
+        contents.add(
+            JingleOfferFactory.createContentForMedia(
+                MediaType.AUDIO, false, true));
+        contents.add(
+            JingleOfferFactory.createContentForMedia(
+                MediaType.VIDEO, false, true));
+        contents.add(
+            JingleOfferFactory.createContentForMedia(
+                MediaType.DATA, false, true));
+
+        return contents;
+    }
+
+    private static int countChannels(ColibriConferenceIQ conferenceIq)
+    {
+        int count = 0;
+        for (ColibriConferenceIQ.Content content : conferenceIq.getContents())
+        {
+            count += content.getChannelCount();
+            count += content.getSctpConnections().size();
+        }
+        return count;
+    }
+}
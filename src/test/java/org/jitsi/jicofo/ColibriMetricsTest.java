@@ -0,0 +1,167 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import mock.xmpp.*;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+
+import org.jitsi.impl.protocol.xmpp.colibri.*;
+import org.jitsi.protocol.xmpp.colibri.*;
+import org.jitsi.protocol.xmpp.util.*;
+
+import org.jivesoftware.smack.packet.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the statistics of the Colibri requests.
+ */
+@RunWith(JUnit4.class)
+public class ColibriMetricsTest
+{
+    private static final String BRIDGE = "jvb.example.com";
+
+    private ScheduledExecutorService executor;
+
+    private RecordingXmppConnection connection;
+
+    private ColibriConferenceImpl colibriConf;
+
+    private ColibriMetrics metrics;
+
+    @Before
+    public void setUp()
+    {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        connection = new RecordingXmppConnection();
+        metrics = new ColibriMetrics();
+
+        colibriConf = new ColibriConferenceImpl(connection, executor, 0, 0);
+        colibriConf.setJitsiVideobridge(BRIDGE);
+        colibriConf.setRequestPolicy(
+            new ColibriRequestPolicy(1000, 1000, 1, 10));
+        colibriConf.setMetrics(metrics);
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testResponseRecorded()
+        throws Exception
+    {
+        SettableFuture<ColibriConferenceIQ> allocation = allocate();
+
+        ColibriConferenceIQ request = connection.nextRequest();
+        ColibriConferenceIQ response = new ColibriConferenceIQ();
+        response.setType(IQ.Type.RESULT);
+        response.setPacketID(request.getPacketID());
+        response.setID("conference1");
+        connection.respond(request, response);
+
+        assertNotNull(allocation.get(5, TimeUnit.SECONDS));
+
+        ColibriMetrics.OperationMetrics allocate
+            = metrics.getOperationMetrics(
+                    BRIDGE, ColibriMetrics.Operation.ALLOCATE);
+        assertEquals(1, allocate.getRequestCount());
+        assertEquals(1, allocate.getLatency().getCount());
+        assertEquals(0, allocate.getLatency().getTimeoutCount());
+        assertTrue(allocate.getErrors().isEmpty());
+
+        assertEquals(Collections.singleton(BRIDGE), metrics.getBridges());
+    }
+
+    @Test
+    public void testTimeoutAndRetryRecorded()
+        throws Exception
+    {
+        SettableFuture<ColibriConferenceIQ> allocation = allocate();
+
+        // The first attempt and one retry
+        connection.timeout(connection.nextRequest());
+        connection.timeout(connection.nextRequest());
+
+        try
+        {
+            allocation.get(5, TimeUnit.SECONDS);
+            fail("Allocation should have failed");
+        }
+        catch (ExecutionException e)
+        {
+            // Expected
+        }
+
+        ColibriMetrics.OperationMetrics allocate
+            = metrics.getOperationMetrics(
+                    BRIDGE, ColibriMetrics.Operation.ALLOCATE);
+        assertEquals(1, allocate.getRequestCount());
+        assertEquals(1, allocate.getRetryCount());
+        assertEquals(1, allocate.getLatency().getTimeoutCount());
+        assertEquals(0, allocate.getLatency().getCount());
+    }
+
+    @Test
+    public void testErrorConditionCounted()
+        throws Exception
+    {
+        SettableFuture<ColibriConferenceIQ> allocation = allocate();
+
+        ColibriConferenceIQ request = connection.nextRequest();
+        connection.respond(
+            request,
+            IQ.createErrorResponse(
+                request,
+                new XMPPError(XMPPError.Condition.service_unavailable)));
+
+        try
+        {
+            allocation.get(5, TimeUnit.SECONDS);
+            fail("Allocation should have failed");
+        }
+        catch (ExecutionException e)
+        {
+            // Expected
+        }
+
+        Map<String, Long> errors
+            = metrics.getOperationMetrics(
+                    BRIDGE, ColibriMetrics.Operation.ALLOCATE).getErrors();
+        assertEquals(
+            Long.valueOf(1),
+            errors.get(XMPPError.Condition.service_unavailable.toString()));
+    }
+
+    private SettableFuture<ColibriConferenceIQ> allocate()
+    {
+        return colibriConf.createColibriChannelsAsync(
+            true, "endpoint1", true, new ArrayList<ContentPacketExtension>());
+    }
+}
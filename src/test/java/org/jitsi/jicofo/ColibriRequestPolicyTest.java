@@ -0,0 +1,163 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import mock.xmpp.*;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+import net.java.sip.communicator.service.protocol.*;
+
+import org.jitsi.impl.protocol.xmpp.colibri.*;
+import org.jitsi.protocol.xmpp.util.*;
+
+import org.jivesoftware.smack.packet.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the timeouts and retries of the requests sent to the bridge.
+ */
+@RunWith(JUnit4.class)
+public class ColibriRequestPolicyTest
+{
+    private ScheduledExecutorService executor;
+
+    private RecordingXmppConnection connection;
+
+    private ColibriConferenceImpl colibriConf;
+
+    @Before
+    public void setUp()
+    {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        connection = new RecordingXmppConnection();
+
+        colibriConf = new ColibriConferenceImpl(connection, executor, 0, 0);
+        colibriConf.setJitsiVideobridge("jvb.example.com");
+        colibriConf.setRequestPolicy(
+            new ColibriRequestPolicy(1000, 1000, 2, 10));
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testRetryDelay()
+    {
+        ColibriRequestPolicy policy = new ColibriRequestPolicy(1, 1, 3, 100);
+
+        assertEquals(100, policy.getRetryDelay(0));
+        assertEquals(200, policy.getRetryDelay(1));
+        assertEquals(400, policy.getRetryDelay(2));
+    }
+
+    @Test
+    public void testAllocationRetriedOnTimeout()
+        throws Exception
+    {
+        SettableFuture<ColibriConferenceIQ> allocation
+            = colibriConf.createColibriChannelsAsync(
+                true, "endpoint1", true,
+                new ArrayList<ContentPacketExtension>());
+
+        ColibriConferenceIQ first = connection.nextRequest();
+        connection.timeout(first);
+
+        // Sent again with the same ID
+        ColibriConferenceIQ second = connection.nextRequest();
+        assertNotNull(second);
+        assertEquals(first.getPacketID(), second.getPacketID());
+
+        ColibriConferenceIQ response = new ColibriConferenceIQ();
+        response.setType(IQ.Type.RESULT);
+        response.setPacketID(second.getPacketID());
+        response.setID("conference1");
+        connection.respond(second, response);
+
+        assertNotNull(allocation.get(5, TimeUnit.SECONDS));
+        assertEquals("conference1", colibriConf.getConferenceId());
+    }
+
+    @Test
+    public void testRetryBudget()
+        throws Exception
+    {
+        SettableFuture<ColibriConferenceIQ> allocation
+            = colibriConf.createColibriChannelsAsync(
+                true, "endpoint1", true,
+                new ArrayList<ContentPacketExtension>());
+
+        // The first attempt and two retries
+        for (int i = 0; i < 3; i++)
+        {
+            connection.timeout(connection.nextRequest());
+        }
+
+        try
+        {
+            allocation.get(5, TimeUnit.SECONDS);
+            fail("Allocation should have failed");
+        }
+        catch (ExecutionException e)
+        {
+            assertEquals(
+                OperationFailedException.NETWORK_FAILURE,
+                ((OperationFailedException) e.getCause()).getErrorCode());
+        }
+        assertNull(connection.pollRequest(200));
+    }
+
+    @Test
+    public void testErrorNotRetried()
+        throws Exception
+    {
+        SettableFuture<ColibriConferenceIQ> allocation
+            = colibriConf.createColibriChannelsAsync(
+                true, "endpoint1", true,
+                new ArrayList<ContentPacketExtension>());
+
+        ColibriConferenceIQ request = connection.nextRequest();
+
+        IQ error
+            = IQ.createErrorResponse(
+                    request, new XMPPError(XMPPError.Condition.bad_request));
+        connection.respond(request, error);
+
+        try
+        {
+            allocation.get(5, TimeUnit.SECONDS);
+            fail("Allocation should have failed");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof OperationFailedException);
+        }
+        assertNull(connection.pollRequest(200));
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import mock.xmpp.*;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+
+import org.jitsi.impl.protocol.xmpp.colibri.*;
+import org.jitsi.protocol.xmpp.util.*;
+
+import org.jivesoftware.smack.packet.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the accumulation of the channel updates sent to the bridge.
+ */
+@RunWith(JUnit4.class)
+public class ColibriUpdateTest
+{
+    private ScheduledExecutorService executor;
+
+    private RecordingXmppConnection connection;
+
+    private ColibriConferenceImpl colibriConf;
+
+    @Before
+    public void setUp()
+    {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        connection = new RecordingXmppConnection();
+
+        colibriConf = new ColibriConferenceImpl(connection, executor, 0, 50);
+        colibriConf.setJitsiVideobridge("jvb.example.com");
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testUpdatesCoalesced()
+        throws Exception
+    {
+        ColibriConferenceIQ channels = createChannels("endpoint1");
+
+        colibriConf.updateSourcesInfo(
+            new MediaSSRCMap(), new MediaSSRCGroupMap(), channels);
+        colibriConf.updateBundleTransportInfo(
+            true, createTransport("1"), channels);
+        colibriConf.updateBundleTransportInfo(
+            true, createTransport("2"), channels);
+        colibriConf.updateRtpDescription(
+            Collections.singletonMap("audio", createRtpDescription()),
+            channels);
+
+        ColibriConferenceIQ update = connection.nextRequest();
+        assertNotNull(update);
+
+        // Single channel per content with all the changes applied
+        ColibriConferenceIQ.Channel audio
+            = update.getContent("audio").getChannels().get(0);
+        assertEquals(1, update.getContent("audio").getChannelCount());
+        assertEquals(1, audio.getSources().size());
+        assertEquals(1, audio.getPayloadTypes().size());
+
+        // Trickled candidates are merged
+        assertEquals(1, update.getChannelBundles().size());
+        assertEquals(
+            2,
+            update.getChannelBundles().get(0).getTransport()
+                .getCandidateList().size());
+
+        // Nothing more until the response arrives
+        assertNull(connection.pollRequest(200));
+    }
+
+    @Test
+    public void testUpdatesOrdered()
+        throws Exception
+    {
+        ColibriConferenceIQ channels = createChannels("endpoint1");
+
+        colibriConf.updateSourcesInfo(
+            new MediaSSRCMap(), new MediaSSRCGroupMap(), channels);
+
+        ColibriConferenceIQ first = connection.nextRequest();
+        assertNotNull(first);
+
+        colibriConf.updateRtpDescription(
+            Collections.singletonMap("audio", createRtpDescription()),
+            channels);
+
+        // The second one waits for the first one to complete
+        assertNull(connection.pollRequest(200));
+
+        connection.respond(first);
+
+        ColibriConferenceIQ second = connection.nextRequest();
+        assertNotNull(second);
+        assertEquals(
+            1,
+            second.getContent("audio").getChannels().get(0)
+                .getPayloadTypes().size());
+    }
+
+    @Test
+    public void testUnchangedSourcesNotResent()
+        throws Exception
+    {
+        ColibriConferenceIQ channels = createChannels("endpoint1");
+
+        MediaSSRCMap ssrcs = new MediaSSRCMap();
+        ssrcs.getSSRCsForMedia("audio").add(createSource(1));
+
+        colibriConf.updateSourcesInfo(
+            ssrcs.copyShallow(), new MediaSSRCGroupMap(), channels);
+
+        ColibriConferenceIQ first = connection.nextRequest();
+        assertEquals(1, first.getContent("audio").getChannelCount());
+        assertEquals(1, first.getContent("video").getChannelCount());
+
+        connection.respond(first);
+
+        // Only the video channel has changed
+        ssrcs.getSSRCsForMedia("video").add(createSource(2));
+
+        colibriConf.updateSourcesInfo(
+            ssrcs.copyShallow(), new MediaSSRCGroupMap(), channels);
+
+        ColibriConferenceIQ second = connection.nextRequest();
+        assertNull(second.getContent("audio"));
+        assertEquals(
+            2,
+            second.getContent("video").getChannels().get(0)
+                .getSources().get(0).getSSRC());
+
+        connection.respond(second);
+
+        // Nothing has changed
+        colibriConf.updateSourcesInfo(
+            ssrcs.copyShallow(), new MediaSSRCGroupMap(), channels);
+
+        assertNull(connection.pollRequest(200));
+    }
+
+    @Test
+    public void testExpiredChannelsNotUpdated()
+        throws Exception
+    {
+        ColibriConferenceIQ channels = createChannels("endpoint1");
+
+        colibriConf.updateRtpDescription(
+            Collections.singletonMap("audio", createRtpDescription()),
+            channels);
+        colibriConf.expireChannels(channels);
+
+        assertNull(connection.pollRequest(200));
+    }
+
+    @Test
+    public void testExpiresBatched()
+        throws Exception
+    {
+        List<ColibriConferenceIQ> channels
+            = new ArrayList<ColibriConferenceIQ>();
+        for (int i = 0; i < 3; i++)
+        {
+            channels.add(allocateChannels("endpoint" + i));
+        }
+
+        for (ColibriConferenceIQ participantChannels : channels)
+        {
+            colibriConf.expireChannels(participantChannels);
+        }
+
+        ColibriConferenceIQ expire
+            = (ColibriConferenceIQ) connection.pollSentPacket(5000);
+        assertNotNull(expire);
+        assertEquals(2, expire.getContents().size());
+        for (ColibriConferenceIQ.Content content : expire.getContents())
+        {
+            assertEquals(3, content.getChannelCount());
+        }
+
+        assertNull(connection.pollSentPacket(200));
+    }
+
+    @Test
+    public void testConferenceExpireCoversPendingExpires()
+        throws Exception
+    {
+        colibriConf.expireChannels(allocateChannels("endpoint1"));
+        colibriConf.expireChannels(allocateChannels("endpoint2"));
+        colibriConf.expireConference();
+
+        // Single expire of all the channels
+        ColibriConferenceIQ expire
+            = (ColibriConferenceIQ) connection.pollSentPacket(5000);
+        assertNotNull(expire);
+        assertEquals(
+            2, expire.getContents().get(0).getChannelCount());
+
+        assertNull(connection.pollSentPacket(200));
+    }
+
+    @Test
+    public void testBulkMuteAcknowledged()
+        throws Exception
+    {
+        List<ColibriConferenceIQ> channels
+            = new ArrayList<ColibriConferenceIQ>();
+        for (int i = 0; i < 3; i++)
+        {
+            channels.add(createChannels("endpoint" + i));
+        }
+
+        SettableFuture<Boolean> mute
+            = colibriConf.muteParticipants(channels, true);
+
+        // Single request with the audio channels of all the participants
+        ColibriConferenceIQ request = connection.nextRequest();
+        assertEquals(1, request.getContents().size());
+        assertEquals(3, request.getContent("audio").getChannelCount());
+        assertFalse(mute.isDone());
+
+        ColibriConferenceIQ response = new ColibriConferenceIQ();
+        response.setType(IQ.Type.RESULT);
+        response.setPacketID(request.getPacketID());
+        connection.respond(request, response);
+
+        assertTrue(mute.get(5, TimeUnit.SECONDS));
+    }
+
+    private ColibriConferenceIQ allocateChannels(String endpoint)
+        throws Exception
+    {
+        List<ContentPacketExtension> contents
+            = new ArrayList<ContentPacketExtension>();
+        for (String media : new String[] { "audio", "video" })
+        {
+            ContentPacketExtension content = new ContentPacketExtension();
+            content.setName(media);
+
+            RtpDescriptionPacketExtension rtpDescription
+                = new RtpDescriptionPacketExtension();
+            rtpDescription.setMedia(media);
+            content.addChildExtension(rtpDescription);
+
+            contents.add(content);
+        }
+
+        SettableFuture<ColibriConferenceIQ> allocation
+            = colibriConf.createColibriChannelsAsync(
+                    true, endpoint, true, contents);
+
+        ColibriConferenceIQ request = connection.nextRequest();
+
+        ColibriConferenceIQ response = new ColibriConferenceIQ();
+        response.setType(IQ.Type.RESULT);
+        response.setPacketID(request.getPacketID());
+        response.setID("conference1");
+
+        for (ColibriConferenceIQ.Content content : request.getContents())
+        {
+            ColibriConferenceIQ.Channel channel
+                = new ColibriConferenceIQ.Channel();
+            channel.setID(content.getName() + "-" + endpoint);
+            channel.setEndpoint(endpoint);
+            channel.setChannelBundleId(endpoint);
+
+            response.getOrCreateContent(content.getName()).addChannel(channel);
+        }
+        response.addChannelBundle(
+            new ColibriConferenceIQ.ChannelBundle(endpoint));
+
+        connection.respond(request, response);
+
+        return allocation.get(5, TimeUnit.SECONDS);
+    }
+
+    private static ColibriConferenceIQ createChannels(String endpoint)
+    {
+        ColibriConferenceIQ channels = new ColibriConferenceIQ();
+
+        for (String contentName : new String[] { "audio", "video" })
+        {
+            ColibriConferenceIQ.Channel channel
+                = new ColibriConferenceIQ.Channel();
+            channel.setID(contentName + "-" + endpoint);
+            channel.setEndpoint(endpoint);
+            channel.setChannelBundleId(endpoint);
+
+            channels.getOrCreateContent(contentName).addChannel(channel);
+        }
+        channels.addChannelBundle(
+            new ColibriConferenceIQ.ChannelBundle(endpoint));
+
+        return channels;
+    }
+
+    private static SourcePacketExtension createSource(long ssrc)
+    {
+        SourcePacketExtension source = new SourcePacketExtension();
+        source.setSSRC(ssrc);
+        return source;
+    }
+
+    private static IceUdpTransportPacketExtension createTransport(
+            String foundation)
+    {
+        IceUdpTransportPacketExtension transport
+            = new IceUdpTransportPacketExtension();
+        transport.setUfrag("ufrag");
+        transport.setPassword("pwd");
+
+        CandidatePacketExtension candidate = new CandidatePacketExtension();
+        candidate.setFoundation(foundation);
+        transport.addCandidate(candidate);
+
+        return transport;
+    }
+
+    private static RtpDescriptionPacketExtension createRtpDescription()
+    {
+        RtpDescriptionPacketExtension rtpDescription
+            = new RtpDescriptionPacketExtension();
+        rtpDescription.setMedia("audio");
+
+        PayloadTypePacketExtension opus = new PayloadTypePacketExtension();
+        opus.setId(111);
+        opus.setName("opus");
+        rtpDescription.addPayloadType(opus);
+
+        return rtpDescription;
+    }
+}
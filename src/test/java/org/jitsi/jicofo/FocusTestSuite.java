@@ -17,6 +17,9 @@
  */
 package org.jitsi.jicofo;
 
+import org.jitsi.impl.protocol.xmpp.colibri.*;
+import org.jitsi.jicofo.xmpp.*;
+
 import org.junit.runner.*;
 import org.junit.runners.*;
 
@@ -31,7 +34,30 @@ import org.junit.runners.*;
         MockTest.class,
         AdvertiseSSRCsTest.class,
         BundleTest.class,
-        RolesTest.class
+        RolesTest.class,
+        BridgeSelectionStrategyTest.class,
+        BridgeSelectorBenchmarkTest.class,
+        BridgeSelectorStressTest.class,
+        BridgeReservationTest.class,
+        BridgeStressScoreTest.class,
+        BridgeCircuitBreakerTest.class,
+        BridgeRegionTest.class,
+        BridgeDrainTest.class,
+        BridgeAdmissionTest.class,
+        BridgeProberTest.class,
+        ColibriAllocationTest.class,
+        ColibriUpdateTest.class,
+        ColibriRequestPolicyTest.class,
+        ChannelPoolTest.class,
+        MuteIqProviderTest.class,
+        ColibriFragmentsTest.class,
+        ColibriMetricsTest.class,
+        PendingRepliesTest.class,
+        SourceUpdateQueueTest.class,
+        ParticipantIndexTest.class,
+        JingleOfferFactoryTest.class,
+        BridgeMoveTest.class,
+        SessionRegistryTest.class
     })
 public class FocusTestSuite
 {
@@ -0,0 +1,105 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+
+import org.jitsi.jicofo.util.*;
+import org.jitsi.service.neomedia.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the offer contents built from the cached descriptions.
+ */
+@RunWith(JUnit4.class)
+public class JingleOfferFactoryTest
+{
+    @Test
+    public void testContentEqualsCreatedContent()
+    {
+        MediaType[] mediaTypes
+            = { MediaType.AUDIO, MediaType.VIDEO, MediaType.DATA };
+        boolean[] options = { false, true };
+
+        for (MediaType mediaType : mediaTypes)
+        {
+            for (boolean disableIce : options)
+            {
+                for (boolean useDtls : options)
+                {
+                    String expected
+                        = JingleOfferFactory.createContentForMedia(
+                                mediaType, disableIce, useDtls).toXML();
+
+                    // The first call builds the description, the second one
+                    // reuses it
+                    assertEquals(
+                        expected,
+                        JingleOfferFactory.getContentForMedia(
+                                mediaType, disableIce, useDtls).toXML());
+                    assertEquals(
+                        expected,
+                        JingleOfferFactory.getContentForMedia(
+                                mediaType, disableIce, useDtls).toXML());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testContentsAreIndependent()
+    {
+        ContentPacketExtension first
+            = JingleOfferFactory.getContentForMedia(
+                    MediaType.VIDEO, false, true);
+        String expected = first.toXML();
+
+        // Modify the content the way the offer is completed with
+        // the channels
+        IceUdpTransportPacketExtension transport
+            = first.getFirstChildOfType(IceUdpTransportPacketExtension.class);
+        first.getChildExtensions().remove(transport);
+        first.addChildExtension(new IceUdpTransportPacketExtension());
+
+        RtpDescriptionPacketExtension rtpDesc
+            = first.getFirstChildOfType(RtpDescriptionPacketExtension.class);
+        SourcePacketExtension ssrc = new SourcePacketExtension();
+        ssrc.setSSRC(1234);
+        rtpDesc.addChildExtension(ssrc);
+        rtpDesc.addChildExtension(new RtcpmuxPacketExtension());
+
+        ContentPacketExtension second
+            = JingleOfferFactory.getContentForMedia(
+                    MediaType.VIDEO, false, true);
+        RtpDescriptionPacketExtension secondRtpDesc
+            = second.getFirstChildOfType(RtpDescriptionPacketExtension.class);
+
+        assertNotSame(rtpDesc, secondRtpDesc);
+        // Payload types are shared
+        assertSame(
+            rtpDesc.getPayloadTypes().get(0),
+            secondRtpDesc.getPayloadTypes().get(0));
+        assertEquals(expected, second.toXML());
+    }
+}
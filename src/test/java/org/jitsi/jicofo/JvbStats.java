@@ -0,0 +1,121 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+
+import org.jitsi.videobridge.stats.*;
+
+import org.jivesoftware.smack.packet.*;
+
+/**
+ * Creates the statistics which the bridges publish through PubSub, for
+ * the tests which feed them to {@link BridgeSelector}.
+ */
+class JvbStats
+{
+    /**
+     * Creates the statistics with the number of conferences only.
+     *
+     * @param conferenceCount the number of conferences on the bridge.
+     */
+    static PacketExtension conferences(int conferenceCount)
+    {
+        return create(VideobridgeStatistics.CONFERENCES, conferenceCount);
+    }
+
+    /**
+     * Creates the statistics with the number of conferences and the number
+     * of video streams.
+     */
+    static PacketExtension load(int conferenceCount, int videoStreamCount)
+    {
+        return create(
+            VideobridgeStatistics.CONFERENCES, conferenceCount,
+            VideobridgeStatistics.VIDEOSTREAMS, videoStreamCount);
+    }
+
+    /**
+     * Creates the statistics with the number of conferences, video channels
+     * and video streams.
+     */
+    static PacketExtension load(int conferenceCount,
+                                int videoChannelCount,
+                                int videoStreamCount)
+    {
+        return create(
+            VideobridgeStatistics.CONFERENCES, conferenceCount,
+            VideobridgeStatistics.VIDEOCHANNELS, videoChannelCount,
+            VideobridgeStatistics.VIDEOSTREAMS, videoStreamCount);
+    }
+
+    /**
+     * Creates the statistics with the number of video streams only.
+     */
+    static PacketExtension videoStreams(int videoStreamCount)
+    {
+        return create(VideobridgeStatistics.VIDEOSTREAMS, videoStreamCount);
+    }
+
+    /**
+     * Creates the statistics with the number of conferences and the region
+     * of the bridge, which is left out when <tt>null</tt>.
+     */
+    static PacketExtension region(int conferenceCount, String region)
+    {
+        return create(
+            VideobridgeStatistics.CONFERENCES, conferenceCount,
+            BridgeStats.REGION, region);
+    }
+
+    /**
+     * Creates the statistics with the number of conferences and the flag of
+     * the graceful shutdown.
+     */
+    static PacketExtension shutdown(int conferenceCount, boolean shutdown)
+    {
+        return create(
+            VideobridgeStatistics.CONFERENCES, conferenceCount,
+            VideobridgeStatistics.SHUTDOWN_IN_PROGRESS, shutdown);
+    }
+
+    /**
+     * Creates the statistics from the names and the values which follow each
+     * other. The stats with <tt>null</tt> value are left out.
+     *
+     * @param namesAndValues the name of the first stat, its value, the name
+     *                       of the second stat and so on.
+     */
+    static PacketExtension create(Object... namesAndValues)
+    {
+        ColibriStatsExtension statsExtension = new ColibriStatsExtension();
+
+        for (int i = 0; i + 1 < namesAndValues.length; i += 2)
+        {
+            Object value = namesAndValues[i + 1];
+            if (value == null)
+                continue;
+
+            statsExtension.addStat(
+                new ColibriStatsExtension.Stat(
+                    (String) namesAndValues[i], "" + value));
+        }
+
+        return statsExtension;
+    }
+}
@@ -44,6 +44,8 @@ public class OSGiHandler
         System.setProperty(FocusManager.XMPP_DOMAIN_PNAME, "test.domain.net");
         System.setProperty(FocusManager.FOCUS_USER_DOMAIN_PNAME, "focusdomain");
         System.setProperty(FocusManager.FOCUS_USER_NAME_PNAME, "focus");
+        // Mock bridges do not answer the probes
+        System.setProperty(BridgeProber.PROBE_INTERVAL_PNAME, "-1");
 
         this.bundleActivator = new BundleActivator()
         {
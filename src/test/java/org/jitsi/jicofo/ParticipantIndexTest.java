@@ -0,0 +1,211 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import mock.*;
+import mock.jvb.*;
+import mock.muc.*;
+import mock.util.*;
+
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.jicofo.osgi.*;
+import org.jitsi.protocol.xmpp.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests if the participants and the Jingle sessions can be found by their
+ * addresses, endpoint IDs and session IDs, as the participants join, leave
+ * and are re-invited.
+ */
+@RunWith(JUnit4.class)
+public class ParticipantIndexTest
+{
+    static OSGiHandler osgi = new OSGiHandler();
+
+    @BeforeClass
+    public static void setUpClass()
+        throws InterruptedException
+    {
+        OSGi.setUseMockProtocols(true);
+
+        osgi.init();
+    }
+
+    @AfterClass
+    public static void tearDownClass()
+    {
+        osgi.shutdown();
+    }
+
+    @Test
+    public void testIndexesFollowParticipants()
+        throws Exception
+    {
+        String roomName = "testIndexes@conference.pawel.jitsi.net";
+        String serverName = "test-server-indexes";
+
+        TestConference testConf = new TestConference();
+        testConf.allocateMockConference(osgi, serverName, roomName);
+
+        MockProtocolProvider pps = testConf.getFocusProtocolProvider();
+
+        MockMultiUserChat chat
+            = (MockMultiUserChat) pps.getMockChatOpSet().findRoom(roomName);
+
+        JitsiMeetConference conference = testConf.getConference();
+
+        AbstractOperationSetJingle jingle
+            = (AbstractOperationSetJingle) pps.getOperationSet(
+                    OperationSetJingle.class);
+
+        // Join
+        MockParticipant user1 = new MockParticipant("User1");
+        user1.join(chat);
+        MockParticipant user2 = new MockParticipant("User2");
+        user2.join(chat);
+        MockParticipant user3 = new MockParticipant("User3");
+        user3.join(chat);
+
+        for (MockParticipant user : Arrays.asList(user1, user2, user3))
+        {
+            assertNotNull(user.acceptInvite(4000));
+            waitForNewSession(conference, user, null);
+        }
+
+        verifyIndexes(conference, jingle, user1, user2, user3);
+
+        // Leave
+        Participant leftParticipant
+            = conference.findParticipantForRoomJid(user2.getMyJid());
+        String leftEndpoint = leftParticipant.getEndpointId();
+        JingleSession leftSession = leftParticipant.getJingleSession();
+
+        user2.leave();
+
+        assertNull(conference.findParticipantForRoomJid(user2.getMyJid()));
+        assertNull(conference.findParticipantForEndpoint(leftEndpoint));
+        assertNull(jingle.getSession(leftSession.getSessionID()));
+
+        verifyIndexes(conference, jingle, user1, user3);
+
+        // Re-invite everyone on another bridge
+        Map<MockParticipant, JingleSession> oldSessions
+            = new HashMap<MockParticipant, JingleSession>();
+        for (MockParticipant user : Arrays.asList(user1, user3))
+        {
+            oldSessions.put(
+                user,
+                conference.findParticipantForRoomJid(user.getMyJid())
+                    .getJingleSession());
+        }
+
+        String bridge2Jid = "mockjvb2." + serverName;
+        MockVideobridge bridge2
+            = new MockVideobridge(
+                    osgi.bc, pps.getMockXmppConnection(), bridge2Jid);
+        bridge2.start();
+
+        ServiceUtils.getService(
+                FocusBundleActivator.bundleContext, JitsiMeetServices.class)
+            .getBridgeSelector().addJvbAddress(bridge2Jid);
+
+        testConf.getMockVideoBridge().setFailAllocations(true);
+
+        // Its allocation fails and the conference moves to bridge2
+        MockParticipant user4 = new MockParticipant("User4");
+        user4.join(chat);
+
+        for (MockParticipant user : Arrays.asList(user1, user3, user4))
+        {
+            assertNotNull(user.acceptInvite(4000));
+            waitForNewSession(conference, user, oldSessions.get(user));
+        }
+
+        for (JingleSession oldSession : oldSessions.values())
+        {
+            assertNull(jingle.getSession(oldSession.getSessionID()));
+        }
+
+        verifyIndexes(conference, jingle, user1, user3, user4);
+
+        user4.leave();
+        user3.leave();
+        user1.leave();
+    }
+
+    /**
+     * Checks if exactly given users are in the conference and if their
+     * participants and sessions are found by all the indexes.
+     */
+    private static void verifyIndexes(JitsiMeetConference conference,
+                                      AbstractOperationSetJingle jingle,
+                                      MockParticipant... users)
+    {
+        assertEquals(users.length, conference.getParticipantCount());
+
+        for (MockParticipant user : users)
+        {
+            Participant participant
+                = conference.findParticipantForRoomJid(user.getMyJid());
+            assertNotNull(user.getNickname(), participant);
+            assertSame(
+                participant,
+                conference.findParticipantForEndpoint(
+                    participant.getEndpointId()));
+
+            JingleSession session = participant.getJingleSession();
+            assertNotNull(user.getNickname(), session);
+            assertSame(session, jingle.getSession(session.getSessionID()));
+            assertEquals(user.getMyJid(), session.getAddress());
+        }
+    }
+
+    /**
+     * Waits for the focus to process session-accept of the user.
+     *
+     * @param oldSession the session which the user has had before or
+     *                   <tt>null</tt>.
+     */
+    private static void waitForNewSession(JitsiMeetConference conference,
+                                          MockParticipant user,
+                                          JingleSession oldSession)
+        throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline)
+        {
+            Participant participant
+                = conference.findParticipantForRoomJid(user.getMyJid());
+            JingleSession session
+                = participant != null ? participant.getJingleSession() : null;
+            if (session != null && session != oldSession)
+                return;
+
+            Thread.sleep(50);
+        }
+        fail("Session not accepted: " + user.getNickname());
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import org.jitsi.impl.protocol.xmpp.*;
+import org.jitsi.protocol.xmpp.util.*;
+
+import org.jivesoftware.smack.packet.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the table of the requests waiting for the response.
+ */
+@RunWith(JUnit4.class)
+public class PendingRepliesTest
+{
+    private ScheduledExecutorService executor;
+
+    private PendingReplies pendingReplies;
+
+    @Before
+    public void setUp()
+    {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        pendingReplies = new PendingReplies(executor);
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testResponseCompletesRequest()
+        throws Exception
+    {
+        IQ request = createRequest();
+        SettableFuture<Packet> reply = pendingReplies.add(request, 5000);
+
+        IQ response = IQ.createResultIQ(request);
+        assertTrue(pendingReplies.accept(response));
+        pendingReplies.processPacket(response);
+
+        assertSame(response, reply.get(5, TimeUnit.SECONDS));
+        assertEquals(0, pendingReplies.getPendingCount());
+
+        // Duplicate is not delivered again
+        assertFalse(pendingReplies.accept(response));
+    }
+
+    @Test
+    public void testTimeout()
+        throws Exception
+    {
+        IQ request = createRequest();
+        SettableFuture<Packet> reply = pendingReplies.add(request, 50);
+
+        assertNull(reply.get(5, TimeUnit.SECONDS));
+        assertEquals(0, pendingReplies.getPendingCount());
+        assertFalse(pendingReplies.accept(IQ.createResultIQ(request)));
+    }
+
+    @Test
+    public void testOnlyResponsesAccepted()
+    {
+        IQ request = createRequest();
+        pendingReplies.add(request, 5000);
+
+        // The request itself and the responses to other requests
+        assertFalse(pendingReplies.accept(request));
+        assertFalse(pendingReplies.accept(IQ.createResultIQ(createRequest())));
+
+        assertTrue(
+            pendingReplies.accept(
+                IQ.createErrorResponse(
+                    request,
+                    new XMPPError(XMPPError.Condition.bad_request))));
+    }
+
+    @Test
+    public void testResentRequestReplacesPrevious()
+        throws Exception
+    {
+        IQ request = createRequest();
+        SettableFuture<Packet> first = pendingReplies.add(request, 5000);
+        SettableFuture<Packet> second = pendingReplies.add(request, 5000);
+
+        assertNull(first.get(5, TimeUnit.SECONDS));
+        assertEquals(1, pendingReplies.getPendingCount());
+
+        IQ response = IQ.createResultIQ(request);
+        pendingReplies.processPacket(response);
+
+        assertSame(response, second.get(5, TimeUnit.SECONDS));
+    }
+
+    private static IQ createRequest()
+    {
+        IQ request = new IQ()
+        {
+            @Override
+            public String getChildElementXML()
+            {
+                return null;
+            }
+        };
+        request.setType(IQ.Type.SET);
+        request.setFrom("focus@example.com/focus");
+        request.setTo("peer@example.com/peer");
+        return request;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.protocol.xmpp.*;
+import org.jitsi.protocol.xmpp.util.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the registry of the Jingle sessions and the participants. The
+ * lookups in a room of 500 participants are compared with the scan of
+ * the participant list which was done on every stanza before.
+ */
+@RunWith(JUnit4.class)
+public class SessionRegistryTest
+{
+    /**
+     * The logger.
+     */
+    private final static Logger logger
+        = Logger.getLogger(SessionRegistryTest.class);
+
+    private static final int PARTICIPANT_COUNT = 500;
+
+    private static final int WARMUP_ROUNDS = 20000;
+
+    private static final int MEASURED_ROUNDS = 200000;
+
+    private static final String ROOM = "benchmark@conference.domain.net";
+
+    private static final JingleRequestHandler handler
+        = new NoopRequestHandler();
+
+    @Test
+    public void testIndexes()
+    {
+        SessionRegistry<JingleSession> registry
+            = new SessionRegistry<JingleSession>();
+
+        JingleSession session = createSession(1);
+        register(registry, session);
+
+        assertSame(session, registry.findBySessionId("sid1"));
+        assertSame(session, registry.findByAddress(ROOM + "/nick1"));
+        assertSame(session, registry.findByEndpoint("nick1"));
+        assertEquals(1, registry.getSessions().size());
+
+        assertNull(registry.findBySessionId(null));
+        assertNull(registry.findByAddress("nobody"));
+
+        // The member joins again with the same nickname before the old
+        // entry is removed
+        JingleSession rejoined = new JingleSession(
+            "sid2", session.getAddress(), handler);
+        registry.add(rejoined, "sid2", rejoined.getAddress(), "nick1");
+
+        assertTrue(unregister(registry, session));
+
+        assertNull(registry.findBySessionId("sid1"));
+        assertSame(rejoined, registry.findByAddress(ROOM + "/nick1"));
+        assertSame(rejoined, registry.findByEndpoint("nick1"));
+
+        assertTrue(
+            registry.remove(rejoined, "sid2", rejoined.getAddress(), "nick1"));
+        assertFalse(
+            registry.remove(rejoined, "sid2", rejoined.getAddress(), "nick1"));
+        assertNull(registry.findByAddress(ROOM + "/nick1"));
+        assertTrue(registry.getSessions().isEmpty());
+    }
+
+    @Test
+    public void testLookupBenchmark()
+    {
+        SessionRegistry<JingleSession> registry
+            = new SessionRegistry<JingleSession>();
+        List<JingleSession> list = new CopyOnWriteArrayList<JingleSession>();
+
+        String[] addresses = new String[PARTICIPANT_COUNT];
+        for (int i = 0; i < PARTICIPANT_COUNT; i++)
+        {
+            JingleSession session = createSession(i);
+
+            register(registry, session);
+            list.add(session);
+            addresses[i] = session.getAddress();
+        }
+
+        // Every participant is found by every key
+        for (JingleSession session : list)
+        {
+            assertSame(session, findByScan(list, session.getAddress()));
+            assertSame(
+                session, registry.findBySessionId(session.getSessionID()));
+            assertSame(session, registry.findByAddress(session.getAddress()));
+            assertSame(
+                session, registry.findByEndpoint(getEndpoint(session)));
+        }
+
+        run(registry, list, addresses, WARMUP_ROUNDS, true);
+        run(registry, list, addresses, WARMUP_ROUNDS, false);
+
+        long scanNanos
+            = run(registry, list, addresses, MEASURED_ROUNDS, true);
+        long indexNanos
+            = run(registry, list, addresses, MEASURED_ROUNDS, false);
+
+        logger.info(
+            "Lookup with " + PARTICIPANT_COUNT + " participants, "
+                + "scan: " + (scanNanos / MEASURED_ROUNDS) + " ns/op, "
+                + "index: " + (indexNanos / MEASURED_ROUNDS) + " ns/op");
+    }
+
+    /**
+     * Looks up the participants by their MUC address in random order.
+     *
+     * @param scan <tt>true</tt> to scan the list or <tt>false</tt> to use
+     *             the registry.
+     *
+     * @return the time spent in the lookups in nanoseconds.
+     */
+    private static long run(SessionRegistry<JingleSession> registry,
+                            List<JingleSession> list,
+                            String[] addresses,
+                            int rounds,
+                            boolean scan)
+    {
+        Random random = new Random(12345);
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++)
+        {
+            String address = addresses[random.nextInt(addresses.length)];
+
+            JingleSession session
+                = scan ? findByScan(list, address)
+                       : registry.findByAddress(address);
+
+            if (session == null)
+                throw new IllegalStateException("Not found: " + address);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Finds the session the way it used to be done on every stanza: by
+     * scanning the participant list.
+     */
+    private static JingleSession findByScan(List<JingleSession> list,
+                                            String address)
+    {
+        for (JingleSession session : list)
+        {
+            if (session.getAddress().equals(address))
+                return session;
+        }
+        return null;
+    }
+
+    private static JingleSession createSession(int index)
+    {
+        return new JingleSession(
+            "sid" + index, ROOM + "/nick" + index, handler);
+    }
+
+    private static String getEndpoint(JingleSession session)
+    {
+        return session.getAddress().split("/")[1];
+    }
+
+    private static void register(SessionRegistry<JingleSession> registry,
+                                 JingleSession session)
+    {
+        registry.add(
+            session,
+            session.getSessionID(),
+            session.getAddress(),
+            getEndpoint(session));
+    }
+
+    private static boolean unregister(SessionRegistry<JingleSession> registry,
+                                      JingleSession session)
+    {
+        return registry.remove(
+            session,
+            session.getSessionID(),
+            session.getAddress(),
+            getEndpoint(session));
+    }
+
+    /**
+     * The handler of the sessions which are never used for signaling.
+     */
+    private static class NoopRequestHandler
+        implements JingleRequestHandler
+    {
+        @Override
+        public void onAddSource(JingleSession jingleSession,
+                                List<ContentPacketExtension> contents)
+        {
+        }
+
+        @Override
+        public void onRemoveSource(JingleSession jingleSession,
+                                   List<ContentPacketExtension> contents)
+        {
+        }
+
+        @Override
+        public void onSessionAccept(JingleSession jingleSession,
+                                    List<ContentPacketExtension> answer)
+        {
+        }
+
+        @Override
+        public void onTransportInfo(JingleSession jingleSession,
+                                    List<ContentPacketExtension> contents)
+        {
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+
+import org.jitsi.protocol.xmpp.util.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for merging of the source changes queued for the participant.
+ */
+@RunWith(JUnit4.class)
+public class SourceUpdateQueueTest
+{
+    @Test
+    public void testAdditionsMerged()
+    {
+        SourceUpdateQueue queue = new SourceUpdateQueue();
+
+        queue.add(ssrcs(1, 2), groups(1, 2));
+        queue.add(ssrcs(2, 3), groups(1, 2));
+
+        SourceUpdateQueue.Update update = queue.poll();
+
+        assertFalse(update.hasRemovals());
+        assertEquals(
+            Arrays.asList(1L, 2L, 3L), values(update.getSSRCsToAdd()));
+        assertEquals(
+            1, update.getSSRCGroupsToAdd().getSSRCGroupsForMedia("video")
+                    .size());
+
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testRemovalCancelsPendingAddition()
+    {
+        SourceUpdateQueue queue = new SourceUpdateQueue();
+
+        queue.add(ssrcs(1, 2), groups(1, 2));
+        queue.remove(ssrcs(1, 2), groups(1, 2));
+
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testRemovalAndReAddition()
+    {
+        SourceUpdateQueue queue = new SourceUpdateQueue();
+
+        queue.remove(ssrcs(1), new MediaSSRCGroupMap());
+        queue.remove(ssrcs(1), new MediaSSRCGroupMap());
+        queue.add(ssrcs(1), new MediaSSRCGroupMap());
+
+        SourceUpdateQueue.Update update = queue.poll();
+
+        // The peer has had SSRC 1, so it must be removed and added back
+        assertEquals(
+            Collections.singletonList(1L), values(update.getSSRCsToRemove()));
+        assertEquals(
+            Collections.singletonList(1L), values(update.getSSRCsToAdd()));
+    }
+
+    private static MediaSSRCMap ssrcs(long... values)
+    {
+        MediaSSRCMap map = new MediaSSRCMap();
+        for (long value : values)
+        {
+            SourcePacketExtension ssrc = new SourcePacketExtension();
+            ssrc.setSSRC(value);
+            map.getSSRCsForMedia("video").add(ssrc);
+        }
+        return map;
+    }
+
+    private static MediaSSRCGroupMap groups(long... ssrcValues)
+    {
+        SourceGroupPacketExtension groupPe
+            = SourceGroupPacketExtension.createSimulcastGroup();
+        groupPe.addSources(ssrcs(ssrcValues).getSSRCsForMedia("video"));
+
+        MediaSSRCGroupMap map = new MediaSSRCGroupMap();
+        map.addSSRCGroup("video", new SSRCGroup(groupPe));
+        return map;
+    }
+
+    private static List<Long> values(MediaSSRCMap map)
+    {
+        List<Long> values = new ArrayList<Long>();
+        for (SourcePacketExtension ssrc : map.getSSRCsForMedia("video"))
+        {
+            values.add(ssrc.getSSRC());
+        }
+        return values;
+    }
+}
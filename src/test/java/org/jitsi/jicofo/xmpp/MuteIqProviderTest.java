@@ -58,6 +58,26 @@ public class MuteIqProviderTest
         assertEquals(true, mute.getMute());
     }
 
+    @Test
+    public void testParseMuteAllIq()
+        throws Exception
+    {
+        String iqXml =
+            "<iq to='t' from='f'>" +
+                "<mute-all xmlns='http://jitsi.org/jitmeet/audio'>" +
+                "true" +
+                "</mute-all>" +
+                "</iq>";
+
+        MuteIqProvider provider = new MuteIqProvider();
+        MuteIq mute
+            = (MuteIq) IQUtils.parse(iqXml, provider);
+
+        assertEquals(true, mute.isAll());
+        assertEquals(null, mute.getJid());
+        assertEquals(true, mute.getMute());
+    }
+
     @Test
     public void testToXml()
     {
@@ -79,4 +99,25 @@ public class MuteIqProviderTest
                          "</iq>",
                      muteIq.toXML());
     }
+
+    @Test
+    public void testMuteAllToXml()
+    {
+        MuteIq muteIq = new MuteIq();
+
+        muteIq.setPacketID("123xyz");
+        muteIq.setTo("toJid");
+        muteIq.setFrom("fromJid");
+
+        muteIq.setAll(true);
+        muteIq.setMute(true);
+
+        assertEquals("<iq id=\"123xyz\" to=\"toJid\" from=\"fromJid\" " +
+                         "type=\"get\">" +
+                         "<mute-all " +
+                         "xmlns='http://jitsi.org/jitmeet/audio' " +
+                         ">true</mute-all>" +
+                         "</iq>",
+                     muteIq.toXML());
+    }
 }